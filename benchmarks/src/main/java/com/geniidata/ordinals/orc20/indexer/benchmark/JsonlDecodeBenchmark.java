@@ -0,0 +1,44 @@
+package com.geniidata.ordinals.orc20.indexer.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * decoding of the input lines, as done by Loader
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonlDecodeBenchmark {
+    private List<String> contentLines;
+    private List<String> transferLines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Workload workload = new Workload(1, 1000, false).mixed(10000);
+        contentLines = workload.contentLines();
+        transferLines = workload.transferLines();
+    }
+
+    @Benchmark
+    public InscriptionTransfer decodeTransfer() throws JsonProcessingException {
+        next = (next + 1) % transferLines.size();
+        return Json.readValue(transferLines.get(next), InscriptionTransfer.class);
+    }
+
+    @Benchmark
+    public InscriptionContent decodeContent() throws JsonProcessingException {
+        next = (next + 1) % contentLines.size();
+        return Json.readValue(contentLines.get(next), InscriptionContent.class);
+    }
+}
@@ -0,0 +1,109 @@
+package com.geniidata.ordinals.orc20.indexer.benchmark;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.EventType;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * insert/select paths of MemoryCache on a state built from `mints` mint inscriptions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryCacheBenchmark {
+    private final static String WHALE = String.format("bc1q%038d", 0); // most holdings, see Workload.address
+    private final static int EVENT_POOL = 1024;
+
+    @Param({"1000", "100000"})
+    public int mints;
+
+    private MemoryCache storage;
+    private String tickId;
+    private String[] inscriptionIds;
+    private String[] holders;
+    private int next;
+    private int eventSeq;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Workload workload = new Workload(1, 1000, false).mints(mints);
+        storage = new MemoryCache();
+        workload.getContents().forEach(storage::insertInscriptionContent);
+        Orc20 orc20 = new Orc20(storage);
+        List<InscriptionTransfer> transfers = workload.getTransfers();
+        transfers.forEach(orc20::accept);
+        tickId = transfers.get(0).getInscriptionId();
+        inscriptionIds = new String[transfers.size()];
+        holders = new String[transfers.size()];
+        for (int i = 0; i < transfers.size(); i++) {
+            inscriptionIds[i] = transfers.get(i).getInscriptionId();
+            holders[i] = transfers.get(i).getToAddress();
+        }
+        for (int i = 0; i < EVENT_POOL; i++) {
+            insertEvent();
+        }
+    }
+
+    @Benchmark
+    public List<Orc20Balance> selectBalanceListOfWhale() {
+        return storage.selectOrc20BalanceListByTickIdAndAddress(tickId, WHALE);
+    }
+
+    @Benchmark
+    public Orc20Balance selectBalanceByInscriptionId() {
+        next = (next + 1) % inscriptionIds.length;
+        return storage.selectOrc20BalanceByInscriptionId(inscriptionIds[next]);
+    }
+
+    @Benchmark
+    public List<Orc20Event> selectEventsOfInscription() {
+        next = (next + 1) % inscriptionIds.length;
+        return storage.selectOrc20EventByInscriptionIdAndEventType(inscriptionIds[next], EventType.INSCRIBE_MINT);
+    }
+
+    /**
+     * stores the events of a fixed pool of ids, inserted in `setup`, so the indexes of the whale keep their size
+     */
+    @Benchmark
+    public void insertEvent() {
+        eventSeq = (eventSeq + 1) % EVENT_POOL;
+        Orc20Event event = new Orc20Event();
+        event.setEventId("bench-" + eventSeq);
+        event.setTickId(tickId);
+        event.setInscriptionId(inscriptionIds[eventSeq % inscriptionIds.length]);
+        event.setToAddress(WHALE);
+        event.setCreator(WHALE);
+        event.setEventType(EventType.INSCRIBE_MINT);
+        event.setOp(OP.MINT);
+        event.setEventStatus(EventStatus.SUCCESS);
+        event.setAmount(Amount.ONE);
+        storage.insertOrc20Event(event);
+    }
+
+    /**
+     * moves a mint balance to another holder and back
+     */
+    @Benchmark
+    public void updateBalanceAddress() {
+        next = (next + 1) % inscriptionIds.length;
+        Orc20Balance balance = storage.selectOrc20BalanceByInscriptionId(inscriptionIds[next]);
+        if (balance != null) {
+            String holder = holders[next];
+            storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(balance.getTickId(), inscriptionIds[next], holder, WHALE + "x");
+            storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(balance.getTickId(), inscriptionIds[next], WHALE + "x", holder);
+        }
+    }
+}
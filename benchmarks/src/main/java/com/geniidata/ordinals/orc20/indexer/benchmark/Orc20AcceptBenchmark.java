@@ -0,0 +1,61 @@
+package com.geniidata.ordinals.orc20.indexer.benchmark;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * end-to-end `Orc20.accept` of a mixed mint/send/transfer batch, on top of a state of `stateSize` mints.
+ * the state is rebuilt for every iteration, since transfers can not be processed twice.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class Orc20AcceptBenchmark {
+    private final static int BATCH = 20000;
+
+    @Param({"1000", "10000", "100000"})
+    public int stateSize;
+
+    @Param({"false", "true"})
+    public boolean postOIP10;
+
+    private Workload workload;
+    private List<InscriptionTransfer> warmup;
+    private List<InscriptionTransfer> batch;
+    private Orc20 orc20;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        workload = new Workload(42, 1000, postOIP10).mints(stateSize);
+        int stateTransfers = workload.getTransfers().size();
+        workload.mixed(BATCH);
+        List<InscriptionTransfer> transfers = workload.getTransfers();
+        warmup = transfers.subList(0, stateTransfers);
+        batch = transfers.subList(stateTransfers, transfers.size());
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        MemoryCache storage = new MemoryCache();
+        workload.getContents().forEach(storage::insertInscriptionContent);
+        orc20 = new Orc20(storage);
+        warmup.forEach(orc20::accept);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Orc20 accept() {
+        for (InscriptionTransfer transfer : batch) {
+            orc20.accept(transfer);
+        }
+        return orc20;
+    }
+}
@@ -0,0 +1,72 @@
+package com.geniidata.ordinals.orc20.indexer.benchmark;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.data.events.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * classification (`isOrc20`) and typed decoding of inscription contents
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadInscriptionContentBenchmark {
+
+    @Param({"deploy", "mint", "send", "cancel", "upgrade"})
+    public String op;
+
+    private String content;
+    private Class<? extends BaseEvent> eventClass;
+
+    @Setup
+    public void setup() {
+        switch (op) {
+            case "deploy":
+                content = "{\"p\":\"orc-20\",\"op\":\"deploy\",\"tick\":\"ORDI\",\"id\":\"1\",\"max\":\"21000000\",\"lim\":\"1000\",\"dec\":\"18\",\"ug\":\"true\"}";
+                eventClass = DeployEvent.class;
+                break;
+            case "mint":
+                content = "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ORDI\",\"id\":\"1001\",\"amt\":\"1000\"}";
+                eventClass = MintEvent.class;
+                break;
+            case "send":
+                content = "{\"p\":\"orc-20\",\"op\":\"send\",\"tick\":\"ORDI\",\"id\":\"1001\",\"amt\":\"12.5\",\"n\":\"3\"}";
+                eventClass = SendEvent.class;
+                break;
+            case "cancel":
+                content = "{\"p\":\"orc-20\",\"op\":\"cancel\",\"tick\":\"ORDI\",\"id\":\"1001\",\"n\":\"[\\\"1\\\",\\\"2\\\"]\"}";
+                eventClass = CancelEvent.class;
+                break;
+            case "upgrade":
+                content = "{\"p\":\"orc-20\",\"op\":\"upgrade\",\"tick\":\"ORDI\",\"id\":\"1001\",\"max\":\"42000000\",\"lim\":\"2000\",\"ug\":\"false\"}";
+                eventClass = UpgradeEvent.class;
+                break;
+            default:
+                throw new IllegalArgumentException(op);
+        }
+    }
+
+    @Benchmark
+    public BaseEvent isOrc20() {
+        return Orc20.isOrc20(content);
+    }
+
+    @Benchmark
+    public BaseEvent readTyped() {
+        return Orc20.readInscriptionContent(content, eventClass);
+    }
+
+    /**
+     * what `Orc20.inscribe` does for an op: classify, then decode again into the typed event
+     */
+    @Benchmark
+    public BaseEvent classifyAndReadTyped() {
+        Orc20.isOrc20(content);
+        return Orc20.readInscriptionContent(content, eventClass);
+    }
+}
@@ -0,0 +1,188 @@
+package com.geniidata.ordinals.orc20.indexer.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.util.*;
+
+/**
+ * deterministic synthetic chain: ticks deployed in the first block, then mints, sends and transfers.
+ * holders are skewed, a few addresses hold most of the inscriptions.
+ */
+public class Workload {
+    public final static long PRE_OIP10_HEIGHT = 790000; // after OIP3
+    public final static long POST_OIP10_HEIGHT = 810000;
+    public final static String ATM = "bc1pgha2vs4m4d70aw82qzrhmg98yea4fuxtnf7lpguez3z9cjtukpssrhakhl";
+
+    private final static String[] TICKS = {"ordi", "pepe", "sats", "moon"};
+    private final static int OPS_PER_BLOCK = 200;
+
+    private final Random random;
+    private final int addresses;
+    private final boolean postOIP10;
+    private final List<InscriptionContent> contents = new ArrayList<>();
+    private final List<InscriptionTransfer> transfers = new ArrayList<>();
+    private final long[] deployNumbers = new long[TICKS.length];
+    private final Map<String, String> holders = new HashMap<>(); // transferable inscriptionId -> address
+    private final List<String> transferable = new ArrayList<>();
+    private final Map<String, Integer> nonces = new HashMap<>();
+    private long blockHeight;
+    private int txIndex;
+    private long inscriptionNumber = 1000;
+
+    public Workload(long seed, int addresses, boolean postOIP10) {
+        this.random = new Random(seed);
+        this.addresses = addresses;
+        this.postOIP10 = postOIP10;
+        this.blockHeight = postOIP10 ? POST_OIP10_HEIGHT : PRE_OIP10_HEIGHT;
+        for (int i = 0; i < TICKS.length; i++) {
+            String content = String.format("{\"p\":\"orc-20\",\"op\":\"deploy\",\"tick\":\"%s\",\"id\":\"1\",\"max\":\"100000000000000\",\"lim\":\"1000\"}", TICKS[i]);
+            inscribe(address(), content);
+            deployNumbers[i] = inscriptionNumber;
+        }
+    }
+
+    /**
+     * `count` mint inscriptions
+     */
+    public Workload mints(int count) {
+        for (int i = 0; i < count; i++) {
+            mint();
+        }
+        return this;
+    }
+
+    /**
+     * `count` operations: 50% mints, 20% sends (and remaining balances before OIP10), 30% transfers of existing inscriptions
+     */
+    public Workload mixed(int count) {
+        for (int i = 0; i < count; i++) {
+            int r = random.nextInt(10);
+            if (r < 5 || transferable.isEmpty()) {
+                mint();
+            } else if (r < 7) {
+                send();
+            } else {
+                String inscriptionId = transferable.get(random.nextInt(transferable.size()));
+                transfer(inscriptionId, postOIP10 && random.nextInt(4) == 0 ? ATM : address());
+            }
+        }
+        return this;
+    }
+
+    public List<InscriptionContent> getContents() {
+        return contents;
+    }
+
+    public List<InscriptionTransfer> getTransfers() {
+        return transfers;
+    }
+
+    public List<String> contentLines() {
+        List<String> lines = new ArrayList<>(contents.size());
+        contents.forEach(c -> lines.add(toJson(c)));
+        return lines;
+    }
+
+    public List<String> transferLines() {
+        List<String> lines = new ArrayList<>(transfers.size());
+        transfers.forEach(t -> lines.add(toJson(t)));
+        return lines;
+    }
+
+    private void mint() {
+        int tick = random.nextInt(TICKS.length);
+        String content = String.format("{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"%s\",\"id\":\"%d\",\"amt\":\"%d\"}", TICKS[tick], deployNumbers[tick], 1 + random.nextInt(1000));
+        String inscriptionId = inscribe(address(), content);
+        transferable.add(inscriptionId);
+    }
+
+    private void send() {
+        int tick = random.nextInt(TICKS.length);
+        String sender = address();
+        int nonce = nonces.merge(sender, 1, Integer::sum);
+        String content = String.format("{\"p\":\"orc-20\",\"op\":\"send\",\"tick\":\"%s\",\"id\":\"%d\",\"amt\":\"%d\",\"n\":\"%d\"}", TICKS[tick], deployNumbers[tick], 1 + random.nextInt(100), nonce);
+        String inscriptionId = inscribe(sender, content);
+        transferable.add(inscriptionId);
+        transfer(inscriptionId, address());
+        if (!postOIP10 && random.nextBoolean()) {
+            // complete the pending sends with a "remaining balance"
+            nonce = nonces.merge(sender, 1, Integer::sum);
+            content = String.format("{\"p\":\"orc-20\",\"op\":\"send\",\"tick\":\"%s\",\"id\":\"%d\",\"n\":\"%d\"}", TICKS[tick], deployNumbers[tick], nonce);
+            transferable.add(inscribe(sender, content));
+        }
+    }
+
+    private String inscribe(String address, String contentBody) {
+        nextTx();
+        String txId = txId();
+        String inscriptionId = txId + "i0";
+        InscriptionContent content = new InscriptionContent();
+        content.setInscriptionId(inscriptionId);
+        content.setInscriptionNumber(++inscriptionNumber);
+        content.setContentType("text/plain;charset=utf-8");
+        content.setContentBody(contentBody);
+        content.setGenesisBlockHeight(blockHeight);
+        contents.add(content);
+        InscriptionTransfer transfer = transfer(inscriptionId, txId, null, address, false);
+        transfer.setInscriptionNumber(inscriptionNumber);
+        transfers.add(transfer);
+        holders.put(inscriptionId, address);
+        return inscriptionId;
+    }
+
+    private void transfer(String inscriptionId, String receiver) {
+        nextTx();
+        String sender = holders.put(inscriptionId, receiver);
+        transfers.add(transfer(inscriptionId, txId(), sender, receiver, true));
+        if (ATM.equals(receiver)) {
+            // deposited, can not be transferred again
+            int i = transferable.lastIndexOf(inscriptionId);
+            transferable.set(i, transferable.get(transferable.size() - 1));
+            transferable.remove(transferable.size() - 1);
+        }
+    }
+
+    private InscriptionTransfer transfer(String inscriptionId, String txId, String sender, String receiver, boolean isTransfer) {
+        InscriptionTransfer transfer = new InscriptionTransfer();
+        transfer.setInscriptionId(inscriptionId);
+        transfer.setFromAddress(sender);
+        transfer.setToAddress(receiver);
+        transfer.setToLocation(txId + ":0:0");
+        transfer.setBlockHeight(blockHeight);
+        transfer.setBlockTime(1680000000 + blockHeight * 600);
+        transfer.setTxId(txId);
+        transfer.setTxIndex(txIndex);
+        transfer.setTransfer(isTransfer);
+        return transfer;
+    }
+
+    private void nextTx() {
+        if (++txIndex > OPS_PER_BLOCK) {
+            blockHeight++;
+            txIndex = 1;
+        }
+    }
+
+    private String txId() {
+        return String.format("%064x", (blockHeight << 20) | txIndex);
+    }
+
+    /**
+     * skewed towards low indexes
+     */
+    private String address() {
+        double r = random.nextDouble();
+        return String.format("bc1q%038d", (long) (addresses * r * r * r));
+    }
+
+    private static String toJson(Object object) {
+        try {
+            return Json.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,32 +2,206 @@ package com.geniidata.ordinals.orc20.indexer;
 
 import com.geniidata.ordinals.orc20.indexer.data.Dumper;
 import com.geniidata.ordinals.orc20.indexer.data.Loader;
+import com.geniidata.ordinals.orc20.indexer.data.ParsePipeline;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
 import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.Checkpoint;
+import com.geniidata.ordinals.orc20.indexer.storage.DiskStorage;
+import com.geniidata.ordinals.orc20.indexer.storage.MappedContentTable;
 import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+import com.geniidata.ordinals.orc20.indexer.storage.SymbolTable;
 import org.apache.commons.cli.*;
 
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Main Class
  */
 public class Indexer {
     private final String contentInputPath;
-    private final String transferInputPath;
+    private final List<String> transferInputPaths;
+    private final boolean streaming; // transfers are already ordered by (block_height, transaction_index)
+    private final String storageDir; // null for in-memory storage
+    private String checkpointDir; // null for no checkpoints
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private boolean resume;
+    private boolean mmapContents; // in-memory storage keeps the inscription contents in a memory-mapped file
+    private boolean offHeapBalances; // in-memory storage keeps the balances in off-heap columns
+    private int parseThreads; // 0 decodes the contents on the processing thread
+    private int loadThreads; // 0 decodes the input files on the main thread
+    private int shards; // 0 applies all ticks on the processing thread
+    private boolean balanceHistory; // record the balance history for balance-at-height queries
+    private int undoDepth; // 0 keeps no undo records
+    private SortedSet<Long> snapshotHeights = new TreeSet<>(); // balance snapshots besides OIP10
+    private String outputPath; // null dumps to stdout
+    private String exportDir; // null for no columnar export
+    private int sortBudget = Dumper.DEFAULT_SORT_BUDGET;
+    private long lastBlockHeight = -1;
+    private long lastCheckpointHeight = -1;
+
+    public final static int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    public final static String EXPORT_BALANCE_FILE = "orc20_balance.col";
+    public final static String EXPORT_EVENT_FILE = "orc20_event.col";
 
     public Indexer(String contentInputPath, String transferInputPath) {
+        this(contentInputPath, Collections.singletonList(transferInputPath), false, null);
+    }
+
+    public Indexer(String contentInputPath, List<String> transferInputPaths, boolean streaming, String storageDir) {
         this.contentInputPath = contentInputPath;
-        this.transferInputPath = transferInputPath;
+        this.transferInputPaths = transferInputPaths;
+        this.streaming = streaming;
+        this.storageDir = storageDir;
+    }
+
+    /**
+     * write the in-memory state to `checkpointDir` every `checkpointInterval` blocks
+     *
+     * @param resume start from the latest checkpoint
+     */
+    public void setCheckpoint(String checkpointDir, int checkpointInterval, boolean resume) {
+        if (storageDir != null) {
+            throw new IllegalArgumentException("Checkpoints are only used with in-memory storage");
+        }
+        this.checkpointDir = checkpointDir;
+        this.checkpointInterval = checkpointInterval;
+        this.resume = resume;
+    }
+
+    /**
+     * keep the inscription contents of the in-memory storage in a memory-mapped scratch file, the disk storage always does
+     */
+    public void setMmapContents(boolean mmapContents) {
+        this.mmapContents = mmapContents;
+    }
+
+    /**
+     * keep the balances of the in-memory storage in off-heap columns, see {@link com.geniidata.ordinals.orc20.indexer.storage.MemoryCache}
+     */
+    public void setOffHeapBalances(boolean offHeapBalances) {
+        this.offHeapBalances = offHeapBalances;
+    }
+
+    /**
+     * decode the inscription contents of upcoming transfers on `parseThreads` threads, see {@link ParsePipeline}
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * decode the lines of the input files on `loadThreads` threads, see {@link com.geniidata.ordinals.orc20.indexer.data.ChunkedJsonReader}
+     */
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * apply the transfers on `shards` tick shards in parallel, see {@link TickShards}
+     */
+    public void setShards(int shards) {
+        if (shards > 0 && (storageDir != null || checkpointDir != null || undoDepth > 0)) {
+            // the shards are merged into the storage at the end, its undo records and checkpoints would not hold them
+            throw new IllegalArgumentException("Shards are only used with in-memory storage, without checkpoints and without undo records");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * record the balance history of the storage, see {@link com.geniidata.ordinals.orc20.indexer.storage.MemoryCache}
+     */
+    public void setBalanceHistory(boolean balanceHistory) {
+        this.balanceHistory = balanceHistory;
+    }
+
+    /**
+     * keep the undo records of the latest `undoDepth` blocks to roll back a chain reorganization, see `MemoryCache.setUndoDepth`
+     */
+    public void setUndoDepth(int undoDepth) {
+        this.undoDepth = undoDepth;
+    }
+
+    /**
+     * create and dump a balance snapshot of the state before each of `snapshotHeights`, besides the OIP10 one
+     */
+    public void setSnapshotHeights(Collection<Long> snapshotHeights) {
+        this.snapshotHeights = new TreeSet<>(snapshotHeights);
+    }
+
+    /**
+     * write the dumps to `outputPath` instead of stdout
+     */
+    public void setOutputPath(String outputPath) {
+        this.outputPath = outputPath;
+    }
+
+    /**
+     * also export the balances and events of the dump to `exportDir` in the columnar format, see {@link com.geniidata.ordinals.orc20.indexer.data.ColumnarWriter}
+     */
+    public void setExportDir(String exportDir) {
+        this.exportDir = exportDir;
+    }
+
+    /**
+     * rows kept in memory while sorting a dump, see `Dumper.setSortBudget`
+     */
+    public void setSortBudget(int sortBudget) {
+        this.sortBudget = sortBudget;
     }
 
     public static Indexer fromOptions(String[] args) {
         Options options = new Options();
-        Option transferInput = new Option("t", "transfer", true, "Input file path for ORC20 inscription transfers");
+        Option transferInput = new Option("t", "transfer", true, "Input file path(s) for ORC20 inscription transfers, separated by ',', plain or gzip/BGZF compressed");
         transferInput.setRequired(true);
+        transferInput.setArgs(Option.UNLIMITED_VALUES);
+        transferInput.setValueSeparator(',');
         options.addOption(transferInput);
-        Option contentInput = new Option("c", "content", true, "Input file path for ORC20 inscription contents");
+        Option contentInput = new Option("c", "content", true, "Input file path for ORC20 inscription contents, plain or gzip/BGZF compressed");
         contentInput.setRequired(true);
         options.addOption(contentInput);
+        Option streamInput = new Option("s", "stream", false, "Stream transfers that are already ordered by (blockHeight, txIndex), k-way merging multiple files");
+        options.addOption(streamInput);
+        Option storage = new Option("d", "storage-dir", true, "Keep the indexer state on disk in this directory and continue from it on restart, in memory if absent");
+        options.addOption(storage);
+        Option checkpoint = new Option("k", "checkpoint-dir", true, "Write checkpoints of the in-memory state to this directory");
+        options.addOption(checkpoint);
+        Option checkpointInterval = new Option("i", "checkpoint-interval", true, "Blocks between checkpoints, default " + DEFAULT_CHECKPOINT_INTERVAL);
+        options.addOption(checkpointInterval);
+        Option resume = new Option("r", "resume", false, "Load the latest checkpoint and only process the transfers above its block height");
+        options.addOption(resume);
+        Option mmapContents = new Option("m", "mmap-contents", false, "Keep the inscription contents in a memory-mapped scratch file instead of on heap");
+        options.addOption(mmapContents);
+        Option offHeapBalances = new Option("b", "offheap-balances", false, "Keep the balances of the in-memory storage in off-heap columns instead of one object per balance");
+        options.addOption(offHeapBalances);
+        Option parseThreads = new Option("p", "parse-threads", true, "Decode the inscription contents of upcoming transfers on this many threads, default 0 (on the processing thread)");
+        options.addOption(parseThreads);
+        Option loadThreads = new Option("l", "load-threads", true, "Decode the lines of the input files on this many threads, default 0 (on the main thread)");
+        options.addOption(loadThreads);
+        Option shards = new Option("n", "shards", true, "Apply the transfers on this many tick shards in parallel, in-memory storage without checkpoints or undo records only, default 0 (on the processing thread)");
+        options.addOption(shards);
+        Option balanceHistory = new Option("a", "balance-history", false, "Record a version of the balances at each change, for balance-at-height queries");
+        options.addOption(balanceHistory);
+        Option undoDepth = new Option("u", "undo-depth", true, "Keep undo records of this many latest blocks to roll back a chain reorganization, default 0 (none)");
+        options.addOption(undoDepth);
+        Option snapshotHeights = new Option("H", "snapshot-heights", true, "Also dump the balances before these block heights, separated by ','");
+        snapshotHeights.setArgs(Option.UNLIMITED_VALUES);
+        snapshotHeights.setValueSeparator(',');
+        options.addOption(snapshotHeights);
+        Option output = new Option("o", "output", true, "Write the dumps to this file instead of stdout");
+        options.addOption(output);
+        Option exportDir = new Option("e", "export-dir", true, "Also export the balances and events in the binary columnar format to this directory");
+        options.addOption(exportDir);
+        Option sortBudget = new Option("q", "sort-budget", true, "Rows kept in memory while sorting a dump, larger tables are sorted in runs on disk, default " + Dumper.DEFAULT_SORT_BUDGET);
+        options.addOption(sortBudget);
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd = null;
@@ -41,8 +215,36 @@ public class Indexer {
             System.exit(1);
         }
         String contentInputPath = cmd.getOptionValue("content");
-        String transferInputPath = cmd.getOptionValue("transfer");
-        return new Indexer(contentInputPath, transferInputPath);
+        List<String> transferInputPaths = Arrays.asList(cmd.getOptionValues("transfer"));
+        boolean streaming = cmd.hasOption("stream");
+        String storageDir = cmd.getOptionValue("storage-dir");
+        Indexer indexer = new Indexer(contentInputPath, transferInputPaths, streaming, storageDir);
+        indexer.setMmapContents(cmd.hasOption("mmap-contents"));
+        indexer.setOffHeapBalances(cmd.hasOption("offheap-balances"));
+        indexer.setParseThreads(Integer.parseInt(cmd.getOptionValue("parse-threads", "0")));
+        indexer.setLoadThreads(Integer.parseInt(cmd.getOptionValue("load-threads", "0")));
+        indexer.setBalanceHistory(cmd.hasOption("balance-history"));
+        indexer.setUndoDepth(Integer.parseInt(cmd.getOptionValue("undo-depth", "0")));
+        if (cmd.hasOption("checkpoint-dir")) {
+            int interval = Integer.parseInt(cmd.getOptionValue("checkpoint-interval", String.valueOf(DEFAULT_CHECKPOINT_INTERVAL)));
+            indexer.setCheckpoint(cmd.getOptionValue("checkpoint-dir"), interval, cmd.hasOption("resume"));
+        } else if (cmd.hasOption("resume")) {
+            System.err.println("--resume requires --checkpoint-dir");
+            System.exit(1);
+        }
+        if (cmd.hasOption("snapshot-heights")) {
+            indexer.setSnapshotHeights(Arrays.stream(cmd.getOptionValues("snapshot-heights")).map(Long::parseLong).collect(Collectors.toList()));
+        }
+        indexer.setOutputPath(cmd.getOptionValue("output"));
+        indexer.setExportDir(cmd.getOptionValue("export-dir"));
+        indexer.setSortBudget(Integer.parseInt(cmd.getOptionValue("sort-budget", String.valueOf(Dumper.DEFAULT_SORT_BUDGET))));
+        try {
+            indexer.setShards(Integer.parseInt(cmd.getOptionValue("shards", "0")));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        return indexer;
     }
 
     public static void main(String[] args) {
@@ -51,20 +253,111 @@ public class Indexer {
     }
 
     public void run() {
-        // load inscription contents & transfers from datasource
-        Loader.loadInputs(contentInputPath, transferInputPath);
+        try (Storage storage = createStorage()) {
+            Checkpoint checkpoint = resume ? Checkpoint.readLatest(Paths.get(checkpointDir), (MemoryCache) storage) : null;
+            Orc20 orc20 = checkpoint == null ? new Orc20(storage) : new Orc20(storage, checkpoint.isOIP10BackedUp());
+            orc20.setSnapshotHeights(snapshotHeights);
+            if (checkpoint != null) {
+                lastCheckpointHeight = checkpoint.getBlockHeight();
+            }
+            try (TickShards tickShards = shards > 0 ? new TickShards((MemoryCache) storage, orc20.getEventCache(), shards, snapshotHeights) : null) {
+                Consumer<InscriptionTransfer> applier = tickShards != null ? tickShards : orc20::accept;
+                Consumer<InscriptionTransfer> processor = t -> process(storage, orc20, applier, t);
+                try (ParsePipeline pipeline = parseThreads > 0 ? new ParsePipeline(storage, orc20.getEventCache(), parseThreads, processor) : null) {
+                    Consumer<InscriptionTransfer> consumer = pipeline != null ? pipeline : processor;
+                    if (streaming) {
+                        // process the transfers while reading them
+                        Loader.streamInputs(storage, contentInputPath, transferInputPaths, loadThreads, consumer);
+                    } else {
+                        // load inscription contents & transfers from datasource
+                        Loader.loadInputs(storage, contentInputPath, transferInputPaths, loadThreads);
 
-        // process
-        Orc20 orc20 = new Orc20();
-        for (InscriptionTransfer inscriptionTransfer : MemoryCache.selectInscriptionTransfers()) {
-            orc20.accept(inscriptionTransfer);
+                        // process
+                        for (InscriptionTransfer inscriptionTransfer : storage.selectInscriptionTransfers()) {
+                            consumer.accept(inscriptionTransfer);
+                        }
+                    }
+                    if (pipeline != null) {
+                        pipeline.finish();
+                    }
+                }
+                if (tickShards != null) {
+                    tickShards.finish(); // merged into storage
+                }
+            }
+            if (lastBlockHeight >= 0) {
+                commit(storage, orc20, lastBlockHeight, true);
+            }
+
+            // dump
+            try (Dumper dumper = outputPath == null ? Dumper.toStdout() : Dumper.toFile(Paths.get(outputPath))) {
+                dumper.setSortBudget(sortBudget);
+                dumper.summarizeOrc20Balance(storage);
+                dumper.dumpOrc20Balance(storage);
+                dumper.dumpOrc20Metadata(storage);
+                dumper.dumpOrc20Event(storage);
+                dumper.dumpOrc20BalanceOIP10Snapshot(storage);
+                for (long snapshotHeight : snapshotHeights) {
+                    dumper.dumpOrc20BalanceSnapshot(storage, snapshotHeight);
+                }
+                if (exportDir != null) {
+                    Path dir = Paths.get(exportDir);
+                    try {
+                        Files.createDirectories(dir);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    dumper.exportOrc20Balance(storage, dir.resolve(EXPORT_BALANCE_FILE));
+                    dumper.exportOrc20Event(storage, dir.resolve(EXPORT_EVENT_FILE));
+                }
+            }
+        }
+    }
+
+    private Storage createStorage() {
+        MemoryCache storage;
+        if (storageDir != null) {
+            storage = new DiskStorage(Paths.get(storageDir));
+        } else {
+            Map<String, InscriptionContent> contents = mmapContents ? MappedContentTable.createTemp(MappedContentTable.DEFAULT_HOT_CACHE_SIZE) : new HashMap<>();
+            storage = new MemoryCache(contents, new SymbolTable(), offHeapBalances);
+        }
+        storage.setBalanceHistory(balanceHistory);
+        storage.setUndoDepth(undoDepth);
+        return storage;
+    }
+
+    /**
+     * commit the storage at block boundaries, and skip the blocks it already contains
+     *
+     * @param applier `orc20` or the {@link TickShards}
+     */
+    private void process(Storage storage, Orc20 orc20, Consumer<InscriptionTransfer> applier, InscriptionTransfer inscriptionTransfer) {
+        long blockHeight = inscriptionTransfer.getBlockHeight();
+        if (blockHeight <= storage.committedBlockHeight()) {
+            return;
+        }
+        if (lastBlockHeight >= 0 && blockHeight != lastBlockHeight) {
+            commit(storage, orc20, lastBlockHeight, false);
         }
+        lastBlockHeight = blockHeight;
+        applier.accept(inscriptionTransfer);
+    }
 
-        // dump
-        Dumper.summarizeOrc20Balance();
-        Dumper.dumpOrc20Balance();
-        Dumper.dumpOrc20Metadata();
-        Dumper.dumpOrc20Event();
-        Dumper.dumpOrc20BalanceOIP10Snapshot();
+    /**
+     * end of a block, write a checkpoint every `checkpointInterval` blocks and after the last one
+     */
+    private void commit(Storage storage, Orc20 orc20, long blockHeight, boolean last) {
+        storage.commit(blockHeight);
+        if (checkpointDir == null) {
+            return;
+        }
+        if (lastCheckpointHeight < 0) {
+            lastCheckpointHeight = blockHeight; // count from the first block
+        }
+        if (last || blockHeight - lastCheckpointHeight >= checkpointInterval) {
+            Checkpoint.write(Paths.get(checkpointDir), (MemoryCache) storage, orc20.isOIP10BackedUp());
+            lastCheckpointHeight = blockHeight;
+        }
     }
 }
@@ -2,15 +2,22 @@ package com.geniidata.ordinals.orc20.indexer;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.geniidata.ordinals.orc20.indexer.contants.OIP;
+import com.geniidata.ordinals.orc20.indexer.data.ContentSniffer;
+import com.geniidata.ordinals.orc20.indexer.data.EventCache;
 import com.geniidata.ordinals.orc20.indexer.data.NumberValidator;
 import com.geniidata.ordinals.orc20.indexer.data.events.*;
 import com.geniidata.ordinals.orc20.indexer.enums.*;
 import com.geniidata.ordinals.orc20.indexer.model.*;
 import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 import com.geniidata.ordinals.orc20.indexer.utils.Json;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -22,14 +29,71 @@ public class Orc20 {
         logger.setLevel(Level.WARNING);
     }
 
+    private final Storage storage;
+
+    // decoded inscription contents, an inscription is decoded once for all of its transfers
+    private final EventCache eventCache = new EventCache(EventCache.DEFAULT_CAPACITY, Orc20::readInscriptionContent);
+
     // when the block height of OIP10 is reached, create a balance snapshot
-    private boolean isOIP10BackedUp = false;
+    private boolean isOIP10BackedUp;
+    // other balance snapshots, e.g. airdrop heights, and the ones not created yet
+    private final List<Long> snapshotHeights = new ArrayList<>();
+    private final TreeSet<Long> pendingSnapshotHeights = new TreeSet<>();
+
+    public Orc20() {
+        this(new MemoryCache());
+    }
+
+    public Orc20(Storage storage) {
+        // the snapshot has been taken if stored blocks already reached OIP10
+        this(storage, !OIP.beforeOIP10(storage.committedBlockHeight()));
+    }
+
+    public Orc20(Storage storage, boolean isOIP10BackedUp) {
+        this.storage = storage;
+        this.isOIP10BackedUp = isOIP10BackedUp;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public boolean isOIP10BackedUp() {
+        return isOIP10BackedUp;
+    }
+
+    public EventCache getEventCache() {
+        return eventCache;
+    }
+
+    /**
+     * also create a balance snapshot of the state before each of `snapshotHeights`, see `Storage.dumpOrc20BalanceSnapshot`
+     * heights already applied to the storage without a snapshot are skipped.
+     */
+    public void setSnapshotHeights(Collection<Long> snapshotHeights) {
+        this.snapshotHeights.clear();
+        this.snapshotHeights.addAll(snapshotHeights);
+        pendingSnapshotHeights.clear();
+        Set<Long> created = storage.selectBalanceSnapshotHeights();
+        for (long snapshotHeight : snapshotHeights) {
+            if (created.contains(snapshotHeight)) {
+                continue;
+            }
+            if (snapshotHeight <= storage.committedBlockHeight()) {
+                logger.warning("Skip balance snapshot " + snapshotHeight + ", the block is already applied");
+                continue;
+            }
+            pendingSnapshotHeights.add(snapshotHeight);
+        }
+    }
 
     /**
      * try to decode json to BaseEvent, check the required fields
      */
     public static BaseEvent isOrc20(String content) {
-
+        if (ContentSniffer.isNotOrc20(content)) {
+            return null;
+        }
         BaseEvent baseEvent = readInscriptionContent(content, BaseEvent.class);
         if (baseEvent != null && baseEvent.isValid()) {
             return baseEvent;
@@ -48,7 +112,10 @@ public class Orc20 {
         T event = null;
         try {
             event = Json.readValue(content.toLowerCase(), cls); //  "All ORC-20 data are case-insensitive." https://docs.orc20.org/#concept-of-orc-20
-        } catch (JsonProcessingException | NumberValidator.DecimalsValidatorException ignored) {
+        } catch (JsonProcessingException ignored) {
+        }
+        if (event instanceof BaseEvent && ((BaseEvent) event).isMalformed()) {
+            return null; // an invalid number
         }
         return event;
     }
@@ -58,16 +125,11 @@ public class Orc20 {
      */
     public void accept(InscriptionTransfer inscriptionTransfer) {
 
-        long blockHeight = inscriptionTransfer.getBlockHeight();
-        if (!isOIP10BackedUp && !OIP.beforeOIP10(blockHeight)) {
-            MemoryCache.createBalanceSnapshot();
-            logger.info("oip10 balance snapshot created.");
-//            Dumper.dumpOrc20BalanceOIP10Snapshot();
-            isOIP10BackedUp = true;
-        }
+        createSnapshots(inscriptionTransfer.getBlockHeight());
+        storage.setTransferPosition(inscriptionTransfer.getBlockHeight(), inscriptionTransfer.getTxIndex());
 
         String inscriptionId = inscriptionTransfer.getInscriptionId();
-        InscriptionContent inscription = MemoryCache.selectInscriptionContentByInscriptionId(inscriptionId);
+        InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(inscriptionId);
         if (inscription == null) {
             logger.warning("Lost inscription content: " + inscriptionId);
             return;
@@ -84,13 +146,46 @@ public class Orc20 {
         }
     }
 
+    /**
+     * revert the state to the end of block `blockHeight` after a chain reorganization, see `Storage.rollbackTo`
+     * the transfers above it are applied again afterwards.
+     */
+    public void rollbackTo(long blockHeight) {
+        storage.rollbackTo(blockHeight);
+        isOIP10BackedUp = storage.selectBalanceSnapshotHeights().contains(OIP.OIP_10_BLOCK);
+        setSnapshotHeights(new ArrayList<>(snapshotHeights));
+    }
+
+    /**
+     * create the balance snapshots whose height is reached by a transfer at `blockHeight`
+     */
+    public void createSnapshots(long blockHeight) {
+        backUpOIP10(blockHeight);
+        while (!pendingSnapshotHeights.isEmpty() && pendingSnapshotHeights.first() <= blockHeight) {
+            long snapshotHeight = pendingSnapshotHeights.pollFirst();
+            storage.createBalanceSnapshot(snapshotHeight, blockHeight);
+            logger.info("balance snapshot " + snapshotHeight + " created.");
+        }
+    }
+
+    /**
+     * when the block height of OIP10 is reached, create a balance snapshot once
+     */
+    public void backUpOIP10(long blockHeight) {
+        if (!isOIP10BackedUp && !OIP.beforeOIP10(blockHeight)) {
+            storage.createBalanceSnapshot(OIP.OIP_10_BLOCK, blockHeight);
+            logger.info("oip10 balance snapshot created.");
+//            Dumper.dumpOrc20BalanceOIP10Snapshot();
+            isOIP10BackedUp = true;
+        }
+    }
+
     /**
      * inscribe an orc20 inscription
      */
     private void inscribe(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
-        String content = inscription.getContentBody();
         String inscriptionId = inscription.getInscriptionId();
-        BaseEvent baseEvent = isOrc20(content);
+        BaseEvent baseEvent = eventCache.classify(inscription);
         if (baseEvent == null || !baseEvent.isValid()) {
             logger.info("Not a valid ORC20 inscription: " + inscriptionId);
         } else {
@@ -134,9 +229,8 @@ public class Orc20 {
      * transfer an orc20 inscription
      */
     private void transfer(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
-        String content = inscription.getContentBody();
         String inscriptionId = inscription.getInscriptionId();
-        BaseEvent baseEvent = isOrc20(content);
+        BaseEvent baseEvent = eventCache.classify(inscription);
         if (baseEvent == null || !baseEvent.isValid()) {
             logger.info("Not an ORC20 inscription: " + inscriptionId);
         } else {
@@ -172,7 +266,7 @@ public class Orc20 {
      * inscribe deploy: deploy an orc20 tick
      */
     private void inscribeDeploy(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
-        DeployEvent deployEvent = readInscriptionContent(inscription.getContentBody(), DeployEvent.class);
+        DeployEvent deployEvent = eventCache.read(inscription, DeployEvent.class);
         String inscriptionId = inscription.getInscriptionId();
         if (deployEvent == null || !deployEvent.isValid()) {
             logger.info("Invalid ORC20 deploy inscription:" + inscriptionId);
@@ -200,21 +294,21 @@ public class Orc20 {
         if (!OIP.beforeOIP3(inscriptionTransfer.getBlockHeight())) {
             // after OIP-3, ignore 'id' in json, and use "deployment inscription number" as 'deployId'
             metadata.setDeployId(String.valueOf(inscription.getInscriptionNumber()));
-            MemoryCache.insertOrc20Metadata(metadata);
+            storage.insertOrc20Metadata(metadata);
             orc20Event.setEventStatus(EventStatus.SUCCESS);
         } else {
             // before OIP-3, use the 'id' field in JSON as 'deployId'
-            if (MemoryCache.selectORC20MetadataByTickAndDeployId(tick, id) != null) {
+            if (storage.selectORC20MetadataByTickAndDeployId(tick, id) != null) {
                 // redeployment with same tick+id
                 orc20Event.setEventStatus(EventStatus.FAILED);
                 orc20Event.setEventErrCode(EventErrCode.REDEPLOYMENT);
             } else {
                 metadata.setDeployId(id); // may be null
-                MemoryCache.insertOrc20Metadata(metadata);
+                storage.insertOrc20Metadata(metadata);
                 orc20Event.setEventStatus(EventStatus.SUCCESS);
             }
         }
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -222,7 +316,7 @@ public class Orc20 {
      */
     private void inscribeMint(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, Orc20Metadata orc20Metadata) {
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.INSCRIBE_MINT, OP.MINT, inscriptionTransfer, inscription, orc20Metadata);
-        MintEvent mintEvent = readInscriptionContent(inscription.getContentBody(), MintEvent.class);
+        MintEvent mintEvent = eventCache.read(inscription, MintEvent.class);
         if (!isValidEvent(mintEvent, orc20Event)) {
             return;
         }
@@ -230,8 +324,8 @@ public class Orc20 {
         if (exceedingDecimal(mintEvent.getAmt(), orc20Metadata.getDecimals(), orc20Event)) {
             return;
         }
-        BigDecimal mintAmount = mintEvent.getAmt();
-        BigDecimal lim = orc20Metadata.getLimit();
+        Amount mintAmount = mintEvent.getAmt();
+        Amount lim = orc20Metadata.getLimit();
 
         orc20Event.setAmount(mintAmount);
         Orc20Balance orc20Balance = new Orc20Balance(OP.MINT, inscriptionTransfer, inscription, orc20Metadata);
@@ -243,21 +337,19 @@ public class Orc20 {
 
             orc20Balance.setBalanceStatus(BalanceStatus.INVALID);
         } else {
-            BigDecimal minted = orc20Metadata.getMinted();
-            if (minted == null) {
-                minted = BigDecimal.ZERO;
-            }
-            minted = minted.add(mintAmount);
-            BigDecimal max = orc20Metadata.getMax();
+            Amount mintedBefore = orc20Metadata.getMinted();
+            Amount minted = (mintedBefore == null ? Amount.ZERO : mintedBefore).add(mintAmount);
+            Amount max = orc20Metadata.getMax();
             if (minted.compareTo(max) > 0) {
                 orc20Event.setEventStatus(EventStatus.FAILED);
                 orc20Event.setEventErrCode(EventErrCode.EXCEEDING_SUPPLY);
 
                 orc20Balance.setBalanceStatus(BalanceStatus.INVALID);
             } else {
-                orc20Metadata.setMinted(minted);
-                orc20Metadata.setLastMintTime(inscriptionTransfer.getBlockTime());
-                MemoryCache.insertOrc20Metadata(orc20Metadata);
+                storage.updateOrc20Metadata(orc20Metadata, metadata -> {
+                    metadata.setMinted(minted);
+                    metadata.setLastMintTime(inscriptionTransfer.getBlockTime());
+                });
 
                 orc20Balance.setBalance(mintAmount);
                 orc20Balance.setBalanceStatus(BalanceStatus.OK);
@@ -265,8 +357,8 @@ public class Orc20 {
                 orc20Event.setEventStatus(EventStatus.SUCCESS);
             }
         }
-        MemoryCache.insertOrc20Event(orc20Event);
-        MemoryCache.insertOrc20Balance(orc20Balance);
+        storage.insertOrc20Event(orc20Event);
+        storage.insertOrc20Balance(orc20Balance);
     }
 
     /**
@@ -274,7 +366,7 @@ public class Orc20 {
      */
     private void _withdraw(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, Orc20Metadata orc20Metadata) {
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.WITHDRAW, OP.SEND, inscriptionTransfer, inscription, orc20Metadata);
-        SendEvent sendEvent = readInscriptionContent(inscription.getContentBody(), SendEvent.class);
+        SendEvent sendEvent = eventCache.read(inscription, SendEvent.class);
         if (!isValidEvent(sendEvent, orc20Event)) {
             return;
         }
@@ -282,7 +374,7 @@ public class Orc20 {
         if (exceedingDecimal(sendEvent.getAmt(), orc20Metadata.getDecimals(), orc20Event)) {
             return;
         }
-        BigDecimal sendAmount = sendEvent.getAmt();
+        Amount sendAmount = sendEvent.getAmt();
         Orc20Balance withdrawBalance = new Orc20Balance(OP.SEND, inscriptionTransfer, inscription, orc20Metadata);
         if (sendAmount == null) {
             // after oip10, remaining-balance is invalid
@@ -293,27 +385,21 @@ public class Orc20 {
             String tickId = orc20Metadata.getTickId();
             String address = inscriptionTransfer.getToAddress();
             // get current credit balance
-            List<Orc20Balance> balanceList = MemoryCache.selectOrc20BalanceListByTickIdAndAddress(tickId, address);
-            Orc20Balance creditBalance = null;
-            if (balanceList != null && balanceList.size() > 0) {
-                for (Orc20Balance balance : balanceList) {
-                    if (OP._VIRTUAL_CREDIT_.equals(balance.getOp()) && BalanceStatus.OK.equals(balance.getBalanceStatus())) {
-                        creditBalance = balance;
-                        break;
-                    }
-                }
-            }
-            if (creditBalance == null) {
-                creditBalance = Orc20Balance.createCreditBalance(orc20Metadata, address);
-            }
-            if (creditBalance.getBalance().compareTo(sendAmount) >= 0) {
+            Orc20Balance creditBalance = storage.selectOrc20CreditBalanceByTickIdAndAddress(tickId, address);
+            Amount creditAmount = creditBalance == null ? Amount.ZERO : creditBalance.getBalance();
+            if (creditAmount.compareTo(sendAmount) >= 0) {
                 // withdraw successfully
                 withdrawBalance.setBalance(sendAmount);
                 withdrawBalance.setBalanceStatus(BalanceStatus.OK);
 
-                creditBalance.setBalanceStatus(BalanceStatus.OK);
-                creditBalance.setBalance(creditBalance.getBalance().subtract(sendAmount));
-                MemoryCache.insertOrc20Balance(creditBalance);
+                if (creditBalance == null) {
+                    creditBalance = Orc20Balance.createCreditBalance(orc20Metadata, address);
+                    creditBalance.setBalanceStatus(BalanceStatus.OK);
+                    creditBalance.setBalance(creditAmount.subtract(sendAmount));
+                    storage.insertOrc20Balance(creditBalance);
+                } else {
+                    storage.updateOrc20BalanceAmount(creditBalance, creditAmount.subtract(sendAmount));
+                }
 
                 orc20Event.setAmount(sendAmount);
                 orc20Event.setEventStatus(EventStatus.SUCCESS);
@@ -325,8 +411,8 @@ public class Orc20 {
                 orc20Event.setEventErrCode(EventErrCode.INSUFFICIENT_BALANCE);
             }
         }
-        MemoryCache.insertOrc20Balance(withdrawBalance);
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Balance(withdrawBalance);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -334,7 +420,7 @@ public class Orc20 {
      */
     private void _inscribeSend(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, Orc20Metadata orc20Metadata) {
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.INSCRIBE_SEND, OP.SEND, inscriptionTransfer, inscription, orc20Metadata);
-        SendEvent sendEvent = readInscriptionContent(inscription.getContentBody(), SendEvent.class);
+        SendEvent sendEvent = eventCache.read(inscription, SendEvent.class);
         if (!isValidEvent(sendEvent, orc20Event)) {
             return;
         }
@@ -343,7 +429,7 @@ public class Orc20 {
             return;
         }
 
-        BigDecimal sendAmount = sendEvent.getAmt();
+        Amount sendAmount = sendEvent.getAmt();
         orc20Event.setAmount(sendAmount);
 
         String address = inscriptionTransfer.getToAddress();
@@ -352,7 +438,7 @@ public class Orc20 {
             // "n" is required before oip10
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INVALID_INSCRIPTION);
-            MemoryCache.insertOrc20Event(orc20Event);
+            storage.insertOrc20Event(orc20Event);
             return;
         }
         orc20Event.setNonce(nonce);
@@ -365,46 +451,37 @@ public class Orc20 {
         Orc20Balance orc20Balance = new Orc20Balance(op, inscriptionTransfer, inscription, orc20Metadata);
         orc20Balance.setCreator(address);
         String tickId = orc20Metadata.getTickId();
-        List<Orc20Balance> currentBalanceList = MemoryCache.selectOrc20BalanceListByTickIdAndAddress(tickId, address);
-        List<Orc20Balance> currentOkBalanceList = currentBalanceList.stream().filter(b -> b.getBalanceStatus().equals(BalanceStatus.OK)).collect(Collectors.toList());
-        List<Orc20Balance> currentPendingBalanceList = MemoryCache.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, address);
-        BigDecimal totalBalance = BigDecimal.ZERO;
-        BigDecimal sendingBalance = BigDecimal.ZERO;
-        for (Orc20Balance b : currentOkBalanceList) {
-            totalBalance = totalBalance.add(b.getBalance());
-        }
-        for (Orc20Balance b : currentPendingBalanceList) {
-            long pendingNonce = b.getNonce();
-            if (nonce == pendingNonce) {
-                // duplicated "n"
-                orc20Event.setNonce(nonce);
-                orc20Event.setEventStatus(EventStatus.FAILED);
-                orc20Event.setEventErrCode(EventErrCode.DUPLICATED_NONCE);
-                MemoryCache.insertOrc20Event(orc20Event);
+        Orc20BalanceAggregate aggregate = storage.selectOrc20BalanceAggregateByTickIdAndAddress(tickId, address);
+        if (aggregate.getPendingNonces().containsKey(nonce)) {
+            // duplicated "n"
+            orc20Event.setNonce(nonce);
+            orc20Event.setEventStatus(EventStatus.FAILED);
+            orc20Event.setEventErrCode(EventErrCode.DUPLICATED_NONCE);
+            storage.insertOrc20Event(orc20Event);
 
-                orc20Balance.setNonce(nonce);
-                orc20Balance.setBalanceStatus(BalanceStatus.INVALID);
-                MemoryCache.insertOrc20Balance(orc20Balance);
-                return;
-            } else {
-                sendingBalance = sendingBalance.add(b.getBalance());
-            }
+            orc20Balance.setNonce(nonce);
+            orc20Balance.setBalanceStatus(BalanceStatus.INVALID);
+            storage.insertOrc20Balance(orc20Balance);
+            return;
         }
+        Amount totalBalance = aggregate.getOkBalance().value();
+        Amount sendingBalance = aggregate.getPendingBalance().value();
 
         if (sendAmount == null) {
             // remaining balance
             orc20Event.setOp(OP.REMAINING_BALANCE);
             orc20Event.setEventType(EventType.INSCRIBE_REMAINING_BALANCE);
-            if (currentPendingBalanceList.size() > 0) {
-                BigDecimal remainingBalance = totalBalance.subtract(sendingBalance);
-                if (remainingBalance.compareTo(BigDecimal.ZERO) < 0) {
+            if (aggregate.getPendingBalance().count() > 0) {
+                Amount remainingBalance = totalBalance.subtract(sendingBalance);
+                List<Orc20Balance> currentPendingBalanceList = storage.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, address);
+                if (remainingBalance.signum() < 0) {
                     // insufficient balance, all the pending "inscribe send" balances are marked invalid
                     currentPendingBalanceList.forEach(
                             b -> {
-                                b.setBalanceStatus(BalanceStatus.INVALID); // update balance status
+                                storage.updateOrc20BalanceStatus(b, BalanceStatus.INVALID); // update balance status
                             }
                     );
-                    MemoryCache.updateOrc20EventStatusByTickIdAndCreator(tickId, address, EventStatus.SEND_PENDING, EventStatus.FAILED); // failed all the pending "inscribe-send" events
+                    storage.updateOrc20EventStatusByTickIdAndCreator(tickId, address, EventStatus.SEND_PENDING, EventStatus.FAILED); // failed all the pending "inscribe-send" events
                     orc20Event.setEventStatus(EventStatus.FAILED);
                     orc20Event.setEventErrCode(EventErrCode.INSUFFICIENT_BALANCE);
 
@@ -412,22 +489,23 @@ public class Orc20 {
                 } else {
                     // success
                     // 1. The inscriptions which maintain the sender's balance are invalidated.
-                    currentOkBalanceList.forEach(
+                    List<Orc20Balance> currentBalanceList = storage.selectOrc20BalanceListByTickIdAndAddress(tickId, address);
+                    currentBalanceList.stream().filter(b -> b.getBalanceStatus().equals(BalanceStatus.OK)).collect(Collectors.toList()).forEach(
                             b -> {
-                                b.setBalanceStatus(BalanceStatus.EXPIRED); // update balance status
+                                storage.updateOrc20BalanceStatus(b, BalanceStatus.EXPIRED); // update balance status
                             }
                     );
                     // 2. After the completion of a transaction, "inscribe send" inscriptions in all partial transactions maintain new balance
                     currentPendingBalanceList.forEach(
                             b -> {
-                                b.setBalanceStatus(BalanceStatus.OK); // update balance status
+                                storage.updateOrc20BalanceStatus(b, BalanceStatus.OK); // update balance status
                             }
                     );
                     // 3. The "remaining balance" inscription maintains the remaining balance
                     orc20Balance.setBalanceStatus(BalanceStatus.OK);
                     orc20Balance.setBalance(remainingBalance);
                     // 4. updates the status of the "inscribe send" event to success
-                    MemoryCache.updateOrc20EventStatusByTickIdAndCreator(tickId, address, EventStatus.SEND_PENDING, EventStatus.SUCCESS);
+                    storage.updateOrc20EventStatusByTickIdAndCreator(tickId, address, EventStatus.SEND_PENDING, EventStatus.SUCCESS);
                     // 5. "remaining balance" event
                     orc20Event.setEventStatus(EventStatus.SUCCESS);
                 }
@@ -446,8 +524,8 @@ public class Orc20 {
             orc20Event.setAmount(sendAmount);
             orc20Event.setEventStatus(EventStatus.SEND_PENDING); // wait for "remaining balance"
         }
-        MemoryCache.insertOrc20Balance(orc20Balance);
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Balance(orc20Balance);
+        storage.insertOrc20Event(orc20Event);
 
     }
 
@@ -467,7 +545,7 @@ public class Orc20 {
      * 'inscribe cancel': cancel partial transactions before the final step of the send operation.
      */
     private void inscribeCancel(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, Orc20Metadata orc20Metadata) {
-        CancelEvent cancelEvent = readInscriptionContent(inscription.getContentBody(), CancelEvent.class);
+        CancelEvent cancelEvent = eventCache.read(inscription, CancelEvent.class);
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.INSCRIBE_CANCEL, OP.CANCEL, inscriptionTransfer, inscription, orc20Metadata);
         if (!isValidEvent(cancelEvent, orc20Event)) {
             return;
@@ -479,8 +557,8 @@ public class Orc20 {
             if (nonceList.size() > 0) {
                 String tickId = orc20Metadata.getTickId();
                 for (long nonce : nonceList) {
-                    MemoryCache.updateOrc20BalanceStatusByTickIdAndCreatorAndNonce(tickId, address, nonce, BalanceStatus.CANCELED);
-                    MemoryCache.updateOrc20EventStatusByTickIdAndCreatorAndNonce(tickId, address, nonce, EventStatus.CANCELED);
+                    storage.updateOrc20BalanceStatusByTickIdAndCreatorAndNonce(tickId, address, nonce, BalanceStatus.CANCELED);
+                    storage.updateOrc20EventStatusByTickIdAndCreatorAndNonce(tickId, address, nonce, EventStatus.CANCELED);
                 }
             }
             orc20Event.setEventStatus(EventStatus.SUCCESS);
@@ -488,14 +566,14 @@ public class Orc20 {
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INVALID_INSCRIPTION);
         }
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
      * 'inscribe-upgrade': step 1 of upgrade
      */
     private void inscribeUpgrade(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, Orc20Metadata orc20Metadata) {
-        UpgradeEvent upgradeEvent = readInscriptionContent(inscription.getContentBody(), UpgradeEvent.class);
+        UpgradeEvent upgradeEvent = eventCache.read(inscription, UpgradeEvent.class);
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.INSCRIBE_UPGRADE, OP.UPGRADE, inscriptionTransfer, inscription, orc20Metadata);
         if (!isValidEvent(upgradeEvent, orc20Event)) {
             return;
@@ -503,11 +581,11 @@ public class Orc20 {
 
         // validate dec
         int dec = upgradeEvent.getDec() == null ? orc20Metadata.getDecimals() : upgradeEvent.getDec();
-        BigDecimal max = upgradeEvent.getMax() == null ? orc20Metadata.getMax() : upgradeEvent.getMax();
+        Amount max = upgradeEvent.getMax() == null ? orc20Metadata.getMax() : upgradeEvent.getMax();
         if (exceedingDecimal(max, dec, orc20Event)) {
             return;
         }
-        BigDecimal lim = upgradeEvent.getLim() == null ? orc20Metadata.getLimit() : upgradeEvent.getLim();
+        Amount lim = upgradeEvent.getLim() == null ? orc20Metadata.getLimit() : upgradeEvent.getLim();
         if (exceedingDecimal(lim, dec, orc20Event)) {
             return;
         }
@@ -527,7 +605,7 @@ public class Orc20 {
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.NON_UPGRADEABLE);
         }
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -535,7 +613,7 @@ public class Orc20 {
      */
     private void transferDeploy(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription, String tick) {
         long inscriptionNumber = inscription.getInscriptionNumber(); // deployment inscription number
-        Orc20Metadata orc20Metadata = MemoryCache.selectORC20MetadataByTickAndInscriptionNumber(tick, inscriptionNumber);
+        Orc20Metadata orc20Metadata = storage.selectORC20MetadataByTickAndInscriptionNumber(tick, inscriptionNumber);
         if (orc20Metadata == null) {
             logger.info("Undeployed tick: " + inscriptionNumber);
             return;
@@ -544,11 +622,11 @@ public class Orc20 {
         String tickId = orc20Metadata.getTickId();
         String newDeployer = inscriptionTransfer.getToAddress();
         String oldDeployer = orc20Metadata.getDeployer();
-        orc20Metadata.setDeployer(newDeployer); // change the deployer
-        MemoryCache.updateOrc20EventStatusByTickIdAndToAddress(tickId, newDeployer, EventStatus.UPGRADE_BLOCKED, EventStatus.UPGRADE_WAITING, null);
-        MemoryCache.updateOrc20EventStatusByTickIdAndToAddress(tickId, oldDeployer, EventStatus.UPGRADE_WAITING, EventStatus.UPGRADE_BLOCKED, null);
+        storage.updateOrc20Metadata(orc20Metadata, metadata -> metadata.setDeployer(newDeployer)); // change the deployer
+        storage.updateOrc20EventStatusByTickIdAndToAddress(tickId, newDeployer, EventStatus.UPGRADE_BLOCKED, EventStatus.UPGRADE_WAITING, null);
+        storage.updateOrc20EventStatusByTickIdAndToAddress(tickId, oldDeployer, EventStatus.UPGRADE_WAITING, EventStatus.UPGRADE_BLOCKED, null);
         orc20Event.setEventStatus(EventStatus.SUCCESS);
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -556,13 +634,13 @@ public class Orc20 {
      */
     private void _transferMint(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
         String inscriptionId = inscription.getInscriptionId();
-        Orc20Balance balance = MemoryCache.selectOrc20BalanceByInscriptionId(inscriptionId);
+        Orc20Balance balance = storage.selectOrc20BalanceByInscriptionId(inscriptionId);
         if (balance == null) {
             logger.info("Inscription that does not maintain balance:" + inscriptionId);
             return;
         }
         String tickId = balance.getTickId();
-        Orc20Metadata orc20Metadata = MemoryCache.selectORC20MetadataByTickId(tickId);
+        Orc20Metadata orc20Metadata = storage.selectORC20MetadataByTickId(tickId);
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.TRANSFER_MINT, OP.MINT, inscriptionTransfer, inscription, orc20Metadata);
         String receiver = inscriptionTransfer.getToAddress();
         String sender = inscriptionTransfer.getFromAddress();
@@ -573,8 +651,8 @@ public class Orc20 {
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INEFFECTIVE_INSCRIPTION);
         }
-        MemoryCache.insertOrc20Event(orc20Event);
-        MemoryCache.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver);
+        storage.insertOrc20Event(orc20Event);
+        storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver);
     }
 
     /**
@@ -582,13 +660,13 @@ public class Orc20 {
      */
     private void _deposit(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
         String inscriptionId = inscription.getInscriptionId();
-        Orc20Balance balance = MemoryCache.selectOrc20BalanceByInscriptionId(inscriptionId);
+        Orc20Balance balance = storage.selectOrc20BalanceByInscriptionId(inscriptionId);
         if (balance == null) {
             logger.info("Transferred an inscription that does not maintain balance:" + inscriptionId);
             return;
         }
         String tickId = balance.getTickId();
-        Orc20Metadata orc20Metadata = MemoryCache.selectORC20MetadataByTickId(tickId);
+        Orc20Metadata orc20Metadata = storage.selectORC20MetadataByTickId(tickId);
         OP op = balance.getOp();
         Orc20Event orc20Event = new Orc20Event(getEventId(inscriptionTransfer), EventType.DEPOSIT, op, inscriptionTransfer, inscription, orc20Metadata);
         String sender = inscriptionTransfer.getFromAddress();
@@ -599,33 +677,26 @@ public class Orc20 {
                 orc20Event.setEventStatus(EventStatus.FAILED);
                 orc20Event.setEventErrCode(EventErrCode.INEFFECTIVE_INSCRIPTION);
             } else {
-                BigDecimal depositAmount = balance.getBalance();
+                Amount depositAmount = balance.getBalance();
                 orc20Event.setAmount(depositAmount);
                 orc20Event.setEventStatus(EventStatus.SUCCESS);
 
-                balance.setBalanceStatus(BalanceStatus.EXPIRED); // marks the inscription invalid
-                List<Orc20Balance> currentBalanceList = MemoryCache.selectOrc20BalanceListByTickIdAndAddress(tickId, sender);
-                Orc20Balance creditBalance = null;
-                if (currentBalanceList != null && currentBalanceList.size() > 0) {
-                    for (Orc20Balance currentBalance : currentBalanceList) {
-                        if (OP._VIRTUAL_CREDIT_.equals(currentBalance.getOp()) && BalanceStatus.OK.equals(currentBalance.getBalanceStatus())) {
-                            creditBalance = currentBalance;
-                            break;
-                        }
-                    }
-                }
+                storage.updateOrc20BalanceStatus(balance, BalanceStatus.EXPIRED); // marks the inscription invalid
+                Orc20Balance creditBalance = storage.selectOrc20CreditBalanceByTickIdAndAddress(tickId, sender);
                 if (creditBalance == null) {
                     creditBalance = Orc20Balance.createCreditBalance(orc20Metadata, sender);
                     creditBalance.setBalanceStatus(BalanceStatus.OK);
+                    creditBalance.setBalance(creditBalance.getBalance().add(depositAmount));
+                    storage.insertOrc20Balance(creditBalance); // new credit balance
+                } else {
+                    storage.updateOrc20BalanceAmount(creditBalance, creditBalance.getBalance().add(depositAmount)); // update credit balance
                 }
-                creditBalance.setBalance(creditBalance.getBalance().add(depositAmount));
-                MemoryCache.insertOrc20Balance(creditBalance); // update credit balance
             }
         } else {
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INEFFECTIVE_INSCRIPTION);
         }
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -646,13 +717,13 @@ public class Orc20 {
      */
     private void _transferSend(InscriptionTransfer inscriptionTransfer, InscriptionContent inscription) {
         String inscriptionId = inscription.getInscriptionId();
-        Orc20Balance balance = MemoryCache.selectOrc20BalanceByInscriptionId(inscriptionId);
+        Orc20Balance balance = storage.selectOrc20BalanceByInscriptionId(inscriptionId);
         if (balance == null) {
             logger.info("Transferred an inscription that does not maintain balance:" + inscriptionId);
             return;
         }
         String tickId = balance.getTickId();
-        Orc20Metadata orc20Metadata = MemoryCache.selectORC20MetadataByTickId(tickId);
+        Orc20Metadata orc20Metadata = storage.selectORC20MetadataByTickId(tickId);
         OP op = balance.getOp();
         String eventId = getEventId(inscriptionTransfer);
         Orc20Event orc20Event = new Orc20Event(eventId, EventType.TRANSFER_SEND, op, inscriptionTransfer, inscription, orc20Metadata);
@@ -663,16 +734,16 @@ public class Orc20 {
             // Before OIP10, both 'inscribe-send' and 'inscribe-remaining-balance' inscriptions were transferable.
             // After OIP10, only 'inscribe-send' inscription can be transferred.
             if (OIP.beforeOIP10(blockHeight) || OP.SEND.equals(op)) {
-                BigDecimal sendAmount = balance.getBalance();
+                Amount sendAmount = balance.getBalance();
                 orc20Event.setAmount(sendAmount);
                 orc20Event.setEventStatus(EventStatus.SUCCESS);
-                MemoryCache.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
+                storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
             } else {
                 // after oip10 and op = 'remaining-balance'
                 orc20Event.setEventStatus(EventStatus.FAILED);
                 if (OP.REMAINING_BALANCE.equals(op)) {
                     orc20Event.setEventErrCode(EventErrCode.REMAINING_BALANCE_LOCKED);
-                    balance.setOp(OP.SHADOW_REMAINING_BALANCE); // use a special op to lock the "remaining balance"
+                    storage.updateOrc20BalanceOp(balance, OP.SHADOW_REMAINING_BALANCE); // use a special op to lock the "remaining balance"
                 } else {
                     // SHADOW_REMAINING_BALANCE
                     orc20Event.setEventErrCode(EventErrCode.INEFFECTIVE_INSCRIPTION);
@@ -680,19 +751,19 @@ public class Orc20 {
             }
         } else if (BalanceStatus.SEND_PENDING.equals(balance.getBalanceStatus())) {
             // transfer an "inscribe-send" before remaining-balance
-            BigDecimal sendAmount = balance.getBalance();
+            Amount sendAmount = balance.getBalance();
             orc20Event.setAmount(sendAmount);
             orc20Event.setEventStatus(EventStatus.SEND_PENDING);
             orc20Event.setCreator(balance.getCreator());
             orc20Event.setNonce(balance.getNonce());
-            MemoryCache.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
+            storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
         } else {
             // FAILED
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INEFFECTIVE_INSCRIPTION);
-            MemoryCache.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
+            storage.updateOrc20BalanceAddressByTickIdAndInscriptionId(tickId, inscriptionId, sender, receiver); // change balance holder
         }
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
@@ -715,8 +786,7 @@ public class Orc20 {
         String inscriptionId = inscription.getInscriptionId();
         String sender = inscriptionTransfer.getFromAddress();
         String receiver = inscriptionTransfer.getToAddress();
-        String inscriptionContent = inscription.getContentBody();
-        UpgradeEvent upgradeEvent = readInscriptionContent(inscriptionContent, UpgradeEvent.class);
+        UpgradeEvent upgradeEvent = eventCache.read(inscription, UpgradeEvent.class);
         if (upgradeEvent == null || !upgradeEvent.isValid()) {
             logger.info("invalid upgrade inscription:" + inscriptionId);
             return;
@@ -732,7 +802,7 @@ public class Orc20 {
         String eventId = getEventId(inscriptionTransfer);
         Orc20Event orc20Event = new Orc20Event(eventId, EventType.TRANSFER_UPGRADE, OP.UPGRADE, inscriptionTransfer, inscription, orc20Metadata);
         String tickId = orc20Metadata.getTickId();
-        List<Orc20Event> processedEvents = MemoryCache.selectOrc20EventByInscriptionIdAndEventType(inscriptionId, orc20Event.getEventType());
+        List<Orc20Event> processedEvents = storage.selectOrc20EventByInscriptionIdAndEventType(inscriptionId, orc20Event.getEventType());
         if (processedEvents != null && processedEvents.size() > 0) {
             // has upgraded before
             orc20Event.setEventStatus(EventStatus.FAILED);
@@ -743,20 +813,22 @@ public class Orc20 {
                 if (sender.equals(deployer)) {
                     boolean upgradeable = orc20Metadata.isUpgradeable();
                     if (upgradeable) {
-                        if (upgradeEvent.getUg() != null) {
-                            orc20Metadata.setUpgradeable(upgradeEvent.getUg());
-                        }
-                        if (upgradeEvent.getMax() != null) {
-                            orc20Metadata.setMax(upgradeEvent.getMax());
-                        }
-                        if (upgradeEvent.getLim() != null) {
-                            orc20Metadata.setLimit(upgradeEvent.getLim());
-                        }
-                        if (upgradeEvent.getDec() != null) {
-                            orc20Metadata.setDecimals(upgradeEvent.getDec());
-                        }
-                        orc20Metadata.setUpgradeTime(inscriptionTransfer.getBlockTime());
-                        orc20Metadata.setContent(inscriptionContent);
+                        storage.updateOrc20Metadata(orc20Metadata, metadata -> {
+                            if (upgradeEvent.getUg() != null) {
+                                metadata.setUpgradeable(upgradeEvent.getUg());
+                            }
+                            if (upgradeEvent.getMax() != null) {
+                                metadata.setMax(upgradeEvent.getMax());
+                            }
+                            if (upgradeEvent.getLim() != null) {
+                                metadata.setLimit(upgradeEvent.getLim());
+                            }
+                            if (upgradeEvent.getDec() != null) {
+                                metadata.setDecimals(upgradeEvent.getDec());
+                            }
+                            metadata.setUpgradeTime(inscriptionTransfer.getBlockTime());
+                            metadata.setContent(inscription.getContentBody());
+                        });
                         orc20Event.setEventStatus(EventStatus.SUCCESS);
                     } else {
                         orc20Event.setEventStatus(EventStatus.FAILED);
@@ -773,17 +845,17 @@ public class Orc20 {
         }
         EventStatus upgradeStatus = orc20Event.getEventStatus();
         EventErrCode upgradeErrCode = orc20Event.getEventErrCode();
-        MemoryCache.updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(tickId, inscriptionId, sender, EventStatus.UPGRADE_BLOCKED, upgradeStatus, upgradeErrCode);
-        MemoryCache.updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(tickId, inscriptionId, sender, EventStatus.UPGRADE_WAITING, upgradeStatus, upgradeErrCode);
+        storage.updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(tickId, inscriptionId, sender, EventStatus.UPGRADE_BLOCKED, upgradeStatus, upgradeErrCode);
+        storage.updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(tickId, inscriptionId, sender, EventStatus.UPGRADE_WAITING, upgradeStatus, upgradeErrCode);
 
-        MemoryCache.insertOrc20Event(orc20Event);
+        storage.insertOrc20Event(orc20Event);
     }
 
     /**
      * check if the event processed
      */
     private boolean eventProcessed(String eventId) {
-        return MemoryCache.selectOrc20EventByEventId(eventId) != null;
+        return storage.selectOrc20EventByEventId(eventId) != null;
     }
 
     /**
@@ -792,14 +864,14 @@ public class Orc20 {
     private Orc20Metadata getMetadata(String tick, String id, long blockHeight) {
         Orc20Metadata metadata = null;
         if (OIP.beforeOIP3(blockHeight)) {
-            metadata = MemoryCache.selectORC20MetadataByTickAndDeployId(tick, id);
+            metadata = storage.selectORC20MetadataByTickAndDeployId(tick, id);
         } else {
             // after oip3, "id" in json means the deployment inscription number
             try {
                 // should be a valid number
                 Long inscriptionNumber = NumberValidator.longFromString(id);
                 if (inscriptionNumber != null) {
-                    metadata = MemoryCache.selectORC20MetadataByTickAndInscriptionNumber(tick, inscriptionNumber);
+                    metadata = storage.selectORC20MetadataByTickAndInscriptionNumber(tick, inscriptionNumber);
                 }
             } catch (NumberValidator.DecimalsValidatorException e) {
                 // invalid inscription number
@@ -815,7 +887,7 @@ public class Orc20 {
         if (baseEvent == null || !baseEvent.isValid()) {
             orc20Event.setEventStatus(EventStatus.FAILED);
             orc20Event.setEventErrCode(EventErrCode.INVALID_INSCRIPTION);
-            MemoryCache.insertOrc20Event(orc20Event);
+            storage.insertOrc20Event(orc20Event);
             return false;
         }
         return true;
@@ -834,12 +906,12 @@ public class Orc20 {
      * https://docs.orc20.org/operations#deploy-or-migrate-event
      * "Decimal: decimal precision must be <=18, default to 18"
      */
-    private boolean exceedingDecimal(BigDecimal bigDecimal, int dec, Orc20Event orc20Event) {
-        if (bigDecimal != null && bigDecimal.scale() > dec) {
+    private boolean exceedingDecimal(Amount amount, int dec, Orc20Event orc20Event) {
+        if (amount != null && amount.scale() > dec) {
             if (orc20Event != null) { // "inscribe deploy" has no tick metadata
                 orc20Event.setEventStatus(EventStatus.FAILED);
                 orc20Event.setEventErrCode(EventErrCode.INVALID_INSCRIPTION);
-                MemoryCache.insertOrc20Event(orc20Event);
+                storage.insertOrc20Event(orc20Event);
             }
             return true;
         }
@@ -0,0 +1,244 @@
+package com.geniidata.ordinals.orc20.indexer;
+
+import com.geniidata.ordinals.orc20.indexer.contants.OIP;
+import com.geniidata.ordinals.orc20.indexer.data.EventCache;
+import com.geniidata.ordinals.orc20.indexer.data.events.BaseEvent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * applies transfers on `n` shards in parallel, a shard owns the ticks whose name hashes to it.
+ * <p>
+ * all state of a tick (metadata, balances, events) is keyed by its tickId, and tick resolution (`getMetadata`)
+ * only reads the ticks with the same name, so ticks of different names commute. every transfer of an inscription
+ * goes to the shard of the tick in its content, and each shard applies its transfers in chain order.
+ * <p>
+ * the shared steps are done here, in chain order:
+ * a balance snapshot (OIP10 and the configured heights) is created by every shard before the first transfer at its height,
+ * and a transfer to a location that an earlier transfer of the same tx on another shard already created an event for is skipped.
+ * <p>
+ * `finish` merges the shards into the main storage.
+ */
+public class TickShards implements Consumer<InscriptionTransfer>, AutoCloseable {
+    private final static int BATCH_SIZE = 256;
+    private final static int QUEUE_CAPACITY = 64;
+    // marks the end of the commands
+    private final static List<Runnable> END = new ArrayList<>();
+
+    private final MemoryCache storage;
+    private final EventCache eventCache;
+    private final Shard[] shards;
+    // heights of the balance snapshots not created yet
+    private final TreeSet<Long> pendingSnapshotHeights = new TreeSet<>();
+    // shards of the locations of the current tx, eventId is the location
+    private String txId;
+    private final Map<String, Set<Integer>> txLocations = new HashMap<>();
+    private volatile Throwable failure;
+
+    /**
+     * @param storage    main storage, provides the inscription contents and receives the merged shards
+     * @param eventCache classifies the contents for routing, may be filled ahead by a {@link com.geniidata.ordinals.orc20.indexer.data.ParsePipeline}
+     * @param snapshotHeights extra balance snapshots, see `Orc20.setSnapshotHeights`
+     */
+    public TickShards(MemoryCache storage, EventCache eventCache, int n, Collection<Long> snapshotHeights) {
+        this.storage = storage;
+        this.eventCache = eventCache;
+        boolean isOIP10BackedUp = !OIP.beforeOIP10(storage.committedBlockHeight());
+        if (!isOIP10BackedUp) {
+            pendingSnapshotHeights.add(OIP.OIP_10_BLOCK);
+        }
+        pendingSnapshotHeights.addAll(snapshotHeights);
+        this.shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            MemoryCache shardStorage = new MemoryCache(storage::selectInscriptionContentByInscriptionId, storage.getSymbols(), storage.isOffHeapBalances());
+            shardStorage.setBalanceHistory(storage.isBalanceHistory());
+            shards[i] = new Shard(i, shardStorage, isOIP10BackedUp, snapshotHeights);
+        }
+    }
+
+    @Override
+    public void accept(InscriptionTransfer transfer) {
+        checkFailure();
+        long blockHeight = transfer.getBlockHeight();
+        if (!pendingSnapshotHeights.isEmpty() && pendingSnapshotHeights.first() <= blockHeight) {
+            for (Shard shard : shards) {
+                shard.submit(() -> shard.orc20.createSnapshots(blockHeight));
+            }
+            pendingSnapshotHeights.headSet(blockHeight, true).clear();
+        }
+
+        InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(transfer.getInscriptionId());
+        if (inscription == null) {
+            shards[0].submit(() -> shards[0].orc20.accept(transfer)); // logs the lost content
+            return;
+        }
+        EventCache.Entry entry = eventCache.entry(inscription);
+        BaseEvent baseEvent = entry.getBaseEvent();
+        if (baseEvent == null) {
+            return; // not ORC20, no state changes
+        }
+        int index = Math.floorMod(baseEvent.getTick().hashCode(), shards.length);
+        if (!txLocation(transfer, index)) {
+            return;
+        }
+        Shard shard = shards[index];
+        shard.submit(() -> {
+            shard.orc20.getEventCache().put(transfer.getInscriptionId(), entry);
+            shard.orc20.accept(transfer);
+        });
+    }
+
+    /**
+     * apply the remaining transfers and merge the shards into the main storage
+     *
+     * @return the merged storage
+     */
+    public MemoryCache finish() {
+        for (Shard shard : shards) {
+            shard.flush();
+            shard.put(END);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        checkFailure();
+        for (Shard shard : shards) {
+            storage.merge(shard.storage);
+        }
+        return storage;
+    }
+
+    /**
+     * stop the shards, transfers that are not applied yet are dropped
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    /**
+     * record the location of a transfer routed to shard `index`
+     *
+     * @return false if an event was already created at the location on another shard, the transfer is then skipped like `Orc20.accept` does
+     */
+    private boolean txLocation(InscriptionTransfer transfer, int index) {
+        if (!Objects.equals(txId, transfer.getTxId())) {
+            txId = transfer.getTxId();
+            txLocations.clear();
+        }
+        String location = transfer.getToLocation();
+        Set<Integer> locationShards = txLocations.computeIfAbsent(location, k -> new HashSet<>());
+        for (int other : locationShards) {
+            if (other != index && shards[other].eventExists(location)) {
+                return false;
+            }
+        }
+        locationShards.add(index);
+        return true;
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new RuntimeException("Shard failed", failure);
+        }
+    }
+
+    private class Shard {
+        private final MemoryCache storage;
+        private final Orc20 orc20;
+        private final BlockingQueue<List<Runnable>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Thread thread;
+        private List<Runnable> batch = new ArrayList<>(BATCH_SIZE);
+
+        Shard(int index, MemoryCache storage, boolean isOIP10BackedUp, Collection<Long> snapshotHeights) {
+            this.storage = storage;
+            this.orc20 = new Orc20(storage, isOIP10BackedUp);
+            this.orc20.setSnapshotHeights(snapshotHeights);
+            this.thread = new Thread(this::run, "orc20-shard-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        void submit(Runnable command) {
+            batch.add(command);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        void put(List<Runnable> commands) {
+            try {
+                queue.put(commands);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * whether an event exists at `eventId` after the commands submitted so far
+         */
+        boolean eventExists(String eventId) {
+            CompletableFuture<Boolean> exists = new CompletableFuture<>();
+            submit(() -> exists.complete(storage.selectOrc20EventByEventId(eventId) != null));
+            flush();
+            while (true) {
+                try {
+                    return exists.get(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                } catch (TimeoutException e) {
+                    checkFailure(); // a failed shard does not answer
+                }
+            }
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    List<Runnable> commands = queue.take();
+                    if (commands == END) {
+                        return;
+                    }
+                    if (failure == null) {
+                        // after a failure, only drain the queue to unblock the router
+                        try {
+                            commands.forEach(Runnable::run);
+                        } catch (Throwable e) {
+                            failure = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * decodes the lines of a JSONL input file on a pool of threads, and hands the values to the consumer in file order.
+ * <p>
+ * plain files are memory-mapped and split into chunks of about `CHUNK_SIZE` bytes ending at a newline,
+ * each chunk is decoded by a worker into its own list. compressed files (see {@link InputFiles}) can not be split,
+ * their lines are read in batches on the calling thread and decoded by the workers.
+ * at most `CHUNKS_AHEAD_PER_THREAD` chunks per thread are decoded ahead of the consumer.
+ * the lines are the lines of `BufferedReader.readLine`, decoded with `Json.readValue`, so the values are the same as reading the file line by line.
+ */
+public class ChunkedJsonReader {
+    private final static int CHUNK_SIZE = 8 << 20;
+    private final static int CHUNKS_AHEAD_PER_THREAD = 2;
+    private final static int NEWLINE_SEARCH_SIZE = 1 << 16;
+
+    /**
+     * decode each line of `filePath` as `cls`
+     *
+     * @param threads  decoding threads, 0 reads and decodes on the calling thread
+     * @param consumer receives the values in file order, on the calling thread
+     */
+    public static <T> void forEach(String filePath, Class<T> cls, int threads, Consumer<T> consumer) {
+        forEach(filePath, cls, threads, CHUNK_SIZE, consumer);
+    }
+
+    /**
+     * @param chunkSize bytes (chars of a compressed file) of a chunk before its last line
+     */
+    static <T> void forEach(String filePath, Class<T> cls, int threads, int chunkSize, Consumer<T> consumer) {
+        try {
+            if (threads <= 0) {
+                try (BufferedReader bufferedReader = InputFiles.newBufferedReader(filePath)) {
+                    String line;
+                    while ((line = bufferedReader.readLine()) != null) {
+                        consumer.accept(Json.readValue(line, cls));
+                    }
+                }
+                return;
+            }
+            ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "orc20-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                if (InputFiles.isCompressed(filePath)) {
+                    try (BufferedReader bufferedReader = InputFiles.newBufferedReader(filePath)) {
+                        forEachChunk(workers, threads, () -> nextBatch(bufferedReader, chunkSize, cls), consumer);
+                    }
+                } else {
+                    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+                        long size = channel.size();
+                        long[] position = {0};
+                        forEachChunk(workers, threads, () -> {
+                            if (position[0] >= size) {
+                                return null;
+                            }
+                            long begin = position[0];
+                            long end = chunkEnd(channel, begin, chunkSize, size);
+                            position[0] = end;
+                            return () -> decodeChunk(channel, begin, end, cls);
+                        }, consumer);
+                    }
+                }
+            } finally {
+                workers.shutdownNow();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * submit the chunks of `chunks` in order, up to `CHUNKS_AHEAD_PER_THREAD` per thread ahead, and consume their values in order
+     */
+    private static <T> void forEachChunk(ExecutorService workers, int threads, ChunkSource<T> chunks, Consumer<T> consumer) throws IOException {
+        ArrayDeque<Future<List<T>>> pending = new ArrayDeque<>();
+        int ahead = threads * CHUNKS_AHEAD_PER_THREAD;
+        boolean ended = false;
+        while (true) {
+            while (!ended && pending.size() < ahead) {
+                Callable<List<T>> chunk = chunks.next();
+                if (chunk == null) {
+                    ended = true;
+                } else {
+                    pending.add(workers.submit(chunk));
+                }
+            }
+            Future<List<T>> next = pending.poll();
+            if (next == null) {
+                return;
+            }
+            List<T> values;
+            try {
+                values = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+            for (T value : values) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    /**
+     * the end of the chunk starting at `begin`: after the first newline from `chunkSize` bytes on, or the end of the file
+     */
+    private static long chunkEnd(FileChannel channel, long begin, int chunkSize, long size) throws IOException {
+        long position = begin + chunkSize - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(NEWLINE_SEARCH_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * decode the lines of the file in [begin, end), which ends at a newline or the end of the file
+     */
+    private static <T> List<T> decodeChunk(FileChannel channel, long begin, long end, Class<T> cls) throws IOException {
+        if (end - begin > Integer.MAX_VALUE) {
+            throw new IOException("Line too long at " + begin);
+        }
+        // reports malformed input like `Files.newBufferedReader`
+        CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(channel.map(FileChannel.MapMode.READ_ONLY, begin, end - begin));
+        String text = chars.toString();
+        List<T> values = new ArrayList<>();
+        int lineBegin = 0;
+        int length = text.length();
+        // line terminators of `BufferedReader.readLine`: "\n", "\r" or "\r\n"
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                values.add(Json.readValue(text.substring(lineBegin, i), cls));
+                if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lineBegin = i + 1;
+            }
+        }
+        if (lineBegin < length) {
+            values.add(Json.readValue(text.substring(lineBegin), cls));
+        }
+        return values;
+    }
+
+    /**
+     * read up to `chunkSize` chars of lines, the returned task decodes them. null at the end of the file
+     */
+    private static <T> Callable<List<T>> nextBatch(BufferedReader bufferedReader, int chunkSize, Class<T> cls) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long chars = 0;
+        String line;
+        while (chars < chunkSize && (line = bufferedReader.readLine()) != null) {
+            lines.add(line);
+            chars += line.length() + 1;
+        }
+        if (lines.isEmpty()) {
+            return null;
+        }
+        return () -> {
+            List<T> values = new ArrayList<>(lines.size());
+            for (String l : lines) {
+                values.add(Json.readValue(l, cls));
+            }
+            return values;
+        };
+    }
+
+    /**
+     * supplies the decoding tasks of the chunks, in file order
+     */
+    private interface ChunkSource<T> {
+        /**
+         * null at the end of the file
+         */
+        Callable<List<T>> next() throws IOException;
+    }
+}
@@ -0,0 +1,188 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.storage.Codecs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * reads a file written by {@link ColumnarWriter}, row group by row group.
+ * the row groups whose stats do not overlap a range are skipped without being read.
+ */
+public class ColumnarReader<T> implements Closeable {
+    private final static int BUFFER_SIZE = 1 << 20;
+    private final static int TRAILER_SIZE = Long.BYTES + ColumnarWriter.MAGIC.length;
+
+    private final ColumnarSchema<T> schema;
+    private final FileChannel channel;
+    private final Map<String, ColumnarSchema.Dictionary> dictionaries = new HashMap<>();
+    private final List<RowGroup> rowGroups = new ArrayList<>();
+
+    public ColumnarReader(Path file, ColumnarSchema<T> schema) {
+        this.schema = schema;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                readFooter();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<RowGroup> getRowGroups() {
+        return rowGroups;
+    }
+
+    public long rowCount() {
+        return rowGroups.stream().mapToLong(RowGroup::getRowCount).sum();
+    }
+
+    public List<T> read(RowGroup rowGroup) {
+        List<T> rows = new ArrayList<>(rowGroup.rowCount);
+        for (int i = 0; i < rowGroup.rowCount; i++) {
+            rows.add(schema.newRow());
+        }
+        try {
+            channel.position(rowGroup.offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            for (ColumnarSchema.Column<T> column : schema.getColumns()) {
+                column.read(in, rows, dictionaries);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return rows;
+    }
+
+    public void forEach(Consumer<T> action) {
+        for (RowGroup rowGroup : rowGroups) {
+            read(rowGroup).forEach(action);
+        }
+    }
+
+    /**
+     * the rows whose `column` is in [min, max], e.g. the events of a block range
+     *
+     * @param column a long or int column
+     */
+    public void forEach(String column, long min, long max, Consumer<T> action) {
+        int index = schema.statsIndex(column);
+        ColumnarSchema.Column<T> statsColumn = schema.getStatsColumns().get(index);
+        for (RowGroup rowGroup : rowGroups) {
+            if (rowGroup.max[index] < min || rowGroup.min[index] > max) {
+                continue;
+            }
+            for (T row : read(rowGroup)) {
+                long value = statsColumn.statsValue(row);
+                if (value >= min && value <= max) {
+                    action.accept(row);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readFooter() throws IOException {
+        DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        byte[] magic = new byte[ColumnarWriter.MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, ColumnarWriter.MAGIC)) {
+            throw new IOException("Not a columnar export");
+        }
+        int version = header.readInt();
+        if (version != ColumnarWriter.VERSION) {
+            throw new IOException("Unsupported columnar export version: " + version);
+        }
+        String name = Codecs.readString(header);
+        if (!schema.getName().equals(name)) {
+            throw new IOException("Columnar export of " + name + ", expected " + schema.getName());
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        long size = channel.size();
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, size - TRAILER_SIZE + trailer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        trailer.flip();
+        long footerOffset = trailer.getLong();
+        trailer.get(magic);
+        if (!Arrays.equals(magic, ColumnarWriter.MAGIC)) {
+            throw new IOException("Truncated columnar export");
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(footerOffset)), BUFFER_SIZE));
+        int dictionaryCount = in.readInt();
+        for (int i = 0; i < dictionaryCount; i++) {
+            ColumnarSchema.Dictionary dictionary = new ColumnarSchema.Dictionary();
+            dictionaries.put(Codecs.readString(in), dictionary);
+            int valueCount = in.readInt();
+            for (int j = 0; j < valueCount; j++) {
+                dictionary.idOf(Codecs.readString(in));
+            }
+        }
+        int rowGroupCount = in.readInt();
+        int statsCount = schema.getStatsColumns().size();
+        for (int i = 0; i < rowGroupCount; i++) {
+            long offset = in.readLong();
+            int rowCount = in.readInt();
+            long[] min = new long[statsCount];
+            long[] max = new long[statsCount];
+            for (int j = 0; j < statsCount; j++) {
+                min[j] = in.readLong();
+                max[j] = in.readLong();
+            }
+            rowGroups.add(new RowGroup(offset, rowCount, min, max));
+        }
+    }
+
+    public static class RowGroup {
+        private final long offset;
+        private final int rowCount;
+        // by index in `ColumnarSchema.getStatsColumns`
+        private final long[] min;
+        private final long[] max;
+
+        RowGroup(long offset, int rowCount, long[] min, long[] max) {
+            this.offset = offset;
+            this.rowCount = rowCount;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public long getMin(int statsIndex) {
+            return min[statsIndex];
+        }
+
+        public long getMax(int statsIndex) {
+            return max[statsIndex];
+        }
+    }
+}
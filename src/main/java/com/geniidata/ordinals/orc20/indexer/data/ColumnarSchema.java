@@ -0,0 +1,361 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.enums.*;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import com.geniidata.ordinals.orc20.indexer.storage.Codecs;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * columns of a binary columnar export, see {@link ColumnarWriter}.
+ * <p>
+ * strings that repeat across rows (tickId, tick, addresses, txId) are ids into a dictionary of the file,
+ * numbers and enum ordinals are fixed width, and amounts are unscaled integers at the largest scale of their row group.
+ * row groups keep the min/max of the long and int columns.
+ */
+public class ColumnarSchema<T> {
+    // dictionaries
+    private final static String TICK_ID = "tick_id";
+    private final static String TICK = "tick";
+    private final static String ADDRESS = "address";
+    private final static String TX_ID = "tx_id";
+
+    public final static ColumnarSchema<Orc20Event> EVENT = new ColumnarSchema<>("orc20_event", Orc20Event::new, Arrays.asList(
+            stringColumn("eventId", Orc20Event::getEventId, Orc20Event::setEventId),
+            dictionaryColumn("tickId", TICK_ID, Orc20Event::getTickId, Orc20Event::setTickId),
+            dictionaryColumn("tick", TICK, Orc20Event::getTick, Orc20Event::setTick),
+            stringColumn("inscriptionId", Orc20Event::getInscriptionId, Orc20Event::setInscriptionId),
+            longColumn("inscriptionNumber", Orc20Event::getInscriptionNumber, Orc20Event::setInscriptionNumber),
+            dictionaryColumn("fromAddress", ADDRESS, Orc20Event::getFromAddress, Orc20Event::setFromAddress),
+            dictionaryColumn("toAddress", ADDRESS, Orc20Event::getToAddress, Orc20Event::setToAddress),
+            enumColumn("eventType", EventType.values(), Orc20Event::getEventType, Orc20Event::setEventType),
+            enumColumn("op", OP.values(), Orc20Event::getOp, Orc20Event::setOp),
+            longColumn("nonce", Orc20Event::getNonce, Orc20Event::setNonce),
+            dictionaryColumn("creator", ADDRESS, Orc20Event::getCreator, Orc20Event::setCreator),
+            enumColumn("eventStatus", EventStatus.values(), Orc20Event::getEventStatus, Orc20Event::setEventStatus),
+            enumColumn("eventErrCode", EventErrCode.values(), Orc20Event::getEventErrCode, Orc20Event::setEventErrCode),
+            amountColumn("amount", Orc20Event::getAmount, Orc20Event::setAmount),
+            stringColumn("extData", Orc20Event::getExtData, Orc20Event::setExtData),
+            dictionaryColumn("txId", TX_ID, Orc20Event::getTxId, Orc20Event::setTxId),
+            intColumn("txIndex", Orc20Event::getTxIndex, Orc20Event::setTxIndex),
+            longColumn("blockTime", Orc20Event::getBlockTime, Orc20Event::setBlockTime),
+            longColumn("blockHeight", Orc20Event::getBlockHeight, Orc20Event::setBlockHeight)
+    ));
+
+    public final static ColumnarSchema<Orc20Balance> BALANCE = new ColumnarSchema<>("orc20_balance", Orc20Balance::new, Arrays.asList(
+            dictionaryColumn("tickId", TICK_ID, Orc20Balance::getTickId, Orc20Balance::setTickId),
+            dictionaryColumn("tick", TICK, Orc20Balance::getTick, Orc20Balance::setTick),
+            stringColumn("inscriptionId", Orc20Balance::getInscriptionId, Orc20Balance::setInscriptionId),
+            amountColumn("balance", Orc20Balance::getBalance, Orc20Balance::setBalance),
+            dictionaryColumn("address", ADDRESS, Orc20Balance::getAddress, Orc20Balance::setAddress),
+            dictionaryColumn("creator", ADDRESS, Orc20Balance::getCreator, Orc20Balance::setCreator),
+            longColumn("nonce", Orc20Balance::getNonce, Orc20Balance::setNonce),
+            enumColumn("balanceStatus", BalanceStatus.values(), Orc20Balance::getBalanceStatus, Orc20Balance::setBalanceStatus),
+            enumColumn("op", OP.values(), Orc20Balance::getOp, Orc20Balance::setOp)
+    ));
+
+    private final String name;
+    private final Supplier<T> factory;
+    private final List<Column<T>> columns;
+    private final List<Column<T>> statsColumns = new ArrayList<>();
+
+    private ColumnarSchema(String name, Supplier<T> factory, List<Column<T>> columns) {
+        this.name = name;
+        this.factory = factory;
+        this.columns = columns;
+        for (Column<T> column : columns) {
+            if (column.hasStats()) {
+                statsColumns.add(column);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Column<T>> getColumns() {
+        return columns;
+    }
+
+    /**
+     * the columns with min/max stats in the row groups, in order
+     */
+    public List<Column<T>> getStatsColumns() {
+        return statsColumns;
+    }
+
+    /**
+     * index of a column in `getStatsColumns`
+     */
+    public int statsIndex(String column) {
+        for (int i = 0; i < statsColumns.size(); i++) {
+            if (statsColumns.get(i).getName().equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No stats for column " + column + " of " + name);
+    }
+
+    T newRow() {
+        return factory.get();
+    }
+
+    public abstract static class Column<T> {
+        private final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        boolean hasStats() {
+            return false;
+        }
+
+        /**
+         * the value the stats are computed on, for the columns with stats
+         */
+        long statsValue(T row) {
+            throw new UnsupportedOperationException();
+        }
+
+        abstract void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException;
+
+        /**
+         * read the values of `rows`, which are already created
+         */
+        abstract void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException;
+    }
+
+    /**
+     * the distinct values of the dictionary columns, an id is the index of its value
+     */
+    static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        /**
+         * id of `value`, added if absent, -1 for null
+         */
+        int idOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String valueOf(int id) {
+            return id < 0 ? null : values.get(id);
+        }
+
+        List<String> values() {
+            return values;
+        }
+    }
+
+    private static <T> Column<T> longColumn(String name, ToLongFunction<T> getter, ObjLongConsumer<T> setter) {
+        return new Column<T>(name) {
+            @Override
+            boolean hasStats() {
+                return true;
+            }
+
+            @Override
+            long statsValue(T row) {
+                return getter.applyAsLong(row);
+            }
+
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    out.writeLong(getter.applyAsLong(row));
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    setter.accept(row, in.readLong());
+                }
+            }
+        };
+    }
+
+    private static <T> Column<T> intColumn(String name, ToIntFunction<T> getter, ObjIntConsumer<T> setter) {
+        return new Column<T>(name) {
+            @Override
+            boolean hasStats() {
+                return true;
+            }
+
+            @Override
+            long statsValue(T row) {
+                return getter.applyAsInt(row);
+            }
+
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    out.writeInt(getter.applyAsInt(row));
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    setter.accept(row, in.readInt());
+                }
+            }
+        };
+    }
+
+    /**
+     * ordinal as a byte, -1 for null
+     */
+    private static <T, E extends Enum<E>> Column<T> enumColumn(String name, E[] values, Function<T, E> getter, BiConsumer<T, E> setter) {
+        return new Column<T>(name) {
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    Codecs.writeEnum(out, getter.apply(row));
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    setter.accept(row, Codecs.readEnum(in, values));
+                }
+            }
+        };
+    }
+
+    /**
+     * strings that are mostly unique, e.g. inscriptionId
+     */
+    private static <T> Column<T> stringColumn(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+        return new Column<T>(name) {
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    Codecs.writeString(out, getter.apply(row));
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                for (T row : rows) {
+                    setter.accept(row, Codecs.readString(in));
+                }
+            }
+        };
+    }
+
+    /**
+     * int id in `dictionary`, columns of the same dictionary share the ids
+     */
+    private static <T> Column<T> dictionaryColumn(String name, String dictionary, Function<T, String> getter, BiConsumer<T, String> setter) {
+        return new Column<T>(name) {
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                Dictionary ids = dictionaries.computeIfAbsent(dictionary, k -> new Dictionary());
+                for (T row : rows) {
+                    out.writeInt(ids.idOf(getter.apply(row)));
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                Dictionary ids = dictionaries.getOrDefault(dictionary, new Dictionary());
+                for (T row : rows) {
+                    setter.accept(row, ids.valueOf(in.readInt()));
+                }
+            }
+        };
+    }
+
+    /**
+     * the group scale (the largest scale of the rows), then the scale of each row as a byte (Byte.MIN_VALUE for null),
+     * then the values unscaled at the group scale: longs if they all fit, else length-prefixed big integers.
+     * a value keeps its own scale when read back.
+     */
+    private static <T> Column<T> amountColumn(String name, Function<T, Amount> getter, BiConsumer<T, Amount> setter) {
+        return new Column<T>(name) {
+            @Override
+            void write(DataOutput out, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                int scale = Integer.MIN_VALUE;
+                for (T row : rows) {
+                    Amount value = getter.apply(row);
+                    if (value != null) {
+                        if (value.scale() <= Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) {
+                            throw new IllegalArgumentException("Scale of " + name + " out of range: " + value);
+                        }
+                        scale = Math.max(scale, value.scale());
+                    }
+                }
+                scale = scale == Integer.MIN_VALUE ? 0 : scale;
+                Amount[] unscaled = new Amount[rows.size()];
+                boolean wide = false;
+                for (int i = 0; i < unscaled.length; i++) {
+                    Amount value = getter.apply(rows.get(i));
+                    unscaled[i] = value == null ? Amount.ZERO : value.setScale(scale);
+                    wide |= !unscaled[i].fitsInLong();
+                }
+
+                out.writeInt(scale);
+                for (T row : rows) {
+                    Amount value = getter.apply(row);
+                    out.writeByte(value == null ? Byte.MIN_VALUE : value.scale());
+                }
+                out.writeBoolean(wide);
+                for (Amount value : unscaled) {
+                    if (wide) {
+                        byte[] bytes = value.unscaledValue().toByteArray();
+                        out.writeShort(bytes.length);
+                        out.write(bytes);
+                    } else {
+                        out.writeLong(value.longUnscaledValue());
+                    }
+                }
+            }
+
+            @Override
+            void read(DataInput in, List<T> rows, Map<String, Dictionary> dictionaries) throws IOException {
+                int scale = in.readInt();
+                byte[] scales = new byte[rows.size()];
+                in.readFully(scales);
+                boolean wide = in.readBoolean();
+                for (int i = 0; i < scales.length; i++) {
+                    Amount value;
+                    if (wide) {
+                        byte[] bytes = new byte[in.readUnsignedShort()];
+                        in.readFully(bytes);
+                        value = Amount.valueOf(new BigInteger(bytes), scale);
+                    } else {
+                        value = Amount.valueOf(in.readLong(), scale);
+                    }
+                    if (scales[i] != Byte.MIN_VALUE) {
+                        setter.accept(rows.get(i), value.setScale(scales[i]));
+                    }
+                }
+            }
+        };
+    }
+}
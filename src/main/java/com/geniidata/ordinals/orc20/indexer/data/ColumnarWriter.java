@@ -0,0 +1,148 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.storage.Codecs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * writes rows in a binary columnar format, read back with {@link ColumnarReader}.
+ * <p>
+ * layout:
+ * <pre>
+ * MAGIC, version, schema name
+ * row groups: the values of each column of the schema, one column after the other
+ * footer: the dictionaries, then the offset, row count and the min/max of the stats columns of each row group
+ * offset of the footer, MAGIC
+ * </pre>
+ */
+public class ColumnarWriter<T> implements Closeable {
+    public final static int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    final static byte[] MAGIC = "ORC20COL".getBytes(StandardCharsets.US_ASCII);
+    final static int VERSION = 1;
+
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    private final ColumnarSchema<T> schema;
+    private final int rowGroupSize;
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final Map<String, ColumnarSchema.Dictionary> dictionaries = new TreeMap<>();
+    private final List<T> rows = new ArrayList<>();
+    private final List<ColumnarReader.RowGroup> rowGroups = new ArrayList<>();
+
+    public ColumnarWriter(Path file, ColumnarSchema<T> schema) {
+        this(file, schema, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    public ColumnarWriter(Path file, ColumnarSchema<T> schema, int rowGroupSize) {
+        this.schema = schema;
+        this.rowGroupSize = Math.max(1, rowGroupSize);
+        try {
+            this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+            this.out = new DataOutputStream(counter);
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            Codecs.writeString(out, schema.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * rows are written in the order they are added, add them sorted by a column to make the stats of the column selective
+     */
+    public void add(T row) {
+        rows.add(row);
+        if (rows.size() >= rowGroupSize) {
+            writeRowGroup();
+        }
+    }
+
+    /**
+     * write the last row group and the footer
+     */
+    @Override
+    public void close() {
+        try {
+            if (!rows.isEmpty()) {
+                writeRowGroup();
+            }
+            long footerOffset = counter.count;
+            out.writeInt(dictionaries.size());
+            for (Map.Entry<String, ColumnarSchema.Dictionary> e : dictionaries.entrySet()) {
+                Codecs.writeString(out, e.getKey());
+                List<String> values = e.getValue().values();
+                out.writeInt(values.size());
+                for (String value : values) {
+                    Codecs.writeString(out, value);
+                }
+            }
+            out.writeInt(rowGroups.size());
+            for (ColumnarReader.RowGroup rowGroup : rowGroups) {
+                out.writeLong(rowGroup.getOffset());
+                out.writeInt(rowGroup.getRowCount());
+                for (int i = 0; i < schema.getStatsColumns().size(); i++) {
+                    out.writeLong(rowGroup.getMin(i));
+                    out.writeLong(rowGroup.getMax(i));
+                }
+            }
+            out.writeLong(footerOffset);
+            out.write(MAGIC);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRowGroup() {
+        List<ColumnarSchema.Column<T>> statsColumns = schema.getStatsColumns();
+        long[] min = new long[statsColumns.size()];
+        long[] max = new long[statsColumns.size()];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+        for (T row : rows) {
+            for (int i = 0; i < min.length; i++) {
+                long value = statsColumns.get(i).statsValue(row);
+                min[i] = Math.min(min[i], value);
+                max[i] = Math.max(max[i], value);
+            }
+        }
+        rowGroups.add(new ColumnarReader.RowGroup(counter.count, rows.size(), min, max));
+        try {
+            for (ColumnarSchema.Column<T> column : schema.getColumns()) {
+                column.write(out, rows, dictionaries);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows.clear();
+    }
+
+    /**
+     * position in the file, DataOutputStream only counts up to 2GB
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
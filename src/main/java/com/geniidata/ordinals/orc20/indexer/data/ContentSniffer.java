@@ -0,0 +1,88 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.geniidata.ordinals.orc20.indexer.data.events.BaseEvent;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.io.IOException;
+
+/**
+ * rejects the contents that are certainly not ORC20 before they are lowercased and decoded.
+ * <p>
+ * streams the original content and matches the top-level "p", "op" and "tick" keys case-insensitively,
+ * so that only the contents that may be ORC20 are copied by `toLowerCase`.
+ * a content is rejected only if decoding its lowercase copy as a `BaseEvent` could not give a valid event,
+ * anything else (escapes, upper case literals like `TRUE`, malformed json) is left to the decoder.
+ */
+public class ContentSniffer {
+
+    /**
+     * true if the content is not a valid ORC20 `BaseEvent`, false if it may be one
+     */
+    public static boolean isNotOrc20(String content) {
+        if (content == null) {
+            return true;
+        }
+        int i = 0;
+        while (i < content.length() && isJsonWhitespace(content.charAt(i))) {
+            i++;
+        }
+        if (i == content.length()) {
+            return true; // no content
+        }
+        char first = content.charAt(i);
+        if (first >= 0x80) {
+            return false; // e.g. a byte order mark
+        }
+        if (first != '{') {
+            return true; // not an object, can not be decoded as an event
+        }
+        if (content.indexOf('\\') >= 0) {
+            return false; // escapes are decoded after lowercasing, "P" stays "P"
+        }
+        boolean p = false;
+        boolean op = false;
+        boolean tick = false;
+        try (JsonParser parser = Json.createParser(content)) {
+            parser.nextToken();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (isKey(name, "p")) {
+                    // a longer value can not lowercase to the protocol, lowercasing never shortens
+                    if (value != JsonToken.VALUE_STRING || parser.getTextLength() > 6 || !BaseEvent.isOrc20Protocol(parser.getText().toLowerCase())) {
+                        return true;
+                    }
+                    p = true;
+                } else if (isKey(name, "op")) {
+                    if (value == JsonToken.VALUE_NULL) {
+                        return true; // required
+                    }
+                    op = true;
+                } else if (isKey(name, "tick")) {
+                    if (value == JsonToken.VALUE_NULL) {
+                        return true; // required
+                    }
+                    tick = true;
+                }
+                parser.skipChildren();
+            }
+            return token == JsonToken.END_OBJECT && !(p && op && tick);
+        } catch (IOException e) {
+            return false; // may be valid once lowercased
+        }
+    }
+
+    /**
+     * same as `name.toLowerCase().equals(key)`, without lowercasing long names
+     */
+    private static boolean isKey(String name, String key) {
+        return name.length() <= key.length() && name.toLowerCase().equals(key);
+    }
+
+    private static boolean isJsonWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
@@ -1,156 +1,224 @@
 package com.geniidata.ordinals.orc20.indexer.data;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
-import com.geniidata.ordinals.orc20.indexer.enums.OP;
 import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceSummary;
 import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
 import com.geniidata.ordinals.orc20.indexer.model.Orc20Metadata;
-import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
-
-import java.math.BigDecimal;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.Objects;
-import java.util.TreeMap;
+import com.geniidata.ordinals.orc20.indexer.storage.Codec;
+import com.geniidata.ordinals.orc20.indexer.storage.Codecs;
+import com.geniidata.ordinals.orc20.indexer.storage.IndexKey;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * dump the indexer results for test
+ * the orders are total (ties broken by primary key), so the output does not depend on the storage or on sharding.
+ * <p>
+ * rows are written through one buffered {@link JsonGenerator}, tables larger than the sort budget are sorted with an {@link ExternalSorter}.
  */
-public class Dumper {
-    public static void dumpOrc20Balance() {
-        System.out.println("################ balance dump ################");
-        MemoryCache.dumpOrc20Balance().values().stream()
-                .filter(orc20Balance -> orc20Balance.getBalanceStatus().equals(BalanceStatus.OK))
-                .sorted(Comparator.comparing(Orc20Balance::getAddress).thenComparing(Orc20Balance::getTickId))
-                .forEach(System.out::println);
-    }
+public class Dumper implements Closeable {
+    public final static int DEFAULT_SORT_BUDGET = 1000000;
+
+    private final static int BUFFER_SIZE = 1 << 20;
+    private final static Comparator<Orc20Balance> BALANCE_ORDER = Comparator.comparing(Orc20Balance::getAddress).thenComparing(Orc20Balance::getTickId).thenComparing(Orc20Balance::getInscriptionId);
+    private final static Comparator<Orc20Metadata> METADATA_ORDER = Comparator.comparingLong(Orc20Metadata::getDeployTime).thenComparing(Orc20Metadata::getTickId);
+    private final static Comparator<SummaryRow> SUMMARY_ORDER = Comparator.<SummaryRow, String>comparing(r -> r.address).thenComparing(r -> r.tick).thenComparingLong(r -> r.tickNumber);
+    private final static Comparator<Orc20Event> EVENT_ORDER = Comparator.comparing(Orc20Event::getTickId).thenComparingLong(Orc20Event::getBlockHeight).thenComparingInt(Orc20Event::getTxIndex).thenComparing(Orc20Event::getEventId);
+    // chain order, each row group of the export covers a block range
+    private final static Comparator<Orc20Event> EVENT_EXPORT_ORDER = Comparator.comparingLong(Orc20Event::getBlockHeight).thenComparingInt(Orc20Event::getTxIndex).thenComparing(Orc20Event::getEventId);
+
+    // spilled summary rows, see `summarizeOrc20Balance`
+    private final static Codec<SummaryRow> SUMMARY_ROW_CODEC = new Codec<SummaryRow>() {
+        @Override
+        public void write(DataOutput out, SummaryRow value) throws IOException {
+            Codecs.writeString(out, value.address);
+            Codecs.writeString(out, value.tick);
+            out.writeLong(value.tickNumber);
+            Codecs.writeAmount(out, value.cashBalance);
+            Codecs.writeAmount(out, value.creditBalance);
+        }
 
-    public static void dumpOrc20BalanceOIP10Snapshot() {
-        System.out.println("################ balance oip10 snapshot dump ################");
-        MemoryCache.dumpOrc20BalanceOIP10Snapshot().values().stream()
-                .filter(orc20Balance -> orc20Balance.getBalanceStatus().equals(BalanceStatus.OK))
-                .sorted(Comparator.comparing(Orc20Balance::getAddress).thenComparing(Orc20Balance::getTickId))
-                .forEach(System.out::println);
-    }
+        @Override
+        public SummaryRow read(DataInput in) throws IOException {
+            return new SummaryRow(Codecs.readString(in), Codecs.readString(in), in.readLong(), Codecs.readAmount(in), Codecs.readAmount(in));
+        }
+    };
+
+    private final JsonGenerator generator;
+    private int sortBudget = DEFAULT_SORT_BUDGET;
 
     /**
-     * summarize balance by (address, tick_id)
+     * @param out closed with the dumper
      */
-    public static void summarizeOrc20Balance() {
-        // address, tick, inscription_number, BigDecimal
-        TreeMap<BalanceSummaryKey, BalanceSummaryValue> userBalance = new TreeMap<>();
-        MemoryCache.dumpOrc20Balance().values().stream()
-                .filter(orc20Balance -> orc20Balance.getBalanceStatus().equals(BalanceStatus.OK))
-                .sorted(Comparator.comparing(Orc20Balance::getAddress).thenComparing(Orc20Balance::getTickId))
-                .forEach(
-                        b -> {
-                            String address = b.getAddress();
-                            String tick = b.getTick();
-                            String tickId = b.getTickId();
-                            long tickNumber = MemoryCache.dumpOrc20Metadata().get(tickId).getInscriptionNumber();
-                            BalanceSummaryValue summaryValue;
-                            if (OP._VIRTUAL_CREDIT_.equals(b.getOp())) {
-                                summaryValue = new BalanceSummaryValue(BigDecimal.ZERO, b.getBalance());
-                            } else {
-                                summaryValue = new BalanceSummaryValue(b.getBalance(), BigDecimal.ZERO);
-                            }
-                            BalanceSummaryKey summaryKey = new BalanceSummaryKey(address, tick, tickNumber);
-                            if (userBalance.containsKey(summaryKey)) {
-                                summaryValue.add(userBalance.get(summaryKey));
-                            }
-                            userBalance.put(summaryKey, summaryValue);
-                        });
-
-        System.out.println("################ balance summary ################");
-        System.out.printf("%-64s\t%-18s\t%-18s\t%-18s\t%-18s\n", "Address", "Tick", "Inscription Number", "Cash Balance", "Credit Balance");
-        for (Map.Entry<BalanceSummaryKey, BalanceSummaryValue> entry : userBalance.entrySet()) {
-            BalanceSummaryKey key = entry.getKey();
-            BalanceSummaryValue value = entry.getValue();
-            String address = key.getAddress();
-            System.out.printf("%-64s\t%-18s\t%-18d\t%-18s\t%-18s\n", address, key.getTick(), key.getTickNumber(), value.getCashBalance(), value.getCreditBalance());
+    public Dumper(Writer out) {
+        try {
+            this.generator = Json.createGenerator(new BufferedWriter(out, BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
+    /**
+     * dump to the standard output, which stays open
+     */
+    public static Dumper toStdout() {
+        return new Dumper(new FilterWriter(new OutputStreamWriter(System.out)) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
     }
 
-    public static void dumpOrc20Metadata() {
-        System.out.println("################ metadata dump ################");
-        MemoryCache.dumpOrc20Metadata().values().stream()
-                .sorted(Comparator.comparingLong(Orc20Metadata::getDeployTime))
-                .forEach(System.out::println);
+    public static Dumper toFile(Path file) {
+        try {
+            return new Dumper(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    public static void dumpOrc20Event() {
-        System.out.println("################ event dump ################");
-        MemoryCache.dumpOrc20Event().values().stream()
-                .sorted(Comparator.comparing(Orc20Event::getTickId).thenComparingLong(Orc20Event::getBlockHeight).thenComparingInt(Orc20Event::getTxIndex))
-                .forEach(System.out::println);
+    /**
+     * rows kept in memory while sorting a table, larger tables are sorted in runs on disk
+     */
+    public void setSortBudget(int sortBudget) {
+        this.sortBudget = sortBudget;
     }
 
-    private static class BalanceSummaryKey implements Comparable<BalanceSummaryKey> {
-        private final String address;
-        private final String tick;
-        private final long tickNumber;
+    public void dumpOrc20Balance(Storage storage) {
+        writeLine("################ balance dump ################");
+        writeSorted(storage.dumpOrc20Balance().values(), Dumper::isOK, BALANCE_ORDER, Codecs.BALANCE_CODEC);
+    }
 
-        public BalanceSummaryKey(String address, String tick, long tickNumber) {
-            this.address = address;
-            this.tick = tick;
-            this.tickNumber = tickNumber;
-        }
+    public void dumpOrc20BalanceOIP10Snapshot(Storage storage) {
+        writeLine("################ balance oip10 snapshot dump ################");
+        writeSorted(storage.dumpOrc20BalanceOIP10Snapshot().values(), Dumper::isOK, BALANCE_ORDER, Codecs.BALANCE_CODEC);
+    }
 
-        public String getAddress() {
-            return address;
-        }
+    public void dumpOrc20BalanceSnapshot(Storage storage, long snapshotHeight) {
+        writeLine("################ balance snapshot " + snapshotHeight + " dump ################");
+        writeSorted(storage.dumpOrc20BalanceSnapshot(snapshotHeight).values(), Dumper::isOK, BALANCE_ORDER, Codecs.BALANCE_CODEC);
+    }
 
-        public String getTick() {
-            return tick;
+    /**
+     * summarize balance by (address, tick_id), from the summaries maintained by the storage
+     */
+    public void summarizeOrc20Balance(Storage storage) {
+        Map<String, Orc20Metadata> metadata = storage.dumpOrc20Metadata();
+        writeLine("################ balance summary ################");
+        writeLine(String.format("%-64s\t%-18s\t%-18s\t%-18s\t%-18s", "Address", "Tick", "Inscription Number", "Cash Balance", "Credit Balance"));
+        try (ExternalSorter<SummaryRow> sorter = new ExternalSorter<>(SUMMARY_ORDER, SUMMARY_ROW_CODEC, sortBudget)) {
+            for (Map.Entry<IndexKey, Orc20BalanceSummary> entry : storage.dumpOrc20BalanceSummary().entrySet()) {
+                Orc20Metadata tick = metadata.get((String) entry.getKey().get(0));
+                Orc20BalanceSummary summary = entry.getValue();
+                sorter.add(new SummaryRow((String) entry.getKey().get(1), tick.getTick(), tick.getInscriptionNumber(),
+                        summary.getCashBalance().total(), summary.getCreditBalance().total()));
+            }
+            sorter.sorted().forEachRemaining(row -> writeLine(String.format("%-64s\t%-18s\t%-18d\t%-18s\t%-18s",
+                    row.address, row.tick, row.tickNumber, row.cashBalance, row.creditBalance)));
         }
+    }
 
-        public long getTickNumber() {
-            return tickNumber;
-        }
+    public void dumpOrc20Metadata(Storage storage) {
+        writeLine("################ metadata dump ################");
+        writeSorted(storage.dumpOrc20Metadata().values(), m -> true, METADATA_ORDER, Codecs.METADATA_CODEC);
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            BalanceSummaryKey that = (BalanceSummaryKey) o;
-            return tickNumber == that.tickNumber && Objects.equals(address, that.address) && Objects.equals(tick, that.tick);
+    public void dumpOrc20Event(Storage storage) {
+        writeLine("################ event dump ################");
+        writeSorted(storage.dumpOrc20Event().values(), e -> true, EVENT_ORDER, Codecs.EVENT_CODEC);
+    }
+
+    /**
+     * export the rows of `dumpOrc20Balance` to `file` in the columnar format, see {@link ColumnarWriter}
+     */
+    public void exportOrc20Balance(Storage storage, Path file) {
+        try (ColumnarWriter<Orc20Balance> writer = new ColumnarWriter<>(file, ColumnarSchema.BALANCE)) {
+            forEachSorted(storage.dumpOrc20Balance().values(), Dumper::isOK, BALANCE_ORDER, Codecs.BALANCE_CODEC, writer::add);
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(address, tick, tickNumber);
+    /**
+     * export the rows of `dumpOrc20Event` to `file` in the columnar format, see {@link ColumnarWriter}.
+     * the events are in chain order, so reading a block range only reads the row groups of the range.
+     */
+    public void exportOrc20Event(Storage storage, Path file) {
+        try (ColumnarWriter<Orc20Event> writer = new ColumnarWriter<>(file, ColumnarSchema.EVENT)) {
+            forEachSorted(storage.dumpOrc20Event().values(), e -> true, EVENT_EXPORT_ORDER, Codecs.EVENT_CODEC, writer::add);
         }
+    }
 
-        @Override
-        public int compareTo(BalanceSummaryKey o) {
-            return Comparator.comparing(BalanceSummaryKey::getAddress)
-                    .thenComparing(BalanceSummaryKey::getTick)
-                    .thenComparingLong(BalanceSummaryKey::getTickNumber)
-                    .compare(this, o);
+    @Override
+    public void close() {
+        try {
+            generator.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    private static class BalanceSummaryValue {
-        private BigDecimal cashBalance;
-        private BigDecimal creditBalance;
+    private static boolean isOK(Orc20Balance orc20Balance) {
+        return orc20Balance.getBalanceStatus().equals(BalanceStatus.OK);
+    }
 
-        public BalanceSummaryValue(BigDecimal cashBalance, BigDecimal creditBalance) {
-            this.cashBalance = cashBalance;
-            this.creditBalance = creditBalance;
+    private void writeLine(String line) {
+        try {
+            generator.writeRaw(line);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        public void add(BalanceSummaryValue summaryValue) {
-            this.cashBalance = this.cashBalance.add(summaryValue.cashBalance);
-            this.creditBalance = this.creditBalance.add(summaryValue.creditBalance);
-        }
+    /**
+     * write the rows accepted by `filter` in `order`, one json per line
+     */
+    private <T> void writeSorted(Collection<T> rows, Predicate<T> filter, Comparator<T> order, Codec<T> codec) {
+        forEachSorted(rows, filter, order, codec, row -> {
+            try {
+                Json.writeValue(generator, row);
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-        public BigDecimal getCashBalance() {
-            return cashBalance;
+    private <T> void forEachSorted(Collection<T> rows, Predicate<T> filter, Comparator<T> order, Codec<T> codec, Consumer<T> action) {
+        try (ExternalSorter<T> sorter = new ExternalSorter<>(order, codec, sortBudget)) {
+            for (T row : rows) {
+                if (filter.test(row)) {
+                    sorter.add(row);
+                }
+            }
+            sorter.sorted().forEachRemaining(action);
         }
+    }
+
+    private static class SummaryRow {
+        private final String address;
+        private final String tick;
+        private final long tickNumber;
+        private final Amount cashBalance;
+        private final Amount creditBalance;
 
-        public BigDecimal getCreditBalance() {
-            return creditBalance;
+        SummaryRow(String address, String tick, long tickNumber, Amount cashBalance, Amount creditBalance) {
+            this.address = address;
+            this.tick = tick;
+            this.tickNumber = tickNumber;
+            this.cashBalance = cashBalance;
+            this.creditBalance = creditBalance;
         }
     }
 }
@@ -0,0 +1,141 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.data.events.*;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * LRU cache of decoded inscription contents by inscriptionId, the content of an inscription never changes.
+ * <p>
+ * an entry holds the classified event (`BaseEvent`) and the event decoded with the class of its op,
+ * contents that are not ORC20 are cached as negative entries.
+ */
+public class EventCache {
+    public final static int DEFAULT_CAPACITY = 100000;
+
+    private final static Entry NOT_ORC20 = new Entry(null, null, null);
+
+    private final BiFunction<String, Class<? extends BaseEvent>, BaseEvent> decoder;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * @param decoder decodes a content as the given class, null if it is invalid
+     */
+    public EventCache(int capacity, BiFunction<String, Class<? extends BaseEvent>, BaseEvent> decoder) {
+        this.decoder = decoder;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EventCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * the classified event, null if the content is not ORC20
+     */
+    public BaseEvent classify(InscriptionContent inscription) {
+        return entry(inscription).baseEvent;
+    }
+
+    /**
+     * the content decoded as `cls`, null if it can not be decoded
+     */
+    public <T extends BaseEvent> T read(InscriptionContent inscription, Class<T> cls) {
+        Entry entry = entry(inscription);
+        if (entry.baseEvent == null) {
+            return null; // not even a BaseEvent
+        }
+        if (entry.eventClass == cls) {
+            return cls.cast(entry.typedEvent);
+        }
+        return cls.cast(decoder.apply(inscription.getContentBody(), cls)); // op and class do not match, not cached
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(String inscriptionId) {
+        return entries.containsKey(inscriptionId);
+    }
+
+    /**
+     * add an entry decoded ahead with `decode`, keeps an existing one
+     */
+    public void put(String inscriptionId, Entry entry) {
+        entries.putIfAbsent(inscriptionId, entry);
+    }
+
+    /**
+     * the cached entry of an inscription, decoded if absent
+     */
+    public Entry entry(InscriptionContent inscription) {
+        String inscriptionId = inscription.getInscriptionId();
+        Entry entry = entries.get(inscriptionId);
+        if (entry == null) {
+            entry = decode(inscription.getContentBody());
+            entries.put(inscriptionId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * decode a content without touching the cache, safe to call from any thread
+     */
+    public Entry decode(String content) {
+        if (ContentSniffer.isNotOrc20(content)) {
+            return NOT_ORC20;
+        }
+        BaseEvent baseEvent = decoder.apply(content, BaseEvent.class);
+        if (baseEvent == null || !baseEvent.isValid()) {
+            return NOT_ORC20;
+        }
+        Class<? extends BaseEvent> cls = eventClass(baseEvent.getOp());
+        BaseEvent typedEvent = cls == null ? null : decoder.apply(content, cls);
+        return new Entry(baseEvent, cls, typedEvent);
+    }
+
+    /**
+     * the event class of an op, null for the ops that are not processed
+     */
+    private static Class<? extends BaseEvent> eventClass(String op) {
+        switch (op) {
+            case "deploy":
+                return DeployEvent.class;
+            case "mint":
+                return MintEvent.class;
+            case "send":
+            case "transfer":
+                return SendEvent.class;
+            case "cancel":
+                return CancelEvent.class;
+            case "upgrade":
+                return UpgradeEvent.class;
+            default:
+                return null;
+        }
+    }
+
+    public final static class Entry {
+        private final BaseEvent baseEvent;
+        private final Class<? extends BaseEvent> eventClass;
+        private final BaseEvent typedEvent; // null if the content is invalid for its op
+
+        Entry(BaseEvent baseEvent, Class<? extends BaseEvent> eventClass, BaseEvent typedEvent) {
+            this.baseEvent = baseEvent;
+            this.eventClass = eventClass;
+            this.typedEvent = typedEvent;
+        }
+
+        /**
+         * the classified event, null if the content is not ORC20
+         */
+        public BaseEvent getBaseEvent() {
+            return baseEvent;
+        }
+    }
+}
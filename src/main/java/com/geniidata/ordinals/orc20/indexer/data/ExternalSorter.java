@@ -0,0 +1,169 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.storage.Codec;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * sorts more values than fit in memory: every `budget` values are sorted and spilled to a temporary file as a run,
+ * `sorted` k-way merges the runs and the values still in memory.
+ * spilled values are decoded again, so the codec must keep everything the consumer reads.
+ */
+public class ExternalSorter<T> implements Closeable {
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private final Comparator<? super T> comparator;
+    private final Codec<T> codec;
+    private final int budget;
+    private final List<T> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Integer> runSizes = new ArrayList<>();
+    private final List<DataInputStream> readers = new ArrayList<>();
+
+    /**
+     * @param budget values kept in memory before a run is spilled
+     */
+    public ExternalSorter(Comparator<? super T> comparator, Codec<T> codec, int budget) {
+        this.comparator = comparator;
+        this.codec = codec;
+        this.budget = Math.max(1, budget);
+    }
+
+    public void add(T value) {
+        buffer.add(value);
+        if (buffer.size() >= budget) {
+            spill();
+        }
+    }
+
+    /**
+     * the values added so far in order, the iterator can be used once
+     */
+    public Iterator<T> sorted() {
+        buffer.sort(comparator);
+        if (runs.isEmpty()) {
+            return buffer.iterator();
+        }
+        PriorityQueue<Source> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.head, b.head));
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)), BUFFER_SIZE));
+                readers.add(in);
+                addSource(heads, new RunSource(in, runSizes.get(i)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        addSource(heads, new BufferSource(buffer.iterator()));
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Source source = heads.poll();
+                if (source == null) {
+                    throw new NoSuchElementException();
+                }
+                T value = source.head;
+                addSource(heads, source);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * delete the runs
+     */
+    @Override
+    public void close() {
+        try {
+            for (DataInputStream in : readers) {
+                in.close();
+            }
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void spill() {
+        buffer.sort(comparator);
+        try {
+            Path run = Files.createTempFile("orc20-sort", ".run");
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+                for (T value : buffer) {
+                    codec.write(out, value);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        runSizes.add(buffer.size());
+        buffer.clear();
+    }
+
+    /**
+     * move the source to its next value, and put it back in the queue unless it is exhausted
+     */
+    private void addSource(PriorityQueue<Source> heads, Source source) {
+        if (source.advance()) {
+            heads.add(source);
+        }
+    }
+
+    private abstract class Source {
+        T head;
+
+        abstract boolean advance();
+    }
+
+    private class RunSource extends Source {
+        private final DataInputStream in;
+        private int remaining;
+
+        RunSource(DataInputStream in, int size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        @Override
+        boolean advance() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            try {
+                head = codec.read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+    }
+
+    private class BufferSource extends Source {
+        private final Iterator<T> it;
+
+        BufferSource(Iterator<T> it) {
+            this.it = it;
+        }
+
+        @Override
+        boolean advance() {
+            if (!it.hasNext()) {
+                return false;
+            }
+            head = it.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * opens the JSONL input files, plain or compressed, detected from their first bytes.
+ * <p>
+ * gzip is inflated on a background thread ahead of the reader.
+ * BGZF (gzip made of independent blocks of at most 64KB, e.g. written by `bgzip`) is inflated on several threads,
+ * the blocks are read in order by the calling thread and inflated on a pool a few blocks ahead.
+ */
+public class InputFiles {
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static int GZIP_CHUNK_SIZE = 1 << 20;
+    private final static int GZIP_CHUNKS_AHEAD = 4;
+    private final static int BGZF_BLOCKS_AHEAD_PER_THREAD = 4;
+
+    private final static int GZIP_MAGIC = 0x8b1f;
+    private final static int GZIP_HEADER_SIZE = 12; // up to XLEN
+    private final static int FEXTRA = 4;
+
+    /**
+     * UTF-8 reader of a plain, gzip or BGZF file, malformed input is reported like `Files.newBufferedReader`
+     */
+    public static BufferedReader newBufferedReader(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        try {
+            in.mark(GZIP_HEADER_SIZE + 4);
+            byte[] header = new byte[GZIP_HEADER_SIZE + 4];
+            int n = readFully(in, header);
+            in.reset();
+            if (n < 2 || (header[0] & 0xff | (header[1] & 0xff) << 8) != GZIP_MAGIC) {
+                in.close();
+                return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            }
+            InputStream decompressed = isBgzf(header, n) ? bgzf(in) : gzip(in);
+            return new BufferedReader(new InputStreamReader(decompressed, StandardCharsets.UTF_8.newDecoder()), BUFFER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * whether the file is gzip or BGZF, i.e. can not be read as plain text
+     */
+    public static boolean isCompressed(String filePath) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            byte[] header = new byte[2];
+            return readFully(in, header) == 2 && (header[0] & 0xff | (header[1] & 0xff) << 8) == GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * the first gzip member has a "BC" extra subfield with the block size
+     */
+    private static boolean isBgzf(byte[] header, int n) {
+        return n == header.length && (header[3] & FEXTRA) != 0
+                && (header[10] & 0xff | (header[11] & 0xff) << 8) >= 6
+                && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+
+    private static InputStream gzip(InputStream in) throws IOException {
+        GZIPInputStream gzip = new GZIPInputStream(in, BUFFER_SIZE);
+        ExecutorService executor = Executors.newSingleThreadExecutor(daemonThreads("orc20-gunzip"));
+        // the chunks are read in order by the single thread, the empty chunk at the end ends the stream
+        return new ReadAheadInputStream(executor, GZIP_CHUNKS_AHEAD, () -> () -> {
+            byte[] chunk = new byte[GZIP_CHUNK_SIZE];
+            int n = readFully(gzip, chunk);
+            return n == chunk.length ? chunk : Arrays.copyOf(chunk, n);
+        }, gzip);
+    }
+
+    private static InputStream bgzf(InputStream in) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads("orc20-bgzf"));
+        DataInputStream data = new DataInputStream(in);
+        return new ReadAheadInputStream(executor, threads * BGZF_BLOCKS_AHEAD_PER_THREAD, () -> readBgzfBlock(data), in);
+    }
+
+    /**
+     * read the next non-empty block, the returned task inflates it. null at the end of the file
+     */
+    private static Callable<byte[]> readBgzfBlock(DataInputStream in) throws IOException {
+        byte[] compressed;
+        do {
+            compressed = readBgzfBlockData(in);
+            if (compressed == null) {
+                return null;
+            }
+        } while (littleEndianInt(compressed, compressed.length - 4) == 0); // e.g. the end of file marker
+        byte[] block = compressed;
+        return () -> inflateBgzfBlock(block);
+    }
+
+    /**
+     * deflated data, CRC32 and ISIZE of the next block, null at the end of the file
+     */
+    private static byte[] readBgzfBlockData(DataInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        byte[] header = new byte[GZIP_HEADER_SIZE];
+        header[0] = (byte) first;
+        in.readFully(header, 1, header.length - 1);
+        if ((header[0] & 0xff | (header[1] & 0xff) << 8) != GZIP_MAGIC || header[2] != 8 || (header[3] & FEXTRA) == 0) {
+            throw new IOException("Not a BGZF block");
+        }
+        int extraLength = header[10] & 0xff | (header[11] & 0xff) << 8;
+        byte[] extra = new byte[extraLength];
+        in.readFully(extra);
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= extraLength; ) {
+            int subfieldLength = extra[i + 2] & 0xff | (extra[i + 3] & 0xff) << 8;
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= extraLength) {
+                blockSize = (extra[i + 4] & 0xff | (extra[i + 5] & 0xff) << 8) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        int remaining = blockSize - GZIP_HEADER_SIZE - extraLength;
+        if (blockSize < 0 || remaining < 8) {
+            throw new IOException("Not a BGZF block");
+        }
+        byte[] compressed = new byte[remaining];
+        in.readFully(compressed);
+        return compressed;
+    }
+
+    private static byte[] inflateBgzfBlock(byte[] compressed) throws IOException {
+        int trailer = compressed.length - 8;
+        int crc = littleEndianInt(compressed, trailer);
+        int size = littleEndianInt(compressed, trailer + 4);
+        byte[] block = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, 0, trailer);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int inflated = inflater.inflate(block, n, size - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != size) {
+                throw new IOException("Truncated BGZF block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(block, 0, size);
+        if ((int) crc32.getValue() != crc) {
+            throw new IOException("BGZF block checksum mismatch");
+        }
+        return block;
+    }
+
+    private static int littleEndianInt(byte[] b, int offset) {
+        return b[offset] & 0xff | (b[offset + 1] & 0xff) << 8 | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+    }
+
+    /**
+     * read until `b` is full or the end of the stream, the number of bytes read
+     */
+    private static int readFully(InputStream in, byte[] b) throws IOException {
+        int n = 0;
+        while (n < b.length) {
+            int read = in.read(b, n, b.length - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * supplies the tasks producing the chunks of a stream, in order
+     */
+    private interface ChunkSource {
+        /**
+         * null at the end, the stream also ends at the first empty chunk
+         */
+        Callable<byte[]> next() throws IOException;
+    }
+
+    /**
+     * the chunks produced by the tasks of a `ChunkSource`, run on an executor up to `ahead` tasks in advance
+     */
+    private static class ReadAheadInputStream extends InputStream {
+        private final ExecutorService executor;
+        private final int ahead;
+        private final ChunkSource source;
+        private final Closeable underlying;
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        private boolean sourceEnded;
+        private boolean ended;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        ReadAheadInputStream(ExecutorService executor, int ahead, ChunkSource source, Closeable underlying) {
+            this.executor = executor;
+            this.ahead = ahead;
+            this.source = source;
+            this.underlying = underlying;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!available0()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!available0()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            underlying.close();
+        }
+
+        /**
+         * make the current chunk non-empty, false at the end
+         */
+        private boolean available0() throws IOException {
+            while (position == chunk.length) {
+                if (ended) {
+                    return false;
+                }
+                while (!sourceEnded && pending.size() < ahead) {
+                    Callable<byte[]> task = source.next();
+                    if (task == null) {
+                        sourceEnded = true;
+                    } else {
+                        pending.add(executor.submit(task));
+                    }
+                }
+                Future<byte[]> next = pending.poll();
+                if (next == null) {
+                    ended = true;
+                    return false;
+                }
+                chunk = get(next);
+                position = 0;
+                if (chunk.length == 0) {
+                    ended = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static byte[] get(Future<byte[]> future) throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+}
@@ -2,61 +2,97 @@ package com.geniidata.ordinals.orc20.indexer.data;
 
 import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
 import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
-import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
-import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * load inscription content and transfers from datasource
  */
 public class Loader {
 
-    public static void loadInputs(String contentsDataFilePath, String transfersDataFilePath) {
-        loadContentFromJsonInputFile(contentsDataFilePath);
-        loadTransferFromJsonInputFile(transfersDataFilePath);
+    public static void loadInputs(Storage storage, String contentsDataFilePath, String transfersDataFilePath) {
+        loadInputs(storage, contentsDataFilePath, Collections.singletonList(transfersDataFilePath), 0);
+    }
+
+    public static void loadInputs(Storage storage, String contentsDataFilePath, List<String> transfersDataFilePaths) {
+        loadInputs(storage, contentsDataFilePath, transfersDataFilePaths, 0);
     }
 
     /**
-     * load all transfers data(json format)
+     * @param threads decoding threads of the input files, 0 decodes them on the calling thread, see {@link ChunkedJsonReader}
+     */
+    public static void loadInputs(Storage storage, String contentsDataFilePath, List<String> transfersDataFilePaths, int threads) {
+        loadContentFromJsonInputFile(storage, contentsDataFilePath, threads);
+        for (String transfersDataFilePath : transfersDataFilePaths) {
+            loadTransferFromJsonInputFile(storage, transfersDataFilePath, threads);
+        }
+    }
+
+    /**
+     * load all contents, then stream the transfers to `consumer` in chain order without keeping them in memory.
+     * every transfer file must already be ordered by (block_height, transaction_index),
+     * several files are merged by (block_height, transaction_index).
      *
-     * @param filePath file path
+     * @param storage                storage of the inscription contents
+     * @param contentsDataFilePath   contents file path
+     * @param transfersDataFilePaths ordered transfers file paths
+     * @param consumer               receives the transfers in chain order
+     */
+    public static void streamInputs(Storage storage, String contentsDataFilePath, List<String> transfersDataFilePaths, Consumer<InscriptionTransfer> consumer) {
+        streamInputs(storage, contentsDataFilePath, transfersDataFilePaths, 0, consumer);
+    }
+
+    /**
+     * same as `streamInputs`, decoding the contents file on `threads` threads, see {@link ChunkedJsonReader}
      */
-    private static void loadTransferFromJsonInputFile(String filePath) {
-        try (BufferedReader bufferedReader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                InscriptionTransfer transfer = Json.readValue(line, InscriptionTransfer.class);
-                MemoryCache.insertInscriptionTransfer(transfer);
-                String inscriptionId = transfer.getInscriptionId();
-                if (!transfer.isTransfer()) {
-                    MemoryCache.selectInscriptionContentByInscriptionId(inscriptionId).setGenesisBlockHeight(transfer.getBlockHeight());
+    public static void streamInputs(Storage storage, String contentsDataFilePath, List<String> transfersDataFilePaths, int threads, Consumer<InscriptionTransfer> consumer) {
+        loadContentFromJsonInputFile(storage, contentsDataFilePath, threads);
+        // on the consuming thread: the reader thread only decodes, the parse pipeline and the shards read the contents it changes
+        new TransferStream(transfersDataFilePaths).forEach(transfer -> {
+            if (!transfer.isTransfer()) {
+                // the creation always comes before the transfers of an inscription
+                InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(transfer.getInscriptionId());
+                if (inscription != null) {
+                    inscription.setGenesisBlockHeight(transfer.getBlockHeight());
+                    storage.insertInscriptionContent(inscription);
                 }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+            consumer.accept(transfer);
+        });
     }
 
     /**
-     * load all contents data(json format)
+     * load all transfers data(json format), the contents are loaded before
      *
+     * @param storage  storage
      * @param filePath file path
+     * @param threads  decoding threads, see {@link ChunkedJsonReader}
      */
-    private static void loadContentFromJsonInputFile(String filePath) {
-        try (BufferedReader bufferedReader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                InscriptionContent inscription = Json.readValue(line, InscriptionContent.class);
-                MemoryCache.insertInscriptionContent(inscription);
+    private static void loadTransferFromJsonInputFile(Storage storage, String filePath, int threads) {
+        // the transfers are inserted in file order, so a content gets the height of its last creation like reading line by line
+        ChunkedJsonReader.forEach(filePath, InscriptionTransfer.class, threads, transfer -> {
+            storage.insertInscriptionTransfer(transfer);
+            String inscriptionId = transfer.getInscriptionId();
+            if (!transfer.isTransfer()) {
+                InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(inscriptionId);
+                inscription.setGenesisBlockHeight(transfer.getBlockHeight());
+                storage.insertInscriptionContent(inscription);
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        });
+    }
+
+    /**
+     * load all contents data(json format)
+     *
+     * @param storage  storage
+     * @param filePath file path
+     * @param threads  decoding threads, see {@link ChunkedJsonReader}
+     */
+    private static void loadContentFromJsonInputFile(Storage storage, String filePath, int threads) {
+        ChunkedJsonReader.forEach(filePath, InscriptionContent.class, threads, storage::insertInscriptionContent);
     }
 
 }
@@ -1,13 +1,18 @@
 package com.geniidata.ordinals.orc20.indexer.data;
 
-import com.geniidata.ordinals.orc20.indexer.utils.StringUtils;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 
 import java.math.BigDecimal;
 
 /**
  * validate the legality of string-type numbers in JSON
+ * <p>
+ * numbers are validated and parsed in a single pass over the string, without trimming or splitting it.
+ * non-ASCII characters (e.g. other scripts' digits) fall back to the Java parsers, so the accepted strings are the same.
  */
 public class NumberValidator {
+    // thrown for every rejection, spam makes them common
+    private final static DecimalsValidatorException INVALID = new DecimalsValidatorException();
 
     /**
      * 1.Not blank string
@@ -22,18 +27,7 @@ public class NumberValidator {
         if (numberString == null) {
             return null;
         }
-        if (StringUtils.isBlank(numberString)) {
-            throw new DecimalsValidatorException();
-        }
-        numberString = numberString.trim();
-        if (numberString.startsWith("+")) {
-            throw new DecimalsValidatorException();
-        }
-        try {
-            return Integer.parseInt(numberString);
-        } catch (Exception e) {
-            throw new DecimalsValidatorException();
-        }
+        return (int) parseLong(numberString, Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
     /**
@@ -49,18 +43,7 @@ public class NumberValidator {
         if (numberString == null) {
             return null;
         }
-        if (StringUtils.isBlank(numberString)) {
-            throw new DecimalsValidatorException();
-        }
-        numberString = numberString.trim();
-        if (numberString.startsWith("+")) {
-            throw new DecimalsValidatorException();
-        }
-        try {
-            return Long.parseLong(numberString);
-        } catch (Exception e) {
-            throw new DecimalsValidatorException();
-        }
+        return parseLong(numberString, Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     /**
@@ -72,36 +55,177 @@ public class NumberValidator {
      * 6.Can parse by Java BigDecimal
      *
      * @param numberString number
-     * @return a bigdecimal if valid, otherwise throw an exception
+     * @return an amount with the value and scale of the BigDecimal if valid, otherwise throw an exception
      */
-    public static BigDecimal decimalFromString(String numberString) {
+    public static Amount decimalFromString(String numberString) {
         if (numberString == null) {
             return null;
         }
-        if (StringUtils.isBlank(numberString)) {
-            throw new DecimalsValidatorException();
+        int begin = trimBegin(numberString);
+        int end = trimEnd(numberString, begin);
+        if (begin == end) {
+            throw INVALID;
+        }
+        char first = numberString.charAt(begin);
+        if (first == '+' || first == '.' || numberString.charAt(end - 1) == '.') {
+            throw INVALID;
+        }
+        int i = first == '-' ? begin + 1 : begin;
+        long unscaled = 0;
+        boolean overflow = false;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = numberString.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+                if (unscaled < Long.MAX_VALUE / 10) {
+                    unscaled = unscaled * 10 + (c - '0');
+                } else {
+                    overflow = true;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c == 'e' || c == 'E') {
+                break;
+            } else if (c >= 0x80) {
+                return parseDecimal(numberString, begin, end);
+            } else {
+                throw INVALID;
+            }
+        }
+        if (digits == 0) {
+            throw INVALID;
+        }
+        long exponent = 0;
+        if (i < end) {
+            i++; // 'e'
+            boolean negativeExponent = false;
+            if (i < end && (numberString.charAt(i) == '+' || numberString.charAt(i) == '-')) {
+                negativeExponent = numberString.charAt(i) == '-';
+                i++;
+            }
+            if (i == end) {
+                throw INVALID;
+            }
+            for (; i < end; i++) {
+                char c = numberString.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    exponent = exponent * 10 + (c - '0');
+                    if (exponent > Integer.MAX_VALUE) {
+                        throw INVALID; // BigDecimal rejects an exponent beyond an int, whatever the scale
+                    }
+                } else if (c >= 0x80) {
+                    return parseDecimal(numberString, begin, end);
+                } else {
+                    throw INVALID;
+                }
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        long scale = fractionDigits - exponent;
+        if (scale < Integer.MIN_VALUE || scale > Integer.MAX_VALUE) {
+            throw INVALID;
+        }
+        if (overflow) {
+            return parseDecimal(numberString, begin, end);
+        }
+        return Amount.valueOf(first == '-' ? -unscaled : unscaled, (int) scale);
+    }
+
+    /**
+     * the trimmed number, checked against [min, max] as Integer.parseInt or Long.parseLong
+     */
+    private static long parseLong(String numberString, long min, long max) {
+        int begin = trimBegin(numberString);
+        int end = trimEnd(numberString, begin);
+        if (begin == end || numberString.charAt(begin) == '+') {
+            throw INVALID;
         }
-        numberString = numberString.trim();
-        if (numberString.startsWith("+")) {
-            throw new DecimalsValidatorException();
+        boolean negative = numberString.charAt(begin) == '-';
+        int i = negative ? begin + 1 : begin;
+        if (i == end) {
+            throw INVALID;
         }
-        if (numberString.startsWith(".")) {
-            throw new DecimalsValidatorException();
+        // accumulate negatively like Long.parseLong, the negative range is the larger one
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            char c = numberString.charAt(i);
+            if (c < '0' || c > '9') {
+                if (c >= 0x80) {
+                    return parseLong(numberString, begin, end, min, max);
+                }
+                throw INVALID;
+            }
+            int digit = c - '0';
+            if (result < multiplyLimit) {
+                throw INVALID;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw INVALID;
+            }
+            result -= digit;
         }
-        if (numberString.endsWith(".")) {
-            throw new DecimalsValidatorException();
+        return negative ? result : -result;
+    }
+
+    private static long parseLong(String numberString, int begin, int end, long min, long max) {
+        long value;
+        try {
+            value = Long.parseLong(numberString.substring(begin, end));
+        } catch (NumberFormatException e) {
+            throw INVALID;
         }
-        String[] parts = numberString.split("\\.");
-        if (parts.length > 2) {
-            throw new DecimalsValidatorException();
+        if (value < min || value > max) {
+            throw INVALID;
         }
+        return value;
+    }
+
+    private static Amount parseDecimal(String numberString, int begin, int end) {
         try {
-            return new BigDecimal(numberString);
-        } catch (Exception e) {
-            throw new DecimalsValidatorException();
+            return Amount.valueOf(new BigDecimal(numberString.substring(begin, end)));
+        } catch (NumberFormatException e) {
+            throw INVALID;
+        }
+    }
+
+    /**
+     * bounds of String.trim
+     */
+    private static int trimBegin(String s) {
+        int begin = 0;
+        while (begin < s.length() && s.charAt(begin) <= ' ') {
+            begin++;
+        }
+        return begin;
+    }
+
+    private static int trimEnd(String s, int begin) {
+        int end = s.length();
+        while (end > begin && s.charAt(end - 1) <= ' ') {
+            end--;
         }
+        return end;
     }
 
+    /**
+     * an invalid number, without stack trace
+     */
     public static class DecimalsValidatorException extends RuntimeException {
+        private final static long serialVersionUID = 1L;
+
+        public DecimalsValidatorException() {
+            super(null, null, false, false);
+        }
     }
 }
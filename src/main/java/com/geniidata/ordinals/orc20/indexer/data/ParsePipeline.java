@@ -0,0 +1,111 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * decodes the inscription contents of upcoming transfers on a pool of worker threads,
+ * and hands the transfers to the applier in their original order, with their contents already in the {@link EventCache}.
+ * <p>
+ * only the stateless work runs ahead (json decoding, `BaseEvent.isValid`, `NumberValidator`),
+ * checks that depend on the state (e.g. decimals of the tick) stay in the applier.
+ */
+public class ParsePipeline implements Consumer<InscriptionTransfer>, AutoCloseable {
+    private final static int WINDOW_PER_THREAD = 1024;
+
+    private final Storage storage;
+    private final EventCache eventCache;
+    private final Consumer<InscriptionTransfer> applier;
+    private final ExecutorService workers;
+    private final int window;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    // decodes in the window by inscriptionId, an inscription transferred several times is decoded once
+    private final Map<String, Future<EventCache.Entry>> inFlight = new HashMap<>();
+
+    /**
+     * @param applier receives the transfers in order, on the thread calling `accept`
+     */
+    public ParsePipeline(Storage storage, EventCache eventCache, int threads, Consumer<InscriptionTransfer> applier) {
+        this.storage = storage;
+        this.eventCache = eventCache;
+        this.applier = applier;
+        this.window = threads * WINDOW_PER_THREAD;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "orc20-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void accept(InscriptionTransfer transfer) {
+        String inscriptionId = transfer.getInscriptionId();
+        Future<EventCache.Entry> future = inFlight.get(inscriptionId);
+        if (future == null && !eventCache.contains(inscriptionId)) {
+            InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(inscriptionId);
+            if (inscription != null) {
+                String content = inscription.getContentBody();
+                future = workers.submit(() -> eventCache.decode(content));
+                inFlight.put(inscriptionId, future);
+            }
+        }
+        pending.add(new Pending(transfer, future));
+        if (pending.size() > window) {
+            applyNext();
+        }
+    }
+
+    /**
+     * apply the remaining transfers
+     */
+    public void finish() {
+        while (!pending.isEmpty()) {
+            applyNext();
+        }
+    }
+
+    /**
+     * stop the workers, transfers that are not applied yet are dropped
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private void applyNext() {
+        Pending next = pending.poll();
+        if (next.future != null) {
+            String inscriptionId = next.transfer.getInscriptionId();
+            try {
+                eventCache.put(inscriptionId, next.future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            inFlight.remove(inscriptionId, next.future);
+        }
+        applier.accept(next.transfer);
+    }
+
+    private static class Pending {
+        private final InscriptionTransfer transfer;
+        private final Future<EventCache.Entry> future; // null if decoded before
+
+        Pending(InscriptionTransfer transfer, Future<EventCache.Entry> future) {
+            this.transfer = transfer;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * streams inscription transfers from files that are already ordered by (block_height, transaction_index).
+ * several files (e.g. one per block range) are merged with a k-way merge, and decoding runs on a
+ * background thread so that processing overlaps with I/O.
+ */
+public class TransferStream {
+    private final static int BATCH_SIZE = 1024;
+    private final static int QUEUE_CAPACITY = 64;
+    // marks the end of the stream
+    private final static List<InscriptionTransfer> END = new ArrayList<>();
+
+    private final List<String> filePaths;
+    private final BlockingQueue<List<InscriptionTransfer>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile Throwable failure;
+
+    /**
+     * @param filePaths ordered transfer files; on equal (block_height, transaction_index) the earlier file wins
+     */
+    public TransferStream(List<String> filePaths) {
+        this.filePaths = filePaths;
+    }
+
+    /**
+     * read all transfers in chain order and hand them to `consumer` on the calling thread
+     */
+    public void forEach(Consumer<InscriptionTransfer> consumer) {
+        Thread readerThread = new Thread(this::read, "orc20-transfer-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            while (true) {
+                List<InscriptionTransfer> batch = queue.take();
+                if (batch == END) {
+                    break;
+                }
+                batch.forEach(consumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            readerThread.interrupt();
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * k-way merge of the input files, runs on the reader thread and only decodes
+     */
+    private void read() {
+        List<Source> sources = new ArrayList<>();
+        try {
+            PriorityQueue<Source> heap = new PriorityQueue<>();
+            for (int i = 0; i < filePaths.size(); i++) {
+                Source source = new Source(filePaths.get(i), i);
+                sources.add(source);
+                if (source.advance()) {
+                    heap.add(source);
+                }
+            }
+            List<InscriptionTransfer> batch = new ArrayList<>(BATCH_SIZE);
+            while (!heap.isEmpty()) {
+                Source source = heap.poll();
+                batch.add(source.current);
+                if (batch.size() == BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+                if (source.advance()) {
+                    heap.add(source);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        } catch (InterruptedException e) {
+            return; // consumer gave up
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            for (Source source : sources) {
+                source.close();
+            }
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * one ordered input file
+     */
+    private static class Source implements Comparable<Source> {
+        private final String filePath;
+        private final int fileIndex;
+        private final BufferedReader reader;
+        private InscriptionTransfer current;
+
+        Source(String filePath, int fileIndex) throws IOException {
+            this.filePath = filePath;
+            this.fileIndex = fileIndex;
+            this.reader = InputFiles.newBufferedReader(filePath);
+        }
+
+        /**
+         * read the next transfer, the file must be ordered by (block_height, transaction_index)
+         */
+        boolean advance() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    current = null;
+                    return false;
+                }
+            } while (line.isEmpty());
+            InscriptionTransfer next = Json.readValue(line, InscriptionTransfer.class);
+            if (current != null && compare(current, next) > 0) {
+                throw new IllegalStateException("Transfers are not ordered by (blockHeight, txIndex) in " + filePath + " at " + next.getToLocation());
+            }
+            current = next;
+            return true;
+        }
+
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @Override
+        public int compareTo(Source o) {
+            int c = compare(current, o.current);
+            return c != 0 ? c : Integer.compare(fileIndex, o.fileIndex);
+        }
+
+        private static int compare(InscriptionTransfer a, InscriptionTransfer b) {
+            int c = Long.compare(a.getBlockHeight(), b.getBlockHeight());
+            return c != 0 ? c : Integer.compare(a.getTxIndex(), b.getTxIndex());
+        }
+    }
+}
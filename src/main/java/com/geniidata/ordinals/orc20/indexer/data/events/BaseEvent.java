@@ -1,10 +1,15 @@
 package com.geniidata.ordinals.orc20.indexer.data.events;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.geniidata.ordinals.orc20.indexer.data.NumberValidator;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+
 public class BaseEvent {
     protected String tick;
     protected String id;
     protected String op;
     protected String p;
+    private boolean malformed; // a number field is invalid
 
     public String getTick() {
         return tick;
@@ -42,9 +47,58 @@ public class BaseEvent {
         // required
         return getP() != null // required
                 &&
-                ("orc20".equalsIgnoreCase(getP()) || "orc-20".equalsIgnoreCase(getP())) // only orc20 or orc-20
+                isOrc20Protocol(getP()) // only orc20 or orc-20
                 &&
                 getTick() != null // required
                 && getOp() != null; // required
     }
+
+    public static boolean isOrc20Protocol(String p) {
+        return "orc20".equalsIgnoreCase(p) || "orc-20".equalsIgnoreCase(p);
+    }
+
+    /**
+     * a number field failed validation, the content is not an event of this class
+     */
+    @JsonIgnore
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * NumberValidator.decimalFromString for a setter, an invalid number marks the event malformed instead of throwing:
+     * jackson would wrap the exception into exceptions with stack traces
+     */
+    protected Amount decimalField(String value) {
+        try {
+            return NumberValidator.decimalFromString(value);
+        } catch (NumberValidator.DecimalsValidatorException e) {
+            malformed = true;
+            return null;
+        }
+    }
+
+    /**
+     * see `decimalField`
+     */
+    protected Integer intField(String value) {
+        try {
+            return NumberValidator.intFromString(value);
+        } catch (NumberValidator.DecimalsValidatorException e) {
+            malformed = true;
+            return null;
+        }
+    }
+
+    /**
+     * see `decimalField`
+     */
+    protected Long longField(String value) {
+        try {
+            return NumberValidator.longFromString(value);
+        } catch (NumberValidator.DecimalsValidatorException e) {
+            malformed = true;
+            return null;
+        }
+    }
 }
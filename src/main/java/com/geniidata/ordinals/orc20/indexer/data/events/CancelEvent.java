@@ -7,8 +7,6 @@ import com.geniidata.ordinals.orc20.indexer.utils.Json;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.longFromString;
-
 /**
  * https://docs.orc20.org/operations#cancel-event
  */
@@ -27,7 +25,7 @@ public class CancelEvent extends BaseEvent {
             this.n = new ArrayList<>();
             for (String nonce : noncesList) {
                 // validate number
-                Long longN = longFromString(nonce);
+                Long longN = longField(nonce);
                 if (this.n.contains(longN)) {
                     continue;
                 }
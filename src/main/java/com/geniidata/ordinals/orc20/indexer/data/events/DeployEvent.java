@@ -1,11 +1,7 @@
 package com.geniidata.ordinals.orc20.indexer.data.events;
 
 import com.geniidata.ordinals.orc20.indexer.contants.OIP;
-
-import java.math.BigDecimal;
-
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.decimalFromString;
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.intFromString;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 
 /**
  * https://docs.orc20.org/operations#deploy-or-migrate-event
@@ -13,8 +9,8 @@ import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.intFromS
 public class DeployEvent extends BaseEvent {
     private Boolean ug = OIP.DEPLOY_UPGRADABLE_DEFAULT;
     private Boolean wp = OIP.DEPLOY_WP_DEFAULT;
-    private BigDecimal max = OIP.DEPLOY_MAX_UINT256;
-    private BigDecimal lim = OIP.DEPLOY_MIN_DEFAULT;
+    private Amount max = OIP.DEPLOY_MAX_UINT256;
+    private Amount lim = OIP.DEPLOY_MIN_DEFAULT;
     private Integer dec = OIP.DEPLOY_DEC_DEFAULT;
 
     public Boolean getUg() {
@@ -33,20 +29,20 @@ public class DeployEvent extends BaseEvent {
         this.wp = wp;
     }
 
-    public BigDecimal getMax() {
+    public Amount getMax() {
         return max;
     }
 
     public void setMax(String max) {
-        this.max = decimalFromString(max);
+        this.max = decimalField(max);
     }
 
-    public BigDecimal getLim() {
+    public Amount getLim() {
         return lim;
     }
 
     public void setLim(String lim) {
-        this.lim = decimalFromString(lim);
+        this.lim = decimalField(lim);
     }
 
     public Integer getDec() {
@@ -54,7 +50,7 @@ public class DeployEvent extends BaseEvent {
     }
 
     public void setDec(String dec) {
-        this.dec = intFromString(dec);
+        this.dec = intField(dec);
     }
 
     @Override
@@ -1,28 +1,26 @@
 package com.geniidata.ordinals.orc20.indexer.data.events;
 
-import java.math.BigDecimal;
-
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.decimalFromString;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 
 /**
  * https://docs.orc20.org/operations#mint-event
  */
 public class MintEvent extends BaseEvent {
-    private BigDecimal amt;
+    private Amount amt;
 
-    public BigDecimal getAmt() {
+    public Amount getAmt() {
         return amt;
     }
 
     public void setAmt(String amt) {
         // validate number
-        this.amt = decimalFromString(amt);
+        this.amt = decimalField(amt);
     }
 
     @Override
     public boolean isValid() {
         return super.isValid() && getId() != null
                 && getAmt() != null
-                && getAmt().compareTo(BigDecimal.ZERO) >= 0;
+                && getAmt().signum() >= 0;
     }
 }
@@ -1,25 +1,22 @@
 package com.geniidata.ordinals.orc20.indexer.data.events;
 
-import java.math.BigDecimal;
-
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.decimalFromString;
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.longFromString;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 
 /**
  * https://docs.orc20.org/operations#send-event
  */
 public class SendEvent extends BaseEvent {
 
-    private BigDecimal amt;
+    private Amount amt;
     private Long n;
 
-    public BigDecimal getAmt() {
+    public Amount getAmt() {
         return amt;
     }
 
     public void setAmt(String amt) {
         // validate number
-        this.amt = decimalFromString(amt);
+        this.amt = decimalField(amt);
     }
 
     public Long getN() {
@@ -27,12 +24,12 @@ public class SendEvent extends BaseEvent {
     }
 
     public void setN(String n) {
-        this.n = longFromString(n);
+        this.n = longField(n);
     }
 
     @Override
     public boolean isValid() {
         return super.isValid() && getId() != null && getN() != null
-                && (getAmt() == null || getAmt().compareTo(BigDecimal.ZERO) >= 0);
+                && (getAmt() == null || getAmt().signum() >= 0);
     }
 }
@@ -1,35 +1,32 @@
 package com.geniidata.ordinals.orc20.indexer.data.events;
 
-import java.math.BigDecimal;
-
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.decimalFromString;
-import static com.geniidata.ordinals.orc20.indexer.data.NumberValidator.intFromString;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 
 /**
  * https://docs.orc20.org/operations#upgrade-event
  */
 public class UpgradeEvent extends BaseEvent {
-    private BigDecimal max;
-    private BigDecimal lim;
+    private Amount max;
+    private Amount lim;
     private Integer dec;
     private Boolean ug;
 
-    public BigDecimal getMax() {
+    public Amount getMax() {
         return max;
     }
 
     public void setMax(String max) {
         // validate number
-        this.max = decimalFromString(max);
+        this.max = decimalField(max);
     }
 
-    public BigDecimal getLim() {
+    public Amount getLim() {
         return lim;
     }
 
     public void setLim(String lim) {
         // validate number
-        this.lim = decimalFromString(lim);
+        this.lim = decimalField(lim);
     }
 
     public Integer getDec() {
@@ -38,7 +35,7 @@ public class UpgradeEvent extends BaseEvent {
 
     public void setDec(String dec) {
         // validate number
-        this.dec = intFromString(dec);
+        this.dec = intField(dec);
     }
 
     public Boolean getUg() {
@@ -3,26 +3,24 @@ package com.geniidata.ordinals.orc20.indexer.model;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
 import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 import com.geniidata.ordinals.orc20.indexer.utils.Json;
 import lombok.Data;
-
-import java.math.BigDecimal;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 public class Orc20Balance {
     private String tickId; // PrimaryKey
     private String tick;
     private String inscriptionId; // PrimaryKey
-    private BigDecimal balance;
+    private Amount balance;
     private String address; // PrimaryKey
     private String creator; // only used to track the pending "inscribe-send" and "transfer-send"
     private long nonce;
     private BalanceStatus balanceStatus;
     private OP op;
 
-    private Orc20Balance() {
-    }
-
     // copy
     public Orc20Balance(Orc20Balance orc20Balance) {
         this.setTickId(orc20Balance.getTickId());
@@ -59,7 +57,7 @@ public class Orc20Balance {
         orc20Balance.setTickId(orc20Metadata.getTickId());
         orc20Balance.setInscriptionId(""); // no inscription maintains the "credit balance"
         orc20Balance.setAddress(address);
-        orc20Balance.setBalance(BigDecimal.ZERO);
+        orc20Balance.setBalance(Amount.ZERO);
         return orc20Balance;
     }
 
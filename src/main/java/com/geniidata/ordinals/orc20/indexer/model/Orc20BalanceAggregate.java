@@ -0,0 +1,21 @@
+package com.geniidata.ordinals.orc20.indexer.model;
+
+import com.geniidata.ordinals.orc20.indexer.utils.DecimalSum;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * running totals of the balances of a (tickId, address), maintained by the storage
+ */
+@Data
+public class Orc20BalanceAggregate {
+    private DecimalSum okBalance = new DecimalSum(); // "OK" balances held by the address
+    private DecimalSum pendingBalance = new DecimalSum(); // "SEND_PENDING" balances created by the address
+    private Map<Long, Integer> pendingNonces = new HashMap<>(); // nonce -> number of "SEND_PENDING" balances
+
+    public boolean isEmpty() {
+        return okBalance.count() == 0 && pendingBalance.count() == 0;
+    }
+}
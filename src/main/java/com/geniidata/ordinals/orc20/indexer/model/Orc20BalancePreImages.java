@@ -0,0 +1,14 @@
+package com.geniidata.ordinals.orc20.indexer.model;
+
+import lombok.Data;
+
+import java.util.TreeMap;
+
+/**
+ * states of a balance row kept for the balance snapshots, maintained by the storage
+ */
+@Data
+public class Orc20BalancePreImages {
+    // snapshot height -> the row before its first change after the snapshot, null if the row did not exist
+    private TreeMap<Long, Orc20Balance> images = new TreeMap<>();
+}
@@ -0,0 +1,17 @@
+package com.geniidata.ordinals.orc20.indexer.model;
+
+import com.geniidata.ordinals.orc20.indexer.utils.DecimalSum;
+import lombok.Data;
+
+/**
+ * "OK" balances held by a (tickId, address), split into cash and credit, maintained by the storage
+ */
+@Data
+public class Orc20BalanceSummary {
+    private DecimalSum cashBalance = new DecimalSum(); // balances of inscriptions
+    private DecimalSum creditBalance = new DecimalSum(); // the "credit balance" (OP._VIRTUAL_CREDIT_)
+
+    public boolean isEmpty() {
+        return cashBalance.count() == 0 && creditBalance.count() == 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.geniidata.ordinals.orc20.indexer.model;
+
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * "OK" balance of a (tickId, address) from the transfer at (blockHeight, txIndex) until the next version, maintained by the storage
+ */
+@Data
+@NoArgsConstructor
+public class Orc20BalanceVersion {
+    private long blockHeight;
+    private int txIndex;
+    private Amount balance;
+
+    public Orc20BalanceVersion(long blockHeight, int txIndex, Amount balance) {
+        this.setBlockHeight(blockHeight);
+        this.setTxIndex(txIndex);
+        this.setBalance(balance);
+    }
+}
@@ -5,12 +5,13 @@ import com.geniidata.ordinals.orc20.indexer.enums.EventErrCode;
 import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
 import com.geniidata.ordinals.orc20.indexer.enums.EventType;
 import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 import com.geniidata.ordinals.orc20.indexer.utils.Json;
 import lombok.Data;
-
-import java.math.BigDecimal;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 public class Orc20Event {
     private String eventId; // primary key
     private String tickId;
@@ -25,7 +26,7 @@ public class Orc20Event {
     private String creator; // only used to track the pending "inscribe-send" and "transfer-send"
     private EventStatus eventStatus;
     private EventErrCode eventErrCode;
-    private BigDecimal amount;
+    private Amount amount;
     private String extData;
     private String txId;
     private int txIndex;
@@ -2,12 +2,13 @@ package com.geniidata.ordinals.orc20.indexer.model;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.geniidata.ordinals.orc20.indexer.data.events.DeployEvent;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
 import com.geniidata.ordinals.orc20.indexer.utils.Json;
 import lombok.Data;
-
-import java.math.BigDecimal;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 public class Orc20Metadata {
     private String tickId; // primaryKey
     private String tick;
@@ -16,9 +17,9 @@ public class Orc20Metadata {
     private long inscriptionNumber;
     private String deployer;
     private long deployTime;
-    private BigDecimal max;
-    private BigDecimal minted;
-    private BigDecimal limit;
+    private Amount max;
+    private Amount minted;
+    private Amount limit;
     private int decimals;
     private long lastMintTime;
     private boolean upgradeable;
@@ -43,7 +44,7 @@ public class Orc20Metadata {
         this.setDeployer(inscriptionTransfer.getToAddress());
         this.setDeployTime(inscriptionTransfer.getBlockTime());
         this.setLastMintTime(0);
-        this.setMinted(BigDecimal.ZERO);
+        this.setMinted(Amount.ZERO);
     }
 
     @Override
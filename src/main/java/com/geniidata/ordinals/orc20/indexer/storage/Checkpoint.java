@@ -0,0 +1,150 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * binary checkpoint of the indexer state at a block height: all tables and indexes of a {@link MemoryCache}.
+ * <p>
+ * file layout: magic, version, isOIP10BackedUp, tables (see `MemoryCache.writeTables`), crc32 of everything before.
+ * files are named by block height, a corrupted latest checkpoint falls back to the previous one.
+ */
+public class Checkpoint {
+    private final static Logger logger = Logger.getLogger("orc20");
+    private final static long MAGIC = 0x4f52433230434b50L; // "ORC20CKP"
+    private final static int VERSION = 7; // 2: balance aggregates, 3: copy-on-write balance snapshots, 4: balance history, 5: balance summaries, 6: pending-send indexes, 7: upgrade event index
+    private final static String PREFIX = "checkpoint-";
+    private final static String SUFFIX = ".bin";
+    private final static int KEEP = 2;
+    private final static int BUFFER_SIZE = 1 << 20;
+
+    private final long blockHeight;
+    private final boolean oip10BackedUp;
+
+    private Checkpoint(long blockHeight, boolean oip10BackedUp) {
+        this.blockHeight = blockHeight;
+        this.oip10BackedUp = oip10BackedUp;
+    }
+
+    public long getBlockHeight() {
+        return blockHeight;
+    }
+
+    public boolean isOIP10BackedUp() {
+        return oip10BackedUp;
+    }
+
+    /**
+     * write the state committed in `storage`, keeps the latest checkpoints only
+     */
+    public static void write(Path dir, MemoryCache storage, boolean isOIP10BackedUp) {
+        long blockHeight = storage.committedBlockHeight();
+        try {
+            Files.createDirectories(dir);
+            Path file = dir.resolve(String.format("%s%010d%s", PREFIX, blockHeight, SUFFIX));
+            Path tmp = dir.resolve(file.getFileName() + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp.toFile())) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeBoolean(isOIP10BackedUp);
+                storage.writeTables(out);
+                out.flush();
+                new DataOutputStream(fileOut).writeLong(checked.getChecksum().getValue()); // not part of the checksum
+                fileOut.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            List<Path> checkpoints = list(dir);
+            for (int i = KEEP; i < checkpoints.size(); i++) {
+                Files.delete(checkpoints.get(i));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * load the latest valid checkpoint of `dir` into `storage`
+     *
+     * @return null if there is none
+     */
+    public static Checkpoint readLatest(Path dir, MemoryCache storage) {
+        if (!Files.isDirectory(dir)) {
+            return null;
+        }
+        try {
+            for (Path file : list(dir)) {
+                try {
+                    return read(file, storage);
+                } catch (IOException e) {
+                    logger.warning("Skip invalid checkpoint " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return null;
+    }
+
+    private static Checkpoint read(Path file, MemoryCache storage) throws IOException {
+        verify(file); // before decoding, garbage could make huge allocations
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("not a checkpoint");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version);
+            }
+            boolean isOIP10BackedUp = in.readBoolean();
+            storage.readTables(in);
+            return new Checkpoint(storage.committedBlockHeight(), isOIP10BackedUp);
+        }
+    }
+
+    /**
+     * check the trailing crc32
+     */
+    private static void verify(Path file) throws IOException {
+        long length = Files.size(file) - 8;
+        if (length < 0) {
+            throw new IOException("truncated");
+        }
+        try (InputStream fileIn = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            CheckedInputStream checked = new CheckedInputStream(fileIn, new CRC32());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (long remaining = length; remaining > 0; ) {
+                int n = checked.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                remaining -= n;
+            }
+            if (new DataInputStream(fileIn).readLong() != checked.getChecksum().getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+        }
+    }
+
+    /**
+     * checkpoint files, latest first
+     */
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted((a, b) -> b.getFileName().toString().compareTo(a.getFileName().toString())).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * binary encoding of keys/values of persistent tables and checkpoints
+ */
+public interface Codec<T> {
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,515 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.enums.*;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceAggregate;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalancePreImages;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceSummary;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceVersion;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Metadata;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import com.geniidata.ordinals.orc20.indexer.utils.DecimalSum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * codecs of the indexer tables
+ * enums are encoded by ordinal, new constants must be appended.
+ */
+public class Codecs {
+    private final static byte NULL = 0;
+    private final static byte STRING = 1;
+    private final static byte LONG = 2;
+    private final static byte EVENT_TYPE = 3;
+
+    public final static Codec<String> STRING_CODEC = new Codec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            writeString(out, value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return readSymbol(in); // keys and index entries are identifiers
+        }
+    };
+
+    public final static Codec<Integer> INT_CODEC = new Codec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer value) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public final static Codec<Long> LONG_CODEC = new Codec<Long>() {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    public final static Codec<IndexKey> INDEX_KEY_CODEC = new Codec<IndexKey>() {
+        @Override
+        public void write(DataOutput out, IndexKey value) throws IOException {
+            int arity = value.arity();
+            out.writeByte(arity);
+            for (int i = 0; i < arity; i++) {
+                Object component = value.get(i);
+                if (component == null) {
+                    out.writeByte(NULL);
+                } else if (component instanceof String) {
+                    out.writeByte(STRING);
+                    writeString(out, (String) component);
+                } else if (component instanceof Long) {
+                    out.writeByte(LONG);
+                    out.writeLong((Long) component);
+                } else if (component instanceof EventType) {
+                    out.writeByte(EVENT_TYPE);
+                    out.writeByte(((EventType) component).ordinal());
+                } else {
+                    throw new IllegalArgumentException("Unsupported key component: " + component.getClass());
+                }
+            }
+        }
+
+        @Override
+        public IndexKey read(DataInput in) throws IOException {
+            int arity = in.readByte();
+            Object[] components = new Object[arity];
+            for (int i = 0; i < arity; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case NULL:
+                        break;
+                    case STRING:
+                        components[i] = readSymbol(in);
+                        break;
+                    case LONG:
+                        components[i] = in.readLong();
+                        break;
+                    case EVENT_TYPE:
+                        components[i] = EventType.values()[in.readByte()];
+                        break;
+                    default:
+                        throw new IOException("Unknown key component type: " + type);
+                }
+            }
+            return arity == 2 ? IndexKey.of(components[0], components[1]) : IndexKey.of(components[0], components[1], components[2]);
+        }
+    };
+
+    public final static Codec<Orc20Event> EVENT_CODEC = new Codec<Orc20Event>() {
+        @Override
+        public void write(DataOutput out, Orc20Event value) throws IOException {
+            writeString(out, value.getEventId());
+            writeString(out, value.getTickId());
+            writeString(out, value.getTick());
+            writeString(out, value.getInscriptionId());
+            out.writeLong(value.getInscriptionNumber());
+            writeString(out, value.getFromAddress());
+            writeString(out, value.getToAddress());
+            writeEnum(out, value.getEventType());
+            writeEnum(out, value.getOp());
+            out.writeLong(value.getNonce());
+            writeString(out, value.getCreator());
+            writeEnum(out, value.getEventStatus());
+            writeEnum(out, value.getEventErrCode());
+            writeAmount(out, value.getAmount());
+            writeString(out, value.getExtData());
+            writeString(out, value.getTxId());
+            out.writeInt(value.getTxIndex());
+            out.writeLong(value.getBlockTime());
+            out.writeLong(value.getBlockHeight());
+        }
+
+        @Override
+        public Orc20Event read(DataInput in) throws IOException {
+            Orc20Event value = new Orc20Event();
+            value.setEventId(readSymbol(in));
+            value.setTickId(readSymbol(in));
+            value.setTick(readSymbol(in));
+            value.setInscriptionId(readSymbol(in));
+            value.setInscriptionNumber(in.readLong());
+            value.setFromAddress(readSymbol(in));
+            value.setToAddress(readSymbol(in));
+            value.setEventType(readEnum(in, EventType.values()));
+            value.setOp(readEnum(in, OP.values()));
+            value.setNonce(in.readLong());
+            value.setCreator(readSymbol(in));
+            value.setEventStatus(readEnum(in, EventStatus.values()));
+            value.setEventErrCode(readEnum(in, EventErrCode.values()));
+            value.setAmount(readAmount(in));
+            value.setExtData(readString(in));
+            value.setTxId(readString(in));
+            value.setTxIndex(in.readInt());
+            value.setBlockTime(in.readLong());
+            value.setBlockHeight(in.readLong());
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20Balance> BALANCE_CODEC = new Codec<Orc20Balance>() {
+        @Override
+        public void write(DataOutput out, Orc20Balance value) throws IOException {
+            writeString(out, value.getTickId());
+            writeString(out, value.getTick());
+            writeString(out, value.getInscriptionId());
+            writeAmount(out, value.getBalance());
+            writeString(out, value.getAddress());
+            writeString(out, value.getCreator());
+            out.writeLong(value.getNonce());
+            writeEnum(out, value.getBalanceStatus());
+            writeEnum(out, value.getOp());
+        }
+
+        @Override
+        public Orc20Balance read(DataInput in) throws IOException {
+            Orc20Balance value = new Orc20Balance();
+            value.setTickId(readSymbol(in));
+            value.setTick(readSymbol(in));
+            value.setInscriptionId(readSymbol(in));
+            value.setBalance(readAmount(in));
+            value.setAddress(readSymbol(in));
+            value.setCreator(readSymbol(in));
+            value.setNonce(in.readLong());
+            value.setBalanceStatus(readEnum(in, BalanceStatus.values()));
+            value.setOp(readEnum(in, OP.values()));
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20Metadata> METADATA_CODEC = new Codec<Orc20Metadata>() {
+        @Override
+        public void write(DataOutput out, Orc20Metadata value) throws IOException {
+            writeString(out, value.getTickId());
+            writeString(out, value.getTick());
+            writeString(out, value.getDeployId());
+            writeString(out, value.getInscriptionId());
+            out.writeLong(value.getInscriptionNumber());
+            writeString(out, value.getDeployer());
+            out.writeLong(value.getDeployTime());
+            writeAmount(out, value.getMax());
+            writeAmount(out, value.getMinted());
+            writeAmount(out, value.getLimit());
+            out.writeInt(value.getDecimals());
+            out.writeLong(value.getLastMintTime());
+            out.writeBoolean(value.isUpgradeable());
+            writeString(out, value.getContent());
+            out.writeLong(value.getUpgradeTime());
+            out.writeBoolean(value.isWrapped());
+        }
+
+        @Override
+        public Orc20Metadata read(DataInput in) throws IOException {
+            Orc20Metadata value = new Orc20Metadata();
+            value.setTickId(readSymbol(in));
+            value.setTick(readSymbol(in));
+            value.setDeployId(readSymbol(in));
+            value.setInscriptionId(readSymbol(in));
+            value.setInscriptionNumber(in.readLong());
+            value.setDeployer(readSymbol(in));
+            value.setDeployTime(in.readLong());
+            value.setMax(readAmount(in));
+            value.setMinted(readAmount(in));
+            value.setLimit(readAmount(in));
+            value.setDecimals(in.readInt());
+            value.setLastMintTime(in.readLong());
+            value.setUpgradeable(in.readBoolean());
+            value.setContent(readString(in));
+            value.setUpgradeTime(in.readLong());
+            value.setWrapped(in.readBoolean());
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20BalanceAggregate> BALANCE_AGGREGATE_CODEC = new Codec<Orc20BalanceAggregate>() {
+        @Override
+        public void write(DataOutput out, Orc20BalanceAggregate value) throws IOException {
+            writeDecimalSum(out, value.getOkBalance());
+            writeDecimalSum(out, value.getPendingBalance());
+            out.writeInt(value.getPendingNonces().size());
+            for (Map.Entry<Long, Integer> e : value.getPendingNonces().entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeInt(e.getValue());
+            }
+        }
+
+        @Override
+        public Orc20BalanceAggregate read(DataInput in) throws IOException {
+            Orc20BalanceAggregate value = new Orc20BalanceAggregate();
+            value.setOkBalance(readDecimalSum(in));
+            value.setPendingBalance(readDecimalSum(in));
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                value.getPendingNonces().put(in.readLong(), in.readInt());
+            }
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20BalanceSummary> BALANCE_SUMMARY_CODEC = new Codec<Orc20BalanceSummary>() {
+        @Override
+        public void write(DataOutput out, Orc20BalanceSummary value) throws IOException {
+            writeDecimalSum(out, value.getCashBalance());
+            writeDecimalSum(out, value.getCreditBalance());
+        }
+
+        @Override
+        public Orc20BalanceSummary read(DataInput in) throws IOException {
+            Orc20BalanceSummary value = new Orc20BalanceSummary();
+            value.setCashBalance(readDecimalSum(in));
+            value.setCreditBalance(readDecimalSum(in));
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20BalancePreImages> BALANCE_PRE_IMAGES_CODEC = new Codec<Orc20BalancePreImages>() {
+        @Override
+        public void write(DataOutput out, Orc20BalancePreImages value) throws IOException {
+            out.writeInt(value.getImages().size());
+            for (Map.Entry<Long, Orc20Balance> e : value.getImages().entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeBoolean(e.getValue() != null);
+                if (e.getValue() != null) {
+                    BALANCE_CODEC.write(out, e.getValue());
+                }
+            }
+        }
+
+        @Override
+        public Orc20BalancePreImages read(DataInput in) throws IOException {
+            Orc20BalancePreImages value = new Orc20BalancePreImages();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                long snapshotHeight = in.readLong();
+                value.getImages().put(snapshotHeight, in.readBoolean() ? BALANCE_CODEC.read(in) : null);
+            }
+            return value;
+        }
+    };
+
+    public final static Codec<Orc20BalanceVersion> BALANCE_VERSION_CODEC = new Codec<Orc20BalanceVersion>() {
+        @Override
+        public void write(DataOutput out, Orc20BalanceVersion value) throws IOException {
+            out.writeLong(value.getBlockHeight());
+            out.writeInt(value.getTxIndex());
+            writeAmount(out, value.getBalance());
+        }
+
+        @Override
+        public Orc20BalanceVersion read(DataInput in) throws IOException {
+            return new Orc20BalanceVersion(in.readLong(), in.readInt(), readAmount(in));
+        }
+    };
+
+    public final static Codec<Set<String>> STRING_SET_CODEC = setCodec(STRING_CODEC);
+
+    public final static Codec<Set<IndexKey>> INDEX_KEY_SET_CODEC = setCodec(INDEX_KEY_CODEC);
+
+    public static <T> Codec<Set<T>> setCodec(Codec<T> elementCodec) {
+        return new Codec<Set<T>>() {
+            @Override
+            public void write(DataOutput out, Set<T> value) throws IOException {
+                out.writeInt(value.size());
+                for (T element : value) {
+                    elementCodec.write(out, element);
+                }
+            }
+
+            @Override
+            public Set<T> read(DataInput in) throws IOException {
+                int size = in.readInt();
+                Set<T> value = new HashSet<>(Math.max(16, size * 4 / 3 + 1));
+                for (int i = 0; i < size; i++) {
+                    value.add(elementCodec.read(in));
+                }
+                return value;
+            }
+        };
+    }
+
+    public static <T> Codec<List<T>> listCodec(Codec<T> elementCodec) {
+        return new Codec<List<T>>() {
+            @Override
+            public void write(DataOutput out, List<T> value) throws IOException {
+                out.writeInt(value.size());
+                for (T element : value) {
+                    elementCodec.write(out, element);
+                }
+            }
+
+            @Override
+            public List<T> read(DataInput in) throws IOException {
+                int size = in.readInt();
+                List<T> value = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    value.add(elementCodec.read(in));
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * a pair, e.g. a composite key whose first part is itself a composite key
+     */
+    public static <A, B> Codec<Map.Entry<A, B>> pairCodec(Codec<A> firstCodec, Codec<B> secondCodec) {
+        return new Codec<Map.Entry<A, B>>() {
+            @Override
+            public void write(DataOutput out, Map.Entry<A, B> value) throws IOException {
+                firstCodec.write(out, value.getKey());
+                secondCodec.write(out, value.getValue());
+            }
+
+            @Override
+            public Map.Entry<A, B> read(DataInput in) throws IOException {
+                return new AbstractMap.SimpleImmutableEntry<>(firstCodec.read(in), secondCodec.read(in));
+            }
+        };
+    }
+
+    public static <K, V> Codec<Map<K, V>> mapCodec(Codec<K> keyCodec, Codec<V> valueCodec) {
+        return new Codec<Map<K, V>>() {
+            @Override
+            public void write(DataOutput out, Map<K, V> value) throws IOException {
+                out.writeInt(value.size());
+                for (Map.Entry<K, V> e : value.entrySet()) {
+                    keyCodec.write(out, e.getKey());
+                    valueCodec.write(out, e.getValue());
+                }
+            }
+
+            @Override
+            public Map<K, V> read(DataInput in) throws IOException {
+                int size = in.readInt();
+                Map<K, V> value = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+                for (int i = 0; i < size; i++) {
+                    value.put(keyCodec.read(in), valueCodec.read(in));
+                }
+                return value;
+            }
+        };
+    }
+
+    /**
+     * nullable UTF-8 string of any length
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * nullable string of an identifier, the canonical instance if the tables are read by a storage with a {@link SymbolTable}
+     */
+    public static String readSymbol(DataInput in) throws IOException {
+        String value = readString(in);
+        return in instanceof SymbolTable.Input ? ((SymbolTable.Input) in).intern(value) : value;
+    }
+
+    /**
+     * nullable amount, keeps the scale.
+     * the unscaled value is written like BigInteger.toByteArray, so the encoding is the one of a BigDecimal
+     */
+    public static void writeAmount(DataOutput out, Amount value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        if (value.fitsInLong()) {
+            long unscaled = value.longUnscaledValue();
+            // two's complement bytes with a sign bit, as in BigInteger.toByteArray
+            int length = (Long.SIZE - Long.numberOfLeadingZeros(unscaled < 0 ? ~unscaled : unscaled)) / 8 + 1;
+            out.writeInt(length);
+            for (int i = length - 1; i >= 0; i--) {
+                out.write((int) (unscaled >>> (i * 8)));
+            }
+        } else {
+            byte[] unscaled = value.unscaledValue().toByteArray();
+            out.writeInt(unscaled.length);
+            out.write(unscaled);
+        }
+        out.writeInt(value.scale());
+    }
+
+    public static Amount readAmount(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length <= Long.BYTES) {
+            long unscaled = in.readByte(); // sign extended
+            for (int i = 1; i < length; i++) {
+                unscaled = unscaled << 8 | in.readUnsignedByte();
+            }
+            return Amount.valueOf(unscaled, in.readInt());
+        }
+        byte[] unscaled = new byte[length];
+        in.readFully(unscaled);
+        return Amount.valueOf(new BigInteger(unscaled), in.readInt());
+    }
+
+    public static void writeDecimalSum(DataOutput out, DecimalSum value) throws IOException {
+        writeAmount(out, value.value());
+        out.writeInt(value.count());
+        out.writeInt(value.scales().size());
+        for (Map.Entry<Integer, Integer> e : value.scales().entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue());
+        }
+    }
+
+    public static DecimalSum readDecimalSum(DataInput in) throws IOException {
+        Amount sum = readAmount(in);
+        int count = in.readInt();
+        int size = in.readInt();
+        Map<Integer, Integer> scales = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            scales.put(in.readInt(), in.readInt());
+        }
+        return DecimalSum.of(sum, count, scales);
+    }
+
+    /**
+     * nullable enum
+     */
+    public static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    public static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+}
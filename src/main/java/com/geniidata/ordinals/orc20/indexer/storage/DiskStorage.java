@@ -0,0 +1,236 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Disk-backed storage, the tables are {@link SegmentTable}s in `dir` and are reopened on restart.
+ * a set index is kept as one row per member in three tables, see {@link RowSetIndex}.
+ * the inscription contents are kept in a {@link MappedContentTable} in `dir`.
+ * <p>
+ * `commit` writes the changes of a block to the segments, every `syncInterval` blocks (and on close)
+ * the tables whose segments are mostly overwritten records are compacted, the segments and indexes are flushed to disk
+ * and the MANIFEST records the committed block height. after a crash, data written after the last MANIFEST is discarded.
+ * <p>
+ * the MANIFEST also records the layout of the tables. tables are not migrated: a store of another layout is rejected
+ * and must be rebuilt from the input.
+ */
+public class DiskStorage extends MemoryCache {
+    public final static int DEFAULT_SYNC_INTERVAL = 100;
+
+    private final static String MANIFEST = "MANIFEST";
+    private final static String LOCK = "LOCK";
+    private final static String CONTENTS = "inscription_content.dat"; // scratch, loaded from the input on every run
+    private final static String COMMIT_SEQ = "commitSeq";
+    private final static String BLOCK_HEIGHT = "blockHeight";
+    private final static String LAYOUT = "layout";
+    private final static int LAYOUT_VERSION = 3; // 2: set indexes as member rows, compacted segments. 3: balance versions as rows
+
+    private final Tables tables;
+    private final int syncInterval;
+    private long committedBlockHeight;
+    private long pendingBlockHeight;
+    private int pendingBlocks;
+
+    public DiskStorage(Path dir) {
+        this(dir, DEFAULT_SYNC_INTERVAL);
+    }
+
+    public DiskStorage(Path dir, int syncInterval) {
+        this(new Tables(dir), syncInterval);
+    }
+
+    private DiskStorage(Tables tables, int syncInterval) {
+        super(tables, new MappedContentTable(tables.dir.resolve(CONTENTS), MappedContentTable.DEFAULT_HOT_CACHE_SIZE), null); // the rows are encoded in the tables
+        this.tables = tables;
+        this.syncInterval = syncInterval;
+        this.committedBlockHeight = Long.parseLong(tables.manifest.getProperty(BLOCK_HEIGHT, "-1"));
+        this.pendingBlockHeight = committedBlockHeight;
+    }
+
+    @Override
+    public void commit(long blockHeight) {
+        super.commit(blockHeight);
+        try {
+            for (SegmentTable<?, ?> table : tables.tables.values()) {
+                table.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        pendingBlockHeight = blockHeight;
+        if (++pendingBlocks >= syncInterval) {
+            sync();
+        }
+    }
+
+    /**
+     * the committed blocks are synced first, so the undo records start at the durable block height
+     */
+    @Override
+    public void setUndoDepth(int depth) {
+        if (pendingBlocks > 0) {
+            sync();
+        }
+        super.setUndoDepth(depth);
+    }
+
+    /**
+     * the reverted state is synced
+     */
+    @Override
+    public void rollbackTo(long blockHeight) {
+        super.rollbackTo(blockHeight);
+        try {
+            for (SegmentTable<?, ?> table : tables.tables.values()) {
+                table.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        pendingBlockHeight = Math.min(pendingBlockHeight, blockHeight);
+        sync();
+    }
+
+    @Override
+    public long committedBlockHeight() {
+        return committedBlockHeight;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (pendingBlocks > 0) {
+                sync();
+            }
+            for (SegmentTable<?, ?> table : tables.tables.values()) {
+                table.close();
+            }
+            super.close();
+            tables.lock.release();
+            tables.lock.channel().close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * make the committed blocks durable
+     */
+    private void sync() {
+        Properties manifest = tables.manifest;
+        long commitSeq = Long.parseLong(manifest.getProperty(COMMIT_SEQ, "0")) + 1;
+        try {
+            for (Map.Entry<String, SegmentTable<?, ?>> e : tables.tables.entrySet()) {
+                SegmentTable<?, ?> table = e.getValue();
+                if (table.needsCompaction()) {
+                    table.compact();
+                }
+                table.sync(commitSeq);
+                manifest.setProperty(e.getKey() + ".base", String.valueOf(table.baseSegment()));
+                manifest.setProperty(e.getKey() + ".segment", String.valueOf(table.activeSegment()));
+                manifest.setProperty(e.getKey() + ".length", String.valueOf(table.activeLength()));
+                manifest.setProperty(e.getKey() + ".records", String.valueOf(table.records()));
+            }
+            manifest.setProperty(COMMIT_SEQ, String.valueOf(commitSeq));
+            manifest.setProperty(BLOCK_HEIGHT, String.valueOf(pendingBlockHeight));
+            Path tmp = tables.dir.resolve(MANIFEST + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                manifest.store(out, null);
+                channel.force(true);
+            }
+            Files.move(tmp, tables.dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (SegmentTable<?, ?> table : tables.tables.values()) {
+                table.deleteObsoleteSegments();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        committedBlockHeight = pendingBlockHeight;
+        pendingBlocks = 0;
+    }
+
+    /**
+     * opens the tables of `dir` at the state recorded in its MANIFEST
+     */
+    private static class Tables implements TableFactory {
+        private final Path dir;
+        private final FileLock lock;
+        private final Properties manifest = new Properties();
+        private final Map<String, SegmentTable<?, ?>> tables = new LinkedHashMap<>();
+
+        Tables(Path dir) {
+            this.dir = dir;
+            try {
+                Files.createDirectories(dir);
+                FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                lock = lockChannel.tryLock();
+                if (lock == null) {
+                    lockChannel.close();
+                    throw new IllegalStateException("Storage is in use by another process: " + dir);
+                }
+                Path manifestPath = dir.resolve(MANIFEST);
+                if (Files.exists(manifestPath)) {
+                    try (InputStream in = Files.newInputStream(manifestPath)) {
+                        manifest.load(in);
+                    }
+                    String layout = manifest.getProperty(LAYOUT, "1");
+                    if (!String.valueOf(LAYOUT_VERSION).equals(layout)) {
+                        lock.release();
+                        lockChannel.close();
+                        throw new IllegalStateException("Storage layout " + layout + " is not " + LAYOUT_VERSION + ", rebuild it from the input: " + dir);
+                    }
+                }
+                manifest.setProperty(LAYOUT, String.valueOf(LAYOUT_VERSION));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <K, V> SegmentTable<K, V> createTable(String name, Codec<K> keyCodec, Codec<V> valueCodec) {
+            long commitSeq = Long.parseLong(manifest.getProperty(COMMIT_SEQ, "0"));
+            int base = Integer.parseInt(manifest.getProperty(name + ".base", "0"));
+            int segment = Integer.parseInt(manifest.getProperty(name + ".segment", "0"));
+            long length = Long.parseLong(manifest.getProperty(name + ".length", "0"));
+            long records = Long.parseLong(manifest.getProperty(name + ".records", "0"));
+            try {
+                SegmentTable<K, V> table = new SegmentTable<>(dir, name, keyCodec, valueCodec, base, segment, length, records, commitSeq);
+                tables.put(name, table);
+                return table;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * rows of (key, member) -> slot, (key, slot) -> member and key -> size
+         */
+        @Override
+        public <K, E> SetIndex<K, E> createSetIndex(String name, Codec<K> keyCodec, Codec<E> memberCodec) {
+            return new RowSetIndex<>(
+                    createTable(name, Codecs.pairCodec(keyCodec, memberCodec), Codecs.INT_CODEC),
+                    createTable(name + "_slot", Codecs.pairCodec(keyCodec, Codecs.INT_CODEC), memberCodec),
+                    createTable(name + "_size", keyCodec, Codecs.INT_CODEC));
+        }
+
+        @Override
+        public <K, E> ListIndex<K, E> createListIndex(String name, Codec<K> keyCodec, Codec<E> elementCodec) {
+            return new RowListIndex<>(
+                    createTable(name, Codecs.pairCodec(keyCodec, Codecs.INT_CODEC), elementCodec),
+                    createTable(name + "_size", keyCodec, Codecs.INT_CODEC));
+        }
+    }
+}
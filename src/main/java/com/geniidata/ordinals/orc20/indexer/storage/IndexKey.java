@@ -0,0 +1,77 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.Objects;
+
+/**
+ * composite key of a table/index, the hash is computed once.
+ * components may be null, and keys of different arity are never equal.
+ */
+public final class IndexKey {
+    private final Object first;
+    private final Object second;
+    private final Object third;
+    private final int arity;
+    private final int hash;
+
+    private IndexKey(int arity, Object first, Object second, Object third) {
+        this.arity = arity;
+        this.first = first;
+        this.second = second;
+        this.third = third;
+        int h = arity;
+        h = 31 * h + Objects.hashCode(first);
+        h = 31 * h + Objects.hashCode(second);
+        h = 31 * h + Objects.hashCode(third);
+        this.hash = h;
+    }
+
+    public static IndexKey of(Object first, Object second) {
+        return new IndexKey(2, first, second, null);
+    }
+
+    public static IndexKey of(Object first, Object second, Object third) {
+        return new IndexKey(3, first, second, third);
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * the i-th component
+     */
+    public Object get(int i) {
+        switch (i) {
+            case 0:
+                return first;
+            case 1:
+                return second;
+            case 2:
+                return third;
+            default:
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IndexKey)) return false;
+        IndexKey that = (IndexKey) o;
+        return hash == that.hash
+                && arity == that.arity
+                && Objects.equals(first, that.first)
+                && Objects.equals(second, that.second)
+                && Objects.equals(third, that.third);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return arity == 2 ? first + "-" + second : first + "-" + second + "-" + third;
+    }
+}
@@ -0,0 +1,62 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * list index that records each element added or removed in the {@link UndoJournal}, as the opposite change
+ */
+class JournaledListIndex<K, E> implements ListIndex<K, E> {
+    private final ListIndex<K, E> index;
+    private final UndoJournal journal;
+
+    JournaledListIndex(ListIndex<K, E> index, UndoJournal journal) {
+        this.index = index;
+        this.journal = journal;
+    }
+
+    @Override
+    public void add(K key, E element) {
+        index.add(key, element);
+        if (journal.isEnabled()) {
+            journal.record(() -> index.removeLast(key));
+        }
+    }
+
+    @Override
+    public E removeLast(K key) {
+        E element = index.removeLast(key);
+        if (element != null && journal.isEnabled()) {
+            journal.record(() -> index.add(key, element));
+        }
+        return element;
+    }
+
+    @Override
+    public E get(K key, int i) {
+        return index.get(key, i);
+    }
+
+    @Override
+    public int size(K key) {
+        return index.size(key);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return index.keySet();
+    }
+
+    @Override
+    public void clear() {
+        if (journal.isEnabled()) {
+            for (K key : new ArrayList<>(index.keySet())) {
+                for (int i = index.size(key) - 1; i >= 0; i--) { // undone in reverse: from the first element
+                    E element = index.get(key, i);
+                    journal.record(() -> index.add(key, element));
+                }
+            }
+        }
+        index.clear();
+    }
+}
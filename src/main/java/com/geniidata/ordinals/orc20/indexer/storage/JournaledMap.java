@@ -0,0 +1,120 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.*;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * table that records the state of a key in the {@link UndoJournal} before it is changed.
+ * a value is changed in place only after `getForUpdate`, and put back (or removed) after the change:
+ * values handed out by `get` and the views (`entrySet`, `keySet`, `values`) are not recorded and must not be changed.
+ */
+class JournaledMap<K, V> extends AbstractMap<K, V> {
+    private final Map<K, V> map;
+    private final Codec<V> valueCodec;
+    private final UndoJournal journal;
+
+    JournaledMap(Map<K, V> map, Codec<V> valueCodec, UndoJournal journal) {
+        this.map = map;
+        this.valueCodec = valueCodec;
+        this.journal = journal;
+    }
+
+    @Override
+    public V get(Object key) {
+        return map.get(key);
+    }
+
+    /**
+     * the stored value of `key`, to be changed in place and then put back or removed, null if absent.
+     * its state is recorded before the change.
+     */
+    V getForUpdate(K key) {
+        V value = map.get(key);
+        if (journal.isEnabled() && !journal.isRecorded(this, key)) {
+            journal.record(this, key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        recordCurrent(key);
+        return map.put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        recordCurrent(key);
+        return map.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (journal.isEnabled()) {
+            for (K key : map.keySet()) {
+                recordCurrent(key);
+            }
+        }
+        map.clear();
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return map.entrySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return map.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return map.values();
+    }
+
+    private void recordCurrent(Object key) {
+        if (journal.isEnabled() && !journal.isRecorded(this, key)) {
+            journal.record(this, key, map.get(key));
+        }
+    }
+
+    byte[] encode(V value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            valueCodec.write(new DataOutputStream(bytes), value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * put back a recorded state, not recorded itself
+     */
+    @SuppressWarnings("unchecked")
+    void restore(Object key, byte[] encoded) {
+        if (encoded == null) {
+            map.remove(key);
+            return;
+        }
+        try {
+            map.put((K) key, valueCodec.read(new DataInputStream(new ByteArrayInputStream(encoded))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * set index that records each member added or removed in the {@link UndoJournal}, as the opposite change
+ */
+class JournaledSetIndex<K, E> implements SetIndex<K, E> {
+    private final SetIndex<K, E> index;
+    private final UndoJournal journal;
+
+    JournaledSetIndex(SetIndex<K, E> index, UndoJournal journal) {
+        this.index = index;
+        this.journal = journal;
+    }
+
+    @Override
+    public boolean add(K key, E member) {
+        if (!index.add(key, member)) {
+            return false;
+        }
+        if (journal.isEnabled()) {
+            journal.record(() -> index.remove(key, member));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(K key, E member) {
+        if (!index.remove(key, member)) {
+            return false;
+        }
+        if (journal.isEnabled()) {
+            journal.record(() -> index.add(key, member));
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<E> get(K key) {
+        return index.get(key);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return index.keySet();
+    }
+
+    @Override
+    public void clear() {
+        if (journal.isEnabled()) {
+            for (K key : new ArrayList<>(index.keySet())) {
+                for (E member : new ArrayList<>(index.get(key))) {
+                    journal.record(() -> index.add(key, member));
+                }
+            }
+        }
+        index.clear();
+    }
+}
@@ -0,0 +1,39 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.Set;
+
+/**
+ * index of a list of elements per key, changed at its end one element at a time, see {@link TableFactory#createListIndex}
+ */
+public interface ListIndex<K, E> {
+
+    /**
+     * append `element` to the list of `key`
+     */
+    void add(K key, E element);
+
+    /**
+     * the key is dropped with its last element
+     *
+     * @return the removed element, null if the list of `key` is empty
+     */
+    E removeLast(K key);
+
+    /**
+     * @return the element at `index` of the list of `key`
+     * @throws IndexOutOfBoundsException if `index` is not below `size(key)`
+     */
+    E get(K key, int index);
+
+    /**
+     * @return the number of elements of `key`, 0 if none
+     */
+    int size(K key);
+
+    /**
+     * the keys with elements, read-only
+     */
+    Set<K> keySet();
+
+    void clear();
+}
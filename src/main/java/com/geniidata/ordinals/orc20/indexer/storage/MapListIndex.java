@@ -0,0 +1,68 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ListIndex} kept as one list per key in a table, a changed list is put back so persisted tables write it
+ */
+class MapListIndex<K, E> implements ListIndex<K, E> {
+    private final Map<K, List<E>> lists;
+
+    MapListIndex(Map<K, List<E>> lists) {
+        this.lists = lists;
+    }
+
+    @Override
+    public void add(K key, E element) {
+        List<E> elements = lists.get(key);
+        if (elements == null) {
+            elements = new ArrayList<>();
+        }
+        elements.add(element);
+        lists.put(key, elements);
+    }
+
+    @Override
+    public E removeLast(K key) {
+        List<E> elements = lists.get(key);
+        if (elements == null) {
+            return null;
+        }
+        E element = elements.remove(elements.size() - 1);
+        if (elements.isEmpty()) {
+            lists.remove(key);
+        } else {
+            lists.put(key, elements);
+        }
+        return element;
+    }
+
+    @Override
+    public E get(K key, int index) {
+        List<E> elements = lists.get(key);
+        if (elements == null) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+        }
+        return elements.get(index);
+    }
+
+    @Override
+    public int size(K key) {
+        List<E> elements = lists.get(key);
+        return elements == null ? 0 : elements.size();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(lists.keySet());
+    }
+
+    @Override
+    public void clear() {
+        lists.clear();
+    }
+}
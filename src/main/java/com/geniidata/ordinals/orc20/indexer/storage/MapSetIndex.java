@@ -0,0 +1,61 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link SetIndex} kept as one set per key in a table, a changed set is put back so persisted tables write it
+ */
+class MapSetIndex<K, E> implements SetIndex<K, E> {
+    private final Map<K, Set<E>> sets;
+
+    MapSetIndex(Map<K, Set<E>> sets) {
+        this.sets = sets;
+    }
+
+    @Override
+    public boolean add(K key, E member) {
+        Set<E> members = sets.get(key);
+        if (members == null) {
+            members = new HashSet<>();
+        }
+        if (!members.add(member)) {
+            return false;
+        }
+        sets.put(key, members);
+        return true;
+    }
+
+    @Override
+    public boolean remove(K key, E member) {
+        Set<E> members = sets.get(key);
+        if (members == null || !members.remove(member)) {
+            return false;
+        }
+        if (members.isEmpty()) {
+            sets.remove(key);
+        } else {
+            sets.put(key, members);
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<E> get(K key) {
+        Set<E> members = sets.get(key);
+        return members == null ? Collections.emptySet() : Collections.unmodifiableSet(members);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(sets.keySet());
+    }
+
+    @Override
+    public void clear() {
+        sets.clear();
+    }
+}
@@ -0,0 +1,303 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * inscription contents in a memory-mapped scratch file, decoded on `get`, keeps the content bodies off heap.
+ * the scratch file is deleted on close, contents are loaded from the input on every run.
+ * <p>
+ * record layout: int length, long genesisBlockHeight, long inscriptionNumber, inscriptionId, contentType, contentBody (see `Codecs.writeString`).
+ * a record never spans two mappings. the {@link MappedHashIndex} maps inscriptionId -> record location.
+ * <p>
+ * `get` returns a new object unless it is in the bounded hot cache, stored contents must be changed with `put`.
+ * methods are synchronized, the transfer reader thread updates contents while they are read for processing.
+ */
+public class MappedContentTable extends AbstractMap<String, InscriptionContent> implements Closeable {
+    public final static int DEFAULT_HOT_CACHE_SIZE = 10000;
+
+    private final static int CHUNK_SHIFT = 28; // 256MiB per mapping
+    private final static long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private final static int HEADER_SIZE = 4 + 8 + 8;
+
+    private final Path file;
+    private final Path indexFile;
+    private final FileChannel channel;
+    private final MappedHashIndex index;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final Map<String, InscriptionContent> hotCache; // null if disabled
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private long length;
+
+    /**
+     * @param file         scratch file, replaced if it exists
+     * @param hotCacheSize recently read contents kept decoded, 0 to disable
+     */
+    public MappedContentTable(Path file, int hotCacheSize) {
+        this.file = file;
+        this.indexFile = file.resolveSibling(file.getFileName() + ".idx");
+        try {
+            Files.deleteIfExists(indexFile);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            index = MappedHashIndex.open(indexFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.hotCache = hotCacheSize <= 0 ? null : new LinkedHashMap<String, InscriptionContent>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, InscriptionContent> eldest) {
+                return size() > hotCacheSize;
+            }
+        };
+    }
+
+    /**
+     * scratch file in the temporary directory
+     */
+    public static MappedContentTable createTemp(int hotCacheSize) {
+        try {
+            return new MappedContentTable(Files.createTempFile("inscription_content", ".dat"), hotCacheSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized InscriptionContent get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        if (hotCache != null) {
+            InscriptionContent content = hotCache.get(key);
+            if (content != null) {
+                return content;
+            }
+        }
+        long location = locate((String) key);
+        if (location < 0) {
+            return null;
+        }
+        InscriptionContent content = readRecord(location);
+        if (hotCache != null) {
+            hotCache.put(content.getInscriptionId(), content);
+        }
+        return content;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return key instanceof String && (hotCache != null && hotCache.containsKey(key) || locate((String) key) >= 0);
+    }
+
+    /**
+     * a record of the same length is overwritten in place, e.g. when only genesisBlockHeight changes
+     *
+     * @return always null, the previous content is not decoded
+     */
+    @Override
+    public synchronized InscriptionContent put(String key, InscriptionContent value) {
+        byte[] record = encode(value);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = SegmentTable.hash(keyBytes);
+        try {
+            long location = index.get(hash, l -> keyMatches(l, keyBytes));
+            if (location >= 0 && chunk(location).getInt(offset(location)) == record.length - 4) {
+                write(location, record);
+            } else {
+                long newLocation = append(record);
+                index.put(hash, newLocation, l -> keyMatches(l, keyBytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (hotCache != null && hotCache.containsKey(key)) {
+            hotCache.put(key, value);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized InscriptionContent remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        byte[] keyBytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+        try {
+            index.remove(SegmentTable.hash(keyBytes), l -> keyMatches(l, keyBytes)); // the record stays in the file
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (hotCache != null) {
+            hotCache.remove(key);
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        try {
+            index.reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (hotCache != null) {
+            hotCache.clear();
+        }
+        length = 0;
+    }
+
+    @Override
+    public synchronized int size() {
+        return (int) index.size();
+    }
+
+    @Override
+    public Set<Entry<String, InscriptionContent>> entrySet() {
+        return new AbstractSet<Entry<String, InscriptionContent>>() {
+            @Override
+            public Iterator<Entry<String, InscriptionContent>> iterator() {
+                List<Long> locations = new ArrayList<>();
+                index.forEach(locations::add);
+                Iterator<Long> it = locations.iterator();
+                return new Iterator<Entry<String, InscriptionContent>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, InscriptionContent> next() {
+                        InscriptionContent content = readRecord(it.next());
+                        return new SimpleImmutableEntry<>(content.getInscriptionId(), content);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MappedContentTable.this.size();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long locate(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return index.get(SegmentTable.hash(keyBytes), l -> keyMatches(l, keyBytes));
+    }
+
+    private boolean keyMatches(long location, byte[] keyBytes) {
+        ByteBuffer chunk = chunk(location);
+        int position = offset(location) + HEADER_SIZE;
+        if (chunk.getInt(position) != keyBytes.length) {
+            return false;
+        }
+        position += 4;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (chunk.get(position + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encode(InscriptionContent content) {
+        recordBuffer.reset();
+        try {
+            recordOut.writeInt(0); // length, set below
+            recordOut.writeLong(content.getGenesisBlockHeight());
+            recordOut.writeLong(content.getInscriptionNumber());
+            Codecs.writeString(recordOut, content.getInscriptionId());
+            Codecs.writeString(recordOut, content.getContentType());
+            Codecs.writeString(recordOut, content.getContentBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = recordBuffer.toByteArray();
+        if (record.length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Inscription content too large: " + content.getInscriptionId());
+        }
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    private InscriptionContent readRecord(long location) {
+        ByteBuffer chunk = chunk(location);
+        int position = offset(location);
+        InscriptionContent content = new InscriptionContent();
+        content.setGenesisBlockHeight(chunk.getLong(position + 4));
+        content.setInscriptionNumber(chunk.getLong(position + 12));
+        ByteBuffer in = chunk.duplicate();
+        in.position(position + HEADER_SIZE);
+        content.setInscriptionId(readString(in));
+        content.setContentType(readString(in));
+        content.setContentBody(readString(in));
+        return content;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the location of the record, starting a new mapping if it does not fit in the current one
+     */
+    private long append(byte[] record) throws IOException {
+        long location = length;
+        if (offset(location) + (long) record.length > CHUNK_SIZE) {
+            location = ((location >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT;
+        }
+        write(location, record);
+        length = location + record.length;
+        return location;
+    }
+
+    private void write(long location, byte[] record) throws IOException {
+        int chunkIndex = (int) (location >>> CHUNK_SHIFT);
+        while (chunks.size() <= chunkIndex) {
+            // the file grows sparsely, only written pages use disk
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() << CHUNK_SHIFT, CHUNK_SIZE));
+        }
+        ByteBuffer out = chunks.get(chunkIndex).duplicate();
+        out.position(offset(location));
+        out.put(record);
+    }
+
+    private ByteBuffer chunk(long location) {
+        return chunks.get((int) (location >>> CHUNK_SHIFT));
+    }
+
+    private static int offset(long location) {
+        return (int) (location & (CHUNK_SIZE - 1));
+    }
+}
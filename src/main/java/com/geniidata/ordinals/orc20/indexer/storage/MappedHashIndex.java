@@ -0,0 +1,295 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * memory-mapped open addressing hash index: 64-bit key hash -> record location.
+ * the hash is only a hint, callers verify the key stored at the location.
+ * <p>
+ * file layout: header, then `capacity` slots of (long hash, long location).
+ * hash 0 marks an empty slot, location -1 a deleted one.
+ */
+public class MappedHashIndex {
+    private final static long MAGIC = 0x4f52433230494458L; // "ORC20IDX"
+    private final static int HEADER_SIZE = 64;
+    private final static int SLOT_SIZE = 16;
+    private final static int CHUNK_SLOTS_SHIFT = 26; // 1GiB per mapping
+    private final static long CHUNK_SLOTS = 1L << CHUNK_SLOTS_SHIFT;
+    private final static long MIN_CAPACITY = 1 << 12;
+    private final static long DELETED = -1;
+
+    // header fields
+    private final static int MAGIC_OFFSET = 0;
+    private final static int CAPACITY_OFFSET = 8;
+    private final static int SIZE_OFFSET = 16;
+    private final static int USED_OFFSET = 24;
+    private final static int COMMIT_SEQ_OFFSET = 32;
+    private final static int DIRTY_OFFSET = 40;
+
+    private final Path path;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private long capacity;
+    private long mask;
+    private long size; // live slots
+    private long used; // live and deleted slots
+    private boolean dirty;
+
+    private MappedHashIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * open an existing index, or create an empty one
+     */
+    public static MappedHashIndex open(Path path) throws IOException {
+        MappedHashIndex index = new MappedHashIndex(path);
+        if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+            index.map();
+            if (index.header.getLong(MAGIC_OFFSET) == MAGIC) {
+                return index;
+            }
+        }
+        create(path, MIN_CAPACITY);
+        index.map();
+        return index;
+    }
+
+    private static void create(Path path, long capacity) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(0);
+            file.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+            file.seek(MAGIC_OFFSET);
+            file.writeLong(MAGIC);
+            file.seek(CAPACITY_OFFSET);
+            file.writeLong(capacity);
+        }
+    }
+
+    private void map() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw"); FileChannel channel = file.getChannel()) {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            capacity = header.getLong(CAPACITY_OFFSET);
+            mask = capacity - 1;
+            size = header.getLong(SIZE_OFFSET);
+            used = header.getLong(USED_OFFSET);
+            dirty = header.get(DIRTY_OFFSET) != 0;
+            int chunkCount = (int) ((capacity + CHUNK_SLOTS - 1) >>> CHUNK_SLOTS_SHIFT);
+            chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long slots = Math.min(CHUNK_SLOTS, capacity - ((long) i << CHUNK_SLOTS_SHIFT));
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + ((long) i << CHUNK_SLOTS_SHIFT) * SLOT_SIZE, slots * SLOT_SIZE);
+            }
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * false if the index may contain changes made after the last `sync`
+     */
+    public boolean isClean(long commitSeq) {
+        return !dirty && header.getLong(COMMIT_SEQ_OFFSET) == commitSeq;
+    }
+
+    /**
+     * drop all entries
+     */
+    public void reset() throws IOException {
+        create(path, MIN_CAPACITY);
+        map();
+    }
+
+    /**
+     * @return the location whose key matches, -1 if absent
+     */
+    public long get(long hash, LongPredicate matches) {
+        hash = nonZero(hash);
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = hashAt(slot);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash) {
+                long location = locationAt(slot);
+                if (location != DELETED && matches.test(location)) {
+                    return location;
+                }
+            }
+        }
+    }
+
+    /**
+     * insert or replace the location of a key
+     */
+    public void put(long hash, long location, LongPredicate matches) throws IOException {
+        markDirty();
+        hash = nonZero(hash);
+        long free = -1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = hashAt(slot);
+            if (slotHash == 0) {
+                if (free < 0) {
+                    free = slot;
+                    used++;
+                }
+                break;
+            }
+            long slotLocation = locationAt(slot);
+            if (slotLocation == DELETED) {
+                if (free < 0) {
+                    free = slot;
+                }
+            } else if (slotHash == hash && matches.test(slotLocation)) {
+                setSlot(slot, hash, location);
+                return;
+            }
+        }
+        setSlot(free, hash, location);
+        size++;
+        if (used * 4 > capacity * 3) {
+            rehash();
+        }
+    }
+
+    /**
+     * replace a known location without verifying keys
+     */
+    public void replace(long hash, long oldLocation, long newLocation) throws IOException {
+        put(hash, newLocation, location -> location == oldLocation);
+    }
+
+    /**
+     * @return the removed location, -1 if absent
+     */
+    public long remove(long hash, LongPredicate matches) throws IOException {
+        markDirty();
+        hash = nonZero(hash);
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = hashAt(slot);
+            if (slotHash == 0) {
+                return -1;
+            }
+            long location = locationAt(slot);
+            if (slotHash == hash && location != DELETED && matches.test(location)) {
+                setSlot(slot, hash, DELETED);
+                size--;
+                return location;
+            }
+        }
+    }
+
+    /**
+     * visit the location of every key
+     */
+    public void forEach(LongConsumer consumer) {
+        for (long slot = 0; slot < capacity; slot++) {
+            if (hashAt(slot) != 0) {
+                long location = locationAt(slot);
+                if (location != DELETED) {
+                    consumer.accept(location);
+                }
+            }
+        }
+    }
+
+    /**
+     * flush to disk and mark the index consistent with `commitSeq`
+     */
+    public void sync(long commitSeq) {
+        writeCounters();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        header.putLong(COMMIT_SEQ_OFFSET, commitSeq);
+        header.put(DIRTY_OFFSET, (byte) 0);
+        header.force();
+        dirty = false;
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            // must reach the disk before any slot changes
+            header.put(DIRTY_OFFSET, (byte) 1);
+            header.force();
+            dirty = true;
+        }
+    }
+
+    private void writeCounters() {
+        header.putLong(SIZE_OFFSET, size);
+        header.putLong(USED_OFFSET, used);
+    }
+
+    /**
+     * grow (or clean up deleted slots) into a new file
+     */
+    private void rehash() throws IOException {
+        long newCapacity = capacity;
+        while (size * 2 > newCapacity) {
+            newCapacity <<= 1;
+        }
+        if (newCapacity == capacity && used * 4 > capacity * 3) {
+            newCapacity <<= 1;
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        create(tmp, newCapacity);
+        MappedHashIndex target = new MappedHashIndex(tmp);
+        target.map();
+        target.dirty = true;
+        target.header.put(DIRTY_OFFSET, (byte) 1);
+        for (long slot = 0; slot < capacity; slot++) {
+            long hash = hashAt(slot);
+            long location = locationAt(slot);
+            if (hash != 0 && location != DELETED) {
+                target.insertNew(hash, location);
+            }
+        }
+        target.writeCounters();
+        for (MappedByteBuffer chunk : target.chunks) {
+            chunk.force();
+        }
+        target.header.force();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+    }
+
+    private void insertNew(long hash, long location) {
+        long slot = hash & mask;
+        while (hashAt(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        setSlot(slot, hash, location);
+        size++;
+        used++;
+    }
+
+    private long hashAt(long slot) {
+        return chunks[(int) (slot >>> CHUNK_SLOTS_SHIFT)].getLong((int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE);
+    }
+
+    private long locationAt(long slot) {
+        return chunks[(int) (slot >>> CHUNK_SLOTS_SHIFT)].getLong((int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE + 8);
+    }
+
+    private void setSlot(long slot, long hash, long location) {
+        MappedByteBuffer chunk = chunks[(int) (slot >>> CHUNK_SLOTS_SHIFT)];
+        int offset = (int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE;
+        chunk.putLong(offset, hash);
+        chunk.putLong(offset + 8, location);
+    }
+
+    private static long nonZero(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -1,82 +1,235 @@
 package com.geniidata.ordinals.orc20.indexer.storage;
 
+import com.geniidata.ordinals.orc20.indexer.contants.OIP;
 import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
 import com.geniidata.ordinals.orc20.indexer.enums.EventErrCode;
 import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
 import com.geniidata.ordinals.orc20.indexer.enums.EventType;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
 import com.geniidata.ordinals.orc20.indexer.model.*;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import com.geniidata.ordinals.orc20.indexer.utils.DecimalSum;
 
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * In-memory storage, can be replaced with other storage.
+ * the tables are created by a {@link TableFactory}, so subclasses can keep them elsewhere (e.g. {@link DiskStorage}).
+ * changes to the tables are recorded in an {@link UndoJournal} if `setUndoDepth` enabled it.
  */
-public class MemoryCache {
-    // table of all inscription contents
-    private final static Map<String, InscriptionContent> inscriptionContentsTable = new HashMap<>();
+public class MemoryCache implements Storage {
+    final static String BALANCE_TABLE = "orc20_balance";
+
+    // table of all inscription contents, on heap or in a {@link MappedContentTable}, null if they are read from another storage
+    private final Map<String, InscriptionContent> inscriptionContentsTable;
+    // lookup of the inscription contents, in the table or in another storage
+    private final Function<String, InscriptionContent> inscriptionContents;
     // table of all inscription transfers
-    private final static ArrayList<InscriptionTransfer> inscriptionTransfersTable = new ArrayList<>();
+    private final ArrayList<InscriptionTransfer> inscriptionTransfersTable = new ArrayList<>();
 
     // table of all orc20 events
-    private final static Map<String, Orc20Event> orc20EventsTable = new HashMap<>();
-    // index(tickId, creator)
-    private final static Map<String, Set<String>> orc20EventTickIdCreatorIndex = new HashMap<>();
+    private final JournaledMap<String, Orc20Event> orc20EventsTable;
+    // index(tickId, creator) of the "SEND_PENDING" events: nonce -> eventIds
+    private final JournaledMap<IndexKey, Map<Long, Set<String>>> orc20EventTickIdCreatorPendingIndex;
     // index(tickId, address)
-    private final static Map<String, Set<String>> orc20EventTickIdToAddressIndex = new HashMap<>();
+    private final SetIndex<IndexKey, String> orc20EventTickIdToAddressIndex;
+    // index(tickId, address) of the "UPGRADE_BLOCKED" and "UPGRADE_WAITING" events
+    private final SetIndex<IndexKey, String> orc20EventTickIdToAddressUpgradeIndex;
     // index(inscriptionId, event)
-    private final static Map<String, Set<String>> orc20EventInscriptionIdEventIndex = new HashMap<>();
+    private final SetIndex<IndexKey, String> orc20EventInscriptionIdEventIndex;
 
-    // table of all orc20 user balance
-    private final static Map<String, Orc20Balance> orc20BalanceTable = new HashMap<>();
-    private final static Map<String, Orc20Balance> orc20BalanceTableOIP10Snapshot = new HashMap<>();
+    // table of all orc20 user balance, primary key(tickId, inscriptionId, address)
+    private final JournaledMap<IndexKey, Orc20Balance> orc20BalanceTable;
+    // balance snapshots are copy-on-write: snapshot height -> block height of the first transfer after it
+    private final Map<Long, Long> orc20BalanceSnapshotTable;
+    // states of the balances changed after a snapshot, primary key(tickId, inscriptionId, address)
+    private final JournaledMap<IndexKey, Orc20BalancePreImages> orc20BalancePreImageTable;
     // index(tickId, address)
-    private final static Map<String, Set<String>> orc20BalanceTickIdAddressIndex = new HashMap<>();
-    // index(tickId, creator)
-    private final static Map<String, Set<String>> orc20BalanceTickIdCreatorIndex = new HashMap<>();
+    private final SetIndex<IndexKey, IndexKey> orc20BalanceTickIdAddressIndex;
+    // index(tickId, creator) of the "SEND_PENDING" balances: nonce -> primary keys
+    private final JournaledMap<IndexKey, Map<Long, Set<IndexKey>>> orc20BalanceTickIdCreatorPendingIndex;
     // index(inscriptionId) !!! "credit balance" has no inscriptionId !!!
-    private final static Map<String, String> orc20BalanceInscriptionIdIndex = new HashMap<>();
+    private final Map<String, IndexKey> orc20BalanceInscriptionIdIndex;
+    // aggregates(tickId, address): "OK" balances by address, "SEND_PENDING" balances by creator
+    private final JournaledMap<IndexKey, Orc20BalanceAggregate> orc20BalanceTickIdAddressAggregate;
+    // summaries(tickId, address): "OK" balances by address, cash and credit apart
+    private final JournaledMap<IndexKey, Orc20BalanceSummary> orc20BalanceTickIdAddressSummary;
+    // history(tickId, address) of the "OK" balance of the aggregates, versions ordered by (blockHeight, txIndex)
+    private final ListIndex<IndexKey, Orc20BalanceVersion> orc20BalanceTickIdAddressHistory;
+    // index(tickId) of the addresses with a balance history
+    private final SetIndex<String, String> orc20BalanceTickIdHistoryAddressIndex;
 
     // table of all orc20 ticks
-    private final static Map<String, Orc20Metadata> orc20MetadataTable = new HashMap<>();
+    private final JournaledMap<String, Orc20Metadata> orc20MetadataTable;
     // index(tick, inscriptionNumber)
-    private final static Map<String, String> orc20MetadataTickInscriptionNumberIndex = new HashMap<>();
+    private final Map<IndexKey, String> orc20MetadataTickInscriptionNumberIndex;
     // index(tick, deployId)
-    private final static Map<String, String> orc20MetadataTickDeployIdIndex = new HashMap<>();
+    private final Map<IndexKey, String> orc20MetadataTickDeployIdIndex;
+
+    // all tables and indexes above by name, in creation order
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+    // canonical identifiers of the rows and keys, null if the tables are not on heap
+    private final SymbolTable symbols;
+    private final UndoJournal journal = new UndoJournal();
+    // keys of orc20BalanceSnapshotTable, checked on every balance change
+    private final TreeSet<Long> balanceSnapshotHeights = new TreeSet<>();
+    // position of the transfer being applied, -1 if none, see `setTransferPosition`
+    private long transferBlockHeight = -1;
+    private int transferTxIndex;
+    // record the balance history, see `setBalanceHistory`
+    private boolean balanceHistory;
+    private long committedBlockHeight = -1;
+
+    public MemoryCache() {
+        this(new HashMap<>());
+    }
 
     /**
-     * concatenate index fields and use base64 to avoid conflicts
+     * @param inscriptionContentsTable table of the inscription contents, closed with the storage if it is {@link Closeable}
      */
-    private static String indexKey(Object... keys) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Object key : keys) {
-            if (key == null) {
-                stringBuilder.append("_NULL_");
-            } else {
-                stringBuilder.append(Base64.getEncoder().encodeToString(key.toString().getBytes()));
-                stringBuilder.append("-");
-            }
-        }
-        return stringBuilder.toString();
+    public MemoryCache(Map<String, InscriptionContent> inscriptionContentsTable) {
+        this(inscriptionContentsTable, new SymbolTable());
+    }
+
+    /**
+     * @param symbols canonical identifiers, shared with other storages whose rows are merged into this one
+     */
+    public MemoryCache(Map<String, InscriptionContent> inscriptionContentsTable, SymbolTable symbols) {
+        this(inscriptionContentsTable, symbols, false);
+    }
+
+    /**
+     * @param offHeapBalances keep the balances in an {@link OffHeapBalanceTable} instead of one object per balance
+     */
+    public MemoryCache(Map<String, InscriptionContent> inscriptionContentsTable, SymbolTable symbols, boolean offHeapBalances) {
+        this(offHeapBalances ? OffHeapBalanceTable.tables(symbols) : TableFactory.MEMORY, inscriptionContentsTable, symbols);
+    }
+
+    /**
+     * @param inscriptionContents read-only lookup of the inscription contents of another storage (e.g. a shard of the main storage)
+     */
+    public MemoryCache(Function<String, InscriptionContent> inscriptionContents, SymbolTable symbols, boolean offHeapBalances) {
+        this(offHeapBalances ? OffHeapBalanceTable.tables(symbols) : TableFactory.MEMORY, null, inscriptionContents, symbols);
+    }
+
+    /**
+     * @param symbols canonical identifiers of the rows, null to keep the identifiers as they are stored (e.g. not on heap)
+     */
+    protected MemoryCache(TableFactory factory, Map<String, InscriptionContent> inscriptionContentsTable, SymbolTable symbols) {
+        this(factory, inscriptionContentsTable, inscriptionContentsTable::get, symbols);
+    }
+
+    private MemoryCache(TableFactory factory, Map<String, InscriptionContent> inscriptionContentsTable, Function<String, InscriptionContent> inscriptionContents, SymbolTable symbols) {
+        this.inscriptionContentsTable = inscriptionContentsTable;
+        this.inscriptionContents = inscriptionContents;
+        this.symbols = symbols;
+        orc20EventsTable = createTable(factory, "orc20_event", Codecs.STRING_CODEC, Codecs.EVENT_CODEC);
+        orc20EventTickIdCreatorPendingIndex = createTable(factory, "orc20_event_tick_id_creator_pending", Codecs.INDEX_KEY_CODEC, Codecs.mapCodec(Codecs.LONG_CODEC, Codecs.STRING_SET_CODEC));
+        orc20EventTickIdToAddressIndex = createSetIndex(factory, "orc20_event_tick_id_to_address", Codecs.INDEX_KEY_CODEC, Codecs.STRING_CODEC);
+        orc20EventTickIdToAddressUpgradeIndex = createSetIndex(factory, "orc20_event_tick_id_to_address_upgrade", Codecs.INDEX_KEY_CODEC, Codecs.STRING_CODEC);
+        orc20EventInscriptionIdEventIndex = createSetIndex(factory, "orc20_event_inscription_id_event", Codecs.INDEX_KEY_CODEC, Codecs.STRING_CODEC);
+
+        orc20BalanceTable = createTable(factory, BALANCE_TABLE, Codecs.INDEX_KEY_CODEC, Codecs.BALANCE_CODEC);
+        orc20BalanceSnapshotTable = createTable(factory, "orc20_balance_snapshot", Codecs.LONG_CODEC, Codecs.LONG_CODEC);
+        orc20BalancePreImageTable = createTable(factory, "orc20_balance_pre_image", Codecs.INDEX_KEY_CODEC, Codecs.BALANCE_PRE_IMAGES_CODEC);
+        orc20BalanceTickIdAddressIndex = createSetIndex(factory, "orc20_balance_tick_id_address", Codecs.INDEX_KEY_CODEC, Codecs.INDEX_KEY_CODEC);
+        orc20BalanceTickIdCreatorPendingIndex = createTable(factory, "orc20_balance_tick_id_creator_pending", Codecs.INDEX_KEY_CODEC, Codecs.mapCodec(Codecs.LONG_CODEC, Codecs.INDEX_KEY_SET_CODEC));
+        orc20BalanceInscriptionIdIndex = createTable(factory, "orc20_balance_inscription_id", Codecs.STRING_CODEC, Codecs.INDEX_KEY_CODEC);
+        orc20BalanceTickIdAddressAggregate = createTable(factory, "orc20_balance_tick_id_address_aggregate", Codecs.INDEX_KEY_CODEC, Codecs.BALANCE_AGGREGATE_CODEC);
+        orc20BalanceTickIdAddressSummary = createTable(factory, "orc20_balance_tick_id_address_summary", Codecs.INDEX_KEY_CODEC, Codecs.BALANCE_SUMMARY_CODEC);
+        orc20BalanceTickIdAddressHistory = createListIndex(factory, "orc20_balance_tick_id_address_history", Codecs.INDEX_KEY_CODEC, Codecs.BALANCE_VERSION_CODEC);
+        orc20BalanceTickIdHistoryAddressIndex = createSetIndex(factory, "orc20_balance_tick_id_history_address", Codecs.STRING_CODEC, Codecs.STRING_CODEC);
+
+        orc20MetadataTable = createTable(factory, "orc20_metadata", Codecs.STRING_CODEC, Codecs.METADATA_CODEC);
+        orc20MetadataTickInscriptionNumberIndex = createTable(factory, "orc20_metadata_tick_inscription_number", Codecs.INDEX_KEY_CODEC, Codecs.STRING_CODEC);
+        orc20MetadataTickDeployIdIndex = createTable(factory, "orc20_metadata_tick_deploy_id", Codecs.INDEX_KEY_CODEC, Codecs.STRING_CODEC);
+        balanceSnapshotHeights.addAll(orc20BalanceSnapshotTable.keySet());
+    }
+
+    private <K, V> JournaledMap<K, V> createTable(TableFactory factory, String name, Codec<K> keyCodec, Codec<V> valueCodec) {
+        Map<K, V> map = factory.createTable(name, keyCodec, valueCodec);
+        tables.put(name, new MapTable<>(name, map, keyCodec, valueCodec));
+        return new JournaledMap<>(map, valueCodec, journal);
+    }
+
+    private <K, E> SetIndex<K, E> createSetIndex(TableFactory factory, String name, Codec<K> keyCodec, Codec<E> memberCodec) {
+        SetIndex<K, E> index = factory.createSetIndex(name, keyCodec, memberCodec);
+        tables.put(name, new SetTable<>(name, index, keyCodec, memberCodec));
+        return new JournaledSetIndex<>(index, journal);
+    }
+
+    private <K, E> ListIndex<K, E> createListIndex(TableFactory factory, String name, Codec<K> keyCodec, Codec<E> elementCodec) {
+        ListIndex<K, E> index = factory.createListIndex(name, keyCodec, elementCodec);
+        tables.put(name, new ListTable<>(name, index, keyCodec, elementCodec));
+        return new JournaledListIndex<>(index, journal);
+    }
+
+    /**
+     * canonical identifiers of the rows and keys, null if they are not interned
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * whether the balances are kept in an {@link OffHeapBalanceTable}
+     */
+    public boolean isOffHeapBalances() {
+        return ((MapTable<?, ?>) tables.get(BALANCE_TABLE)).map instanceof OffHeapBalanceTable;
+    }
+
+    /**
+     * the canonical instance of an identifier
+     */
+    private String symbol(String value) {
+        return symbols == null ? value : symbols.intern(value);
     }
 
     /**
-     * save inscription content
+     * composite key of index fields
      */
-    public static void insertInscriptionContent(InscriptionContent inscription) {
+    private static IndexKey indexKey(Object first, Object second) {
+        return IndexKey.of(first, second);
+    }
+
+    /**
+     * primary key of balance table
+     */
+    private static IndexKey balanceKey(String tickId, String inscriptionId, String address) {
+        return IndexKey.of(tickId, inscriptionId, address);
+    }
+
+    /**
+     * save/update inscription content
+     */
+    @Override
+    public void insertInscriptionContent(InscriptionContent inscription) {
+        if (inscriptionContentsTable == null) {
+            throw new IllegalStateException("The inscription contents are read from another storage");
+        }
         inscriptionContentsTable.put(inscription.getInscriptionId(), inscription);
     }
 
     /**
      * save inscription transfer
      */
-    public static void insertInscriptionTransfer(InscriptionTransfer transfer) {
+    @Override
+    public void insertInscriptionTransfer(InscriptionTransfer transfer) {
         inscriptionTransfersTable.add(transfer);
     }
 
     /**
      * get all inscription transfers, ordered by block_height and transaction_index
      */
-    public static ArrayList<InscriptionTransfer> selectInscriptionTransfers() {
+    @Override
+    public List<InscriptionTransfer> selectInscriptionTransfers() {
         inscriptionTransfersTable.sort(Comparator.comparingLong(InscriptionTransfer::getBlockHeight).thenComparingLong(InscriptionTransfer::getTxIndex));
         return inscriptionTransfersTable;
     }
@@ -84,81 +237,140 @@ public class MemoryCache {
     /**
      * get inscription content for the given inscriptionId
      */
-    public static InscriptionContent selectInscriptionContentByInscriptionId(String inscriptionId) {
-        return inscriptionContentsTable.get(inscriptionId);
+    @Override
+    public InscriptionContent selectInscriptionContentByInscriptionId(String inscriptionId) {
+        return inscriptionContents.apply(inscriptionId);
     }
 
     /**
      * save/update orc20event and refresh relevant indexes
      */
-    public static void insertOrc20Event(Orc20Event orc20Event) {
+    @Override
+    public void insertOrc20Event(Orc20Event orc20Event) {
+        orc20Event.setTickId(symbol(orc20Event.getTickId()));
+        orc20Event.setTick(symbol(orc20Event.getTick()));
+        orc20Event.setInscriptionId(symbol(orc20Event.getInscriptionId()));
+        orc20Event.setFromAddress(symbol(orc20Event.getFromAddress()));
+        orc20Event.setToAddress(symbol(orc20Event.getToAddress()));
+        orc20Event.setCreator(symbol(orc20Event.getCreator()));
         String primaryKey = orc20Event.getEventId();
         orc20EventsTable.put(primaryKey, orc20Event);
 
-        // index for accelerating queries
-        String tickId = orc20Event.getTickId();
-        String creator = orc20Event.getCreator();
-        String indexKey = indexKey(tickId, creator);
-        if (!orc20EventTickIdCreatorIndex.containsKey(indexKey)) {
-            orc20EventTickIdCreatorIndex.put(indexKey, new HashSet<>());
-        }
-        orc20EventTickIdCreatorIndex.get(indexKey).add(primaryKey);
+        // indexes of the non-terminal events
+        indexOrc20EventStatus(orc20Event, true);
 
         // index for accelerating queries
+        String tickId = orc20Event.getTickId();
         String address = orc20Event.getToAddress();
-        indexKey = indexKey(tickId, address);
-        if (!orc20EventTickIdToAddressIndex.containsKey(indexKey)) {
-            orc20EventTickIdToAddressIndex.put(indexKey, new HashSet<>());
-        }
-        orc20EventTickIdToAddressIndex.get(indexKey).add(primaryKey);
+        IndexKey indexKey = indexKey(tickId, address);
+        orc20EventTickIdToAddressIndex.add(indexKey, primaryKey);
 
         // index for accelerating queries
         String inscriptionId = orc20Event.getInscriptionId();
-        indexKey = indexKey(inscriptionId, orc20Event.getEventType().name());
-        if (!orc20EventInscriptionIdEventIndex.containsKey(indexKey)) {
-            orc20EventInscriptionIdEventIndex.put(indexKey, new HashSet<>());
+        indexKey = indexKey(inscriptionId, orc20Event.getEventType());
+        orc20EventInscriptionIdEventIndex.add(indexKey, primaryKey);
+
+    }
+
+    /**
+     * add/remove an event to/from the index of its status, if it is non-terminal
+     */
+    private void indexOrc20EventStatus(Orc20Event orc20Event, boolean add) {
+        indexPendingOrc20Event(orc20Event, add);
+        if (isUpgradeStatus(orc20Event.getEventStatus())) {
+            IndexKey indexKey = indexKey(orc20Event.getTickId(), orc20Event.getToAddress());
+            if (add) {
+                orc20EventTickIdToAddressUpgradeIndex.add(indexKey, orc20Event.getEventId());
+            } else {
+                orc20EventTickIdToAddressUpgradeIndex.remove(indexKey, orc20Event.getEventId());
+            }
+        }
+    }
+
+    /**
+     * the statuses of the upgrade index: an "inscribe upgrade" waiting for its "transfer upgrade"
+     */
+    private static boolean isUpgradeStatus(EventStatus eventStatus) {
+        return EventStatus.UPGRADE_BLOCKED.equals(eventStatus) || EventStatus.UPGRADE_WAITING.equals(eventStatus);
+    }
+
+    /**
+     * add/remove a "SEND_PENDING" event to/from the pending index of its (tickId, creator)
+     */
+    private void indexPendingOrc20Event(Orc20Event orc20Event, boolean add) {
+        if (!EventStatus.SEND_PENDING.equals(orc20Event.getEventStatus())) {
+            return;
+        }
+        IndexKey indexKey = indexKey(orc20Event.getTickId(), orc20Event.getCreator());
+        if (add) {
+            addPending(orc20EventTickIdCreatorPendingIndex, indexKey, orc20Event.getNonce(), orc20Event.getEventId());
+        } else {
+            removePending(orc20EventTickIdCreatorPendingIndex, indexKey, orc20Event.getNonce(), orc20Event.getEventId());
+        }
+    }
+
+    /**
+     * add `value` to the pending index entry of (indexKey, nonce)
+     */
+    private static <T> void addPending(JournaledMap<IndexKey, Map<Long, Set<T>>> pendingIndex, IndexKey indexKey, long nonce, T value) {
+        Map<Long, Set<T>> pending = pendingIndex.getForUpdate(indexKey);
+        if (pending == null) {
+            pending = new HashMap<>();
         }
-        orc20EventInscriptionIdEventIndex.get(indexKey).add(primaryKey);
+        pending.computeIfAbsent(nonce, n -> new HashSet<>()).add(value);
+        pendingIndex.put(indexKey, pending);
+    }
 
+    /**
+     * remove `value` from the pending index entry of (indexKey, nonce), and the entries left empty
+     */
+    private static <T> void removePending(JournaledMap<IndexKey, Map<Long, Set<T>>> pendingIndex, IndexKey indexKey, long nonce, T value) {
+        Map<Long, Set<T>> pending = pendingIndex.getForUpdate(indexKey);
+        if (pending == null) {
+            return;
+        }
+        Set<T> values = pending.get(nonce);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            pending.remove(nonce);
+        }
+        if (pending.isEmpty()) {
+            pendingIndex.remove(indexKey);
+        } else {
+            pendingIndex.put(indexKey, pending);
+        }
     }
 
     /**
      * get event for the given eventId
      */
-    public static Orc20Event selectOrc20EventByEventId(String eventId) {
+    @Override
+    public Orc20Event selectOrc20EventByEventId(String eventId) {
         return orc20EventsTable.get(eventId);
     }
 
     /**
      * get events by (inscriptionId, eventType)
      */
-    public static List<Orc20Event> selectOrc20EventByInscriptionIdAndEventType(String inscriptionId, EventType eventType) {
-        String indexKey = indexKey(inscriptionId, eventType.name());
+    @Override
+    public List<Orc20Event> selectOrc20EventByInscriptionIdAndEventType(String inscriptionId, EventType eventType) {
+        IndexKey indexKey = indexKey(inscriptionId, eventType);
         List<Orc20Event> orc20EventList = new ArrayList<>();
-        if (orc20EventInscriptionIdEventIndex.containsKey(indexKey)) {
-            orc20EventInscriptionIdEventIndex.get(indexKey).forEach(
-                    key -> orc20EventList.add(orc20EventsTable.get(key))
-            );
-        }
+        orc20EventInscriptionIdEventIndex.get(indexKey).forEach(
+                key -> orc20EventList.add(orc20EventsTable.get(key))
+        );
         return orc20EventList;
     }
 
     /**
-     * get all pending events created by `creator`
+     * get all pending events created by `creator`, from the pending index
      * generally used to update the pending "inscribe send" event status upon receiving the "remaining balance" or "cancel" inscription.
      */
-    public static List<Orc20Event> selectPendingOrc20EventListByTickIdAndCreator(String tickId, String creator) {
+    @Override
+    public List<Orc20Event> selectPendingOrc20EventListByTickIdAndCreator(String tickId, String creator) {
         List<Orc20Event> eventList = new ArrayList<>();
-        String indexKey = indexKey(tickId, creator);
-        if (orc20EventTickIdCreatorIndex.containsKey(indexKey)) {
-            orc20EventTickIdCreatorIndex.get(indexKey).forEach(
-                    key -> {
-                        Orc20Event event = orc20EventsTable.get(key);
-                        if (event.getEventStatus().equals(EventStatus.SEND_PENDING)) {
-                            eventList.add(event);
-                        }
-                    }
-            );
+        Map<Long, Set<String>> pending = orc20EventTickIdCreatorPendingIndex.get(indexKey(tickId, creator));
+        if (pending != null) {
+            pending.values().forEach(eventIds -> eventIds.forEach(key -> eventList.add(orc20EventsTable.get(key))));
         }
         return eventList;
     }
@@ -166,26 +378,26 @@ public class MemoryCache {
     /**
      * generally used to update the state of non-terminal events, e.g., UPGRADE_BLOCKED, UPGRADE_WAITING
      */
-    public static List<Orc20Event> selectOrc20EventListByTickIdAndToAddress(String tickId, String address) {
+    @Override
+    public List<Orc20Event> selectOrc20EventListByTickIdAndToAddress(String tickId, String address) {
         List<Orc20Event> eventList = new ArrayList<>();
-        String indexKey = indexKey(tickId, address);
-        if (orc20EventTickIdToAddressIndex.containsKey(indexKey)) {
-            orc20EventTickIdToAddressIndex.get(indexKey).forEach(
-                    key -> eventList.add(orc20EventsTable.get(key))
-            );
-        }
+        IndexKey indexKey = indexKey(tickId, address);
+        orc20EventTickIdToAddressIndex.get(indexKey).forEach(
+                key -> eventList.add(orc20EventsTable.get(key))
+        );
         return eventList;
     }
 
     /**
      * generally used to update the pending "inscribe send" events status upon receiving the "remaining balance" or "cancel" inscription.
      */
-    public static void updateOrc20EventStatusByTickIdAndCreator(String tickId, String creator, EventStatus oldStatus, EventStatus newStatus) {
+    @Override
+    public void updateOrc20EventStatusByTickIdAndCreator(String tickId, String creator, EventStatus oldStatus, EventStatus newStatus) {
         List<Orc20Event> eventList = selectPendingOrc20EventListByTickIdAndCreator(tickId, creator);
         eventList.forEach(
                 e -> {
                     if (e.getEventStatus().equals(oldStatus)) {
-                        e.setEventStatus(newStatus);
+                        updateOrc20EventStatus(e, newStatus);
                     }
                 }
         );
@@ -194,42 +406,69 @@ public class MemoryCache {
     /**
      * used to cancel the "inscribe send" event with the specific nonce
      */
-    public static void updateOrc20EventStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, EventStatus newStatus) {
-        List<Orc20Event> eventList = selectPendingOrc20EventListByTickIdAndCreator(tickId, creator);
-        eventList.forEach(
-                e -> {
-                    if (e.getNonce() == nonce) {
-                        e.setEventStatus(newStatus);
-                    }
-                }
-        );
+    @Override
+    public void updateOrc20EventStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, EventStatus newStatus) {
+        Map<Long, Set<String>> pending = orc20EventTickIdCreatorPendingIndex.get(indexKey(tickId, creator));
+        Set<String> eventIds = pending == null ? null : pending.get(nonce);
+        if (eventIds != null) {
+            new ArrayList<>(eventIds).forEach(key -> updateOrc20EventStatus(orc20EventsTable.get(key), newStatus));
+        }
     }
 
     /**
-     * generally used to update the state of non-terminal events, e.g., UPGRADE_BLOCKED, UPGRADE_WAITING
+     * change the status of a stored event and refresh the indexes of the non-terminal events
+     */
+    private void updateOrc20EventStatus(Orc20Event orc20Event, EventStatus newStatus) {
+        updateOrc20EventStatus(orc20Event, newStatus, orc20Event.getEventErrCode());
+    }
+
+    private void updateOrc20EventStatus(Orc20Event orc20Event, EventStatus newStatus, EventErrCode newErrCode) {
+        String primaryKey = orc20Event.getEventId();
+        orc20EventsTable.getForUpdate(primaryKey);
+        indexOrc20EventStatus(orc20Event, false);
+        orc20Event.setEventStatus(newStatus);
+        orc20Event.setEventErrCode(newErrCode);
+        indexOrc20EventStatus(orc20Event, true);
+        orc20EventsTable.put(primaryKey, orc20Event);
+    }
+
+    /**
+     * the events received by `address` that may have `status`, from the upgrade index for the upgrade statuses
+     */
+    List<Orc20Event> selectOrc20EventListByTickIdAndToAddress(String tickId, String address, EventStatus status) {
+        if (!isUpgradeStatus(status)) {
+            return selectOrc20EventListByTickIdAndToAddress(tickId, address);
+        }
+        List<Orc20Event> eventList = new ArrayList<>();
+        orc20EventTickIdToAddressUpgradeIndex.get(indexKey(tickId, address)).forEach(key -> eventList.add(orc20EventsTable.get(key)));
+        return eventList;
+    }
+
+    /**
+     * generally used to update the state of non-terminal events, e.g., UPGRADE_BLOCKED, UPGRADE_WAITING, which are found in the upgrade index
      */
-    public static void updateOrc20EventStatusByTickIdAndToAddress(String tickId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode) {
-        List<Orc20Event> eventList = selectOrc20EventListByTickIdAndToAddress(tickId, address);
+    @Override
+    public void updateOrc20EventStatusByTickIdAndToAddress(String tickId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode) {
+        List<Orc20Event> eventList = selectOrc20EventListByTickIdAndToAddress(tickId, address, oldStatus);
         eventList.forEach(
                 e -> {
                     if (e.getEventStatus().equals(oldStatus)) {
-                        e.setEventStatus(newStatus);
-                        e.setEventErrCode(newErrCode);
+                        updateOrc20EventStatus(e, newStatus, newErrCode);
                     }
                 }
         );
     }
 
     /**
-     * generally used to update the state of non-terminal events, e.g., UPGRADE_BLOCKED, UPGRADE_WAITING
+     * generally used to update the state of non-terminal events, e.g., UPGRADE_BLOCKED, UPGRADE_WAITING, which are found in the upgrade index
      */
-    public static void updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(String tickId, String inscriptionId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode) {
-        List<Orc20Event> eventList = selectOrc20EventListByTickIdAndToAddress(tickId, address);
+    @Override
+    public void updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(String tickId, String inscriptionId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode) {
+        List<Orc20Event> eventList = selectOrc20EventListByTickIdAndToAddress(tickId, address, oldStatus);
         eventList.forEach(
                 e -> {
                     if (e.getEventStatus().equals(oldStatus) && e.getInscriptionId().equals(inscriptionId)) {
-                        e.setEventStatus(newStatus);
-                        e.setEventErrCode(newErrCode);
+                        updateOrc20EventStatus(e, newStatus, newErrCode);
                     }
                 }
         );
@@ -238,7 +477,12 @@ public class MemoryCache {
     /**
      * store/update tick metadata and refresh relevant indexes
      */
-    public static void insertOrc20Metadata(Orc20Metadata orc20Metadata) {
+    @Override
+    public void insertOrc20Metadata(Orc20Metadata orc20Metadata) {
+        orc20Metadata.setTickId(symbol(orc20Metadata.getTickId()));
+        orc20Metadata.setTick(symbol(orc20Metadata.getTick()));
+        orc20Metadata.setInscriptionId(symbol(orc20Metadata.getInscriptionId()));
+        orc20Metadata.setDeployer(symbol(orc20Metadata.getDeployer()));
         String tick = orc20Metadata.getTick();
         long inscriptionNumber = orc20Metadata.getInscriptionNumber();
         String deployId = orc20Metadata.getDeployId();
@@ -247,7 +491,7 @@ public class MemoryCache {
         orc20MetadataTable.put(primaryKey, orc20Metadata);
 
         // index for accelerating queries
-        String indexKey = indexKey(tick, inscriptionNumber);
+        IndexKey indexKey = indexKey(tick, inscriptionNumber);
         orc20MetadataTickInscriptionNumberIndex.put(indexKey, primaryKey);
 
         // index for accelerating queries
@@ -255,11 +499,24 @@ public class MemoryCache {
         orc20MetadataTickDeployIdIndex.put(indexKey, primaryKey);
     }
 
+    /**
+     * change a stored tick metadata, its tick, inscription number and deployId must not change
+     */
+    @Override
+    public void updateOrc20Metadata(Orc20Metadata orc20Metadata, Consumer<Orc20Metadata> change) {
+        String primaryKey = orc20Metadata.getTickId();
+        orc20MetadataTable.getForUpdate(primaryKey);
+        change.accept(orc20Metadata);
+        orc20Metadata.setDeployer(symbol(orc20Metadata.getDeployer()));
+        orc20MetadataTable.put(primaryKey, orc20Metadata);
+    }
+
     /**
      * get tick metadata by (tick, deploymentInscriptionNumber)
      */
-    public static Orc20Metadata selectORC20MetadataByTickAndInscriptionNumber(String tick, long inscriptionNumber) {
-        String indexKey = indexKey(tick, inscriptionNumber);
+    @Override
+    public Orc20Metadata selectORC20MetadataByTickAndInscriptionNumber(String tick, long inscriptionNumber) {
+        IndexKey indexKey = indexKey(tick, inscriptionNumber);
         String tickId = orc20MetadataTickInscriptionNumberIndex.get(indexKey);
         if (tickId != null) {
             return orc20MetadataTable.get(tickId);
@@ -270,7 +527,8 @@ public class MemoryCache {
     /**
      * get tick metadata by tickId(primary key)
      */
-    public static Orc20Metadata selectORC20MetadataByTickId(String tickId) {
+    @Override
+    public Orc20Metadata selectORC20MetadataByTickId(String tickId) {
         return orc20MetadataTable.get(tickId);
     }
 
@@ -278,8 +536,9 @@ public class MemoryCache {
      * get tick metadata by (tick, deployId)
      * deployId ( "id" in json before oip3, deployment inscription number after oip3)
      */
-    public static Orc20Metadata selectORC20MetadataByTickAndDeployId(String tick, String deployId) {
-        String indexKey = indexKey(tick, deployId);
+    @Override
+    public Orc20Metadata selectORC20MetadataByTickAndDeployId(String tick, String deployId) {
+        IndexKey indexKey = indexKey(tick, deployId);
         String tickId = orc20MetadataTickDeployIdIndex.get(indexKey);
         if (tickId != null) {
             return orc20MetadataTable.get(tickId);
@@ -288,28 +547,31 @@ public class MemoryCache {
     }
 
     /**
-     * store/update user balance and refresh relevant indexes
+     * store a new user balance and refresh relevant indexes and aggregates
      */
-    public static void insertOrc20Balance(Orc20Balance orc20Balance) {
-        String primaryKey = String.format("%s-%s-%s", orc20Balance.getTickId(), orc20Balance.getInscriptionId(), orc20Balance.getAddress());
+    @Override
+    public void insertOrc20Balance(Orc20Balance orc20Balance) {
+        orc20Balance.setTickId(symbol(orc20Balance.getTickId()));
+        orc20Balance.setTick(symbol(orc20Balance.getTick()));
+        orc20Balance.setInscriptionId(symbol(orc20Balance.getInscriptionId()));
+        orc20Balance.setAddress(symbol(orc20Balance.getAddress()));
+        orc20Balance.setCreator(symbol(orc20Balance.getCreator()));
+        IndexKey primaryKey = balanceKey(orc20Balance.getTickId(), orc20Balance.getInscriptionId(), orc20Balance.getAddress());
+        Orc20Balance previous = orc20BalanceTable.get(primaryKey);
+        preserveOrc20Balance(primaryKey, previous);
+        if (previous != orc20Balance && !OffHeapBalanceTable.sameRow(previous, orc20Balance)) {
+            if (previous != null) {
+                aggregateOrc20Balance(previous, false);
+            }
+            aggregateOrc20Balance(orc20Balance, true);
+        }
         orc20BalanceTable.put(primaryKey, orc20Balance);
 
         // index for accelerating queries
         String tickId = orc20Balance.getTickId();
         String address = orc20Balance.getAddress();
-        String indexKey = indexKey(tickId, address);
-        if (!orc20BalanceTickIdAddressIndex.containsKey(indexKey)) {
-            orc20BalanceTickIdAddressIndex.put(indexKey, new HashSet<>());
-        }
-        orc20BalanceTickIdAddressIndex.get(indexKey).add(primaryKey);
-
-        // index for accelerating queries
-        String creator = orc20Balance.getCreator();
-        indexKey = indexKey(tickId, creator);
-        if (!orc20BalanceTickIdCreatorIndex.containsKey(indexKey)) {
-            orc20BalanceTickIdCreatorIndex.put(indexKey, new HashSet<>());
-        }
-        orc20BalanceTickIdCreatorIndex.get(indexKey).add(primaryKey);
+        IndexKey indexKey = indexKey(tickId, address);
+        orc20BalanceTickIdAddressIndex.add(indexKey, primaryKey);
 
         // index for accelerating queries
         String inscriptionId = orc20Balance.getInscriptionId();
@@ -321,36 +583,277 @@ public class MemoryCache {
     }
 
     /**
-     * get user balance list by (tickId, address)
+     * add/remove the balance to/from the aggregates
      */
-    public static List<Orc20Balance> selectOrc20BalanceListByTickIdAndAddress(String tickId, String address) {
-        List<Orc20Balance> balanceList = new ArrayList<>();
-        String indexKey = indexKey(tickId, address);
-        if (orc20BalanceTickIdAddressIndex.containsKey(indexKey)) {
-            Set<String> balanceInscriptionList = orc20BalanceTickIdAddressIndex.get(indexKey);
-            if (balanceInscriptionList != null) {
-                balanceInscriptionList.forEach(i -> balanceList.add(orc20BalanceTable.get(i)));
+    private void aggregateOrc20Balance(Orc20Balance orc20Balance, boolean add) {
+        BalanceStatus balanceStatus = orc20Balance.getBalanceStatus();
+        if (BalanceStatus.OK.equals(balanceStatus)) {
+            IndexKey aggregateKey = indexKey(orc20Balance.getTickId(), orc20Balance.getAddress());
+            Orc20BalanceAggregate aggregate = aggregateForUpdate(aggregateKey);
+            if (add) {
+                aggregate.getOkBalance().add(orc20Balance.getBalance());
+            } else {
+                aggregate.getOkBalance().subtract(orc20Balance.getBalance());
+            }
+            versionOrc20Balance(aggregateKey, aggregate.getOkBalance());
+            putAggregate(aggregateKey, aggregate);
+            summarizeOrc20Balance(aggregateKey, orc20Balance, add);
+        } else if (BalanceStatus.SEND_PENDING.equals(balanceStatus)) {
+            IndexKey aggregateKey = indexKey(orc20Balance.getTickId(), orc20Balance.getCreator());
+            Orc20BalanceAggregate aggregate = aggregateForUpdate(aggregateKey);
+            IndexKey primaryKey = balanceKey(orc20Balance.getTickId(), orc20Balance.getInscriptionId(), orc20Balance.getAddress());
+            if (add) {
+                aggregate.getPendingBalance().add(orc20Balance.getBalance());
+                aggregate.getPendingNonces().merge(orc20Balance.getNonce(), 1, Integer::sum);
+                addPending(orc20BalanceTickIdCreatorPendingIndex, aggregateKey, orc20Balance.getNonce(), primaryKey);
+            } else {
+                aggregate.getPendingBalance().subtract(orc20Balance.getBalance());
+                aggregate.getPendingNonces().computeIfPresent(orc20Balance.getNonce(), (nonce, n) -> n == 1 ? null : n - 1);
+                removePending(orc20BalanceTickIdCreatorPendingIndex, aggregateKey, orc20Balance.getNonce(), primaryKey);
             }
+            putAggregate(aggregateKey, aggregate);
         }
+    }
+
+    /**
+     * add/remove an "OK" balance to/from the summary of (tickId, address)
+     */
+    private void summarizeOrc20Balance(IndexKey summaryKey, Orc20Balance orc20Balance, boolean add) {
+        Orc20BalanceSummary summary = orc20BalanceTickIdAddressSummary.getForUpdate(summaryKey);
+        if (summary == null) {
+            summary = new Orc20BalanceSummary();
+        }
+        DecimalSum sum = OP._VIRTUAL_CREDIT_.equals(orc20Balance.getOp()) ? summary.getCreditBalance() : summary.getCashBalance();
+        if (add) {
+            sum.add(orc20Balance.getBalance());
+        } else {
+            sum.subtract(orc20Balance.getBalance());
+        }
+        if (summary.isEmpty()) {
+            orc20BalanceTickIdAddressSummary.remove(summaryKey);
+        } else {
+            orc20BalanceTickIdAddressSummary.put(summaryKey, summary);
+        }
+    }
+
+    /**
+     * the aggregate of (tickId, address) to be changed, a new one if there is none, see `putAggregate`
+     */
+    private Orc20BalanceAggregate aggregateForUpdate(IndexKey aggregateKey) {
+        Orc20BalanceAggregate aggregate = orc20BalanceTickIdAddressAggregate.getForUpdate(aggregateKey);
+        return aggregate != null ? aggregate : new Orc20BalanceAggregate();
+    }
+
+    /**
+     * store a changed aggregate, an empty one is removed
+     */
+    private void putAggregate(IndexKey aggregateKey, Orc20BalanceAggregate aggregate) {
+        if (aggregate.isEmpty()) {
+            orc20BalanceTickIdAddressAggregate.remove(aggregateKey);
+        } else {
+            orc20BalanceTickIdAddressAggregate.put(aggregateKey, aggregate);
+        }
+    }
+
+    @Override
+    public void setTransferPosition(long blockHeight, int txIndex) {
+        transferBlockHeight = blockHeight;
+        transferTxIndex = txIndex;
+    }
+
+    /**
+     * record a version of the "OK" balance of (tickId, address) at each transfer changing it, for `balanceOf` and `holdersOf`.
+     * off by default, the history only covers the blocks applied while it is on.
+     */
+    public void setBalanceHistory(boolean balanceHistory) {
+        this.balanceHistory = balanceHistory;
+    }
+
+    public boolean isBalanceHistory() {
+        return balanceHistory;
+    }
+
+    /**
+     * record the "OK" balance of (tickId, address) at the current transfer, one version per transfer
+     */
+    private void versionOrc20Balance(IndexKey aggregateKey, DecimalSum okBalance) {
+        if (!balanceHistory || transferBlockHeight < 0) {
+            return; // not recorded or not applying a transfer
+        }
+        Amount balance = okBalance.count() == 0 ? Amount.ZERO : okBalance.value();
+        ListIndex<IndexKey, Orc20BalanceVersion> versions = orc20BalanceTickIdAddressHistory;
+        boolean recorded = versions.size(aggregateKey) > 0;
+        Orc20BalanceVersion last = lastVersion(aggregateKey);
+        if (last != null && last.getBlockHeight() == transferBlockHeight && last.getTxIndex() == transferTxIndex) {
+            versions.removeLast(aggregateKey); // changed again by the same transfer
+            last = lastVersion(aggregateKey);
+        }
+        if (last == null ? balance.signum() != 0 : last.getBalance().compareTo(balance) != 0) {
+            versions.add(aggregateKey, new Orc20BalanceVersion(transferBlockHeight, transferTxIndex, balance));
+        }
+        String tickId = (String) aggregateKey.get(0);
+        String address = (String) aggregateKey.get(1);
+        if (versions.size(aggregateKey) > 0) {
+            if (!recorded) {
+                orc20BalanceTickIdHistoryAddressIndex.add(tickId, address);
+            }
+        } else if (recorded) {
+            orc20BalanceTickIdHistoryAddressIndex.remove(tickId, address);
+        }
+    }
+
+    private Orc20BalanceVersion lastVersion(IndexKey aggregateKey) {
+        int size = orc20BalanceTickIdAddressHistory.size(aggregateKey);
+        return size == 0 ? null : orc20BalanceTickIdAddressHistory.get(aggregateKey, size - 1);
+    }
+
+    /**
+     * "OK" balance of (tickId, address) after the transfers of block `blockHeight`, including the "credit balance"
+     */
+    @Override
+    public Amount balanceOf(String tickId, String address, long blockHeight) {
+        checkBalanceHistory();
+        return balanceAt(indexKey(tickId, address), blockHeight);
+    }
+
+    /**
+     * addresses with a positive "OK" balance of `tickId` after the transfers of block `blockHeight`, ordered by address.
+     * reads the history of the addresses of `tickId` only.
+     */
+    @Override
+    public Map<String, Amount> holdersOf(String tickId, long blockHeight) {
+        checkBalanceHistory();
+        Map<String, Amount> holders = new TreeMap<>();
+        for (String address : orc20BalanceTickIdHistoryAddressIndex.get(tickId)) {
+            Amount balance = balanceAt(indexKey(tickId, address), blockHeight);
+            if (balance.signum() > 0) {
+                holders.put(address, balance);
+            }
+        }
+        return holders;
+    }
+
+    private void checkBalanceHistory() {
+        if (!balanceHistory) {
+            throw new IllegalStateException("Balance history is not recorded");
+        }
+    }
+
+    /**
+     * the balance of the last version of (tickId, address) at or before `blockHeight`, reading the versions of the search only
+     */
+    private Amount balanceAt(IndexKey aggregateKey, long blockHeight) {
+        ListIndex<IndexKey, Orc20BalanceVersion> versions = orc20BalanceTickIdAddressHistory;
+        int low = 0;
+        int high = versions.size(aggregateKey) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (versions.get(aggregateKey, mid).getBlockHeight() <= blockHeight) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high < 0 ? Amount.ZERO : versions.get(aggregateKey, high).getBalance();
+    }
+
+    /**
+     * running totals of (tickId, address)
+     * `okBalance` and `pendingBalance` equal the sums over `selectOrc20BalanceListByTickIdAndAddress` filtered by "OK" and `selectPendingOrc20BalanceListByTickIdAndCreator`.
+     */
+    @Override
+    public Orc20BalanceAggregate selectOrc20BalanceAggregateByTickIdAndAddress(String tickId, String address) {
+        Orc20BalanceAggregate aggregate = orc20BalanceTickIdAddressAggregate.get(indexKey(tickId, address));
+        return aggregate != null ? aggregate : new Orc20BalanceAggregate();
+    }
+
+    /**
+     * `cashBalance` and `creditBalance` equal the sums over `selectOrc20BalanceListByTickIdAndAddress` filtered by "OK",
+     * without and with OP._VIRTUAL_CREDIT_
+     */
+    @Override
+    public Orc20BalanceSummary selectOrc20BalanceSummaryByTickIdAndAddress(String tickId, String address) {
+        Orc20BalanceSummary summary = orc20BalanceTickIdAddressSummary.get(indexKey(tickId, address));
+        return summary != null ? summary : new Orc20BalanceSummary();
+    }
+
+    /**
+     * the "credit balance" is the only balance without inscriptionId, so it is found by primary key
+     */
+    @Override
+    public Orc20Balance selectOrc20CreditBalanceByTickIdAndAddress(String tickId, String address) {
+        Orc20Balance balance = orc20BalanceTable.get(balanceKey(tickId, "", address));
+        if (balance != null && OP._VIRTUAL_CREDIT_.equals(balance.getOp()) && BalanceStatus.OK.equals(balance.getBalanceStatus())) {
+            return balance;
+        }
+        return null;
+    }
+
+    @Override
+    public void updateOrc20BalanceStatus(Orc20Balance orc20Balance, BalanceStatus newBalanceStatus) {
+        IndexKey primaryKey = recordOrc20Balance(orc20Balance);
+        aggregateOrc20Balance(orc20Balance, false);
+        orc20Balance.setBalanceStatus(newBalanceStatus);
+        aggregateOrc20Balance(orc20Balance, true);
+        orc20BalanceTable.put(primaryKey, orc20Balance);
+    }
+
+    @Override
+    public void updateOrc20BalanceAmount(Orc20Balance orc20Balance, Amount newBalance) {
+        IndexKey primaryKey = recordOrc20Balance(orc20Balance);
+        aggregateOrc20Balance(orc20Balance, false);
+        orc20Balance.setBalance(newBalance);
+        aggregateOrc20Balance(orc20Balance, true);
+        orc20BalanceTable.put(primaryKey, orc20Balance);
+    }
+
+    @Override
+    public void updateOrc20BalanceOp(Orc20Balance orc20Balance, OP newOp) {
+        IndexKey primaryKey = recordOrc20Balance(orc20Balance);
+        boolean ok = BalanceStatus.OK.equals(orc20Balance.getBalanceStatus());
+        IndexKey summaryKey = indexKey(orc20Balance.getTickId(), orc20Balance.getAddress());
+        if (ok) {
+            summarizeOrc20Balance(summaryKey, orc20Balance, false);
+        }
+        orc20Balance.setOp(newOp);
+        if (ok) {
+            summarizeOrc20Balance(summaryKey, orc20Balance, true);
+        }
+        orc20BalanceTable.put(primaryKey, orc20Balance);
+    }
+
+    /**
+     * record the state of a stored balance before it is changed in place, for the undo journal and the snapshots
+     *
+     * @return its primary key, the balance is put back with it after the change
+     */
+    private IndexKey recordOrc20Balance(Orc20Balance orc20Balance) {
+        IndexKey primaryKey = balanceKey(orc20Balance.getTickId(), orc20Balance.getInscriptionId(), orc20Balance.getAddress());
+        orc20BalanceTable.getForUpdate(primaryKey);
+        preserveOrc20Balance(primaryKey, orc20Balance);
+        return primaryKey;
+    }
+
+    /**
+     * get user balance list by (tickId, address)
+     */
+    @Override
+    public List<Orc20Balance> selectOrc20BalanceListByTickIdAndAddress(String tickId, String address) {
+        List<Orc20Balance> balanceList = new ArrayList<>();
+        IndexKey indexKey = indexKey(tickId, address);
+        orc20BalanceTickIdAddressIndex.get(indexKey).forEach(i -> balanceList.add(orc20BalanceTable.get(i)));
         return balanceList;
     }
 
     /**
-     * get pending user balance list by (tickId, creator)
+     * get pending user balance list by (tickId, creator), from the pending index
      */
-    public static List<Orc20Balance> selectPendingOrc20BalanceListByTickIdAndCreator(String tickId, String creator) {
+    @Override
+    public List<Orc20Balance> selectPendingOrc20BalanceListByTickIdAndCreator(String tickId, String creator) {
         List<Orc20Balance> balanceList = new ArrayList<>();
-        String indexKey = indexKey(tickId, creator);
-        if (orc20BalanceTickIdCreatorIndex.containsKey(indexKey)) {
-            Set<String> balanceInscriptionList = orc20BalanceTickIdCreatorIndex.get(indexKey);
-            if (balanceInscriptionList != null) {
-                balanceInscriptionList.forEach(i -> {
-                    Orc20Balance balance = orc20BalanceTable.get(i);
-                    if (balance.getBalanceStatus().equals(BalanceStatus.SEND_PENDING)) {
-                        balanceList.add(balance);
-                    }
-                });
-            }
+        Map<Long, Set<IndexKey>> pending = orc20BalanceTickIdCreatorPendingIndex.get(indexKey(tickId, creator));
+        if (pending != null) {
+            pending.values().forEach(primaryKeys -> primaryKeys.forEach(i -> balanceList.add(orc20BalanceTable.get(i))));
         }
         return balanceList;
     }
@@ -359,9 +862,10 @@ public class MemoryCache {
      * get user balance by (inscriptionId)
      * Note: The "credit balance" does not have an inscriptionId and cannot be retrieved using this method.
      */
-    public static Orc20Balance selectOrc20BalanceByInscriptionId(String inscriptionId) {
+    @Override
+    public Orc20Balance selectOrc20BalanceByInscriptionId(String inscriptionId) {
 
-        String primaryKey = orc20BalanceInscriptionIdIndex.get(inscriptionId);
+        IndexKey primaryKey = orc20BalanceInscriptionIdIndex.get(inscriptionId);
         if (primaryKey != null) {
             return orc20BalanceTable.get(primaryKey);
         }
@@ -372,57 +876,405 @@ public class MemoryCache {
      * update balance status by (tickId, creator, nonce)
      * used to mark the balance maintained on the "inscribe send" inscription that has been canceled as invalid
      */
-    public static void updateOrc20BalanceStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, BalanceStatus newBalanceStatus) {
-        List<Orc20Balance> balanceList = selectPendingOrc20BalanceListByTickIdAndCreator(tickId, creator);
-        balanceList.forEach(
-                b -> {
-                    if (b.getNonce() == nonce) {
-                        b.setBalanceStatus(newBalanceStatus);
-                    }
-                }
-        );
+    @Override
+    public void updateOrc20BalanceStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, BalanceStatus newBalanceStatus) {
+        Map<Long, Set<IndexKey>> pending = orc20BalanceTickIdCreatorPendingIndex.get(indexKey(tickId, creator));
+        Set<IndexKey> primaryKeys = pending == null ? null : pending.get(nonce);
+        if (primaryKeys != null) {
+            new ArrayList<>(primaryKeys).forEach(i -> updateOrc20BalanceStatus(orc20BalanceTable.get(i), newBalanceStatus));
+        }
     }
 
     /**
      * change balance holder
      * generally used to update the holder of balance after "transfer mint" or "transfer send"
      */
-    public static void updateOrc20BalanceAddressByTickIdAndInscriptionId(String tickId, String inscriptionId, String oldAddress, String newAddress) {
-        String primaryKey = String.format("%s-%s-%s", tickId, inscriptionId, oldAddress);
-        String indexKey = indexKey(tickId, oldAddress);
-        orc20BalanceTickIdAddressIndex.get(indexKey).remove(primaryKey);
-        Orc20Balance orc20Balance = orc20BalanceTable.remove(primaryKey);
-        String creator = orc20Balance.getCreator();
-        indexKey = indexKey(tickId, creator);
-        orc20BalanceTickIdCreatorIndex.get(indexKey).remove(primaryKey);
+    @Override
+    public void updateOrc20BalanceAddressByTickIdAndInscriptionId(String tickId, String inscriptionId, String oldAddress, String newAddress) {
+        IndexKey primaryKey = balanceKey(tickId, inscriptionId, oldAddress);
+        IndexKey indexKey = indexKey(tickId, oldAddress);
+        orc20BalanceTickIdAddressIndex.remove(indexKey, primaryKey);
+        Orc20Balance orc20Balance = orc20BalanceTable.get(primaryKey);
+        if (isOffHeapBalances()) {
+            orc20Balance = new Orc20Balance(orc20Balance); // a view of an off-heap row is freed by `remove`
+        }
+        preserveOrc20Balance(primaryKey, orc20Balance);
+        orc20BalanceTable.remove(primaryKey);
+        aggregateOrc20Balance(orc20Balance, false);
         orc20Balance.setAddress(newAddress);
         insertOrc20Balance(orc20Balance);
     }
 
     /**
-     * create balance snapshot
+     * keep the state of a stored balance for the snapshots it has not changed since, before it changes
+     *
+     * @param current the stored balance, null if there is none yet
      */
-    public static void createBalanceSnapshot() {
-        orc20BalanceTableOIP10Snapshot.clear();
-        dumpOrc20Balance().forEach(
-                (key, value) -> orc20BalanceTableOIP10Snapshot.put(key, new Orc20Balance(value))
-        );
+    private void preserveOrc20Balance(IndexKey primaryKey, Orc20Balance current) {
+        if (balanceSnapshotHeights.isEmpty()) {
+            return;
+        }
+        Orc20BalancePreImages preImages = orc20BalancePreImageTable.get(primaryKey);
+        if (preImages != null && preImages.getImages().size() == balanceSnapshotHeights.size()) {
+            return; // already changed since the latest snapshot
+        }
+        preImages = orc20BalancePreImageTable.getForUpdate(primaryKey);
+        if (preImages == null) {
+            preImages = new Orc20BalancePreImages();
+        }
+        Orc20Balance image = current == null ? null : new Orc20Balance(current); // shared by the snapshots missing it
+        for (Long snapshotHeight : balanceSnapshotHeights) {
+            if (!preImages.getImages().containsKey(snapshotHeight)) {
+                preImages.getImages().put(snapshotHeight, image);
+            }
+        }
+        orc20BalancePreImageTable.put(primaryKey, preImages);
+    }
+
+    /**
+     * create balance snapshot, nothing is copied: a balance is copied on its first change after the snapshot
+     */
+    @Override
+    public void createBalanceSnapshot(long snapshotHeight, long blockHeight) {
+        if (balanceSnapshotHeights.add(snapshotHeight)) {
+            orc20BalanceSnapshotTable.put(snapshotHeight, blockHeight);
+        }
+    }
+
+    @Override
+    public Set<Long> selectBalanceSnapshotHeights() {
+        return Collections.unmodifiableSet(balanceSnapshotHeights);
     }
 
-    public static Map<String, Orc20Event> dumpOrc20Event() {
+    @Override
+    public Map<String, Orc20Event> dumpOrc20Event() {
         return orc20EventsTable;
     }
 
-    public static Map<String, Orc20Metadata> dumpOrc20Metadata() {
+    @Override
+    public Map<String, Orc20Metadata> dumpOrc20Metadata() {
         return orc20MetadataTable;
     }
 
-    public static Map<String, Orc20Balance> dumpOrc20Balance() {
+    @Override
+    public Map<IndexKey, Orc20Balance> dumpOrc20Balance() {
         return orc20BalanceTable;
     }
 
-    public static Map<String, Orc20Balance> dumpOrc20BalanceOIP10Snapshot() {
-        return orc20BalanceTableOIP10Snapshot;
+    @Override
+    public Map<IndexKey, Orc20BalanceSummary> dumpOrc20BalanceSummary() {
+        return orc20BalanceTickIdAddressSummary;
+    }
+
+    @Override
+    public Map<IndexKey, Orc20Balance> dumpOrc20BalanceSnapshot(long snapshotHeight) {
+        return balanceSnapshotHeights.contains(snapshotHeight) ? new BalanceSnapshot(snapshotHeight) : Collections.emptyMap();
+    }
+
+    @Override
+    public Map<IndexKey, Orc20Balance> dumpOrc20BalanceOIP10Snapshot() {
+        return dumpOrc20BalanceSnapshot(OIP.OIP_10_BLOCK);
+    }
+
+    @Override
+    public void commit(long blockHeight) {
+        // everything is already in memory
+        journal.commit(blockHeight);
+        committedBlockHeight = blockHeight;
+    }
+
+    /**
+     * keep the undo records of the latest `depth` blocks for `rollbackTo`, 0 (default) disables them.
+     * the records start at the committed block height and are not persisted.
+     */
+    public void setUndoDepth(int depth) {
+        journal.setDepth(depth, committedBlockHeight());
+    }
+
+    /**
+     * revert the tables and indexes to the end of block `blockHeight`, changes after the last commit are always reverted
+     *
+     * @throws IllegalArgumentException if the undo records do not reach back to `blockHeight`
+     */
+    @Override
+    public void rollbackTo(long blockHeight) {
+        journal.rollbackTo(blockHeight);
+        committedBlockHeight = Math.min(committedBlockHeight, blockHeight);
+        transferBlockHeight = -1;
+        balanceSnapshotHeights.clear();
+        balanceSnapshotHeights.addAll(orc20BalanceSnapshotTable.keySet());
+    }
+
+    @Override
+    public long committedBlockHeight() {
+        return committedBlockHeight;
+    }
+
+    @Override
+    public void close() {
+        if (inscriptionContentsTable instanceof Closeable) {
+            try {
+                ((Closeable) inscriptionContentsTable).close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * add all tables and indexes of `other`, whose keys must not overlap with this storage (e.g. a shard of other ticks)
+     */
+    public void merge(MemoryCache other) {
+        for (Table table : tables.values()) {
+            table.merge(other.tables.get(table.name));
+        }
+        balanceSnapshotHeights.addAll(orc20BalanceSnapshotTable.keySet());
+        committedBlockHeight = Math.max(committedBlockHeight, other.committedBlockHeight);
+    }
+
+    /**
+     * write all tables and indexes, see {@link Checkpoint}
+     */
+    void writeTables(DataOutput out) throws IOException {
+        out.writeLong(committedBlockHeight());
+        out.writeInt(tables.size());
+        for (Table table : tables.values()) {
+            table.write(out);
+        }
+    }
+
+    /**
+     * replace all tables and indexes with the ones written by `writeTables`
+     */
+    void readTables(DataInputStream tablesIn) throws IOException {
+        // each row and key read has its own copy of the identifiers
+        DataInputStream in = symbols == null ? tablesIn : new SymbolTable.Input(tablesIn, symbols);
+        committedBlockHeight = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = Codecs.readString(in);
+            Table table = tables.get(name);
+            if (table == null) {
+                throw new IOException("Unknown table: " + name);
+            }
+            table.read(in);
+        }
+        balanceSnapshotHeights.clear();
+        balanceSnapshotHeights.addAll(orc20BalanceSnapshotTable.keySet());
+        journal.reset(committedBlockHeight);
+    }
+
+    /**
+     * read-only view of the balances at a snapshot: the pre-images of the balances changed since, and the live unchanged ones
+     */
+    private class BalanceSnapshot extends AbstractMap<IndexKey, Orc20Balance> {
+        private final long snapshotHeight;
+
+        BalanceSnapshot(long snapshotHeight) {
+            this.snapshotHeight = snapshotHeight;
+        }
+
+        @Override
+        public Orc20Balance get(Object key) {
+            Orc20BalancePreImages preImages = orc20BalancePreImageTable.get(key);
+            if (preImages != null && preImages.getImages().containsKey(snapshotHeight)) {
+                return preImages.getImages().get(snapshotHeight);
+            }
+            return orc20BalanceTable.get(key);
+        }
+
+        @Override
+        public Set<Entry<IndexKey, Orc20Balance>> entrySet() {
+            List<Entry<IndexKey, Orc20Balance>> entries = new ArrayList<>();
+            for (Entry<IndexKey, Orc20Balance> e : orc20BalanceTable.entrySet()) {
+                Orc20Balance balance = get(e.getKey());
+                if (balance != null) {
+                    entries.add(new SimpleImmutableEntry<>(e.getKey(), balance));
+                }
+            }
+            for (Entry<IndexKey, Orc20BalancePreImages> e : orc20BalancePreImageTable.entrySet()) {
+                Orc20Balance image = e.getValue().getImages().get(snapshotHeight);
+                if (image != null && !orc20BalanceTable.containsKey(e.getKey())) {
+                    entries.add(new SimpleImmutableEntry<>(e.getKey(), image)); // removed since the snapshot
+                }
+            }
+            return new AbstractSet<Entry<IndexKey, Orc20Balance>>() {
+                @Override
+                public Iterator<Entry<IndexKey, Orc20Balance>> iterator() {
+                    return entries.iterator();
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * a table or index by name, written to and read from checkpoints
+     */
+    private abstract static class Table {
+        final String name;
+
+        Table(String name) {
+            this.name = name;
+        }
+
+        abstract void write(DataOutput out) throws IOException;
+
+        abstract void read(DataInput in) throws IOException;
+
+        /**
+         * add the rows of the same table of another storage, not recorded in the undo journal
+         */
+        abstract void merge(Table other);
+    }
+
+    private static class MapTable<K, V> extends Table {
+        private final Map<K, V> map;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+
+        MapTable(String name, Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec) {
+            super(name);
+            this.map = map;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            Codecs.writeString(out, name);
+            out.writeInt(map.size());
+            for (Map.Entry<K, V> e : map.entrySet()) {
+                keyCodec.write(out, e.getKey());
+                valueCodec.write(out, e.getValue());
+            }
+        }
+
+        @Override
+        void read(DataInput in) throws IOException {
+            map.clear();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                map.put(keyCodec.read(in), valueCodec.read(in));
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void merge(Table other) {
+            map.putAll(((MapTable<K, V>) other).map);
+        }
+    }
+
+    /**
+     * written as a table of sets, like `Codecs.setCodec` encodes them
+     */
+    private static class SetTable<K, E> extends Table {
+        private final SetIndex<K, E> index;
+        private final Codec<K> keyCodec;
+        private final Codec<E> memberCodec;
+
+        SetTable(String name, SetIndex<K, E> index, Codec<K> keyCodec, Codec<E> memberCodec) {
+            super(name);
+            this.index = index;
+            this.keyCodec = keyCodec;
+            this.memberCodec = memberCodec;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            Codecs.writeString(out, name);
+            out.writeInt(index.keySet().size());
+            for (K key : index.keySet()) {
+                keyCodec.write(out, key);
+                Collection<E> members = index.get(key);
+                out.writeInt(members.size());
+                for (E member : members) {
+                    memberCodec.write(out, member);
+                }
+            }
+        }
+
+        @Override
+        void read(DataInput in) throws IOException {
+            index.clear();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                K key = keyCodec.read(in);
+                int members = in.readInt();
+                for (int j = 0; j < members; j++) {
+                    index.add(key, memberCodec.read(in));
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void merge(Table other) {
+            SetIndex<K, E> otherIndex = ((SetTable<K, E>) other).index;
+            for (K key : otherIndex.keySet()) {
+                for (E member : otherIndex.get(key)) {
+                    index.add(key, member);
+                }
+            }
+        }
     }
 
+    /**
+     * written as a table of lists, like `Codecs.listCodec` encodes them
+     */
+    private static class ListTable<K, E> extends Table {
+        private final ListIndex<K, E> index;
+        private final Codec<K> keyCodec;
+        private final Codec<E> elementCodec;
+
+        ListTable(String name, ListIndex<K, E> index, Codec<K> keyCodec, Codec<E> elementCodec) {
+            super(name);
+            this.index = index;
+            this.keyCodec = keyCodec;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            Codecs.writeString(out, name);
+            out.writeInt(index.keySet().size());
+            for (K key : index.keySet()) {
+                keyCodec.write(out, key);
+                int size = index.size(key);
+                out.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    elementCodec.write(out, index.get(key, i));
+                }
+            }
+        }
+
+        @Override
+        void read(DataInput in) throws IOException {
+            index.clear();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                K key = keyCodec.read(in);
+                int elements = in.readInt();
+                for (int j = 0; j < elements; j++) {
+                    index.add(key, elementCodec.read(in));
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void merge(Table other) {
+            ListIndex<K, E> otherIndex = ((ListTable<K, E>) other).index;
+            for (K key : otherIndex.keySet()) {
+                for (int i = 0; i < otherIndex.size(key); i++) {
+                    index.add(key, otherIndex.get(key, i));
+                }
+            }
+        }
+    }
 }
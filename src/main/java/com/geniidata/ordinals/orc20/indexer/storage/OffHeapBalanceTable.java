@@ -0,0 +1,489 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * the balances of primary key (tickId, inscriptionId, address) in columns of direct buffers, one slot per row,
+ * keeps the balance rows off heap. the direct buffers count against `-XX:MaxDirectMemorySize`.
+ * <p>
+ * columns: int symbol ids (see {@link SymbolTable}) of tickId, tick, inscriptionId, address and creator,
+ * the balance as long unscaled value and int scale, long nonce, byte ordinals of balanceStatus and op, byte flags.
+ * balances whose unscaled value does not fit in a long are kept on heap by row.
+ * the rows are found with an open-addressing hash index of the key ids, also in a direct buffer. freed rows are reused.
+ * <p>
+ * `get` and the entries return a view of the row, its setters write the row (the key fields can not change).
+ * a view is valid until its row is removed. `put` copies the balance into the row of the key and returns null,
+ * `remove` returns a copy.
+ */
+class OffHeapBalanceTable extends AbstractMap<IndexKey, Orc20Balance> {
+    private final static int MAX_ROWS = 1 << 27; // the index holds twice as many slots, up to 2^30 bytes
+    private final static int INITIAL_ROWS = 1024;
+
+    private final static byte LIVE = 1;
+    private final static byte NULL_BALANCE = 2;
+    private final static byte BIG_BALANCE = 4; // unscaled value in `bigBalances`
+
+    private final static BalanceStatus[] BALANCE_STATUSES = BalanceStatus.values();
+    private final static OP[] OPS = OP.values();
+
+    private final SymbolTable symbols;
+    private final Map<Integer, Amount> bigBalances = new HashMap<>();
+    private int capacity;
+    private int rows; // rows in use or freed, the columns are valid below
+    private int size;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+
+    private ByteBuffer tickIds;
+    private ByteBuffer ticks;
+    private ByteBuffer inscriptionIds;
+    private ByteBuffer addresses;
+    private ByteBuffer creators;
+    private ByteBuffer unscaledBalances;
+    private ByteBuffer balanceScales;
+    private ByteBuffer nonces;
+    private ByteBuffer balanceStatuses; // ordinal + 1, 0 for null
+    private ByteBuffer ops; // ordinal + 1, 0 for null
+    private ByteBuffer flags;
+
+    // row + 1 by slot, 0 for an empty slot
+    private ByteBuffer slots;
+    private int slotMask;
+
+    OffHeapBalanceTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        allocate(INITIAL_ROWS);
+    }
+
+    /**
+     * in-memory tables, the balance table of {@link MemoryCache} off heap
+     */
+    static TableFactory tables(SymbolTable symbols) {
+        return new TableFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Map<K, V> createTable(String name, Codec<K> keyCodec, Codec<V> valueCodec) {
+                return MemoryCache.BALANCE_TABLE.equals(name) ? (Map<K, V>) new OffHeapBalanceTable(symbols) : new HashMap<>();
+            }
+        };
+    }
+
+    /**
+     * whether `a` and `b` are views of the same row
+     */
+    static boolean sameRow(Orc20Balance a, Orc20Balance b) {
+        if (!(a instanceof Row) || !(b instanceof Row)) {
+            return false;
+        }
+        Row rowA = (Row) a;
+        Row rowB = (Row) b;
+        return rowA.table() == rowB.table() && rowA.row == rowB.row;
+    }
+
+    @Override
+    public Orc20Balance get(Object key) {
+        int row = findRow(key);
+        return row < 0 ? null : new Row(row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findRow(key) >= 0;
+    }
+
+    @Override
+    public Orc20Balance put(IndexKey key, Orc20Balance value) {
+        // read first, `value` may be a view of a row of this table
+        String tick = value.getTick();
+        String creator = value.getCreator();
+        Amount balance = value.getBalance();
+        long nonce = value.getNonce();
+        BalanceStatus balanceStatus = value.getBalanceStatus();
+        OP op = value.getOp();
+
+        int tickId = symbols.id((String) key.get(0));
+        int inscriptionId = symbols.id((String) key.get(1));
+        int address = symbols.id((String) key.get(2));
+        int slot = findSlot(tickId, inscriptionId, address);
+        int row;
+        if (slot >= 0) {
+            row = slots.getInt(slot << 2) - 1;
+        } else {
+            row = newRow();
+            tickIds.putInt(row << 2, tickId);
+            inscriptionIds.putInt(row << 2, inscriptionId);
+            addresses.putInt(row << 2, address);
+            flags.put(row, LIVE);
+            slots.putInt(-(slot + 1) << 2, row + 1);
+            size++;
+            if (size > (slotMask + 1) >> 1) {
+                resizeIndex((slotMask + 1) << 1);
+            }
+        }
+        ticks.putInt(row << 2, symbols.id(tick));
+        creators.putInt(row << 2, symbols.id(creator));
+        setBalance(row, balance);
+        nonces.putLong(row << 3, nonce);
+        balanceStatuses.put(row, (byte) (balanceStatus == null ? 0 : balanceStatus.ordinal() + 1));
+        ops.put(row, (byte) (op == null ? 0 : op.ordinal() + 1));
+        return null;
+    }
+
+    @Override
+    public Orc20Balance remove(Object key) {
+        int row = findRow(key);
+        if (row < 0) {
+            return null;
+        }
+        Orc20Balance removed = new Orc20Balance(new Row(row));
+        deleteSlot(findSlot(tickIds.getInt(row << 2), inscriptionIds.getInt(row << 2), addresses.getInt(row << 2)));
+        flags.put(row, (byte) 0);
+        bigBalances.remove(row);
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+        }
+        freeRows[freeCount++] = row;
+        size--;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        rows = 0;
+        size = 0;
+        freeCount = 0;
+        bigBalances.clear();
+        slots = ByteBuffer.allocateDirect((slotMask + 1) << 2).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<IndexKey, Orc20Balance>> entrySet() {
+        return new AbstractSet<Entry<IndexKey, Orc20Balance>>() {
+            @Override
+            public Iterator<Entry<IndexKey, Orc20Balance>> iterator() {
+                return new Iterator<Entry<IndexKey, Orc20Balance>>() {
+                    private int next = nextLive(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < rows;
+                    }
+
+                    @Override
+                    public Entry<IndexKey, Orc20Balance> next() {
+                        if (next >= rows) {
+                            throw new NoSuchElementException();
+                        }
+                        int row = next;
+                        next = nextLive(row + 1);
+                        IndexKey key = IndexKey.of(symbols.symbol(tickIds.getInt(row << 2)),
+                                symbols.symbol(inscriptionIds.getInt(row << 2)), symbols.symbol(addresses.getInt(row << 2)));
+                        return new SimpleImmutableEntry<>(key, new Row(row));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int nextLive(int row) {
+        while (row < rows && (flags.get(row) & LIVE) == 0) {
+            row++;
+        }
+        return row;
+    }
+
+    /**
+     * the row of the balance key, -1 if there is none
+     */
+    private int findRow(Object key) {
+        if (!(key instanceof IndexKey) || ((IndexKey) key).arity() != 3) {
+            return -1;
+        }
+        IndexKey indexKey = (IndexKey) key;
+        int tickId = idOf(indexKey.get(0));
+        int inscriptionId = idOf(indexKey.get(1));
+        int address = idOf(indexKey.get(2));
+        if (tickId == SymbolTable.UNKNOWN || inscriptionId == SymbolTable.UNKNOWN || address == SymbolTable.UNKNOWN) {
+            return -1; // never stored
+        }
+        int slot = findSlot(tickId, inscriptionId, address);
+        return slot < 0 ? -1 : slots.getInt(slot << 2) - 1;
+    }
+
+    private int idOf(Object value) {
+        return value == null || value instanceof String ? symbols.idOf((String) value) : SymbolTable.UNKNOWN;
+    }
+
+    /**
+     * the slot of the key ids, or -(empty slot + 1) where it would be
+     */
+    private int findSlot(int tickId, int inscriptionId, int address) {
+        int slot = hash(tickId, inscriptionId, address) & slotMask;
+        while (true) {
+            int entry = slots.getInt(slot << 2);
+            if (entry == 0) {
+                return -(slot + 1);
+            }
+            int row = entry - 1;
+            if (tickIds.getInt(row << 2) == tickId && inscriptionIds.getInt(row << 2) == inscriptionId && addresses.getInt(row << 2) == address) {
+                return slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    /**
+     * empty `slot`, moving back the entries after it that would no longer be found
+     */
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & slotMask;
+            int entry = slots.getInt(next << 2);
+            if (entry == 0) {
+                break;
+            }
+            int home = rowHash(entry - 1) & slotMask;
+            // the entry stays if its home slot lies cyclically in (hole, next]
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                slots.putInt(hole << 2, entry);
+                hole = next;
+            }
+        }
+        slots.putInt(hole << 2, 0);
+    }
+
+    private void resizeIndex(int slotCount) {
+        slots = ByteBuffer.allocateDirect(slotCount << 2).order(ByteOrder.nativeOrder());
+        slotMask = slotCount - 1;
+        for (int row = 0; row < rows; row++) {
+            if ((flags.get(row) & LIVE) != 0) {
+                int slot = rowHash(row) & slotMask;
+                while (slots.getInt(slot << 2) != 0) {
+                    slot = (slot + 1) & slotMask;
+                }
+                slots.putInt(slot << 2, row + 1);
+            }
+        }
+    }
+
+    private int rowHash(int row) {
+        return hash(tickIds.getInt(row << 2), inscriptionIds.getInt(row << 2), addresses.getInt(row << 2));
+    }
+
+    private static int hash(int tickId, int inscriptionId, int address) {
+        int h = tickId * 0x9e3779b1 + inscriptionId;
+        h = h * 0x9e3779b1 + address;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        return h ^ h >>> 13;
+    }
+
+    /**
+     * a freed row, or a new one at the end of the columns
+     */
+    private int newRow() {
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+        if (rows == capacity) {
+            if (capacity == MAX_ROWS) {
+                throw new IllegalStateException("Too many balances: " + MAX_ROWS);
+            }
+            allocate(Math.min(capacity << 1, MAX_ROWS));
+        }
+        return rows++;
+    }
+
+    /**
+     * grow the columns to `newCapacity` rows, an index of twice as many slots on the first call
+     */
+    private void allocate(int newCapacity) {
+        tickIds = grow(tickIds, 4, newCapacity);
+        ticks = grow(ticks, 4, newCapacity);
+        inscriptionIds = grow(inscriptionIds, 4, newCapacity);
+        addresses = grow(addresses, 4, newCapacity);
+        creators = grow(creators, 4, newCapacity);
+        unscaledBalances = grow(unscaledBalances, 8, newCapacity);
+        balanceScales = grow(balanceScales, 4, newCapacity);
+        nonces = grow(nonces, 8, newCapacity);
+        balanceStatuses = grow(balanceStatuses, 1, newCapacity);
+        ops = grow(ops, 1, newCapacity);
+        flags = grow(flags, 1, newCapacity);
+        if (slots == null) {
+            slots = ByteBuffer.allocateDirect((newCapacity << 1) << 2).order(ByteOrder.nativeOrder());
+            slotMask = (newCapacity << 1) - 1;
+        }
+        capacity = newCapacity;
+    }
+
+    private static ByteBuffer grow(ByteBuffer column, int width, int newCapacity) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity * width).order(ByteOrder.nativeOrder());
+        if (column != null) {
+            ByteBuffer old = column.duplicate();
+            old.clear();
+            grown.put(old);
+            grown.clear();
+        }
+        return grown;
+    }
+
+    private Amount getBalance(int row) {
+        byte rowFlags = flags.get(row);
+        if ((rowFlags & NULL_BALANCE) != 0) {
+            return null;
+        }
+        if ((rowFlags & BIG_BALANCE) != 0) {
+            return bigBalances.get(row);
+        }
+        return Amount.valueOf(unscaledBalances.getLong(row << 3), balanceScales.getInt(row << 2));
+    }
+
+    private void setBalance(int row, Amount balance) {
+        byte rowFlags = (byte) (flags.get(row) & ~(NULL_BALANCE | BIG_BALANCE));
+        if (balance == null) {
+            rowFlags |= NULL_BALANCE;
+            bigBalances.remove(row);
+        } else if (balance.fitsInLong()) {
+            unscaledBalances.putLong(row << 3, balance.longUnscaledValue());
+            balanceScales.putInt(row << 2, balance.scale());
+            bigBalances.remove(row);
+        } else {
+            rowFlags |= BIG_BALANCE;
+            bigBalances.put(row, balance);
+        }
+        flags.put(row, rowFlags);
+    }
+
+    /**
+     * view of a row, the fields of the superclass are not used
+     */
+    private final class Row extends Orc20Balance {
+        private final int row;
+
+        Row(int row) {
+            this.row = row;
+        }
+
+        OffHeapBalanceTable table() {
+            return OffHeapBalanceTable.this;
+        }
+
+        @Override
+        public String getTickId() {
+            return symbols.symbol(tickIds.getInt(row << 2));
+        }
+
+        @Override
+        public String getTick() {
+            return symbols.symbol(ticks.getInt(row << 2));
+        }
+
+        @Override
+        public String getInscriptionId() {
+            return symbols.symbol(inscriptionIds.getInt(row << 2));
+        }
+
+        @Override
+        public Amount getBalance() {
+            return OffHeapBalanceTable.this.getBalance(row);
+        }
+
+        @Override
+        public String getAddress() {
+            return symbols.symbol(addresses.getInt(row << 2));
+        }
+
+        @Override
+        public String getCreator() {
+            return symbols.symbol(creators.getInt(row << 2));
+        }
+
+        @Override
+        public long getNonce() {
+            return nonces.getLong(row << 3);
+        }
+
+        @Override
+        public BalanceStatus getBalanceStatus() {
+            byte ordinal = balanceStatuses.get(row);
+            return ordinal == 0 ? null : BALANCE_STATUSES[ordinal - 1];
+        }
+
+        @Override
+        public OP getOp() {
+            byte ordinal = ops.get(row);
+            return ordinal == 0 ? null : OPS[ordinal - 1];
+        }
+
+        @Override
+        public void setTickId(String tickId) {
+            checkKey(tickId, getTickId());
+        }
+
+        @Override
+        public void setTick(String tick) {
+            ticks.putInt(row << 2, symbols.id(tick));
+        }
+
+        @Override
+        public void setInscriptionId(String inscriptionId) {
+            checkKey(inscriptionId, getInscriptionId());
+        }
+
+        @Override
+        public void setBalance(Amount balance) {
+            OffHeapBalanceTable.this.setBalance(row, balance);
+        }
+
+        @Override
+        public void setAddress(String address) {
+            checkKey(address, getAddress());
+        }
+
+        @Override
+        public void setCreator(String creator) {
+            creators.putInt(row << 2, symbols.id(creator));
+        }
+
+        @Override
+        public void setNonce(long nonce) {
+            nonces.putLong(row << 3, nonce);
+        }
+
+        @Override
+        public void setBalanceStatus(BalanceStatus balanceStatus) {
+            balanceStatuses.put(row, (byte) (balanceStatus == null ? 0 : balanceStatus.ordinal() + 1));
+        }
+
+        @Override
+        public void setOp(OP op) {
+            ops.put(row, (byte) (op == null ? 0 : op.ordinal() + 1));
+        }
+
+        private void checkKey(String value, String current) {
+            if (!Objects.equals(value, current)) {
+                throw new UnsupportedOperationException("The key of a stored balance can not change");
+            }
+        }
+    }
+}
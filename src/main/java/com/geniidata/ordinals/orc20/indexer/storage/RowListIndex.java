@@ -0,0 +1,72 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ListIndex} kept as one row per element, so a change writes a few small rows instead of the whole list:
+ * (key, index) -> element and key -> size.
+ */
+class RowListIndex<K, E> implements ListIndex<K, E> {
+    private final Map<Map.Entry<K, Integer>, E> elements;
+    private final Map<K, Integer> sizes;
+
+    RowListIndex(Map<Map.Entry<K, Integer>, E> elements, Map<K, Integer> sizes) {
+        this.elements = elements;
+        this.sizes = sizes;
+    }
+
+    @Override
+    public void add(K key, E element) {
+        int size = size(key);
+        elements.put(row(key, size), element);
+        sizes.put(key, size + 1);
+    }
+
+    @Override
+    public E removeLast(K key) {
+        int last = size(key) - 1;
+        if (last < 0) {
+            return null;
+        }
+        E element = elements.remove(row(key, last));
+        if (last == 0) {
+            sizes.remove(key);
+        } else {
+            sizes.put(key, last);
+        }
+        return element;
+    }
+
+    @Override
+    public E get(K key, int index) {
+        int size = size(key);
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return elements.get(row(key, index));
+    }
+
+    @Override
+    public int size(K key) {
+        Integer size = sizes.get(key);
+        return size == null ? 0 : size;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(sizes.keySet());
+    }
+
+    @Override
+    public void clear() {
+        elements.clear();
+        sizes.clear();
+    }
+
+    private static <A> Map.Entry<A, Integer> row(A key, int index) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, index);
+    }
+}
@@ -0,0 +1,91 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link SetIndex} kept as one row per member, so a change writes a few small rows instead of the whole set:
+ * (key, member) -> slot, (key, slot) -> member and key -> size.
+ * the members of a key are read from its slots 0 until size, a removed member is replaced by the last one.
+ */
+class RowSetIndex<K, E> implements SetIndex<K, E> {
+    private final Map<Map.Entry<K, E>, Integer> slots;
+    private final Map<Map.Entry<K, Integer>, E> members;
+    private final Map<K, Integer> sizes;
+
+    RowSetIndex(Map<Map.Entry<K, E>, Integer> slots, Map<Map.Entry<K, Integer>, E> members, Map<K, Integer> sizes) {
+        this.slots = slots;
+        this.members = members;
+        this.sizes = sizes;
+    }
+
+    @Override
+    public boolean add(K key, E member) {
+        Map.Entry<K, E> row = row(key, member);
+        if (slots.containsKey(row)) {
+            return false;
+        }
+        Integer size = sizes.get(key);
+        int slot = size == null ? 0 : size;
+        slots.put(row, slot);
+        members.put(row(key, slot), member);
+        sizes.put(key, slot + 1);
+        return true;
+    }
+
+    @Override
+    public boolean remove(K key, E member) {
+        Map.Entry<K, E> row = row(key, member);
+        Integer slot = slots.remove(row);
+        if (slot == null) {
+            return false;
+        }
+        int last = sizes.get(key) - 1;
+        if (slot != last) {
+            E lastMember = members.get(row(key, last));
+            members.put(row(key, slot), lastMember);
+            slots.put(row(key, lastMember), slot);
+        }
+        members.remove(row(key, last));
+        if (last == 0) {
+            sizes.remove(key);
+        } else {
+            sizes.put(key, last);
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<E> get(K key) {
+        Integer size = sizes.get(key);
+        if (size == null) {
+            return Collections.emptyList();
+        }
+        List<E> keyMembers = new ArrayList<>(size);
+        for (int slot = 0; slot < size; slot++) {
+            keyMembers.add(members.get(row(key, slot)));
+        }
+        return keyMembers;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(sizes.keySet());
+    }
+
+    @Override
+    public void clear() {
+        slots.clear();
+        members.clear();
+        sizes.clear();
+    }
+
+    private static <A, B> Map.Entry<A, B> row(A key, B value) {
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
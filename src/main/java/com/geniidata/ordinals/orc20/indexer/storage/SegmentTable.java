@@ -0,0 +1,547 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * a persistent table: append-only segment files with a memory-mapped hash index (key -> latest record).
+ * <p>
+ * the values read are cached and the values put are kept in a write-back cache until `flush`, which writes the values put only:
+ * a value changed in place must be put back to be persisted.
+ * <p>
+ * a value put or removed leaves its previous record behind. `compact` copies the live records to new segments once
+ * `needsCompaction`, the previous segments are deleted by `deleteObsoleteSegments` after the new base segment is recorded.
+ * <p>
+ * record layout: int keyLength, key, int valueLength (-1 for a deletion), value.
+ * a location is (segment << 40 | offset), segments are numbered from the first one of the table, `baseSegment` is the oldest live one.
+ */
+public class SegmentTable<K, V> extends AbstractMap<K, V> {
+    private final static long DEFAULT_SEGMENT_SIZE = 1L << 30;
+    private final static int OFFSET_BITS = 40;
+    private final static long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private final static int WRITE_BUFFER_SIZE = 4 << 20;
+
+    private final Path dir;
+    private final String name;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final List<FileChannel> segments = new ArrayList<>(); // from `base` to the active one
+    private final List<FileChannel> obsoleteSegments = new ArrayList<>(); // compacted, below `base`
+    private final MappedHashIndex index;
+    private final long segmentSize;
+    private int base;
+    private long activeLength;
+    private long records; // in the segments, live or not
+
+    // cache of the values read and put since the last flush
+    private final Map<K, Cached<V>> cache = new HashMap<>();
+    // keys removed since the last flush, with their location
+    private final Map<K, Long> removed = new HashMap<>();
+
+    /**
+     * @param baseSegment   the first segment
+     * @param activeSegment the last segment
+     * @param activeLength  the committed length of the last segment, later data is discarded
+     * @param records       the committed number of records of the segments
+     * @param commitSeq     the last sync, the index is rebuilt from the segments if it does not match
+     */
+    SegmentTable(Path dir, String name, Codec<K> keyCodec, Codec<V> valueCodec, int baseSegment, int activeSegment, long activeLength, long records, long commitSeq) throws IOException {
+        this(dir, name, keyCodec, valueCodec, baseSegment, activeSegment, activeLength, records, commitSeq, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize a new segment is started when a write would grow the active one beyond it
+     */
+    SegmentTable(Path dir, String name, Codec<K> keyCodec, Codec<V> valueCodec, int baseSegment, int activeSegment, long activeLength, long records, long commitSeq, long segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.name = name;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.base = baseSegment;
+        for (int i = baseSegment; i <= activeSegment; i++) {
+            segments.add(FileChannel.open(segmentPath(i), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        deleteSegments(segment -> segment < baseSegment || segment > activeSegment); // compacted, or never committed
+        this.activeLength = activeLength;
+        this.records = records;
+        active().truncate(activeLength);
+        this.index = MappedHashIndex.open(dir.resolve(name + ".idx"));
+        if (!index.isClean(commitSeq)) {
+            rebuildIndex();
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("%s.%05d.seg", name, segment));
+    }
+
+    private void deleteSegments(IntPredicate obsolete) throws IOException {
+        Pattern pattern = Pattern.compile(Pattern.quote(name) + "\\.(\\d+)\\.seg");
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = pattern.matcher(file.getFileName().toString());
+                if (matcher.matches() && obsolete.test(Integer.parseInt(matcher.group(1)))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private FileChannel active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    int baseSegment() {
+        return base;
+    }
+
+    int activeSegment() {
+        return base + segments.size() - 1;
+    }
+
+    long activeLength() {
+        return activeLength;
+    }
+
+    long records() {
+        return records;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        K k = (K) key;
+        Cached<V> cached = cache.get(k);
+        if (cached != null) {
+            return cached.value;
+        }
+        if (removed.containsKey(k)) {
+            return null;
+        }
+        byte[] keyBytes = encodeKey(k);
+        long location = locate(keyBytes);
+        if (location < 0) {
+            return null;
+        }
+        V value = decode(valueCodec, readRecord(location)[1]);
+        cache.put(k, new Cached<>(value, false, location));
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean containsKey(Object key) {
+        K k = (K) key;
+        if (cache.containsKey(k)) {
+            return true;
+        }
+        return !removed.containsKey(k) && locate(encodeKey(k)) >= 0;
+    }
+
+    /**
+     * does not decode the previous value from disk, returns it only if it has been read since the last flush
+     */
+    @Override
+    public V put(K key, V value) {
+        Cached<V> previous = cache.get(key);
+        Long location = removed.remove(key);
+        if (previous != null) {
+            cache.put(key, new Cached<>(value, true, previous.location));
+            return previous.value;
+        }
+        if (location == null) {
+            location = locate(encodeKey(key));
+        }
+        cache.put(key, new Cached<>(value, true, location));
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        K k = (K) key;
+        V value = get(k);
+        Cached<V> cached = cache.remove(k);
+        if (cached != null && cached.location >= 0) {
+            removed.put(k, cached.location);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        index.forEach(location -> removed.put(decode(keyCodec, readRecord(location)[0]), location));
+    }
+
+    @Override
+    public int size() {
+        long size = index.size() - removed.size();
+        for (Cached<V> cached : cache.values()) {
+            if (cached.location < 0) {
+                size++;
+            }
+        }
+        return (int) size;
+    }
+
+    /**
+     * iterates the cached values first, then the stored ones. stored values are decoded but not cached.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                List<Long> locations = new ArrayList<>();
+                index.forEach(locations::add);
+                Iterator<Map.Entry<K, Cached<V>>> cached = new ArrayList<>(cache.entrySet()).iterator();
+                Iterator<Long> stored = locations.iterator();
+                return new Iterator<Entry<K, V>>() {
+                    private Entry<K, V> next = advance();
+
+                    private Entry<K, V> advance() {
+                        if (cached.hasNext()) {
+                            Map.Entry<K, Cached<V>> e = cached.next();
+                            return new SimpleImmutableEntry<>(e.getKey(), e.getValue().value);
+                        }
+                        while (stored.hasNext()) {
+                            byte[][] record = readRecord(stored.next());
+                            K key = decode(keyCodec, record[0]);
+                            if (!cache.containsKey(key) && !removed.containsKey(key)) {
+                                return new SimpleImmutableEntry<>(key, decode(valueCodec, record[1]));
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<K, V> current = next;
+                        next = advance();
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SegmentTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * write the values put and the removals to the active segment, then empty the cache
+     */
+    public void flush() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(buffer);
+        List<long[]> pending = new ArrayList<>(); // (hash, old location, buffer offset)
+        List<byte[]> pendingKeys = new ArrayList<>();
+        for (Map.Entry<K, Cached<V>> e : cache.entrySet()) {
+            Cached<V> cached = e.getValue();
+            if (!cached.dirty) {
+                continue; // read only
+            }
+            byte[] valueBytes = encode(valueCodec, cached.value);
+            byte[] keyBytes = encodeKey(e.getKey());
+            pending.add(new long[]{hash(keyBytes), cached.location, buffer.size()});
+            pendingKeys.add(keyBytes);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(valueBytes.length);
+            out.write(valueBytes);
+            if (buffer.size() >= WRITE_BUFFER_SIZE) {
+                writeBatch(buffer, pending, pendingKeys);
+            }
+        }
+        for (Map.Entry<K, Long> e : removed.entrySet()) {
+            byte[] keyBytes = encodeKey(e.getKey());
+            pending.add(new long[]{hash(keyBytes), e.getValue(), buffer.size(), 1});
+            pendingKeys.add(keyBytes);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(-1);
+            if (buffer.size() >= WRITE_BUFFER_SIZE) {
+                writeBatch(buffer, pending, pendingKeys);
+            }
+        }
+        writeBatch(buffer, pending, pendingKeys);
+        cache.clear();
+        removed.clear();
+    }
+
+    private void writeBatch(ByteArrayOutputStream buffer, List<long[]> pending, List<byte[]> pendingKeys) throws IOException {
+        if (buffer.size() == 0) {
+            return;
+        }
+        if (activeLength + buffer.size() > segmentSize && activeLength > 0) {
+            startSegment();
+        }
+        long batchLocation = ((long) activeSegment() << OFFSET_BITS) | activeLength;
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        FileChannel channel = active();
+        while (bytes.hasRemaining()) {
+            activeLength += channel.write(bytes, activeLength);
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            long[] p = pending.get(i);
+            long hash = p[0];
+            long oldLocation = p[1];
+            long location = batchLocation + p[2];
+            byte[] keyBytes = pendingKeys.get(i);
+            boolean deletion = p.length > 3;
+            if (deletion) {
+                index.remove(hash, l -> l == oldLocation);
+            } else if (oldLocation >= 0) {
+                index.replace(hash, oldLocation, location);
+            } else {
+                index.put(hash, location, l -> Arrays.equals(readRecord(l)[0], keyBytes));
+            }
+        }
+        records += pending.size();
+        buffer.reset();
+        pending.clear();
+        pendingKeys.clear();
+    }
+
+    private void startSegment() throws IOException {
+        segments.add(FileChannel.open(segmentPath(activeSegment() + 1), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        activeLength = 0;
+    }
+
+    /**
+     * flush the segments and the index to disk
+     */
+    public void sync(long commitSeq) throws IOException {
+        for (FileChannel segment : segments) {
+            segment.force(false);
+        }
+        index.sync(commitSeq);
+    }
+
+    public void close() throws IOException {
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+        for (FileChannel segment : obsoleteSegments) {
+            segment.close();
+        }
+    }
+
+    /**
+     * whether most records are overwritten or removed ones, and they take more than a quarter of a segment
+     */
+    boolean needsCompaction() throws IOException {
+        long bytes = activeLength;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            bytes += segments.get(i).size();
+        }
+        return records > 2 * index.size() && bytes > segmentSize / 4;
+    }
+
+    /**
+     * copy the live records to new segments, in the order of the previous ones, and empty the cache.
+     * the previous segments are kept until `deleteObsoleteSegments`, the committed state may still refer to them.
+     *
+     * @throws IllegalStateException if there are changes not flushed
+     */
+    void compact() throws IOException {
+        for (Cached<V> cached : cache.values()) {
+            if (cached.dirty) {
+                throw new IllegalStateException("Table not flushed: " + name);
+            }
+        }
+        if (!removed.isEmpty()) {
+            throw new IllegalStateException("Table not flushed: " + name);
+        }
+        cache.clear(); // the locations change
+        List<FileChannel> previous = new ArrayList<>(segments);
+        long previousActiveLength = activeLength;
+        int previousBase = base;
+        startSegment();
+        records = 0;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(buffer);
+        List<long[]> pending = new ArrayList<>(); // (hash, previous location, buffer offset)
+        List<byte[]> pendingKeys = new ArrayList<>();
+        for (int segment = 0; segment < previous.size(); segment++) {
+            FileChannel channel = previous.get(segment);
+            long length = segment == previous.size() - 1 ? previousActiveLength : channel.size();
+            // sequential read, the channel is not closed with the stream
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), WRITE_BUFFER_SIZE));
+            long offset = 0;
+            while (offset < length) {
+                long location = ((long) (previousBase + segment) << OFFSET_BITS) | offset;
+                byte[] keyBytes = new byte[in.readInt()];
+                in.readFully(keyBytes);
+                int valueLength = in.readInt();
+                offset += 8 + keyBytes.length + Math.max(valueLength, 0);
+                if (valueLength < 0) {
+                    continue; // deletion
+                }
+                byte[] valueBytes = new byte[valueLength];
+                in.readFully(valueBytes);
+                long hash = hash(keyBytes);
+                if (index.get(hash, l -> l == location) != location) {
+                    continue; // overwritten or removed since
+                }
+                pending.add(new long[]{hash, location, buffer.size()});
+                pendingKeys.add(keyBytes);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(valueLength);
+                out.write(valueBytes);
+                if (buffer.size() >= WRITE_BUFFER_SIZE) {
+                    writeBatch(buffer, pending, pendingKeys);
+                }
+            }
+        }
+        writeBatch(buffer, pending, pendingKeys);
+        segments.subList(0, previous.size()).clear();
+        obsoleteSegments.addAll(previous);
+        base = previousBase + previous.size();
+    }
+
+    /**
+     * delete the segments left by `compact`, once `baseSegment` is committed
+     */
+    void deleteObsoleteSegments() throws IOException {
+        for (FileChannel segment : obsoleteSegments) {
+            segment.close();
+        }
+        obsoleteSegments.clear();
+        deleteSegments(segment -> segment < base);
+    }
+
+    /**
+     * replay all segments into an empty index
+     */
+    private void rebuildIndex() throws IOException {
+        index.reset();
+        records = 0;
+        for (int segment = 0; segment < segments.size(); segment++) {
+            FileChannel channel = segments.get(segment);
+            long length = segment == segments.size() - 1 ? activeLength : channel.size();
+            long offset = 0;
+            while (offset < length) {
+                long location = ((long) (base + segment) << OFFSET_BITS) | offset;
+                records++;
+                byte[][] record = readRecord(location);
+                byte[] keyBytes = record[0];
+                long hash = hash(keyBytes);
+                if (record[1] == null) {
+                    index.remove(hash, l -> Arrays.equals(readRecord(l)[0], keyBytes));
+                    offset += 8 + keyBytes.length;
+                } else {
+                    index.put(hash, location, l -> Arrays.equals(readRecord(l)[0], keyBytes));
+                    offset += 8 + keyBytes.length + record[1].length;
+                }
+            }
+        }
+    }
+
+    private long locate(byte[] keyBytes) {
+        return index.get(hash(keyBytes), location -> Arrays.equals(readRecord(location)[0], keyBytes));
+    }
+
+    /**
+     * @return {key, value}, value is null for a deletion
+     */
+    private byte[][] readRecord(long location) {
+        FileChannel channel = segments.get((int) (location >>> OFFSET_BITS) - base);
+        long offset = location & OFFSET_MASK;
+        try {
+            byte[] key = readBytes(channel, offset + 4, readInt(channel, offset));
+            long valueOffset = offset + 4 + key.length;
+            int valueLength = readInt(channel, valueOffset);
+            byte[] value = valueLength < 0 ? null : readBytes(channel, valueOffset + 4, valueLength);
+            return new byte[][]{key, value};
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        return ByteBuffer.wrap(readBytes(channel, position, 4)).getInt();
+    }
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.array();
+    }
+
+    private byte[] encodeKey(K key) {
+        return encode(keyCodec, key);
+    }
+
+    private static <T> byte[] encode(Codec<T> codec, T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            codec.write(new DataOutputStream(bytes), value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(Codec<T> codec, byte[] bytes) {
+        try {
+            return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a with a final avalanche, stable across runs
+     */
+    static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static class Cached<V> {
+        private final V value;
+        private final boolean dirty; // put since the last flush
+        private final long location; // stored location, -1 if not stored
+
+        Cached(V value, boolean dirty, long location) {
+            this.value = value;
+            this.dirty = dirty;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * index of a set of members per key, changed one member at a time, see {@link TableFactory#createSetIndex}
+ */
+public interface SetIndex<K, E> {
+
+    /**
+     * @return false if `member` is already in the set of `key`
+     */
+    boolean add(K key, E member);
+
+    /**
+     * the key is dropped with its last member
+     *
+     * @return false if `member` is not in the set of `key`
+     */
+    boolean remove(K key, E member);
+
+    /**
+     * the members of `key`, empty if none. read-only, not to be used after the next change.
+     */
+    Collection<E> get(K key);
+
+    /**
+     * the keys with members, read-only
+     */
+    Set<K> keySet();
+
+    void clear();
+}
@@ -0,0 +1,241 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.EventErrCode;
+import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.EventType;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.model.*;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * storage of the indexer state.
+ * objects returned by `select*` are the stored ones: they are changed only through the `update*` methods,
+ * which record the state before the change for the undo journal and persist the change.
+ */
+public interface Storage extends Closeable {
+
+    /**
+     * save/update inscription content, a changed content must be saved again
+     */
+    void insertInscriptionContent(InscriptionContent inscription);
+
+    /**
+     * save inscription transfer
+     */
+    void insertInscriptionTransfer(InscriptionTransfer transfer);
+
+    /**
+     * get all inscription transfers, ordered by block_height and transaction_index
+     */
+    List<InscriptionTransfer> selectInscriptionTransfers();
+
+    /**
+     * get inscription content for the given inscriptionId
+     */
+    InscriptionContent selectInscriptionContentByInscriptionId(String inscriptionId);
+
+    /**
+     * save/update orc20event and refresh relevant indexes
+     */
+    void insertOrc20Event(Orc20Event orc20Event);
+
+    /**
+     * get event for the given eventId
+     */
+    Orc20Event selectOrc20EventByEventId(String eventId);
+
+    /**
+     * get events by (inscriptionId, eventType)
+     */
+    List<Orc20Event> selectOrc20EventByInscriptionIdAndEventType(String inscriptionId, EventType eventType);
+
+    /**
+     * get all pending events created by `creator`
+     */
+    List<Orc20Event> selectPendingOrc20EventListByTickIdAndCreator(String tickId, String creator);
+
+    /**
+     * get all events received by `address`
+     */
+    List<Orc20Event> selectOrc20EventListByTickIdAndToAddress(String tickId, String address);
+
+    /**
+     * update the status of the pending events created by `creator`
+     */
+    void updateOrc20EventStatusByTickIdAndCreator(String tickId, String creator, EventStatus oldStatus, EventStatus newStatus);
+
+    /**
+     * update the status of the pending event created by `creator` with the specific nonce
+     */
+    void updateOrc20EventStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, EventStatus newStatus);
+
+    /**
+     * update the status of the events received by `address`
+     */
+    void updateOrc20EventStatusByTickIdAndToAddress(String tickId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode);
+
+    /**
+     * update the status of the events of `inscriptionId` received by `address`
+     */
+    void updateOrc20EventStatusByTickIdAndInscriptionIdAndToAddress(String tickId, String inscriptionId, String address, EventStatus oldStatus, EventStatus newStatus, EventErrCode newErrCode);
+
+    /**
+     * store/update tick metadata and refresh relevant indexes
+     */
+    void insertOrc20Metadata(Orc20Metadata orc20Metadata);
+
+    /**
+     * change a stored tick metadata with `change`, its tick, inscription number and deployId must not change
+     */
+    void updateOrc20Metadata(Orc20Metadata orc20Metadata, Consumer<Orc20Metadata> change);
+
+    /**
+     * get tick metadata by (tick, deploymentInscriptionNumber)
+     */
+    Orc20Metadata selectORC20MetadataByTickAndInscriptionNumber(String tick, long inscriptionNumber);
+
+    /**
+     * get tick metadata by tickId(primary key)
+     */
+    Orc20Metadata selectORC20MetadataByTickId(String tickId);
+
+    /**
+     * get tick metadata by (tick, deployId)
+     */
+    Orc20Metadata selectORC20MetadataByTickAndDeployId(String tick, String deployId);
+
+    /**
+     * store a new user balance and refresh relevant indexes and aggregates.
+     * stored balances must be changed with the `update*` methods, so the aggregates follow.
+     */
+    void insertOrc20Balance(Orc20Balance orc20Balance);
+
+    /**
+     * running totals of (tickId, address), empty if it has no "OK" or "SEND_PENDING" balance
+     */
+    Orc20BalanceAggregate selectOrc20BalanceAggregateByTickIdAndAddress(String tickId, String address);
+
+    /**
+     * "OK" balances of (tickId, address) by cash and credit, empty if it has no "OK" balance
+     */
+    Orc20BalanceSummary selectOrc20BalanceSummaryByTickIdAndAddress(String tickId, String address);
+
+    /**
+     * get the "credit balance" of (tickId, address) if it is "OK"
+     */
+    Orc20Balance selectOrc20CreditBalanceByTickIdAndAddress(String tickId, String address);
+
+    /**
+     * update the status of a stored balance
+     */
+    void updateOrc20BalanceStatus(Orc20Balance orc20Balance, BalanceStatus newBalanceStatus);
+
+    /**
+     * update the amount of a stored balance
+     */
+    void updateOrc20BalanceAmount(Orc20Balance orc20Balance, Amount newBalance);
+
+    /**
+     * update the op of a stored balance
+     */
+    void updateOrc20BalanceOp(Orc20Balance orc20Balance, OP newOp);
+
+    /**
+     * get user balance list by (tickId, address)
+     */
+    List<Orc20Balance> selectOrc20BalanceListByTickIdAndAddress(String tickId, String address);
+
+    /**
+     * get pending user balance list by (tickId, creator)
+     */
+    List<Orc20Balance> selectPendingOrc20BalanceListByTickIdAndCreator(String tickId, String creator);
+
+    /**
+     * get user balance by (inscriptionId), "credit balance" has no inscriptionId
+     */
+    Orc20Balance selectOrc20BalanceByInscriptionId(String inscriptionId);
+
+    /**
+     * update balance status by (tickId, creator, nonce)
+     */
+    void updateOrc20BalanceStatusByTickIdAndCreatorAndNonce(String tickId, String creator, long nonce, BalanceStatus newBalanceStatus);
+
+    /**
+     * change balance holder
+     */
+    void updateOrc20BalanceAddressByTickIdAndInscriptionId(String tickId, String inscriptionId, String oldAddress, String newAddress);
+
+    /**
+     * position of the transfer whose changes follow, the balance history is versioned by it
+     */
+    void setTransferPosition(long blockHeight, int txIndex);
+
+    /**
+     * "OK" balance of (tickId, address) after block `blockHeight`, from the balance history
+     *
+     * @throws IllegalStateException if the balance history is not recorded
+     */
+    Amount balanceOf(String tickId, String address, long blockHeight);
+
+    /**
+     * positive "OK" balances of `tickId` by address after block `blockHeight`, from the balance history
+     *
+     * @throws IllegalStateException if the balance history is not recorded
+     */
+    Map<String, Amount> holdersOf(String tickId, long blockHeight);
+
+    /**
+     * create balance snapshot of the state before block `snapshotHeight`
+     *
+     * @param blockHeight block height of the first transfer after the snapshot
+     */
+    void createBalanceSnapshot(long snapshotHeight, long blockHeight);
+
+    /**
+     * heights of the balance snapshots created so far
+     */
+    Set<Long> selectBalanceSnapshotHeights();
+
+    Map<String, Orc20Event> dumpOrc20Event();
+
+    Map<String, Orc20Metadata> dumpOrc20Metadata();
+
+    Map<IndexKey, Orc20Balance> dumpOrc20Balance();
+
+    /**
+     * summaries by (tickId, address), see `selectOrc20BalanceSummaryByTickIdAndAddress`
+     */
+    Map<IndexKey, Orc20BalanceSummary> dumpOrc20BalanceSummary();
+
+    /**
+     * balances at the snapshot, empty if it was not created
+     */
+    Map<IndexKey, Orc20Balance> dumpOrc20BalanceSnapshot(long snapshotHeight);
+
+    Map<IndexKey, Orc20Balance> dumpOrc20BalanceOIP10Snapshot();
+
+    /**
+     * all changes up to `blockHeight` are complete, called between blocks
+     */
+    void commit(long blockHeight);
+
+    /**
+     * the highest block height whose changes are already stored, -1 if none
+     */
+    long committedBlockHeight();
+
+    /**
+     * revert the state to the end of block `blockHeight`, e.g. on a chain reorganization
+     */
+    void rollbackTo(long blockHeight);
+
+    @Override
+    void close();
+}
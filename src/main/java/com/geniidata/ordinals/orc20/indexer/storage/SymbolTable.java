@@ -0,0 +1,98 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * canonical instances of the identifiers repeated across the rows and keys of the in-memory tables:
+ * tickIds, ticks, addresses, inscriptionIds and eventIds.
+ * <p>
+ * every decoded transfer holds its own copy of its addresses, and every row and key read from a checkpoint its own copy of all of them.
+ * keeping one instance per distinct identifier cuts the heap, and equal identifiers compare by reference in `String.equals`,
+ * with the hash computed once. thread-safe, shared by the shards of the {@link com.geniidata.ordinals.orc20.indexer.TickShards}.
+ * <p>
+ * each identifier also has a dense int id, in the order they were first seen, for the columns of the {@link OffHeapBalanceTable}.
+ */
+public class SymbolTable {
+    // id of null
+    public final static int NULL = -1;
+    // result of `idOf` for an identifier without id
+    public final static int UNKNOWN = -2;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[1024];
+    private int count;
+
+    /**
+     * the canonical instance equal to `value`, null for null
+     */
+    public String intern(String value) {
+        return symbol(id(value));
+    }
+
+    /**
+     * the id of `value`, assigned on first use. `NULL` for null
+     */
+    public int id(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.computeIfAbsent(value, this::append);
+        }
+        return id;
+    }
+
+    /**
+     * the id of `value` without assigning one, `UNKNOWN` if it has none. `NULL` for null
+     */
+    public int idOf(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer id = ids.get(value);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * the canonical instance of `id`, null for `NULL`
+     */
+    public String symbol(int id) {
+        return id == NULL ? null : symbols[id];
+    }
+
+    /**
+     * number of distinct identifiers
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int append(String value) {
+        if (count == symbols.length) {
+            symbols = Arrays.copyOf(symbols, count * 2);
+        }
+        symbols[count] = value;
+        symbols = symbols; // publishes the new element
+        return count++;
+    }
+
+    /**
+     * input of tables whose identifiers are interned by `Codecs.readSymbol`
+     */
+    static class Input extends DataInputStream {
+        private final SymbolTable symbols;
+
+        Input(InputStream in, SymbolTable symbols) {
+            super(in);
+            this.symbols = symbols;
+        }
+
+        String intern(String value) {
+            return symbols.intern(value);
+        }
+    }
+}
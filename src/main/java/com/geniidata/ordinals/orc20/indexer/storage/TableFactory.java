@@ -0,0 +1,49 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * creates the tables and indexes of a storage
+ */
+public interface TableFactory {
+
+    /**
+     * in-memory tables
+     */
+    TableFactory MEMORY = new TableFactory() {
+        @Override
+        public <K, V> Map<K, V> createTable(String name, Codec<K> keyCodec, Codec<V> valueCodec) {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * @param name       unique name of the table
+     * @param keyCodec   used if the table is persisted
+     * @param valueCodec used if the table is persisted
+     */
+    <K, V> Map<K, V> createTable(String name, Codec<K> keyCodec, Codec<V> valueCodec);
+
+    /**
+     * by default one set per key in a table of `createTable`
+     *
+     * @param name        unique name of the index
+     * @param keyCodec    used if the index is persisted
+     * @param memberCodec used if the index is persisted
+     */
+    default <K, E> SetIndex<K, E> createSetIndex(String name, Codec<K> keyCodec, Codec<E> memberCodec) {
+        return new MapSetIndex<>(createTable(name, keyCodec, Codecs.setCodec(memberCodec)));
+    }
+
+    /**
+     * by default one list per key in a table of `createTable`
+     *
+     * @param name         unique name of the index
+     * @param keyCodec     used if the index is persisted
+     * @param elementCodec used if the index is persisted
+     */
+    default <K, E> ListIndex<K, E> createListIndex(String name, Codec<K> keyCodec, Codec<E> elementCodec) {
+        return new MapListIndex<>(createTable(name, keyCodec, Codecs.listCodec(elementCodec)));
+    }
+}
@@ -0,0 +1,128 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * undo records of the latest blocks applied to the tables of a {@link MemoryCache}, to roll back a chain reorganization.
+ * <p>
+ * a record is the encoded value of a key before its first change in a block, null if the key was absent.
+ * a value changed in place is recorded by `JournaledMap.getForUpdate` before the change, values handed out by `get` are not recorded.
+ * the set indexes record each member added or removed as an undo action, run in reverse order (see {@link JournaledSetIndex}).
+ * the records of blocks more than `depth` blocks below the latest committed one are pruned.
+ */
+class UndoJournal {
+    private int depth; // 0 disables the journal
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>(); // committed blocks with changes, oldest first
+    private Block current = new Block(); // changes after the last commit
+    private long floor = -1; // the lowest block height that can be rolled back to
+
+    boolean isEnabled() {
+        return depth > 0;
+    }
+
+    /**
+     * @param committedBlockHeight the journal starts after it if it was disabled
+     */
+    void setDepth(int depth, long committedBlockHeight) {
+        if (depth <= 0) {
+            reset(committedBlockHeight);
+        } else if (this.depth <= 0) {
+            floor = committedBlockHeight;
+        }
+        this.depth = Math.max(depth, 0);
+        prune(committedBlockHeight);
+    }
+
+    /**
+     * drop all records, e.g. after the tables are replaced
+     */
+    void reset(long committedBlockHeight) {
+        blocks.clear();
+        current = new Block();
+        floor = committedBlockHeight;
+    }
+
+    /**
+     * record `value` as the state of `key` before the current block, unless the key is already recorded
+     */
+    <K, V> void record(JournaledMap<K, V> table, Object key, V value) {
+        Map<Object, byte[]> records = current.records.computeIfAbsent(table, t -> new LinkedHashMap<>());
+        if (!records.containsKey(key)) {
+            records.put(key, value == null ? null : table.encode(value));
+        }
+    }
+
+    /**
+     * record an action reverting a change of the current block, e.g. a member added to a set index
+     */
+    void record(Runnable undo) {
+        current.undos.add(undo);
+    }
+
+    boolean isRecorded(JournaledMap<?, ?> table, Object key) {
+        Map<Object, byte[]> records = current.records.get(table);
+        return records != null && records.containsKey(key);
+    }
+
+    /**
+     * the changes since the last commit belong to block `blockHeight`
+     */
+    void commit(long blockHeight) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!current.isEmpty()) {
+            current.blockHeight = blockHeight;
+            blocks.add(current);
+            current = new Block();
+        }
+        prune(blockHeight);
+    }
+
+    /**
+     * restore the tables to their state after block `blockHeight`, changes after the last commit are always reverted
+     */
+    void rollbackTo(long blockHeight) {
+        if (blockHeight < floor) {
+            throw new IllegalArgumentException("Undo journal starts at block " + floor + ": " + blockHeight);
+        }
+        current.undo();
+        current = new Block();
+        while (!blocks.isEmpty() && blocks.peekLast().blockHeight > blockHeight) {
+            blocks.pollLast().undo();
+        }
+    }
+
+    private void prune(long latestBlockHeight) {
+        while (!blocks.isEmpty() && blocks.peekFirst().blockHeight <= latestBlockHeight - depth) {
+            floor = blocks.pollFirst().blockHeight;
+        }
+    }
+
+    private static class Block {
+        private long blockHeight;
+        // table -> key -> encoded value before the block, null if absent
+        private final Map<JournaledMap<?, ?>, Map<Object, byte[]>> records = new IdentityHashMap<>();
+        // actions reverting the changes of the set indexes, in the order of the changes
+        private final List<Runnable> undos = new ArrayList<>();
+
+        boolean isEmpty() {
+            return records.isEmpty() && undos.isEmpty();
+        }
+
+        void undo() {
+            for (Map.Entry<JournaledMap<?, ?>, Map<Object, byte[]>> e : records.entrySet()) {
+                JournaledMap<?, ?> table = e.getKey();
+                e.getValue().forEach(table::restore);
+            }
+            for (int i = undos.size() - 1; i >= 0; i--) {
+                undos.get(i).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.geniidata.ordinals.orc20.indexer.utils;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * immutable decimal amount: an unscaled integer and a scale, like BigDecimal.
+ * the unscaled value is a long while it fits, and a BigInteger beyond (e.g. uint256 supplies with 18 decimals).
+ * <p>
+ * `add`, `subtract`, `setScale` and `compareTo` give the same value and scale as BigDecimal,
+ * on longs when the operands and the result fit, through BigDecimal otherwise.
+ * serialized to json as the equal BigDecimal.
+ */
+public final class Amount implements Comparable<Amount> {
+    public final static Amount ZERO = new Amount(0, 0, null);
+    public final static Amount ONE = new Amount(1, 0, null);
+
+    private final static long[] LONG_TEN_POWERS = new long[19];
+    // result of `scaleUp` that does not fit, never a multiple of a power of ten
+    private final static long OVERFLOW = Long.MIN_VALUE;
+
+    static {
+        LONG_TEN_POWERS[0] = 1;
+        for (int i = 1; i < LONG_TEN_POWERS.length; i++) {
+            LONG_TEN_POWERS[i] = LONG_TEN_POWERS[i - 1] * 10;
+        }
+    }
+
+    private final long unscaled; // if `big` is null
+    private final int scale;
+    private final BigInteger big; // the unscaled value if it does not fit in a long, else null
+
+    private Amount(long unscaled, int scale, BigInteger big) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+        this.big = big;
+    }
+
+    public static Amount valueOf(long unscaled, int scale) {
+        return new Amount(unscaled, scale, null);
+    }
+
+    public static Amount valueOf(BigInteger unscaled, int scale) {
+        return unscaled.bitLength() < Long.SIZE ? new Amount(unscaled.longValue(), scale, null) : new Amount(0, scale, unscaled);
+    }
+
+    /**
+     * null for null
+     */
+    public static Amount valueOf(BigDecimal value) {
+        return value == null ? null : valueOf(value.unscaledValue(), value.scale());
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public int signum() {
+        return big == null ? Long.signum(unscaled) : big.signum();
+    }
+
+    /**
+     * whether the unscaled value is a long, see `longUnscaledValue`
+     */
+    public boolean fitsInLong() {
+        return big == null;
+    }
+
+    public long longUnscaledValue() {
+        if (big != null) {
+            throw new ArithmeticException("Unscaled value out of long range");
+        }
+        return unscaled;
+    }
+
+    public BigInteger unscaledValue() {
+        return big == null ? BigInteger.valueOf(unscaled) : big;
+    }
+
+    public Amount add(Amount other) {
+        if (big == null && other.big == null) {
+            int resultScale = Math.max(scale, other.scale);
+            long a = scaleUp(unscaled, resultScale - scale);
+            long b = scaleUp(other.unscaled, resultScale - other.scale);
+            if (a != OVERFLOW && b != OVERFLOW) {
+                long r = a + b;
+                if (((a ^ r) & (b ^ r)) >= 0) {
+                    return new Amount(r, resultScale, null);
+                }
+            }
+        }
+        return valueOf(toBigDecimal().add(other.toBigDecimal()));
+    }
+
+    public Amount subtract(Amount other) {
+        if (big == null && other.big == null) {
+            int resultScale = Math.max(scale, other.scale);
+            long a = scaleUp(unscaled, resultScale - scale);
+            long b = scaleUp(other.unscaled, resultScale - other.scale);
+            if (a != OVERFLOW && b != OVERFLOW) {
+                long r = a - b;
+                if (((a ^ b) & (a ^ r)) >= 0) {
+                    return new Amount(r, resultScale, null);
+                }
+            }
+        }
+        return valueOf(toBigDecimal().subtract(other.toBigDecimal()));
+    }
+
+    /**
+     * the same value with `newScale`, like BigDecimal.setScale(newScale, RoundingMode.UNNECESSARY)
+     *
+     * @throws ArithmeticException if the value has more digits than `newScale`
+     */
+    public Amount setScale(int newScale) {
+        if (newScale == scale) {
+            return this;
+        }
+        if (big == null) {
+            if (newScale > scale) {
+                long r = scaleUp(unscaled, newScale - scale);
+                if (r != OVERFLOW) {
+                    return new Amount(r, newScale, null);
+                }
+            } else if (scale - newScale < LONG_TEN_POWERS.length) {
+                long power = LONG_TEN_POWERS[scale - newScale];
+                if (unscaled % power == 0) {
+                    return new Amount(unscaled / power, newScale, null);
+                }
+            }
+        }
+        return valueOf(toBigDecimal().setScale(newScale, RoundingMode.UNNECESSARY));
+    }
+
+    /**
+     * numerical order, ignores the scale like BigDecimal.compareTo
+     */
+    @Override
+    public int compareTo(Amount other) {
+        if (big == null && other.big == null) {
+            if (scale == other.scale) {
+                return Long.compare(unscaled, other.unscaled);
+            }
+            int commonScale = Math.max(scale, other.scale);
+            long a = scaleUp(unscaled, commonScale - scale);
+            long b = scaleUp(other.unscaled, commonScale - other.scale);
+            if (a != OVERFLOW && b != OVERFLOW) {
+                return Long.compare(a, b);
+            }
+        }
+        return toBigDecimal().compareTo(other.toBigDecimal());
+    }
+
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return big == null ? BigDecimal.valueOf(unscaled, scale) : new BigDecimal(big, scale);
+    }
+
+    /**
+     * equal value and scale, like BigDecimal.equals
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Amount)) return false;
+        Amount that = (Amount) o;
+        return scale == that.scale && unscaled == that.unscaled && (big == null ? that.big == null : big.equals(that.big));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (big == null ? Long.hashCode(unscaled) : big.hashCode()) + scale;
+    }
+
+    /**
+     * same as BigDecimal.toString
+     */
+    @Override
+    public String toString() {
+        return toBigDecimal().toString();
+    }
+
+    /**
+     * value * 10^n, OVERFLOW if it does not fit
+     */
+    private static long scaleUp(long value, int n) {
+        if (n == 0) {
+            return value;
+        }
+        if (n >= LONG_TEN_POWERS.length) {
+            return value == 0 ? 0 : OVERFLOW;
+        }
+        long power = LONG_TEN_POWERS[n];
+        long bound = Long.MAX_VALUE / power;
+        if (value > bound || value < -bound) {
+            return OVERFLOW;
+        }
+        return value * power;
+    }
+}
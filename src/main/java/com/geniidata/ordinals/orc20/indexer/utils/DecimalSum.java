@@ -0,0 +1,67 @@
+package com.geniidata.ordinals.orc20.indexer.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * running sum of decimals that supports removal.
+ * `value` equals BigDecimal.ZERO.add(...) over the current terms, including the scale.
+ */
+public class DecimalSum {
+    private Amount sum = Amount.ZERO;
+    private int count;
+    // scale -> number of terms with that scale, the scale of the sum is the largest one
+    private final TreeMap<Integer, Integer> scales = new TreeMap<>();
+
+    public void add(Amount term) {
+        sum = sum.add(term);
+        count++;
+        scales.merge(term.scale(), 1, Integer::sum);
+    }
+
+    public void subtract(Amount term) {
+        sum = sum.subtract(term);
+        count--;
+        scales.computeIfPresent(term.scale(), (scale, n) -> n == 1 ? null : n - 1);
+    }
+
+    public Amount value() {
+        int scale = scales.isEmpty() ? 0 : Math.max(0, scales.lastKey());
+        return sum.setScale(scale);
+    }
+
+    /**
+     * like `value`, but without the starting zero: equals first.add(...) over the current terms, so the scale may be negative.
+     * zero if there is no term
+     */
+    public Amount total() {
+        return scales.isEmpty() ? Amount.ZERO : sum.setScale(scales.lastKey());
+    }
+
+    /**
+     * number of terms
+     */
+    public int count() {
+        return count;
+    }
+
+    public Map<Integer, Integer> scales() {
+        return scales;
+    }
+
+    /**
+     * restore a sum, see `scales`
+     */
+    public static DecimalSum of(Amount sum, int count, Map<Integer, Integer> scales) {
+        DecimalSum decimalSum = new DecimalSum();
+        decimalSum.sum = sum;
+        decimalSum.count = count;
+        decimalSum.scales.putAll(scales);
+        return decimalSum;
+    }
+
+    @Override
+    public String toString() {
+        return value().toBigDecimal().toPlainString();
+    }
+}
@@ -1,11 +1,17 @@
 package com.geniidata.ordinals.orc20.indexer.utils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.Writer;
 
 public class Json {
     private final static ObjectMapper objectMapper = new ObjectMapper();
@@ -17,6 +23,9 @@ public class Json {
         objectMapper.configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, false); // no check is made for possible trailing token(s)
     }
 
+    // writes values to a shared generator, flushed by its owner
+    private final static ObjectWriter streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     /**
      * encode
      */
@@ -37,4 +46,27 @@ public class Json {
     public static <T> T readValue(String content, TypeReference<T> typeReference) throws JsonProcessingException {
         return objectMapper.readValue(content, typeReference);
     }
+
+    /**
+     * streaming parser over `content`, with the same features as `readValue`
+     */
+    public static JsonParser createParser(String content) throws IOException {
+        return objectMapper.getFactory().createParser(content);
+    }
+
+    /**
+     * generator for writing many values to `out`, without separators between them
+     */
+    public static JsonGenerator createGenerator(Writer out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    /**
+     * encode to a generator created by `createGenerator`, same output as `writeValueAsString`
+     */
+    public static void writeValue(JsonGenerator generator, Object object) throws IOException {
+        streamWriter.writeValue(generator, object);
+    }
 }
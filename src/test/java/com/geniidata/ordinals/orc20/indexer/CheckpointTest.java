@@ -0,0 +1,70 @@
+package com.geniidata.ordinals.orc20.indexer;
+
+import com.geniidata.ordinals.orc20.indexer.contants.OIP;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.Checkpoint;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointTest {
+    // after the OIP10 block and one of the snapshot heights
+    private final static long HALF = OIP.OIP_10_BLOCK + 20;
+
+    @Test
+    void resumedRunEqualsUninterruptedRun(@TempDir Path dir) throws IOException {
+        TestInscriptions inscriptions = TestInscriptions.generate(4, 1500);
+        assertTrue(inscriptions.getLastBlockHeight() > HALF);
+        Path contents = dir.resolve("contents.jsonl");
+        Path transfers = dir.resolve("transfers.jsonl");
+        inscriptions.write(contents, transfers);
+        Path firstHalf = dir.resolve("transfers-half.jsonl");
+        long halfBlockHeight = -1;
+        try (BufferedWriter out = Files.newBufferedWriter(firstHalf, StandardCharsets.UTF_8)) {
+            for (InscriptionTransfer transfer : inscriptions.getTransfers()) {
+                if (transfer.getBlockHeight() <= HALF) {
+                    out.write(Json.writeValueAsString(transfer));
+                    out.newLine();
+                    halfBlockHeight = transfer.getBlockHeight();
+                }
+            }
+        }
+
+        String expected = TestInscriptions.run(indexer(contents, transfers, false), dir.resolve("uninterrupted.json"));
+        for (boolean offHeapBalances : new boolean[]{false, true}) {
+            Path checkpointDir = dir.resolve("checkpoints-" + offHeapBalances);
+            Indexer half = indexer(contents, firstHalf, offHeapBalances);
+            half.setCheckpoint(checkpointDir.toString(), Integer.MAX_VALUE, false); // after the last block only
+            TestInscriptions.run(half, dir.resolve("half.json"));
+            try (Stream<Path> files = Files.list(checkpointDir)) {
+                assertEquals(1, files.count()); // resumed from it
+            }
+            MemoryCache restored = new MemoryCache();
+            Checkpoint checkpoint = Checkpoint.readLatest(checkpointDir, restored);
+            assertEquals(halfBlockHeight, checkpoint.getBlockHeight());
+            assertEquals(halfBlockHeight, restored.committedBlockHeight());
+            assertTrue(checkpoint.isOIP10BackedUp(), "the OIP10 snapshot is restored, not taken again");
+
+            Indexer resumed = indexer(contents, transfers, offHeapBalances);
+            resumed.setCheckpoint(checkpointDir.toString(), Indexer.DEFAULT_CHECKPOINT_INTERVAL, true);
+            assertEquals(expected, TestInscriptions.run(resumed, dir.resolve("resumed.json")), "off-heap balances " + offHeapBalances);
+        }
+    }
+
+    private static Indexer indexer(Path contents, Path transfers, boolean offHeapBalances) {
+        Indexer indexer = new Indexer(contents.toString(), transfers.toString());
+        indexer.setOffHeapBalances(offHeapBalances);
+        return indexer;
+    }
+}
@@ -0,0 +1,67 @@
+package com.geniidata.ordinals.orc20.indexer;
+
+import com.geniidata.ordinals.orc20.indexer.data.TransferStream;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingTest {
+    private final static int FILES = 3;
+
+    @Test
+    void streamedRunEqualsLoadedRun(@TempDir Path dir) throws IOException {
+        TestInscriptions inscriptions = TestInscriptions.generate(1, 1500);
+        Path contents = dir.resolve("contents.jsonl");
+        Path transfers = dir.resolve("transfers.jsonl");
+        inscriptions.write(contents, transfers);
+        // interleaved blocks, so the stream merges the files rather than concatenating them
+        List<String> parts = new ArrayList<>();
+        List<BufferedWriter> outs = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            Path part = dir.resolve("transfers-" + i + ".jsonl");
+            parts.add(part.toString());
+            outs.add(Files.newBufferedWriter(part, StandardCharsets.UTF_8));
+        }
+        for (InscriptionTransfer transfer : inscriptions.getTransfers()) {
+            BufferedWriter out = outs.get((int) (transfer.getBlockHeight() % FILES));
+            out.write(Json.writeValueAsString(transfer));
+            out.newLine();
+        }
+        for (BufferedWriter out : outs) {
+            out.close();
+        }
+        List<InscriptionTransfer> streamed = new ArrayList<>();
+        new TransferStream(parts).forEach(streamed::add);
+        assertEquals(inscriptions.getTransfers().toString(), streamed.toString(), "merged in (blockHeight, txIndex) order");
+
+        String expected = TestInscriptions.run(new Indexer(contents.toString(), transfers.toString()), dir.resolve("loaded.json"));
+        assertEquals(expected, TestInscriptions.run(new Indexer(contents.toString(), parts, false, null), dir.resolve("loaded-parts.json")), "loaded from parts");
+        assertEquals(expected, TestInscriptions.run(new Indexer(contents.toString(), parts, true, null), dir.resolve("streamed.json")), "streamed");
+        // the genesis heights are set on the consuming thread, ahead of the threads reading the contents
+        Indexer parallel = new Indexer(contents.toString(), parts, true, null);
+        parallel.setParseThreads(2);
+        parallel.setShards(2);
+        assertEquals(expected, TestInscriptions.run(parallel, dir.resolve("streamed-parallel.json")), "streamed, parse threads and shards");
+
+        Path output = dir.resolve("streamed-options.json");
+        List<String> args = new ArrayList<>(Arrays.asList("-c", contents.toString(), "-s", "-H", "788850,800100", "-o", output.toString()));
+        for (String part : parts) {
+            args.add("-t");
+            args.add(part);
+        }
+        Indexer.fromOptions(args.toArray(new String[0])).run();
+        assertEquals(expected, new String(Files.readAllBytes(output), StandardCharsets.UTF_8), "-s with repeated -t");
+    }
+}
@@ -0,0 +1,364 @@
+package com.geniidata.ordinals.orc20.indexer;
+
+import com.geniidata.ordinals.orc20.indexer.data.Dumper;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * reproducible random inscriptions of a few ticks and addresses: deploys, mints, sends, cancels, upgrades and transfers,
+ * across the OIP3 and OIP10 blocks, or hand-written ones, see `startingAt`. the transfers are ordered by (blockHeight, txIndex).
+ */
+public class TestInscriptions {
+    public final static String ATM_ADDRESS = "bc1pgha2vs4m4d70aw82qzrhmg98yea4fuxtnf7lpguez3z9cjtukpssrhakhl";
+    private final static String[] TICKS = {"ordi", "pepe", "sats"};
+    private final static String[] INVALID_AMOUNTS = {"-1", "1e3", " 12", "0", "00012", "1.", "+5", "abc", ""};
+
+    private final Random random;
+    private final List<InscriptionContent> contents = new ArrayList<>();
+    private final Map<String, InscriptionContent> contentsById = new HashMap<>();
+    private final List<InscriptionTransfer> transfers = new ArrayList<>();
+    private final Map<String, String> holders = new LinkedHashMap<>(); // inscriptionId -> address
+    private final List<String[]> deploys = new ArrayList<>(); // tick, deployId, inscriptionId
+    private final Map<String, Integer> nonces = new HashMap<>(); // address + tick -> last nonce
+    private long blockHeight = 788800;
+    private int txIndex;
+    private long inscriptionNumber = 1000;
+
+    private TestInscriptions(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * `count` random operations, about one block per 8 of them
+     */
+    public static TestInscriptions generate(long seed, int count) {
+        TestInscriptions inscriptions = new TestInscriptions(new Random(seed));
+        for (int i = 0; i < count; i++) {
+            inscriptions.next();
+        }
+        return inscriptions;
+    }
+
+    /**
+     * no inscriptions yet, the hand-written ones are added to block `blockHeight` until `toBlock` moves on
+     */
+    public static TestInscriptions startingAt(long blockHeight) {
+        TestInscriptions inscriptions = new TestInscriptions(null);
+        inscriptions.blockHeight = blockHeight;
+        return inscriptions;
+    }
+
+    /**
+     * the following inscriptions and transfers are in block `blockHeight`
+     */
+    public TestInscriptions toBlock(long blockHeight) {
+        if (blockHeight <= this.blockHeight) {
+            throw new IllegalArgumentException("block " + blockHeight + " is not after " + this.blockHeight);
+        }
+        this.blockHeight = blockHeight;
+        txIndex = 0;
+        return this;
+    }
+
+    /**
+     * inscribe an ORC20 operation to `address`, `fields` are the names and values of the fields after "id"
+     *
+     * @return inscriptionId
+     */
+    public String inscribe(String address, String op, String tick, String id, String... fields) {
+        Map<String, Object> body = body(op, tick, id);
+        for (int i = 0; i < fields.length; i += 2) {
+            body.put(fields[i], fields[i + 1]);
+        }
+        return inscribe(address, body);
+    }
+
+    public List<InscriptionContent> getContents() {
+        return contents;
+    }
+
+    public InscriptionContent getContent(String inscriptionId) {
+        return contentsById.get(inscriptionId);
+    }
+
+    public List<InscriptionTransfer> getTransfers() {
+        return transfers;
+    }
+
+    public long getLastBlockHeight() {
+        return transfers.get(transfers.size() - 1).getBlockHeight();
+    }
+
+    /**
+     * write the contents and transfers as JSON lines, the input format of the {@link Indexer}
+     */
+    public void write(Path contentPath, Path transferPath) throws IOException {
+        writeLines(contentPath, contents);
+        writeLines(transferPath, transfers);
+    }
+
+    private static void writeLines(Path path, List<?> values) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Object value : values) {
+                out.write(Json.writeValueAsString(value));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * apply the transfers above the committed block height up to `toBlockHeight`, committing the storage at block boundaries.
+     * the content of an inscription is inserted with its inscribing transfer, or on the first call if the storage
+     * committed that block without the contents, e.g. a reopened {@link com.geniidata.ordinals.orc20.indexer.storage.DiskStorage}
+     */
+    public void apply(Orc20 orc20, long toBlockHeight) {
+        Storage storage = orc20.getStorage();
+        long lastBlockHeight = -1;
+        for (InscriptionTransfer transfer : transfers) {
+            long height = transfer.getBlockHeight();
+            if (height > toBlockHeight) {
+                break;
+            }
+            if (height <= storage.committedBlockHeight()) {
+                if (!transfer.isTransfer() && storage.selectInscriptionContentByInscriptionId(transfer.getInscriptionId()) == null) {
+                    storage.insertInscriptionContent(contentsById.get(transfer.getInscriptionId()));
+                }
+                continue;
+            }
+            if (!transfer.isTransfer()) {
+                storage.insertInscriptionContent(contentsById.get(transfer.getInscriptionId()));
+            }
+            if (lastBlockHeight >= 0 && height != lastBlockHeight) {
+                storage.commit(lastBlockHeight);
+            }
+            lastBlockHeight = height;
+            orc20.accept(transfer);
+        }
+        if (lastBlockHeight >= 0) {
+            storage.commit(lastBlockHeight);
+        }
+    }
+
+    /**
+     * run `indexer` with the snapshot heights of the generated inscriptions, one before and one after the OIP10 block
+     *
+     * @return the output written to `output`
+     */
+    public static String run(Indexer indexer, Path output) throws IOException {
+        indexer.setSnapshotHeights(Arrays.asList(788850L, 800100L));
+        indexer.setOutputPath(output.toString());
+        indexer.run();
+        return new String(Files.readAllBytes(output), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the balance summary, balances, metadata, events and OIP10 snapshot of `storage`, as the {@link Dumper} writes them
+     */
+    public static String dump(Storage storage) {
+        StringWriter out = new StringWriter();
+        try (Dumper dumper = new Dumper(out)) {
+            dumper.summarizeOrc20Balance(storage);
+            dumper.dumpOrc20Balance(storage);
+            dumper.dumpOrc20Metadata(storage);
+            dumper.dumpOrc20Event(storage);
+            dumper.dumpOrc20BalanceOIP10Snapshot(storage);
+        }
+        return out.toString();
+    }
+
+    private void next() {
+        double r = random.nextDouble();
+        String address = address();
+        if (r < 0.02 || deploys.size() < TICKS.length) {
+            // one valid deploy of each tick first
+            String tick = deploys.size() < TICKS.length ? TICKS[deploys.size()] : TICKS[random.nextInt(TICKS.length)];
+            String deployId = deploys.size() < TICKS.length ? "1" : String.valueOf(1 + random.nextInt(2));
+            Map<String, Object> body = body("deploy", tick, deployId);
+            body.put("max", random.nextDouble() < 0.8 ? "21000000" : "5000");
+            body.put("lim", random.nextDouble() < 0.8 ? "1000" : "100");
+            if (random.nextDouble() < 0.2) {
+                body.put("dec", random.nextBoolean() ? "2" : "0");
+            }
+            String inscriptionId = inscribe(address, body);
+            // the deploy is referenced by its inscription number since OIP3
+            deploys.add(new String[]{tick, blockHeight < 788836 ? deployId : String.valueOf(inscriptionNumber), inscriptionId});
+        } else if (r < 0.40) {
+            Map<String, Object> body = body("mint", randomDeploy());
+            body.put("amt", amount(1000));
+            inscribe(address, body);
+        } else if (r < 0.58) {
+            String[] deploy = randomDeploy();
+            String key = address + deploy[0];
+            int nonce = nonces.getOrDefault(key, 0) + (random.nextDouble() < 0.8 ? 1 : 0);
+            nonces.put(key, nonce);
+            Map<String, Object> body = body("send", deploy);
+            body.put("n", String.valueOf(nonce));
+            if (random.nextDouble() < 0.75) {
+                body.put("amt", amount(200)); // "remaining balance" without
+            }
+            String inscriptionId = inscribe(address, body);
+            if (random.nextDouble() < 0.6) {
+                transfer(inscriptionId, address());
+            }
+        } else if (r < 0.63) {
+            String[] deploy = randomDeploy();
+            Map<String, Object> body = body("cancel", deploy);
+            int nonce = nonces.getOrDefault(address + deploy[0], 0);
+            List<String> cancelled = new ArrayList<>();
+            for (int i = random.nextInt(3); i >= 0; i--) {
+                cancelled.add(String.valueOf(random.nextInt(nonce + 2)));
+            }
+            body.put("n", "[\"" + String.join("\",\"", cancelled) + "\"]"); // "[\"1\",\"2\"]", an array in a string
+            inscribe(address, body);
+        } else if (r < 0.68) {
+            String[] deploy = randomDeploy();
+            Map<String, Object> body = body("upgrade", deploy);
+            body.put("v", "2");
+            body.put("lim", random.nextBoolean() ? "77" : "1000");
+            String owner = random.nextDouble() < 0.7 ? holders.get(deploy[2]) : address;
+            String inscriptionId = inscribe(owner, body);
+            if (random.nextDouble() < 0.7) {
+                transfer(inscriptionId, random.nextDouble() < 0.8 ? ATM_ADDRESS : address());
+            }
+        } else if (r < 0.71) {
+            transfer(randomDeploy()[2], address());
+        } else if (r < 0.74) {
+            inscribe(address, random.nextBoolean() ? "hello world" : "{\"p\":\"orc-20\",\"op\":\"list\"}");
+        } else {
+            List<String> inscriptionIds = new ArrayList<>(holders.keySet());
+            String inscriptionId = inscriptionIds.get(random.nextInt(inscriptionIds.size()));
+            transfer(inscriptionId, blockHeight >= 800010 && random.nextDouble() < 0.3 ? ATM_ADDRESS : address());
+        }
+    }
+
+    /**
+     * skewed towards the first addresses, so that they hold several balances
+     */
+    private String address() {
+        double r = random.nextDouble();
+        return String.format("bc1q%038d", (int) (12 * r * r));
+    }
+
+    /**
+     * mostly up to `max`, some decimal and some invalid
+     */
+    private String amount(int max) {
+        double r = random.nextDouble();
+        if (r < 0.75) {
+            return String.valueOf(1 + random.nextInt(max));
+        } else if (r < 0.9) {
+            return random.nextInt(100) + "." + (1 + random.nextInt(999));
+        } else if (r < 0.95) {
+            return INVALID_AMOUNTS[random.nextInt(INVALID_AMOUNTS.length)];
+        }
+        return String.valueOf(1 + random.nextInt(max * 2));
+    }
+
+    /**
+     * mostly one of the first deploys, so that the addresses hold balances of the same ticks
+     */
+    private String[] randomDeploy() {
+        return deploys.get(random.nextInt(random.nextDouble() < 0.8 ? TICKS.length : deploys.size()));
+    }
+
+    private Map<String, Object> body(String op, String[] deploy) {
+        return body(op, deploy[0], deploy[1]);
+    }
+
+    private static Map<String, Object> body(String op, String tick, String id) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("p", "orc-20");
+        body.put("op", op);
+        body.put("tick", tick);
+        body.put("id", id);
+        return body;
+    }
+
+    private void nextTransaction() {
+        if (++txIndex > 8 && random != null && random.nextInt(4) == 0) {
+            blockHeight += 1 + random.nextInt(2);
+            txIndex = 1;
+            if (blockHeight > 788860 && blockHeight < 799990) {
+                blockHeight = 799990; // on to OIP10
+            }
+        }
+    }
+
+    private String txId() {
+        return String.format("%064x", blockHeight << 20 | txIndex);
+    }
+
+    private String inscribe(String address, Map<String, Object> body) {
+        try {
+            return inscribe(address, Json.writeValueAsString(body));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * inscribe `contentBody` to `address`
+     *
+     * @return inscriptionId
+     */
+    public String inscribe(String address, String contentBody) {
+        nextTransaction();
+        String txId = txId();
+        String inscriptionId = txId + "i0";
+        inscriptionNumber++;
+        InscriptionContent content = new InscriptionContent();
+        content.setInscriptionId(inscriptionId);
+        content.setInscriptionNumber(inscriptionNumber);
+        content.setContentType("text/plain");
+        content.setContentBody(contentBody);
+        contents.add(content);
+        contentsById.put(inscriptionId, content);
+        transfers.add(transfer(inscriptionId, inscriptionNumber, null, address, txId, false));
+        holders.put(inscriptionId, address);
+        return inscriptionId;
+    }
+
+    /**
+     * transfer `inscriptionId` from its holder to `toAddress`, nothing once it is sent to the ATM
+     */
+    public void transfer(String inscriptionId, String toAddress) {
+        String fromAddress = holders.get(inscriptionId);
+        if (ATM_ADDRESS.equals(fromAddress)) {
+            return;
+        }
+        nextTransaction();
+        transfers.add(transfer(inscriptionId, 0, fromAddress, toAddress, txId(), true));
+        holders.put(inscriptionId, toAddress);
+    }
+
+    private InscriptionTransfer transfer(String inscriptionId, long number, String fromAddress, String toAddress, String txId, boolean isTransfer) {
+        InscriptionTransfer transfer = new InscriptionTransfer();
+        transfer.setInscriptionId(inscriptionId);
+        transfer.setInscriptionNumber(number);
+        transfer.setFromAddress(fromAddress);
+        transfer.setToAddress(toAddress);
+        transfer.setToLocation(txId + ":0:0");
+        transfer.setBlockHeight(blockHeight);
+        transfer.setBlockTime(1680000000 + blockHeight * 600);
+        transfer.setTxId(txId);
+        transfer.setTxIndex(txIndex);
+        transfer.setTransfer(isTransfer);
+        return transfer;
+    }
+}
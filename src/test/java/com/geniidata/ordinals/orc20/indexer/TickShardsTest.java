@@ -0,0 +1,107 @@
+package com.geniidata.ordinals.orc20.indexer;
+
+import com.geniidata.ordinals.orc20.indexer.data.EventCache;
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.storage.IndexKey;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickShardsTest {
+    private final static String ALICE = "bc1qalice";
+    private final static String BOB = "bc1qbob";
+
+    @Test
+    void ticksOnTwoShards() {
+        // "ordi" and "sats" hash to different shards of 2
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe(ALICE, "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.inscribe(ALICE, "deploy", "sats", "1", "max", "21000000", "lim", "500");
+        inscriptions.toBlock(788802);
+        String ordi = inscriptions.inscribe(ALICE, "mint", "ordi", "1", "amt", "1000");
+        String sats = inscriptions.inscribe(BOB, "mint", "sats", "1", "amt", "500");
+        inscriptions.inscribe(BOB, "mint", "sats", "1", "amt", "600"); // over the limit
+        inscriptions.toBlock(788803);
+        inscriptions.transfer(ordi, BOB);
+        inscriptions.transfer(sats, ALICE);
+
+        MemoryCache storage = new MemoryCache();
+        inscriptions.getContents().forEach(storage::insertInscriptionContent);
+        try (TickShards tickShards = new TickShards(storage, new EventCache(EventCache.DEFAULT_CAPACITY, Orc20::readInscriptionContent), 2, Collections.singleton(788803L))) {
+            inscriptions.getTransfers().forEach(tickShards);
+            tickShards.finish();
+        }
+
+        Map<String, BigDecimal> expected = new TreeMap<>();
+        expected.put("ordi " + BOB, new BigDecimal("1E+3"));
+        expected.put("sats " + ALICE, new BigDecimal("5E+2"));
+        assertEquals(expected, okBalances(storage, storage.dumpOrc20Balance()));
+        // before the transfers of block 788803, created on both shards
+        expected.clear();
+        expected.put("ordi " + ALICE, new BigDecimal("1E+3"));
+        expected.put("sats " + BOB, new BigDecimal("5E+2"));
+        assertEquals(expected, okBalances(storage, storage.dumpOrc20BalanceSnapshot(788803)));
+        assertEquals(7, storage.dumpOrc20Event().size());
+    }
+
+    @Test
+    void shardedRunEqualsSequentialRun(@TempDir Path dir) throws IOException {
+        Path contents = dir.resolve("contents.jsonl");
+        Path transfers = dir.resolve("transfers.jsonl");
+        TestInscriptions inscriptions = TestInscriptions.generate(10, 3000);
+        inscriptions.write(contents, transfers);
+        MemoryCache storage = new MemoryCache();
+        inscriptions.apply(new Orc20(storage), Long.MAX_VALUE);
+        Set<Integer> usedShards = new HashSet<>();
+        storage.dumpOrc20Metadata().values().forEach(metadata -> usedShards.add(Math.floorMod(metadata.getTick().hashCode(), 4)));
+        assertTrue(usedShards.size() > 1, "the 4 shards merge the state of several shards: " + usedShards);
+        String sequential = run(contents, transfers, 0, dir.resolve("sequential.json"));
+        for (int shards : new int[]{1, 4}) {
+            assertEquals(sequential, run(contents, transfers, shards, dir.resolve("sharded-" + shards + ".json")), shards + " shards");
+        }
+    }
+
+    @Test
+    void shardsRejectUndoRecords() {
+        // the shards are merged without undo records, a rollback would not revert them
+        Indexer indexer = new Indexer("contents.jsonl", "transfers.jsonl");
+        indexer.setUndoDepth(10);
+        assertThrows(IllegalArgumentException.class, () -> indexer.setShards(2));
+        indexer.setShards(0);
+    }
+
+    /**
+     * the "OK" balances by tick and address
+     */
+    private static Map<String, BigDecimal> okBalances(MemoryCache storage, Map<IndexKey, Orc20Balance> balances) {
+        Map<String, BigDecimal> okBalances = new TreeMap<>();
+        for (Orc20Balance balance : balances.values()) {
+            if (BalanceStatus.OK.equals(balance.getBalanceStatus())) {
+                String tick = storage.selectORC20MetadataByTickId(balance.getTickId()).getTick();
+                okBalances.merge(tick + " " + balance.getAddress(), balance.getBalance().toBigDecimal(), BigDecimal::add);
+            }
+        }
+        okBalances.replaceAll((key, sum) -> sum.stripTrailingZeros());
+        return okBalances;
+    }
+
+    private static String run(Path contents, Path transfers, int shards, Path output) throws IOException {
+        Indexer indexer = new Indexer(contents.toString(), transfers.toString());
+        indexer.setShards(shards);
+        return TestInscriptions.run(indexer, output);
+    }
+}
@@ -0,0 +1,62 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedJsonReaderTest {
+    // from a chunk per line, most ending mid-line, to a single chunk
+    private final static int[] CHUNK_SIZES = {1, 97, 1000, 8 << 20};
+
+    @Test
+    void parallelChunksEqualSingleReader(@TempDir Path dir) throws IOException {
+        Path plain = dir.resolve("transfers.jsonl");
+        TestInscriptions inscriptions = TestInscriptions.generate(21, 300);
+        inscriptions.write(dir.resolve("contents.jsonl"), plain);
+        String text = new String(Files.readAllBytes(plain), StandardCharsets.UTF_8);
+        assertTrue(Arrays.stream(text.split("\n")).allMatch(line -> line.length() > CHUNK_SIZES[1]), "the small chunks end mid-line");
+        // "\r\n" line terminators and no terminator after the last line
+        Path crlf = dir.resolve("transfers-crlf.jsonl");
+        Files.write(crlf, text.trim().replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+        Path gzip = dir.resolve("transfers.jsonl.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<InscriptionTransfer> expected = read(plain, 0, 0);
+        assertEquals(inscriptions.getTransfers().toString(), expected.toString(), "in file order");
+        for (Path file : new Path[]{plain, crlf, gzip}) {
+            for (int threads : new int[]{1, 3}) {
+                for (int chunkSize : CHUNK_SIZES) {
+                    assertEquals(expected, read(file, threads, chunkSize), file.getFileName() + ", " + threads + " threads, chunks of " + chunkSize);
+                }
+            }
+        }
+        assertEquals(expected, read(crlf, 0, 0));
+        assertEquals(expected, read(gzip, 0, 0));
+    }
+
+    private static List<InscriptionTransfer> read(Path file, int threads, int chunkSize) {
+        List<InscriptionTransfer> values = new ArrayList<>();
+        if (threads == 0) {
+            ChunkedJsonReader.forEach(file.toString(), InscriptionTransfer.class, 0, values::add);
+        } else {
+            ChunkedJsonReader.forEach(file.toString(), InscriptionTransfer.class, threads, chunkSize, values::add);
+        }
+        return values;
+    }
+}
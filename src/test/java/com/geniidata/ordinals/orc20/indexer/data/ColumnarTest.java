@@ -0,0 +1,147 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.EventType;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarTest {
+    private final static int ROW_GROUP_SIZE = 50;
+    private final static MemoryCache STORAGE = new MemoryCache();
+
+    static {
+        TestInscriptions.generate(15, 1500).apply(new Orc20(STORAGE), Long.MAX_VALUE);
+    }
+
+    @Test
+    void rowGroupsOfHandWrittenEvents(@TempDir Path dir) {
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe("bc1qalice", "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.toBlock(788802);
+        String mint = inscriptions.inscribe("bc1qalice", "mint", "ordi", "1", "amt", "1000");
+        inscriptions.inscribe("bc1qbob", "mint", "ordi", "1", "amt", "0.5");
+        inscriptions.toBlock(788804);
+        inscriptions.inscribe("bc1qbob", "mint", "ordi", "1", "amt", "7");
+        inscriptions.toBlock(788806);
+        inscriptions.transfer(mint, "bc1qbob");
+        MemoryCache storage = new MemoryCache();
+        inscriptions.apply(new Orc20(storage), Long.MAX_VALUE);
+        List<Orc20Event> events = storage.dumpOrc20Event().values().stream()
+                .sorted(Comparator.comparingLong(Orc20Event::getBlockHeight).thenComparingInt(Orc20Event::getTxIndex))
+                .collect(Collectors.toList());
+        Path file = dir.resolve("event.col");
+        try (ColumnarWriter<Orc20Event> writer = new ColumnarWriter<>(file, ColumnarSchema.EVENT, 2)) {
+            events.forEach(writer::add);
+        }
+
+        try (ColumnarReader<Orc20Event> reader = new ColumnarReader<>(file, ColumnarSchema.EVENT)) {
+            assertEquals(5, reader.rowCount());
+            int index = ColumnarSchema.EVENT.statsIndex("blockHeight");
+            List<ColumnarReader.RowGroup> rowGroups = reader.getRowGroups();
+            assertEquals(3, rowGroups.size());
+            assertEquals(788801, rowGroups.get(0).getMin(index));
+            assertEquals(788802, rowGroups.get(0).getMax(index));
+            assertEquals(788802, rowGroups.get(1).getMin(index));
+            assertEquals(788804, rowGroups.get(1).getMax(index));
+            assertEquals(788806, rowGroups.get(2).getMin(index));
+
+            List<Orc20Event> inRange = new ArrayList<>();
+            reader.forEach("blockHeight", 788803, 788805, inRange::add);
+            assertEquals(1, inRange.size());
+            assertEquals(EventType.INSCRIBE_MINT, inRange.get(0).getEventType());
+            assertEquals("7", inRange.get(0).getAmount().toString());
+
+            inRange.clear();
+            reader.forEach("blockHeight", 788802, 788802, inRange::add);
+            assertEquals(Arrays.asList("1000", "0.5"), inRange.stream().map(e -> e.getAmount().toString()).collect(Collectors.toList()));
+
+            inRange.clear();
+            reader.forEach("blockHeight", 788806, Long.MAX_VALUE, inRange::add);
+            assertEquals(1, inRange.size());
+            assertEquals(EventType.TRANSFER_MINT, inRange.get(0).getEventType());
+            assertEquals("bc1qbob", inRange.get(0).getToAddress());
+        }
+    }
+
+    @Test
+    void writeThenRead(@TempDir Path dir) throws IOException {
+        List<Orc20Balance> balances = new ArrayList<>(STORAGE.dumpOrc20Balance().values());
+        Path file = dir.resolve("balance.col");
+        try (ColumnarWriter<Orc20Balance> writer = new ColumnarWriter<>(file, ColumnarSchema.BALANCE, ROW_GROUP_SIZE)) {
+            balances.forEach(writer::add);
+        }
+        List<Orc20Balance> read = new ArrayList<>();
+        try (ColumnarReader<Orc20Balance> reader = new ColumnarReader<>(file, ColumnarSchema.BALANCE)) {
+            assertEquals(balances.size(), reader.rowCount());
+            assertEquals((balances.size() + ROW_GROUP_SIZE - 1) / ROW_GROUP_SIZE, reader.getRowGroups().size());
+            reader.forEach(read::add);
+        }
+        assertEquals(strings(balances), strings(read));
+        long jsonLength = 0;
+        for (Orc20Balance balance : balances) {
+            jsonLength += Json.writeValueAsString(balance).length() + 1;
+        }
+        long length = file.toFile().length();
+        assertTrue(length * 2 < jsonLength, length + " bytes of columns, " + jsonLength + " of JSON lines");
+    }
+
+    @Test
+    void readHeightRanges(@TempDir Path dir) {
+        List<Orc20Event> events = STORAGE.dumpOrc20Event().values().stream()
+                .sorted(Comparator.comparingLong(Orc20Event::getBlockHeight).thenComparingInt(Orc20Event::getTxIndex).thenComparing(Orc20Event::getEventId))
+                .collect(Collectors.toList());
+        Path file = dir.resolve("event.col");
+        try (ColumnarWriter<Orc20Event> writer = new ColumnarWriter<>(file, ColumnarSchema.EVENT, ROW_GROUP_SIZE)) {
+            events.forEach(writer::add);
+        }
+        try (ColumnarReader<Orc20Event> reader = new ColumnarReader<>(file, ColumnarSchema.EVENT)) {
+            List<Orc20Event> read = new ArrayList<>();
+            reader.forEach(read::add);
+            assertEquals(strings(events), strings(read));
+
+            int index = ColumnarSchema.EVENT.statsIndex("blockHeight");
+            List<ColumnarReader.RowGroup> rowGroups = reader.getRowGroups();
+            List<long[]> ranges = new ArrayList<>();
+            ranges.add(new long[]{0, Long.MAX_VALUE});
+            ranges.add(new long[]{0, events.get(0).getBlockHeight() - 1});
+            for (int i = 0; i < rowGroups.size(); i++) {
+                ColumnarReader.RowGroup rowGroup = rowGroups.get(i);
+                ranges.add(new long[]{rowGroup.getMin(index), rowGroup.getMax(index)});
+                ranges.add(new long[]{rowGroup.getMax(index), rowGroup.getMax(index)});
+                if (i + 1 < rowGroups.size()) {
+                    // across the boundary of two row groups
+                    ranges.add(new long[]{rowGroup.getMax(index), rowGroups.get(i + 1).getMin(index)});
+                    ranges.add(new long[]{rowGroup.getMin(index) + 1, rowGroups.get(i + 1).getMax(index) - 1});
+                }
+            }
+            for (long[] range : ranges) {
+                List<Orc20Event> expected = events.stream()
+                        .filter(e -> e.getBlockHeight() >= range[0] && e.getBlockHeight() <= range[1])
+                        .collect(Collectors.toList());
+                List<Orc20Event> inRange = new ArrayList<>();
+                reader.forEach("blockHeight", range[0], range[1], inRange::add);
+                assertEquals(strings(expected), strings(inRange), range[0] + ".." + range[1]);
+            }
+        }
+    }
+
+    private static List<String> strings(List<?> rows) {
+        return rows.stream().map(Object::toString).collect(Collectors.toList());
+    }
+}
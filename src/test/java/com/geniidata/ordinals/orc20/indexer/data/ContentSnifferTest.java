@@ -0,0 +1,117 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.data.events.BaseEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * the sniffer rejects a content only if decoding its lowercase copy as a `BaseEvent` gives no valid event
+ */
+class ContentSnifferTest {
+    private final static String MINT = "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\",\"id\":\"1\",\"amt\":\"1000\"}";
+
+    @Test
+    void rejected() {
+        for (String content : new String[]{
+                null,
+                "",
+                " \n",
+                "hello world",
+                "[" + MINT + "]",
+                "{\"p\":\"brc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"p\":\"orc-20-x\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"p\":123,\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"p\":\"orc-20\",\"op\":\"mint\"}", // no tick
+                "{\"p\":\"orc-20\",\"op\":null,\"tick\":\"ordi\"}",
+                "{\" p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}", // whitespace in the key
+                "{\"p\":\"brc-20\",\"P\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}", // duplicate keys once lowercased
+        }) {
+            check(content, true);
+        }
+    }
+
+    @Test
+    void leftToTheDecoder() {
+        for (String content : new String[]{
+                MINT,
+                " \r\n\t" + MINT,
+                "\uFEFF" + MINT, // a byte order mark
+                "{\"P\":\"ORC-20\",\"Op\":\"MINT\",\"TICK\":\"ORDI\"}", // lowercased by the decoder
+                "{\"p\":\"ORC20\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"\\u0070\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}", // an escaped key
+                "{\"p\":\"orc\\u002d20\",\"op\":\"mint\",\"tick\":\"ordi\"}", // an escaped value
+                "{\"P\":\"\\u004fRC-20\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"p\":\"orc-20\",\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}", // a duplicate key, rejected by the decoder
+                "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\",}", // a trailing comma
+                "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"", // malformed
+                "{\"p\":\"orc-20\",\"op\":TRUE,\"tick\":\"ordi\"}", // true once lowercased
+                "{\"tick\":\"ordi\",\"x\":{\"p\":\"brc-20\"},\"op\":\"mint\",\"p\":\"orc-20\"}", // a nested "p"
+        }) {
+            check(content, false);
+        }
+        // valid events that a rule on the original text would reject
+        for (String content : new String[]{
+                "{\"P\":\"ORC-20\",\"Op\":\"MINT\",\"TICK\":\"ORDI\"}",
+                "{\"\\u0070\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"P\":\"\\u004fRC-20\",\"op\":\"mint\",\"tick\":\"ordi\"}",
+                "{\"tick\":\"ordi\",\"x\":{\"p\":\"brc-20\"},\"op\":\"mint\",\"p\":\"orc-20\"}",
+        }) {
+            assertTrue(isValid(content), content);
+        }
+    }
+
+    @Test
+    void mutations() {
+        Random random = new Random(19);
+        String[] seeds = {MINT, "{\"P\":\"ORC-20\",\"Op\":\"MINT\",\"TICK\":\"ORDI\"}", "{\"p\":\"orc20\",\"op\":\"send\",\"tick\":\"pepe\",\"n\":\"1\"}"};
+        String alphabet = "{}[]\":, \t\\uPpOoTtIiCcKk-20x";
+        int accepted = 0;
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder content = new StringBuilder(seeds[random.nextInt(seeds.length)]);
+            for (int edits = 1 + random.nextInt(3); edits > 0 && content.length() > 0; edits--) {
+                int at = random.nextInt(content.length());
+                switch (random.nextInt(4)) {
+                    case 0:
+                        content.deleteCharAt(at);
+                        break;
+                    case 1:
+                        content.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                    case 2:
+                        content.setCharAt(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                    default:
+                        char c = content.charAt(at);
+                        content.setCharAt(at, Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c));
+                }
+            }
+            if (ContentSniffer.isNotOrc20(content.toString())) {
+                assertFalse(isValid(content.toString()), content.toString());
+            } else {
+                accepted++;
+            }
+        }
+        assertFalse(accepted == 0 || accepted == 20000, "both accepted and rejected mutations: " + accepted);
+    }
+
+    /**
+     * the sniffer's decision, and that it never rejects a content the decoder accepts
+     */
+    private static void check(String content, boolean rejected) {
+        assertEquals(rejected, ContentSniffer.isNotOrc20(content), content);
+        if (rejected) {
+            assertFalse(isValid(content), content);
+        }
+    }
+
+    private static boolean isValid(String content) {
+        BaseEvent baseEvent = Orc20.readInscriptionContent(content, BaseEvent.class);
+        return baseEvent != null && baseEvent.isValid();
+    }
+}
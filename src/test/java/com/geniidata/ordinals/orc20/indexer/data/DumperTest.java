@@ -0,0 +1,123 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import com.geniidata.ordinals.orc20.indexer.storage.Storage;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DumperTest {
+    private final static String ALICE = "bc1qalice";
+    private final static String BOB = "bc1qbob";
+
+    @Test
+    void sortedDumpOfHandWrittenInput() throws IOException {
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe(ALICE, "deploy", "ordi", "1", "max", "21000000", "lim", "1000"); // inscription number 1001
+        inscriptions.inscribe(BOB, "deploy", "pepe", "1", "max", "21000000", "lim", "1000"); // 1002
+        inscriptions.toBlock(788802);
+        inscriptions.inscribe(BOB, "mint", "ordi", "1", "amt", "400");
+        inscriptions.inscribe(ALICE, "mint", "ordi", "1", "amt", "1000");
+        inscriptions.inscribe(ALICE, "mint", "pepe", "1", "amt", "7");
+        inscriptions.inscribe(ALICE, "mint", "ordi", "1", "amt", "0.5");
+        inscriptions.inscribe(ALICE, "mint", "ordi", "1", "amt", "1001"); // over the limit, not dumped
+        Orc20 orc20 = new Orc20(new MemoryCache());
+        inscriptions.apply(orc20, Long.MAX_VALUE);
+
+        StringWriter out = new StringWriter();
+        try (Dumper dumper = new Dumper(out)) {
+            dumper.setSortBudget(1); // every row spilled
+            dumper.summarizeOrc20Balance(orc20.getStorage());
+            dumper.dumpOrc20Balance(orc20.getStorage());
+        }
+        String[] lines = out.toString().split("\n");
+        assertEquals("################ balance summary ################", lines[0]);
+        // by address, tick
+        assertEquals(Arrays.asList(
+                Arrays.asList(ALICE, "ordi", "1001", "1000.5", "0"),
+                Arrays.asList(ALICE, "pepe", "1002", "7", "0"),
+                Arrays.asList(BOB, "ordi", "1001", "400", "0")), columns(Arrays.asList(lines).subList(2, 5)));
+        assertEquals("################ balance dump ################", lines[5]);
+        // by address, tickId, inscriptionId
+        List<List<String>> balances = new ArrayList<>();
+        for (String line : Arrays.asList(lines).subList(6, lines.length)) {
+            JsonNode balance = Json.readValue(line, JsonNode.class);
+            balances.add(Arrays.asList(balance.get("address").asText(), balance.get("tick").asText(), balance.get("balance").asText()));
+        }
+        assertEquals(Arrays.asList(
+                Arrays.asList(ALICE, "ordi", "1000"),
+                Arrays.asList(ALICE, "ordi", "0.5"),
+                Arrays.asList(ALICE, "pepe", "7"),
+                Arrays.asList(BOB, "ordi", "400")), balances);
+    }
+
+    @Test
+    void externalSortEqualsInMemorySort(@TempDir Path dir) throws IOException {
+        TestInscriptions inscriptions = TestInscriptions.generate(14, 2000);
+        Orc20 orc20 = new Orc20(new MemoryCache());
+        orc20.setSnapshotHeights(Collections.singletonList(800100L));
+        inscriptions.apply(orc20, Long.MAX_VALUE);
+        Storage storage = orc20.getStorage();
+
+        String inMemory = dump(storage, Dumper.DEFAULT_SORT_BUDGET, dir.resolve("in-memory"));
+        List<String> addresses = new ArrayList<>();
+        String[] lines = inMemory.split("\n");
+        int start = Arrays.asList(lines).indexOf("################ balance dump ################");
+        for (int i = start + 1; i < lines.length && !lines[i].startsWith("#"); i++) {
+            addresses.add(Json.readValue(lines[i], JsonNode.class).get("address").asText());
+        }
+        assertTrue(addresses.size() > 100, "more balances than the small sort budgets");
+        List<String> sorted = new ArrayList<>(addresses);
+        Collections.sort(sorted);
+        assertEquals(sorted, addresses, "balances by address");
+        for (int sortBudget : new int[]{1, 7, 100}) {
+            Path exportDir = dir.resolve("budget-" + sortBudget);
+            assertEquals(inMemory, dump(storage, sortBudget, exportDir), "sort budget " + sortBudget);
+            for (String file : new String[]{"balance.col", "event.col"}) {
+                assertArrayEquals(Files.readAllBytes(dir.resolve("in-memory").resolve(file)), Files.readAllBytes(exportDir.resolve(file)), file);
+            }
+        }
+    }
+
+    private static List<List<String>> columns(List<String> lines) {
+        List<List<String>> rows = new ArrayList<>();
+        for (String line : lines) {
+            rows.add(Arrays.stream(line.split("\t")).map(String::trim).collect(Collectors.toList()));
+        }
+        return rows;
+    }
+
+    private static String dump(Storage storage, int sortBudget, Path exportDir) throws IOException {
+        Files.createDirectories(exportDir);
+        StringWriter out = new StringWriter();
+        try (Dumper dumper = new Dumper(out)) {
+            dumper.setSortBudget(sortBudget);
+            dumper.summarizeOrc20Balance(storage);
+            dumper.dumpOrc20Balance(storage);
+            dumper.dumpOrc20Metadata(storage);
+            dumper.dumpOrc20Event(storage);
+            dumper.dumpOrc20BalanceOIP10Snapshot(storage);
+            dumper.dumpOrc20BalanceSnapshot(storage, 800100L);
+            dumper.exportOrc20Balance(storage, exportDir.resolve("balance.col"));
+            dumper.exportOrc20Event(storage, exportDir.resolve("event.col"));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.data.events.BaseEvent;
+import com.geniidata.ordinals.orc20.indexer.data.events.MintEvent;
+import com.geniidata.ordinals.orc20.indexer.data.events.SendEvent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCacheTest {
+    private final static String MINT = "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\",\"id\":\"1\",\"amt\":\"1000\"}";
+
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        EventCache cache = cache(2);
+        cache.classify(inscription("a", MINT));
+        cache.classify(inscription("b", MINT));
+        cache.classify(inscription("a", MINT)); // a is used after b
+        cache.classify(inscription("c", MINT));
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+
+        int decoded = decodes.get();
+        cache.classify(inscription("a", MINT));
+        assertEquals(decoded, decodes.get(), "a hit does not decode");
+        cache.classify(inscription("b", MINT));
+        assertEquals(decoded + 2, decodes.get(), "b is decoded again, as a BaseEvent and a MintEvent");
+    }
+
+    @Test
+    void classify() {
+        EventCache cache = cache(EventCache.DEFAULT_CAPACITY);
+        InscriptionContent mint = inscription("a", MINT.replace("ordi", "ORDI")); // lowercased by the decoder
+        BaseEvent baseEvent = cache.classify(mint);
+        assertEquals("mint", baseEvent.getOp());
+        assertEquals("ordi", baseEvent.getTick());
+        int decoded = decodes.get();
+        MintEvent mintEvent = cache.read(mint, MintEvent.class);
+        assertEquals("1000", mintEvent.getAmt().toString());
+        assertSame(mintEvent, cache.read(mint, MintEvent.class));
+        assertEquals(decoded, decodes.get(), "the event of the op is cached");
+        assertNotNull(cache.read(mint, SendEvent.class));
+        assertEquals(decoded + 1, decodes.get(), "another class is decoded, not cached");
+
+        // negative entries
+        for (String content : new String[]{"hello world", "{\"p\":\"brc-20\",\"op\":\"mint\",\"tick\":\"ordi\",\"amt\":\"1\"}", "{\"p\":\"orc-20\""}) {
+            InscriptionContent inscription = inscription(content, content);
+            assertNull(cache.classify(inscription), content);
+            assertNull(cache.read(inscription, MintEvent.class), content);
+            assertTrue(cache.contains(content));
+        }
+    }
+
+    @Test
+    void putKeepsExistingEntry() {
+        EventCache cache = cache(EventCache.DEFAULT_CAPACITY);
+        InscriptionContent mint = inscription("a", MINT);
+        EventCache.Entry entry = cache.entry(mint);
+        cache.put("a", cache.decode("hello world"));
+        assertSame(entry, cache.entry(mint));
+        cache.put("b", cache.decode(MINT));
+        int decoded = decodes.get();
+        assertEquals("mint", cache.classify(inscription("b", MINT)).getOp());
+        assertEquals(decoded, decodes.get(), "decoded ahead");
+    }
+
+    private EventCache cache(int capacity) {
+        return new EventCache(capacity, (content, cls) -> {
+            decodes.incrementAndGet();
+            return Orc20.readInscriptionContent(content, cls);
+        });
+    }
+
+    private static InscriptionContent inscription(String inscriptionId, String content) {
+        InscriptionContent inscription = new InscriptionContent();
+        inscription.setInscriptionId(inscriptionId);
+        inscription.setContentBody(content);
+        return inscription;
+    }
+}
@@ -0,0 +1,130 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.utils.Json;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputFilesTest {
+    private final static int BGZF_BLOCK_INPUT = 0xff00; // as written by bgzip
+
+    @Test
+    void compressedInputsEqualPlainInput(@TempDir Path dir) throws IOException {
+        Path plain = dir.resolve("transfers.jsonl");
+        TestInscriptions inscriptions = TestInscriptions.generate(20, 3000);
+        inscriptions.write(dir.resolve("contents.jsonl"), plain);
+        byte[] bytes = Files.readAllBytes(plain);
+        assertTrue(bytes.length > 1 << 20, "more than one gzip chunk");
+
+        List<String> expected = records(plain);
+        assertEquals(inscriptions.getTransfers().stream().map(Object::toString).collect(Collectors.toList()), expected);
+        assertTrue(bytes.length > 4 * BGZF_BLOCK_INPUT, "several BGZF blocks to inflate in parallel");
+        assertFalse(InputFiles.isCompressed(plain.toString()));
+
+        Path gzip = dir.resolve("transfers.jsonl.gz");
+        Files.write(gzip, gzip(bytes));
+        // members split in the middle of lines, e.g. files concatenated with cat
+        Path members = dir.resolve("members.jsonl.gz");
+        try (OutputStream out = Files.newOutputStream(members)) {
+            int[] splits = {0, 1, bytes.length / 3 + 7, bytes.length / 2, bytes.length};
+            for (int i = 0; i + 1 < splits.length; i++) {
+                out.write(gzip(Arrays.copyOfRange(bytes, splits[i], splits[i + 1])));
+            }
+        }
+        Path bgzf = dir.resolve("transfers.jsonl.bgz");
+        Files.write(bgzf, bgzf(bytes));
+
+        for (Path file : new Path[]{gzip, members, bgzf}) {
+            assertTrue(InputFiles.isCompressed(file.toString()), file.toString());
+            assertEquals(expected, records(file), file.toString());
+        }
+        // detected as BGZF, inflated on the pool
+        try (BufferedReader reader = InputFiles.newBufferedReader(bgzf.toString())) {
+            reader.readLine();
+            assertTrue(Thread.getAllStackTraces().keySet().stream().anyMatch(t -> "orc20-bgzf".equals(t.getName())));
+        }
+    }
+
+    @Test
+    void corruptBgzfBlock(@TempDir Path dir) throws IOException {
+        byte[] bgzf = bgzf("{\"inscriptionId\":\"a\"}\n".getBytes());
+        bgzf[bgzf.length - 28 - 8] ^= 1; // the CRC32 of the data block, before the end of file marker
+        Path file = dir.resolve("corrupt.bgz");
+        Files.write(file, bgzf);
+        assertThrows(IOException.class, () -> records(file));
+    }
+
+    private static List<String> records(Path file) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (BufferedReader reader = InputFiles.newBufferedReader(file.toString())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                records.add(Json.readValue(line, InscriptionTransfer.class).toString());
+            }
+        }
+        return records;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * blocks of at most `BGZF_BLOCK_INPUT` bytes with a "BC" extra subfield, and the empty end of file block
+     */
+    private static byte[] bgzf(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < bytes.length; offset += BGZF_BLOCK_INPUT) {
+            bgzfBlock(out, Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + BGZF_BLOCK_INPUT)));
+        }
+        bgzfBlock(out, new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static void bgzfBlock(ByteArrayOutputStream out, byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 1024];
+        int compressed = deflater.deflate(buffer);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteBuffer block = ByteBuffer.allocate(18 + compressed + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+        block.putShort((short) 6); // XLEN
+        block.put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        block.putShort((short) (block.capacity() - 1)); // BSIZE
+        block.put(buffer, 0, compressed);
+        block.putInt((int) crc.getValue());
+        block.putInt(data.length);
+        out.write(block.array(), 0, block.capacity());
+    }
+}
@@ -1,8 +1,16 @@
 package com.geniidata.ordinals.orc20.indexer.data;
 
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import com.geniidata.ordinals.orc20.indexer.utils.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class NumberValidatorTest {
@@ -36,6 +44,101 @@ class NumberValidatorTest {
         assert NumberValidator.decimalFromString("1").scale() == 0;
         assert NumberValidator.decimalFromString("1.1234567").scale() == 7;
         assert NumberValidator.decimalFromString("1.1234567000").scale() == 10;
+        assert NumberValidator.decimalFromString(" -1.50 ").toString().equals("-1.50");
+        assert NumberValidator.decimalFromString("1e3").toString().equals("1E+3");
+        assert NumberValidator.decimalFromString("115792089237316195423570985008687907853269984665640564039457.584007913129639935").scale() == 18;
+
+    }
+
+    @Test
+    void sameAsRegexRules() {
+        String[] numbers = {
+                "", " ", "\t\n", "\u2003", "\u0000", "-", "+", "+1", " +1", "-+1", "+-1", "--1",
+                "0", "-0", "00", "007", "-007", "0.0", "00.10", "0007.5e2",
+                "1.", "1. ", "-1.", ".", ".5", "-.5", "1.e5", "1..2", "1.2.3", "1 2", " 12 ", "\t-12\n",
+                "1e3", "1E3", "1e+3", "1e-3", "-1.5E-10", "1e", "1e+", "1e-", "e3", "1ee3", "1e3.5", "1e3e3", ".e3",
+                "1e2147483647", "1e2147483648", "1e-2147483648", "0.1e-2147483647", "1e99999999999",
+                "1.12345678901234567890", "0.000000000000000000000000000001", "123456789012345678901234567890.5",
+                "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+                "2147483647", "2147483648", "-2147483648", "-2147483649",
+                "\u0661\u0662", "1\u0662", "\u0661.5", "1e\u0662", "0x10", "1_000", "1f", "1d", "NaN", "Infinity",
+        };
+        for (String number : numbers) {
+            compare(number);
+        }
+        Random random = new Random(18);
+        String alphabet = "0123456789+-.eE \tx\u0661\u2003";
+        for (int i = 0; i < 50000; i++) {
+            StringBuilder number = new StringBuilder();
+            for (int length = random.nextInt(12); length > 0; length--) {
+                number.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            compare(number.toString());
+        }
+    }
+
+    private static void compare(String number) {
+        assertEquals(outcome(RegexRules::intFromString, number), outcome(NumberValidator::intFromString, number), "int " + number);
+        assertEquals(outcome(RegexRules::longFromString, number), outcome(NumberValidator::longFromString, number), "long " + number);
+        assertEquals(outcome(RegexRules::decimalFromString, number),
+                outcome(s -> NumberValidator.decimalFromString(s).toBigDecimal(), number), "decimal " + number);
+    }
 
+    /**
+     * the parsed value with its scale, or the rejection
+     */
+    private static String outcome(Function<String, Object> parser, String number) {
+        try {
+            return Objects.toString(parser.apply(number));
+        } catch (NumberValidator.DecimalsValidatorException e) {
+            return "invalid";
+        }
+    }
+
+    /**
+     * the rules before the single pass scanner: trim, reject a leading '+', leading or trailing '.' and several '.',
+     * then the Java parsers
+     */
+    private static class RegexRules {
+        static Integer intFromString(String numberString) {
+            return (int) (long) longFromString(numberString, Integer::parseInt);
+        }
+
+        static Long longFromString(String numberString) {
+            return longFromString(numberString, Long::parseLong);
+        }
+
+        private static Long longFromString(String numberString, Function<String, Number> parser) {
+            if (StringUtils.isBlank(numberString)) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+            numberString = numberString.trim();
+            if (numberString.startsWith("+")) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+            try {
+                return parser.apply(numberString).longValue();
+            } catch (Exception e) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+        }
+
+        static BigDecimal decimalFromString(String numberString) {
+            if (StringUtils.isBlank(numberString)) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+            numberString = numberString.trim();
+            if (numberString.startsWith("+") || numberString.startsWith(".") || numberString.endsWith(".")) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+            if (numberString.split("\\.").length > 2) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+            try {
+                return new BigDecimal(numberString);
+            } catch (Exception e) {
+                throw new NumberValidator.DecimalsValidatorException();
+            }
+        }
     }
-}
\ No newline at end of file
+}
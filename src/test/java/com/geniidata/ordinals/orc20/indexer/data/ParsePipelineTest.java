@@ -0,0 +1,106 @@
+package com.geniidata.ordinals.orc20.indexer.data;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.data.events.MintEvent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.storage.MemoryCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParsePipelineTest {
+    private final static String MINT = "{\"p\":\"orc-20\",\"op\":\"mint\",\"tick\":\"ordi\",\"id\":\"1\",\"amt\":\"%d\"}";
+
+    @Test
+    void appliesInOrderWithContentsDecoded() {
+        MemoryCache storage = new MemoryCache();
+        for (int i = 0; i < 300; i++) {
+            storage.insertInscriptionContent(content("i" + i, i % 10 == 0 ? "hello world" : String.format(MINT, i)));
+        }
+        EventCache eventCache = new EventCache(EventCache.DEFAULT_CAPACITY, Orc20::readInscriptionContent);
+        List<InscriptionTransfer> transfers = new ArrayList<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 6000; i++) {
+            // repeated transfers of an inscription, some without a content
+            transfers.add(transfer(i, "i" + random.nextInt(310)));
+        }
+
+        List<InscriptionTransfer> applied = new ArrayList<>();
+        // a window of 2048 transfers
+        try (ParsePipeline pipeline = new ParsePipeline(storage, eventCache, 2, transfer -> {
+            String inscriptionId = transfer.getInscriptionId();
+            InscriptionContent inscription = storage.selectInscriptionContentByInscriptionId(inscriptionId);
+            assertEquals(inscription != null, eventCache.contains(inscriptionId), inscriptionId);
+            if (inscription != null) {
+                int number = Integer.parseInt(inscriptionId.substring(1));
+                if (number % 10 == 0 || number >= 300) {
+                    assertNull(eventCache.classify(inscription), inscriptionId);
+                } else {
+                    assertEquals(String.valueOf(number), eventCache.read(inscription, MintEvent.class).getAmt().toString());
+                }
+            }
+            applied.add(transfer);
+        })) {
+            for (InscriptionTransfer transfer : transfers) {
+                pipeline.accept(transfer);
+            }
+            assertTrue(applied.size() < transfers.size(), "the window is ahead of the applier");
+            pipeline.finish();
+        }
+        assertEquals(transfers.size(), applied.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            assertSame(transfers.get(i), applied.get(i));
+        }
+    }
+
+    @Test
+    void decodeFailureIsRethrownInOrder() {
+        MemoryCache storage = new MemoryCache();
+        storage.insertInscriptionContent(content("good", String.format(MINT, 1)));
+        String bad = String.format(MINT, 666); // passes the sniffer, fails in the decoder
+        storage.insertInscriptionContent(content("bad", bad));
+        IllegalStateException failure = new IllegalStateException("boom");
+        EventCache eventCache = new EventCache(EventCache.DEFAULT_CAPACITY, (content, cls) -> {
+            if (bad.equals(content)) {
+                throw failure;
+            }
+            return Orc20.readInscriptionContent(content, cls);
+        });
+        List<String> applied = new ArrayList<>();
+        try (ParsePipeline pipeline = new ParsePipeline(storage, eventCache, 2, transfer -> applied.add(transfer.getInscriptionId()))) {
+            pipeline.accept(transfer(0, "good"));
+            pipeline.accept(transfer(1, "bad"));
+            pipeline.accept(transfer(2, "good"));
+            RuntimeException e = assertThrows(RuntimeException.class, pipeline::finish);
+            assertSame(failure, e.getCause());
+        }
+        // the transfers before the failed one only
+        assertEquals(Collections.singletonList("good"), applied);
+    }
+
+    private static InscriptionContent content(String inscriptionId, String body) {
+        InscriptionContent content = new InscriptionContent();
+        content.setInscriptionId(inscriptionId);
+        content.setContentType("text/plain");
+        content.setContentBody(body);
+        return content;
+    }
+
+    private static InscriptionTransfer transfer(int txIndex, String inscriptionId) {
+        InscriptionTransfer transfer = new InscriptionTransfer();
+        transfer.setInscriptionId(inscriptionId);
+        transfer.setBlockHeight(788800);
+        transfer.setTxIndex(txIndex);
+        return transfer;
+    }
+}
@@ -0,0 +1,93 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * the aggregates read by the send validation against a scan of the balance table, after each block
+ */
+class BalanceAggregateTest {
+
+    @Test
+    void aggregatesEqualScan() {
+        TestInscriptions inscriptions = TestInscriptions.generate(6, 600);
+        MemoryCache storage = new MemoryCache();
+        Orc20 orc20 = new Orc20(storage);
+        Set<Long> blockHeights = new TreeSet<>();
+        for (InscriptionTransfer transfer : inscriptions.getTransfers()) {
+            blockHeights.add(transfer.getBlockHeight());
+        }
+        int pendingAggregates = 0;
+        Set<IndexKey> pending = new HashSet<>();
+        int settled = 0;
+        for (long blockHeight : blockHeights) {
+            inscriptions.apply(orc20, blockHeight);
+            pendingAggregates += check(storage);
+            for (IndexKey key : new HashSet<>(pending)) {
+                if (storage.selectOrc20BalanceAggregateByTickIdAndAddress((String) key.get(0), (String) key.get(1)).getPendingBalance().count() == 0) {
+                    pending.remove(key);
+                    settled++;
+                }
+            }
+            for (Orc20Balance balance : storage.dumpOrc20Balance().values()) {
+                if (BalanceStatus.SEND_PENDING.equals(balance.getBalanceStatus())) {
+                    pending.add(IndexKey.of(balance.getTickId(), balance.getCreator()));
+                }
+            }
+        }
+        assertTrue(pendingAggregates > 0, "pending sends were aggregated");
+        assertTrue(settled > 0, "pending sends were subtracted from their aggregates");
+    }
+
+    /**
+     * @return number of aggregates with pending sends
+     */
+    private static int check(MemoryCache storage) {
+        // the sums as the send validation used to add them up, from BigDecimal.ZERO
+        Map<IndexKey, BigDecimal> okBalances = new HashMap<>();
+        Map<IndexKey, BigDecimal> pendingBalances = new HashMap<>();
+        Map<IndexKey, Integer> pendingCounts = new HashMap<>();
+        Map<IndexKey, Map<Long, Integer>> pendingNonces = new HashMap<>();
+        Set<IndexKey> keys = new HashSet<>();
+        for (Orc20Balance balance : storage.dumpOrc20Balance().values()) {
+            keys.add(IndexKey.of(balance.getTickId(), balance.getAddress()));
+            if (BalanceStatus.OK.equals(balance.getBalanceStatus())) {
+                okBalances.merge(IndexKey.of(balance.getTickId(), balance.getAddress()), balance.getBalance().toBigDecimal(), BigDecimal::add);
+            } else if (BalanceStatus.SEND_PENDING.equals(balance.getBalanceStatus())) {
+                IndexKey key = IndexKey.of(balance.getTickId(), balance.getCreator());
+                keys.add(key);
+                pendingBalances.merge(key, balance.getBalance().toBigDecimal(), BigDecimal::add);
+                pendingCounts.merge(key, 1, Integer::sum);
+                pendingNonces.computeIfAbsent(key, k -> new HashMap<>()).merge(balance.getNonce(), 1, Integer::sum);
+            }
+        }
+        int pending = 0;
+        for (IndexKey key : keys) {
+            Orc20BalanceAggregate aggregate = storage.selectOrc20BalanceAggregateByTickIdAndAddress((String) key.get(0), (String) key.get(1));
+            // equals compares the scales too, the dumped balance strings depend on them
+            assertEquals(BigDecimal.ZERO.add(okBalances.getOrDefault(key, BigDecimal.ZERO)), aggregate.getOkBalance().value().toBigDecimal(), "ok balance of " + key);
+            assertEquals(BigDecimal.ZERO.add(pendingBalances.getOrDefault(key, BigDecimal.ZERO)), aggregate.getPendingBalance().value().toBigDecimal(), "pending balance of " + key);
+            assertEquals(pendingCounts.getOrDefault(key, 0), aggregate.getPendingBalance().count(), "pending count of " + key);
+            assertEquals(pendingNonces.getOrDefault(key, new HashMap<>()), aggregate.getPendingNonces(), "pending nonces of " + key);
+            if (aggregate.getPendingBalance().count() > 0) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,148 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceHistoryTest {
+    private final static TestInscriptions INSCRIPTIONS = TestInscriptions.generate(12, 1500);
+    private final static String ALICE = "bc1qalice";
+    private final static String BOB = "bc1qbob";
+
+    @Test
+    void balanceAtHeight() {
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe(ALICE, "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.toBlock(788802);
+        String mint = inscriptions.inscribe(ALICE, "mint", "ordi", "1", "amt", "1000");
+        inscriptions.inscribe(BOB, "mint", "ordi", "1", "amt", "400");
+        inscriptions.toBlock(788804);
+        inscriptions.transfer(mint, BOB);
+        inscriptions.toBlock(788806);
+        inscriptions.inscribe(BOB, "mint", "ordi", "1", "amt", "100.5");
+        MemoryCache storage = new MemoryCache();
+        storage.setBalanceHistory(true);
+        inscriptions.apply(new Orc20(storage), Long.MAX_VALUE);
+        String tickId = storage.dumpOrc20Metadata().keySet().iterator().next();
+
+        assertAmount("0", storage.balanceOf(tickId, ALICE, 788801));
+        assertAmount("1000", storage.balanceOf(tickId, ALICE, 788802));
+        assertAmount("1000", storage.balanceOf(tickId, ALICE, 788803)); // no transfer in the block, the version of 788802
+        assertAmount("0", storage.balanceOf(tickId, ALICE, 788804));
+        assertAmount("400", storage.balanceOf(tickId, BOB, 788803));
+        assertAmount("1400", storage.balanceOf(tickId, BOB, 788804));
+        assertAmount("1500.5", storage.balanceOf(tickId, BOB, 788806));
+        assertEquals(new TreeSet<>(Arrays.asList(ALICE, BOB)), storage.holdersOf(tickId, 788803).keySet());
+        Map<String, Amount> holders = storage.holdersOf(tickId, 788804);
+        assertEquals(Collections.singleton(BOB), holders.keySet());
+        assertAmount("1400", holders.get(BOB));
+    }
+
+    @Test
+    void balancesAtHeightEqualReplay() {
+        MemoryCache storage = new MemoryCache();
+        storage.setBalanceHistory(true);
+        INSCRIPTIONS.apply(new Orc20(storage), Long.MAX_VALUE);
+        long last = INSCRIPTIONS.getLastBlockHeight();
+        long[] heights = {788830, 788850, 799995, 800010, (800010 + last) / 2, last};
+        Set<String> versioned = new TreeSet<>(); // (tickId, address) with different balances at two of the heights
+        for (String tickId : storage.dumpOrc20Metadata().keySet()) {
+            for (String address : storage.holdersOf(tickId, last).keySet()) {
+                Set<Amount> balances = new TreeSet<>();
+                for (long height : heights) {
+                    balances.add(storage.balanceOf(tickId, address, height));
+                }
+                if (balances.size() > 1) {
+                    versioned.add(tickId + " " + address);
+                }
+            }
+        }
+        assertTrue(versioned.size() > 1, "balances changed between the heights");
+        for (long height : heights) {
+            MemoryCache replay = new MemoryCache();
+            INSCRIPTIONS.apply(new Orc20(replay), height);
+            Map<String, Map<String, BigDecimal>> expected = holders(replay);
+            for (String tickId : storage.dumpOrc20Metadata().keySet()) {
+                Map<String, BigDecimal> holders = new TreeMap<>();
+                storage.holdersOf(tickId, height).forEach((address, balance) -> holders.put(address, balance.toBigDecimal().stripTrailingZeros()));
+                assertEquals(expected.getOrDefault(tickId, new TreeMap<>()), holders, tickId + " at " + height);
+                for (String address : holders.keySet()) {
+                    assertEquals(holders.get(address), storage.balanceOf(tickId, address, height).toBigDecimal().stripTrailingZeros());
+                }
+            }
+        }
+        assertEquals(0, storage.balanceOf("unknown", "bc1qunknown", last).signum());
+    }
+
+    @Test
+    void diskVersionsEqualMemory(@TempDir Path dir) {
+        MemoryCache storage = new MemoryCache();
+        storage.setBalanceHistory(true);
+        INSCRIPTIONS.apply(new Orc20(storage), Long.MAX_VALUE);
+        long last = INSCRIPTIONS.getLastBlockHeight();
+        try (DiskStorage disk = new DiskStorage(dir, 10)) {
+            disk.setBalanceHistory(true);
+            disk.setUndoDepth(10);
+            Orc20 orc20 = new Orc20(disk);
+            INSCRIPTIONS.apply(orc20, Long.MAX_VALUE);
+            orc20.rollbackTo(last - 5); // the versions of the rolled back blocks are removed one by one
+            INSCRIPTIONS.apply(orc20, Long.MAX_VALUE);
+        }
+        try (DiskStorage disk = new DiskStorage(dir)) {
+            disk.setBalanceHistory(true);
+            for (long height : new long[]{788850, 800010, last - 3, last}) {
+                for (String tickId : storage.dumpOrc20Metadata().keySet()) {
+                    assertEquals(storage.holdersOf(tickId, height), disk.holdersOf(tickId, height), tickId + " at " + height);
+                }
+            }
+        }
+    }
+
+    @Test
+    void notRecordedByDefault() {
+        MemoryCache storage = new MemoryCache();
+        INSCRIPTIONS.apply(new Orc20(storage), Long.MAX_VALUE);
+        assertThrows(IllegalStateException.class, () -> storage.holdersOf("unknown", 0));
+        assertThrows(IllegalStateException.class, () -> storage.balanceOf("unknown", "bc1qunknown", 0));
+    }
+
+    private static void assertAmount(String expected, Amount actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual.toBigDecimal()), expected + " != " + actual);
+    }
+
+    /**
+     * positive sums of the "OK" balances by tickId and address
+     */
+    private static Map<String, Map<String, BigDecimal>> holders(Storage storage) {
+        Map<String, Map<String, Amount>> sums = new TreeMap<>();
+        for (Orc20Balance balance : storage.dumpOrc20Balance().values()) {
+            if (BalanceStatus.OK.equals(balance.getBalanceStatus())) {
+                sums.computeIfAbsent(balance.getTickId(), k -> new TreeMap<>()).merge(balance.getAddress(), balance.getBalance(), Amount::add);
+            }
+        }
+        Map<String, Map<String, BigDecimal>> holders = new TreeMap<>();
+        sums.forEach((tickId, balances) -> balances.forEach((address, sum) -> {
+            if (sum.signum() > 0) {
+                holders.computeIfAbsent(tickId, k -> new TreeMap<>()).put(address, sum.toBigDecimal().stripTrailingZeros());
+            }
+        }));
+        return holders;
+    }
+}
@@ -0,0 +1,108 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20BalanceSummary;
+import com.geniidata.ordinals.orc20.indexer.utils.DecimalSum;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * the summaries maintained by the storage against the ones recomputed from the balance table,
+ * after each block and after rollbacks
+ */
+class BalanceSummaryTest {
+    private final static TestInscriptions INSCRIPTIONS = TestInscriptions.generate(16, 1500);
+
+    @Test
+    void summariesEqualRecomputed() {
+        List<Long> blockHeights = new ArrayList<>(new TreeSet<Long>() {{
+            for (InscriptionTransfer transfer : INSCRIPTIONS.getTransfers()) {
+                add(transfer.getBlockHeight());
+            }
+        }});
+        for (MemoryCache storage : new MemoryCache[]{new MemoryCache(), new MemoryCache(new HashMap<>(), new SymbolTable(), true)}) {
+            storage.setUndoDepth(10);
+            Orc20 orc20 = new Orc20(storage);
+            int rollbacks = 0;
+            int restored = 0;
+            for (int i = 0; i < blockHeights.size(); i++) {
+                INSCRIPTIONS.apply(orc20, blockHeights.get(i));
+                check(storage);
+                if (i % 40 == 39) {
+                    Map<IndexKey, String> applied = summaries(storage);
+                    // the next apply replays the rolled back blocks
+                    orc20.rollbackTo(blockHeights.get(i - 5));
+                    check(storage);
+                    rollbacks++;
+                    if (!applied.equals(summaries(storage))) {
+                        restored++;
+                    }
+                }
+            }
+            assertTrue(rollbacks > 0);
+            assertTrue(restored > 0, "summaries were restored by the rollbacks");
+
+            // transfers, cancels and deposits to the ATM were summarized
+            assertTrue(storage.dumpOrc20Balance().values().stream().anyMatch(b -> BalanceStatus.CANCELED.equals(b.getBalanceStatus())));
+            assertTrue(storage.dumpOrc20BalanceSummary().values().stream().anyMatch(s -> s.getCreditBalance().count() > 0));
+        }
+    }
+
+    private static Map<IndexKey, String> summaries(MemoryCache storage) {
+        Map<IndexKey, String> summaries = new HashMap<>();
+        storage.dumpOrc20BalanceSummary().forEach((key, summary) -> summaries.put(key, summary.getCashBalance() + " " + summary.getCreditBalance()));
+        return summaries;
+    }
+
+    private static void check(MemoryCache storage) {
+        Map<IndexKey, List<BigDecimal>> cash = new HashMap<>();
+        Map<IndexKey, List<BigDecimal>> credit = new HashMap<>();
+        for (Orc20Balance balance : storage.dumpOrc20Balance().values()) {
+            if (BalanceStatus.OK.equals(balance.getBalanceStatus())) {
+                Map<IndexKey, List<BigDecimal>> sums = OP._VIRTUAL_CREDIT_.equals(balance.getOp()) ? credit : cash;
+                sums.computeIfAbsent(IndexKey.of(balance.getTickId(), balance.getAddress()), k -> new ArrayList<>()).add(balance.getBalance().toBigDecimal());
+            }
+        }
+        Map<IndexKey, Orc20BalanceSummary> summaries = storage.dumpOrc20BalanceSummary();
+        TreeSet<String> keys = new TreeSet<>();
+        cash.keySet().forEach(key -> keys.add(key.toString()));
+        credit.keySet().forEach(key -> keys.add(key.toString()));
+        TreeSet<String> summaryKeys = new TreeSet<>();
+        summaries.keySet().forEach(key -> summaryKeys.add(key.toString()));
+        assertEquals(keys, summaryKeys, "summarized (tickId, address)");
+        for (Map.Entry<IndexKey, Orc20BalanceSummary> e : summaries.entrySet()) {
+            assertSum(cash.get(e.getKey()), e.getValue().getCashBalance(), "cash of " + e.getKey());
+            assertSum(credit.get(e.getKey()), e.getValue().getCreditBalance(), "credit of " + e.getKey());
+        }
+    }
+
+    /**
+     * the count, and the total as the dump prints it: the terms added up from the first one
+     */
+    private static void assertSum(List<BigDecimal> terms, DecimalSum sum, String message) {
+        if (terms == null) {
+            assertEquals(0, sum.count(), message);
+            return;
+        }
+        assertEquals(terms.size(), sum.count(), message);
+        BigDecimal total = terms.get(0);
+        for (BigDecimal term : terms.subList(1, terms.size())) {
+            total = total.add(term);
+        }
+        assertEquals(0, total.compareTo(sum.total().toBigDecimal()), message);
+    }
+}
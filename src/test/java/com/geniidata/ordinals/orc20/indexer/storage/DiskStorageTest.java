@@ -0,0 +1,40 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DiskStorageTest {
+
+    @Test
+    void rejectsAnotherLayout(@TempDir Path dir) throws IOException {
+        try (DiskStorage storage = new DiskStorage(dir, 1)) {
+            storage.commit(788801);
+        }
+        try (DiskStorage storage = new DiskStorage(dir)) {
+            assertEquals(788801, storage.committedBlockHeight());
+        }
+
+        // a store written before the layout was recorded
+        Path manifestPath = dir.resolve("MANIFEST");
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            manifest.load(in);
+        }
+        manifest.remove("layout");
+        try (OutputStream out = Files.newOutputStream(manifestPath)) {
+            manifest.store(out, null);
+        }
+        assertThrows(IllegalStateException.class, () -> new DiskStorage(dir));
+        assertThrows(IllegalStateException.class, () -> new DiskStorage(dir), "the lock is released");
+    }
+}
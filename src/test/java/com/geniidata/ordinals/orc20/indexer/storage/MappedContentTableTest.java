@@ -0,0 +1,113 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionContent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedContentTableTest {
+    private final static int KEYS = 400;
+
+    @Test
+    void sameAsHashMap(@TempDir Path dir) {
+        Random random = new Random(8);
+        Map<String, InscriptionContent> expected = new HashMap<>();
+        // most reads miss the hot cache and decode the record from the file
+        try (MappedContentTable table = new MappedContentTable(dir.resolve("contents.dat"), 16)) {
+            for (int i = 0; i < 20000; i++) {
+                String key = "i" + random.nextInt(KEYS);
+                double r = random.nextDouble();
+                if (r < 0.3) {
+                    InscriptionContent content = content(key, i, random.nextInt(3) == 0 ? null : "body " + random.nextInt(1000));
+                    table.put(key, content);
+                    expected.put(key, copy(content));
+                } else if (r < 0.4) {
+                    // the same length, overwritten in place
+                    InscriptionContent content = expected.get(key);
+                    if (content != null) {
+                        content = copy(content);
+                        content.setGenesisBlockHeight(content.getGenesisBlockHeight() + 1);
+                        table.put(key, content);
+                        expected.put(key, copy(content));
+                    }
+                } else if (r < 0.5) {
+                    table.remove(key);
+                    expected.remove(key);
+                } else {
+                    assertEquals(expected.get(key), table.get(key), key);
+                    assertEquals(expected.containsKey(key), table.containsKey(key), key);
+                }
+                assertEquals(expected.size(), table.size());
+            }
+            assertEquals(expected, new HashMap<>(table));
+            table.clear();
+            assertEquals(0, table.size());
+            assertNull(table.get("i1"));
+        }
+    }
+
+    @Test
+    void hotCache(@TempDir Path dir) {
+        try (MappedContentTable table = new MappedContentTable(dir.resolve("contents.dat"), 2)) {
+            for (String key : new String[]{"a", "b", "c"}) {
+                table.put(key, content(key, 1, "body " + key));
+            }
+            InscriptionContent a = table.get("a");
+            assertSame(a, table.get("a"), "kept decoded");
+            table.get("b");
+            table.get("c"); // a is evicted
+            InscriptionContent decoded = table.get("a");
+            assertNotSame(a, decoded);
+            assertEquals(a, decoded);
+
+            // a put of a cached key replaces the cached content
+            InscriptionContent changed = content("a", 2, "a longer body, appended");
+            table.put("a", changed);
+            assertSame(changed, table.get("a"));
+            table.get("b");
+            table.get("c");
+            assertEquals(changed, table.get("a"));
+        }
+    }
+
+    @Test
+    void withoutHotCache(@TempDir Path dir) {
+        Path file = dir.resolve("contents.dat");
+        try (MappedContentTable table = new MappedContentTable(file, 0)) {
+            table.put("a", content("a", 1, "body"));
+            InscriptionContent a = table.get("a");
+            assertNotSame(a, table.get("a"));
+            assertEquals(a, table.get("a"));
+            table.remove("a");
+            assertFalse(table.containsKey("a"));
+            assertTrue(Files.exists(file));
+        }
+        assertFalse(Files.exists(file), "scratch file deleted on close");
+    }
+
+    private static InscriptionContent content(String inscriptionId, long genesisBlockHeight, String body) {
+        InscriptionContent content = new InscriptionContent();
+        content.setInscriptionId(inscriptionId);
+        content.setInscriptionNumber(inscriptionId.hashCode());
+        content.setContentType("text/plain");
+        content.setContentBody(body);
+        content.setGenesisBlockHeight(genesisBlockHeight);
+        return content;
+    }
+
+    private static InscriptionContent copy(InscriptionContent content) {
+        return content(content.getInscriptionId(), content.getGenesisBlockHeight(), content.getContentBody());
+    }
+}
@@ -0,0 +1,141 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.OP;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapBalanceTableTest {
+    private final static int KEYS = 3000; // above the initial rows, the columns and the index grow
+
+    @Test
+    void sameAsHashMap() {
+        Random random = new Random(23);
+        OffHeapBalanceTable table = new OffHeapBalanceTable(new SymbolTable());
+        Map<IndexKey, Orc20Balance> expected = new HashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            IndexKey key = key(random);
+            double r = random.nextDouble();
+            if (r < 0.5) {
+                // insert or update
+                Orc20Balance balance = balance(random, key);
+                table.put(key, balance);
+                expected.put(key, balance);
+            } else if (r < 0.65) {
+                // update through the view
+                Orc20Balance view = table.get(key);
+                Orc20Balance balance = expected.get(key);
+                assertEquals(String.valueOf(balance), String.valueOf(view));
+                if (view != null) {
+                    Amount amount = amount(random);
+                    view.setBalance(amount);
+                    balance.setBalance(amount);
+                    view.setBalanceStatus(BalanceStatus.CANCELED);
+                    balance.setBalanceStatus(BalanceStatus.CANCELED);
+                    view.setNonce(i);
+                    balance.setNonce(i);
+                }
+            } else if (r < 0.95) {
+                Orc20Balance removed = table.remove(key);
+                assertEquals(String.valueOf(expected.remove(key)), String.valueOf(removed));
+                assertFalse(table.containsKey(key));
+            } else {
+                assertEquals(expected.containsKey(key), table.containsKey(key));
+            }
+            assertEquals(expected.size(), table.size());
+            if (i % 5000 == 0) {
+                assertEquals(strings(expected), strings(table));
+            }
+        }
+        assertEquals(strings(expected), strings(table));
+        assertNull(table.get(IndexKey.of("unknown", "i0", "bc1q")));
+        assertNull(table.get(IndexKey.of("t0", "i0")));
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertFalse(table.entrySet().iterator().hasNext());
+        IndexKey key = IndexKey.of("t0", "i0", "a0");
+        table.put(key, balance(random, key));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void viewsOfRows() {
+        OffHeapBalanceTable table = new OffHeapBalanceTable(new SymbolTable());
+        Random random = new Random(7);
+        IndexKey key = IndexKey.of("t0", "i0", "a0");
+        IndexKey other = IndexKey.of("t0", "i1", "a0");
+        table.put(key, balance(random, key));
+        table.put(other, balance(random, other));
+        assertTrue(OffHeapBalanceTable.sameRow(table.get(key), table.get(key)));
+        assertFalse(OffHeapBalanceTable.sameRow(table.get(key), table.get(other)));
+
+        // putting a view of another row copies it, the key fields stay
+        table.put(key, table.get(other));
+        Orc20Balance copied = new Orc20Balance(table.get(other));
+        copied.setInscriptionId("i0");
+        assertEquals(copied.toString(), table.get(key).toString());
+
+        // the removed row is reused
+        Orc20Balance view = table.get(other);
+        table.remove(other);
+        IndexKey reused = IndexKey.of("t1", "i2", "a1");
+        table.put(reused, balance(random, reused));
+        assertTrue(OffHeapBalanceTable.sameRow(view, table.get(reused)));
+    }
+
+    private static IndexKey key(Random random) {
+        int i = random.nextInt(KEYS);
+        return IndexKey.of("t" + i % 7, "i" + i, "a" + i % 101);
+    }
+
+    private static Orc20Balance balance(Random random, IndexKey key) {
+        Orc20Balance balance = new Orc20Balance();
+        balance.setTickId((String) key.get(0));
+        balance.setInscriptionId((String) key.get(1));
+        balance.setAddress((String) key.get(2));
+        balance.setTick("tick" + key.get(0));
+        balance.setCreator(random.nextBoolean() ? null : "c" + random.nextInt(50));
+        balance.setBalance(random.nextInt(10) == 0 ? null : amount(random));
+        balance.setNonce(random.nextInt(100));
+        balance.setBalanceStatus(random.nextInt(10) == 0 ? null : BalanceStatus.values()[random.nextInt(BalanceStatus.values().length)]);
+        balance.setOp(random.nextInt(10) == 0 ? null : OP.values()[random.nextInt(OP.values().length)]);
+        return balance;
+    }
+
+    /**
+     * mostly fits in a long, some do not and are kept on heap
+     */
+    private static Amount amount(Random random) {
+        if (random.nextInt(5) == 0) {
+            return Amount.valueOf(BigInteger.valueOf(random.nextLong()).shiftLeft(20), random.nextInt(18));
+        }
+        return Amount.valueOf(random.nextInt(1 << 30), random.nextInt(18));
+    }
+
+    private static Map<String, String> strings(Map<IndexKey, Orc20Balance> balances) {
+        Map<String, String> strings = new TreeMap<>();
+        List<IndexKey> keys = new ArrayList<>(balances.keySet());
+        for (IndexKey key : keys) {
+            strings.put(key.toString(), balances.get(key).toString());
+        }
+        for (Map.Entry<IndexKey, Orc20Balance> entry : balances.entrySet()) {
+            assertEquals(strings.get(entry.getKey().toString()), entry.getValue().toString());
+        }
+        return strings;
+    }
+}
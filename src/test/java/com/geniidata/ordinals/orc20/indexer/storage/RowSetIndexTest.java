@@ -0,0 +1,73 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowSetIndexTest {
+
+    @Test
+    void sameAsSets() {
+        Random random = new Random(5);
+        SetIndex<String, String> index = new RowSetIndex<>(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        Map<String, Set<String>> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + random.nextInt(20);
+            String member = "m" + random.nextInt(30);
+            if (random.nextBoolean()) {
+                assertEquals(expected.computeIfAbsent(key, k -> new HashSet<>()).add(member), index.add(key, member));
+            } else {
+                Set<String> members = expected.get(key);
+                assertEquals(members != null && members.remove(member), index.remove(key, member));
+                if (members != null && members.isEmpty()) {
+                    expected.remove(key);
+                }
+            }
+            if (i % 100 == 0) {
+                assertEquals(expected.keySet(), index.keySet());
+                for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+                    assertEquals(e.getValue(), new HashSet<>(index.get(e.getKey())));
+                    assertEquals(e.getValue().size(), index.get(e.getKey()).size());
+                }
+            }
+        }
+    }
+
+    @Test
+    void writesTheRowsOfTheChangedMembers(@TempDir Path dir) throws IOException {
+        // one key gaining a member per flush: the segments grow with the members, not with their square
+        SegmentTable<Map.Entry<String, String>, Integer> slots = open(dir, "holders", Codecs.pairCodec(Codecs.STRING_CODEC, Codecs.STRING_CODEC), Codecs.INT_CODEC);
+        SegmentTable<Map.Entry<String, Integer>, String> members = open(dir, "holders_slot", Codecs.pairCodec(Codecs.STRING_CODEC, Codecs.INT_CODEC), Codecs.STRING_CODEC);
+        SegmentTable<String, Integer> sizes = open(dir, "holders_size", Codecs.STRING_CODEC, Codecs.INT_CODEC);
+        SetIndex<String, String> index = new RowSetIndex<>(slots, members, sizes);
+        int flushes = 2000;
+        for (int i = 0; i < flushes; i++) {
+            index.add("ordi", "bc1q" + i);
+            slots.flush();
+            members.flush();
+            sizes.flush();
+        }
+        assertEquals(flushes, index.get("ordi").size());
+        assertTrue(index.remove("ordi", "bc1q0"));
+        assertEquals("bc1q" + (flushes - 1), index.get("ordi").iterator().next(), "the last member takes the removed slot");
+        long written = slots.activeLength() + members.activeLength() + sizes.activeLength();
+        assertTrue(written < flushes * 100L, written + " bytes");
+        slots.close();
+        members.close();
+        sizes.close();
+    }
+
+    private static <K, V> SegmentTable<K, V> open(Path dir, String name, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        return new SegmentTable<>(dir, name, keyCodec, valueCodec, 0, 0, 0, 0, 0);
+    }
+}
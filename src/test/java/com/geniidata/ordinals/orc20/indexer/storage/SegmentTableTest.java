@@ -0,0 +1,274 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTableTest {
+    private final static String NAME = "table";
+    private final static int KEYS = 500;
+    private final static long SEGMENT_SIZE = 16 << 10; // a few records per segment, the writes roll over to new segments
+
+    @Test
+    void sameAsHashMap(@TempDir Path dir) throws IOException {
+        Random random = new Random(3);
+        Map<String, Set<String>> expected = new HashMap<>();
+        Map<String, Set<String>> synced = new HashMap<>(); // the state of the last sync
+        long commitSeq = 0;
+        int syncedSegment = 0;
+        long syncedLength = 0;
+        SegmentTable<String, Set<String>> table = open(dir, syncedSegment, syncedLength, commitSeq);
+        for (int i = 1; i <= 20000; i++) {
+            String key = "key" + random.nextInt(KEYS);
+            double r = random.nextDouble();
+            if (r < 0.4) {
+                table.put(key, set("v" + i));
+                expected.put(key, set("v" + i));
+            } else if (r < 0.6) {
+                // changed in place and put back
+                Set<String> value = table.get(key);
+                assertEquals(expected.get(key), value);
+                if (value != null) {
+                    value.add("w" + i);
+                    table.put(key, value);
+                    expected.get(key).add("w" + i);
+                }
+            } else if (r < 0.75) {
+                assertEquals(expected.remove(key), table.remove(key));
+                assertFalse(table.containsKey(key));
+            } else if (r < 0.85) {
+                // the removal is replaced by the put at the next flush
+                table.remove(key);
+                table.put(key, set("r" + i));
+                expected.put(key, set("r" + i));
+            } else {
+                assertEquals(expected.containsKey(key), table.containsKey(key));
+            }
+            assertEquals(expected.size(), table.size());
+
+            if (i % 37 == 0) {
+                table.flush();
+            }
+            if (i % 500 == 0) {
+                table.flush();
+                table.sync(++commitSeq);
+                synced = copy(expected);
+                syncedSegment = table.activeSegment();
+                syncedLength = table.activeLength();
+                assertContents(expected, table);
+            }
+            if (i % 1300 == 0) {
+                // reopened after the unsynced flushes: the tail of the active segment and the later segments are discarded
+                table.flush();
+                table.close();
+                table = open(dir, syncedSegment, syncedLength, commitSeq);
+                expected = copy(synced);
+                assertContents(expected, table);
+                assertEquals(syncedSegment + 1, segmentFiles(dir));
+            }
+            if (i % 7000 == 0) {
+                table.clear();
+                expected.clear();
+                assertContents(expected, table);
+            }
+        }
+        assertTrue(syncedSegment > 0, "rolled over to new segments");
+        table.flush();
+        table.sync(++commitSeq);
+        table.close();
+        table = open(dir, table.activeSegment(), table.activeLength(), commitSeq);
+        assertContents(expected, table);
+        table.close();
+    }
+
+    @Test
+    void reopenAfterSync(@TempDir Path dir) throws IOException {
+        SegmentTable<String, Set<String>> table = open(dir, 0, 0, 0);
+        table.put("a", set("1"));
+        table.put("b", set("2"));
+        table.flush();
+        Set<String> a = table.get("a");
+        a.add("3"); // changed in place and put back
+        table.put("a", a);
+        table.remove("b");
+        table.put("c", set("4"));
+        table.flush();
+        table.sync(1);
+        table.close();
+
+        table = open(dir, table.activeSegment(), table.activeLength(), 1);
+        assertContents(map("a", set("1", "3"), "c", set("4")), table);
+        table.close();
+    }
+
+    @Test
+    void reopenAfterUnsyncedCommit(@TempDir Path dir) throws IOException {
+        SegmentTable<String, Set<String>> table = open(dir, 0, 0, 0);
+        table.put("a", set("1"));
+        table.flush();
+        table.sync(1);
+        int segment = table.activeSegment();
+        long length = table.activeLength();
+        table.put("a", set("2"));
+        table.put("b", set("3"));
+        table.flush(); // written to the segment, not synced
+        assertTrue(table.activeLength() > length);
+        table.close();
+
+        table = open(dir, segment, length, 1);
+        assertEquals(length, Files.size(dir.resolve(NAME + ".00000.seg")), "tail truncated");
+        assertContents(map("a", set("1")), table);
+        table.close();
+    }
+
+    @Test
+    void removeThenPutBeforeFlush(@TempDir Path dir) throws IOException {
+        SegmentTable<String, Set<String>> table = open(dir, 0, 0, 0);
+        table.put("a", set("1"));
+        table.flush();
+        assertEquals(set("1"), table.remove("a"));
+        assertNull(table.get("a"));
+        table.put("a", set("2"));
+        assertEquals(1, table.size());
+        table.flush();
+        assertContents(map("a", set("2")), table);
+        table.sync(1);
+        table.close();
+
+        table = open(dir, table.activeSegment(), table.activeLength(), 1);
+        assertContents(map("a", set("2")), table);
+        table.close();
+    }
+
+    @Test
+    void clear(@TempDir Path dir) throws IOException {
+        SegmentTable<String, Set<String>> table = open(dir, 0, 0, 0);
+        table.put("a", set("1"));
+        table.put("b", set("2"));
+        table.flush();
+        table.put("c", set("3")); // not flushed
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get("a"));
+        table.put("b", set("4"));
+        table.flush();
+        table.sync(1);
+        table.close();
+
+        table = open(dir, table.activeSegment(), table.activeLength(), 1);
+        assertContents(map("b", set("4")), table);
+        table.close();
+    }
+
+    @Test
+    void compaction(@TempDir Path dir) throws IOException {
+        SegmentTable<String, Set<String>> table = open(dir, 0, 0, 0);
+        Map<String, Set<String>> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + i % 50;
+            if (i % 7 == 0) {
+                table.remove(key);
+                expected.remove(key);
+            } else {
+                table.put(key, set("v" + i));
+                expected.put(key, set("v" + i));
+            }
+            if (i % 100 == 99) {
+                table.flush();
+            }
+        }
+        table.flush();
+        table.sync(1);
+        int base = table.baseSegment();
+        int active = table.activeSegment();
+        long length = table.activeLength();
+        long records = table.records();
+        assertTrue(table.needsCompaction());
+
+        table.compact();
+        assertFalse(table.needsCompaction());
+        assertEquals(active + 1, table.baseSegment());
+        assertEquals(expected.size(), table.records(), "live records only");
+        assertContents(expected, table);
+        table.put("key0", set("after"));
+        table.flush();
+        table.sync(2);
+        table.close();
+
+        // the compacted base is not committed: the previous segments are still the committed state
+        table = new SegmentTable<>(dir, NAME, Codecs.STRING_CODEC, Codecs.STRING_SET_CODEC, base, active, length, records, 1, SEGMENT_SIZE);
+        assertContents(expected, table);
+        assertEquals(active - base + 1, segmentFiles(dir));
+        table.compact();
+        expected.put("key0", set("after"));
+        table.put("key0", set("after"));
+        table.flush();
+        table.sync(3);
+        table.deleteObsoleteSegments();
+        assertEquals(table.activeSegment() - table.baseSegment() + 1, segmentFiles(dir), "the compacted segments are deleted");
+        table.close();
+
+        table = new SegmentTable<>(dir, NAME, Codecs.STRING_CODEC, Codecs.STRING_SET_CODEC, table.baseSegment(), table.activeSegment(), table.activeLength(), table.records(), 3, SEGMENT_SIZE);
+        assertContents(expected, table);
+        table.close();
+    }
+
+    private static SegmentTable<String, Set<String>> open(Path dir, int activeSegment, long activeLength, long commitSeq) throws IOException {
+        return new SegmentTable<>(dir, NAME, Codecs.STRING_CODEC, Codecs.STRING_SET_CODEC, 0, activeSegment, activeLength, 0, commitSeq, SEGMENT_SIZE);
+    }
+
+    /**
+     * compares the iterated entries and the lookups
+     */
+    private static void assertContents(Map<String, Set<String>> expected, SegmentTable<String, Set<String>> table) {
+        assertEquals(new TreeMap<>(expected), new TreeMap<>(table));
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<String, Set<String>> e : expected.entrySet()) {
+            assertEquals(e.getValue(), table.get(e.getKey()));
+        }
+    }
+
+    private static long segmentFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static Map<String, Set<String>> map(String key, Set<String> value) {
+        Map<String, Set<String>> map = new HashMap<>();
+        map.put(key, value);
+        return map;
+    }
+
+    private static Map<String, Set<String>> map(String key1, Set<String> value1, String key2, Set<String> value2) {
+        Map<String, Set<String>> map = map(key1, value1);
+        map.put(key2, value2);
+        return map;
+    }
+
+    private static Map<String, Set<String>> copy(Map<String, Set<String>> map) {
+        Map<String, Set<String>> copy = new HashMap<>();
+        map.forEach((key, value) -> copy.put(key, new HashSet<>(value)));
+        return copy;
+    }
+}
@@ -0,0 +1,175 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.BalanceStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
+import com.geniidata.ordinals.orc20.indexer.model.InscriptionTransfer;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * the indexes of the non-terminal events and balances against a scan of the tables
+ */
+class StatusIndexTest {
+    private final static TestInscriptions INSCRIPTIONS = TestInscriptions.generate(24, 600);
+    // the blocks of the transfers at a quarter, half and three quarters of the input, and the last block
+    private final static long[] CHECK_HEIGHTS = {blockHeightAt(0.25), blockHeightAt(0.5), blockHeightAt(0.75), INSCRIPTIONS.getLastBlockHeight()};
+
+    @Test
+    void cancelOfPendingSend() {
+        String alice = "bc1qalice";
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe(alice, "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.toBlock(788802);
+        inscriptions.inscribe(alice, "mint", "ordi", "1", "amt", "1000");
+        inscriptions.toBlock(788803);
+        String send1 = inscriptions.inscribe(alice, "send", "ordi", "1", "n", "1", "amt", "100");
+        String send2 = inscriptions.inscribe(alice, "send", "ordi", "1", "n", "2", "amt", "200");
+        inscriptions.transfer(send1, "bc1qbob"); // still pending, created by alice
+        inscriptions.toBlock(788804);
+        inscriptions.inscribe(alice, "cancel", "ordi", "1", "n", "[\"1\"]");
+        inscriptions.toBlock(788805);
+        String remaining = inscriptions.inscribe(alice, "send", "ordi", "1", "n", "3");
+        MemoryCache storage = new MemoryCache();
+        Orc20 orc20 = new Orc20(storage);
+
+        inscriptions.apply(orc20, 788803);
+        String tickId = storage.dumpOrc20Metadata().keySet().iterator().next();
+        assertEquals(Arrays.asList(send1, send2), inscriptionIds(storage.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, alice)));
+        assertEquals(3, storage.selectPendingOrc20EventListByTickIdAndCreator(tickId, alice).size()); // the inscribe sends and the transfer
+
+        inscriptions.apply(orc20, 788804);
+        assertEquals(Collections.singletonList(send2), inscriptionIds(storage.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, alice)));
+        assertEquals(Collections.singletonList(send2), inscriptionIds(storage.selectPendingOrc20EventListByTickIdAndCreator(tickId, alice)));
+        assertEquals(BalanceStatus.CANCELED, storage.selectOrc20BalanceByInscriptionId(send1).getBalanceStatus());
+        assertEquals(Collections.singletonMap(2L, 1), storage.selectOrc20BalanceAggregateByTickIdAndAddress(tickId, alice).getPendingNonces());
+        check(storage);
+
+        // the "remaining balance" completes the send left pending: 1000 - 200
+        inscriptions.apply(orc20, 788805);
+        assertTrue(storage.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, alice).isEmpty());
+        assertTrue(storage.selectPendingOrc20EventListByTickIdAndCreator(tickId, alice).isEmpty());
+        assertEquals(BalanceStatus.OK, storage.selectOrc20BalanceByInscriptionId(send2).getBalanceStatus());
+        assertEquals("800", storage.selectOrc20BalanceByInscriptionId(remaining).getBalance().toString());
+        assertEquals(BalanceStatus.CANCELED, storage.selectOrc20BalanceByInscriptionId(send1).getBalanceStatus());
+        check(storage);
+    }
+
+    @Test
+    void indexesEqualScan(@TempDir Path dir) {
+        MemoryCache memory = new MemoryCache();
+        assertTrue(applyAndCheck(memory) > 0, "completed sends left the pending index");
+        // the sends were completed by a "remaining balance" inscription, cancelled or left pending,
+        // the upgrades confirmed by a "transfer upgrade" or left waiting
+        Set<String> statuses = new HashSet<>();
+        for (Orc20Event orc20Event : memory.dumpOrc20Event().values()) {
+            statuses.add(orc20Event.getEventType() + "/" + orc20Event.getEventStatus());
+        }
+        for (String status : new String[]{"INSCRIBE_SEND/SUCCESS", "INSCRIBE_SEND/CANCELED", "INSCRIBE_SEND/SEND_PENDING",
+                "INSCRIBE_UPGRADE/SUCCESS", "INSCRIBE_UPGRADE/UPGRADE_WAITING", "INSCRIBE_UPGRADE/UPGRADE_BLOCKED"}) {
+            assertTrue(statuses.contains(status), status + " in " + statuses);
+        }
+
+        applyAndCheck(new MemoryCache(new HashMap<>(), new SymbolTable(), true));
+        // synced on every commit, the inscriptions are applied from the durable block height
+        try (DiskStorage storage = new DiskStorage(dir.resolve("storage"), 1)) {
+            applyAndCheck(storage);
+        }
+        try (DiskStorage storage = new DiskStorage(dir.resolve("storage"))) {
+            check(storage);
+        }
+    }
+
+    /**
+     * apply the inscriptions up to each of the check heights, checking the storage at each
+     *
+     * @return number of (tickId, creator) with pending sends at a check height and none at a later one
+     */
+    private static int applyAndCheck(MemoryCache storage) {
+        Orc20 orc20 = new Orc20(storage);
+        Set<IndexKey> pending = new HashSet<>();
+        int drained = 0;
+        for (long height : CHECK_HEIGHTS) {
+            INSCRIPTIONS.apply(orc20, height);
+            assertEquals(height, storage.committedBlockHeight());
+            check(storage);
+            for (IndexKey key : new ArrayList<>(pending)) {
+                if (storage.selectPendingOrc20BalanceListByTickIdAndCreator((String) key.get(0), (String) key.get(1)).isEmpty()) {
+                    pending.remove(key);
+                    drained++;
+                }
+            }
+            storage.dumpOrc20Balance().values().stream()
+                    .filter(b -> BalanceStatus.SEND_PENDING.equals(b.getBalanceStatus()))
+                    .forEach(b -> pending.add(IndexKey.of(b.getTickId(), b.getCreator())));
+        }
+        return drained;
+    }
+
+    /**
+     * the pending selects of each (tickId, creator) and the upgrade selects of each (tickId, toAddress) against a scan
+     */
+    private static void check(MemoryCache storage) {
+        Set<IndexKey> creators = new HashSet<>();
+        storage.dumpOrc20Event().values().forEach(e -> creators.add(IndexKey.of(e.getTickId(), e.getCreator())));
+        storage.dumpOrc20Balance().values().forEach(b -> creators.add(IndexKey.of(b.getTickId(), b.getCreator())));
+        for (IndexKey key : creators) {
+            String tickId = (String) key.get(0);
+            String creator = (String) key.get(1);
+            assertEquals(strings(storage.dumpOrc20Event().values().stream()
+                            .filter(e -> EventStatus.SEND_PENDING.equals(e.getEventStatus()) && tickId.equals(e.getTickId()) && creator != null && creator.equals(e.getCreator()))
+                            .collect(Collectors.toList())),
+                    strings(storage.selectPendingOrc20EventListByTickIdAndCreator(tickId, creator)), "pending events of " + key);
+            assertEquals(strings(storage.dumpOrc20Balance().values().stream()
+                            .filter(b -> BalanceStatus.SEND_PENDING.equals(b.getBalanceStatus()) && tickId.equals(b.getTickId()) && creator != null && creator.equals(b.getCreator()))
+                            .collect(Collectors.toList())),
+                    strings(storage.selectPendingOrc20BalanceListByTickIdAndCreator(tickId, creator)), "pending balances of " + key);
+        }
+
+        Set<IndexKey> toAddresses = new HashSet<>();
+        storage.dumpOrc20Event().values().forEach(e -> toAddresses.add(IndexKey.of(e.getTickId(), e.getToAddress())));
+        for (IndexKey key : toAddresses) {
+            String tickId = (String) key.get(0);
+            String toAddress = (String) key.get(1);
+            Set<String> expected = strings(storage.dumpOrc20Event().values().stream()
+                    .filter(e -> (EventStatus.UPGRADE_BLOCKED.equals(e.getEventStatus()) || EventStatus.UPGRADE_WAITING.equals(e.getEventStatus()))
+                            && tickId.equals(e.getTickId()) && toAddress != null && toAddress.equals(e.getToAddress()))
+                    .collect(Collectors.toList()));
+            // the index holds both statuses, the updates filter them
+            for (EventStatus status : new EventStatus[]{EventStatus.UPGRADE_BLOCKED, EventStatus.UPGRADE_WAITING}) {
+                assertEquals(expected, strings(storage.selectOrc20EventListByTickIdAndToAddress(tickId, toAddress, status)), status + " events of " + key);
+            }
+        }
+    }
+
+    private static long blockHeightAt(double fraction) {
+        List<InscriptionTransfer> transfers = INSCRIPTIONS.getTransfers();
+        return transfers.get((int) (fraction * transfers.size())).getBlockHeight();
+    }
+
+    private static List<String> inscriptionIds(List<?> rows) {
+        return rows.stream().map(row -> row instanceof Orc20Event ? ((Orc20Event) row).getInscriptionId() : ((Orc20Balance) row).getInscriptionId())
+                .sorted().collect(Collectors.toList());
+    }
+
+    private static Set<String> strings(List<?> rows) {
+        return rows.stream().map(Object::toString).collect(Collectors.toCollection(TreeSet::new));
+    }
+}
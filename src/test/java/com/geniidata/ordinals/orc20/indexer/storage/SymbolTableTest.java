@@ -0,0 +1,125 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Balance;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Event;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymbolTableTest {
+
+    @Test
+    void intern() {
+        SymbolTable symbols = new SymbolTable();
+        String a = new String("bc1qalice");
+        String b = new String("bc1qalice");
+        assertNotSame(a, b);
+        assertSame(a, symbols.intern(a));
+        assertSame(a, symbols.intern(b));
+        assertNull(symbols.intern(null));
+
+        assertEquals(SymbolTable.UNKNOWN, symbols.idOf("bc1qbob"));
+        assertEquals(SymbolTable.NULL, symbols.idOf(null));
+        assertEquals(SymbolTable.NULL, symbols.id(null));
+        assertEquals(0, symbols.idOf("bc1qalice"));
+        // dense ids in the order first seen, beyond the initial capacity
+        for (int i = 1; i <= 3000; i++) {
+            assertEquals(i, symbols.id("s" + i));
+        }
+        assertEquals(1500, symbols.id(new String("s1500")));
+        assertEquals("s2999", symbols.symbol(2999));
+        assertSame(a, symbols.symbol(0));
+        assertNull(symbols.symbol(SymbolTable.NULL));
+        assertEquals(3001, symbols.size());
+    }
+
+    @Test
+    void concurrentIntern() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Map<String, String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    Map<String, String> interned = new HashMap<>();
+                    for (int i = 0; i < 5000; i++) {
+                        String value = "s" + i;
+                        interned.put(value, symbols.intern(new String(value)));
+                    }
+                    return interned;
+                }));
+            }
+            Map<String, String> first = futures.get(0).get();
+            for (Future<Map<String, String>> future : futures) {
+                future.get().forEach((value, symbol) -> assertSame(first.get(value), symbol, value));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(5000, symbols.size());
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int id = symbols.idOf("s" + i);
+            ids.add(id);
+            assertEquals("s" + i, symbols.symbol(id));
+        }
+        assertEquals(5000, ids.size());
+    }
+
+    @Test
+    void rowsShareIdentifiers() {
+        MemoryCache storage = new MemoryCache();
+        TestInscriptions.generate(22, 600).apply(new Orc20(storage), Long.MAX_VALUE);
+        SymbolTable symbols = storage.getSymbols();
+        for (Orc20Event event : storage.dumpOrc20Event().values()) {
+            assertSame(symbols.intern(event.getTickId()), event.getTickId());
+            assertSame(symbols.intern(event.getToAddress()), event.getToAddress());
+        }
+        for (Orc20Balance balance : storage.dumpOrc20Balance().values()) {
+            assertSame(symbols.intern(balance.getAddress()), balance.getAddress());
+            assertSame(symbols.intern(balance.getInscriptionId()), balance.getInscriptionId());
+        }
+    }
+
+    @Test
+    void internedDumpEqualsPlainDump() {
+        TestInscriptions inscriptions = TestInscriptions.generate(22, 1500);
+        MemoryCache plain = new MemoryCache(TableFactory.MEMORY, new HashMap<>(), null);
+        inscriptions.apply(new Orc20(plain), Long.MAX_VALUE);
+        String expected = TestInscriptions.dump(plain);
+        MemoryCache interned = apply(inscriptions, new MemoryCache());
+        assertNull(plain.getSymbols());
+        // one symbol per distinct identifier, shared by the rows
+        Set<String> identifiers = new HashSet<>();
+        for (Orc20Balance balance : interned.dumpOrc20Balance().values()) {
+            identifiers.add(balance.getTickId());
+            identifiers.add(balance.getAddress());
+            identifiers.add(balance.getInscriptionId());
+        }
+        assertTrue(identifiers.size() <= interned.getSymbols().size());
+        assertTrue(interned.getSymbols().size() < 3 * interned.dumpOrc20Balance().size(), "fewer symbols than identifier fields");
+        assertEquals(expected, TestInscriptions.dump(interned), "interned");
+        assertEquals(expected, TestInscriptions.dump(apply(inscriptions, new MemoryCache(new HashMap<>(), new SymbolTable(), true))), "interned, off heap");
+    }
+
+    private static MemoryCache apply(TestInscriptions inscriptions, MemoryCache storage) {
+        inscriptions.apply(new Orc20(storage), Long.MAX_VALUE);
+        return storage;
+    }
+}
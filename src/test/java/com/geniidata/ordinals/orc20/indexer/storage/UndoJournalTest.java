@@ -0,0 +1,211 @@
+package com.geniidata.ordinals.orc20.indexer.storage;
+
+import com.geniidata.ordinals.orc20.indexer.Orc20;
+import com.geniidata.ordinals.orc20.indexer.TestInscriptions;
+import com.geniidata.ordinals.orc20.indexer.enums.EventStatus;
+import com.geniidata.ordinals.orc20.indexer.enums.EventType;
+import com.geniidata.ordinals.orc20.indexer.model.Orc20Metadata;
+import com.geniidata.ordinals.orc20.indexer.utils.Amount;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UndoJournalTest {
+    private final static TestInscriptions INSCRIPTIONS = TestInscriptions.generate(13, 2000);
+    private final static long LAST = INSCRIPTIONS.getLastBlockHeight();
+    // across the OIP3 and OIP10 blocks, and the latest blocks only
+    private final static long[] ROLLBACK_HEIGHTS = {788820, 799995, LAST - 3};
+    private final static String ALICE = "bc1qalice";
+    private final static String BOB = "bc1qbob";
+
+    @Test
+    void rollbackAcrossDeployTransfer() {
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        String deploy = inscriptions.inscribe(ALICE, "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.toBlock(788802);
+        String aliceUpgrade = inscriptions.inscribe(ALICE, "upgrade", "ordi", "1", "lim", "77");
+        String bobUpgrade = inscriptions.inscribe(BOB, "upgrade", "ordi", "1", "lim", "88");
+        inscriptions.toBlock(788803);
+        inscriptions.transfer(deploy, BOB);
+        MemoryCache storage = new MemoryCache();
+        storage.setUndoDepth(10);
+        Orc20 orc20 = new Orc20(storage);
+
+        inscriptions.apply(orc20, 788803);
+        assertEquals(BOB, metadata(storage).getDeployer());
+        assertEquals(EventStatus.UPGRADE_BLOCKED, upgradeStatus(storage, aliceUpgrade));
+        assertEquals(EventStatus.UPGRADE_WAITING, upgradeStatus(storage, bobUpgrade));
+
+        orc20.rollbackTo(788802);
+        assertEquals(ALICE, metadata(storage).getDeployer());
+        assertEquals(EventStatus.UPGRADE_WAITING, upgradeStatus(storage, aliceUpgrade));
+        assertEquals(EventStatus.UPGRADE_BLOCKED, upgradeStatus(storage, bobUpgrade));
+
+        inscriptions.apply(orc20, 788803);
+        assertEquals(BOB, metadata(storage).getDeployer());
+        assertEquals(EventStatus.UPGRADE_WAITING, upgradeStatus(storage, bobUpgrade));
+    }
+
+    @Test
+    void rollbackAcrossUpgrade() {
+        TestInscriptions inscriptions = TestInscriptions.startingAt(788801);
+        inscriptions.inscribe(ALICE, "deploy", "ordi", "1", "max", "21000000", "lim", "1000");
+        inscriptions.toBlock(788802);
+        String upgrade = inscriptions.inscribe(ALICE, "upgrade", "ordi", "1", "max", "5000", "lim", "77");
+        inscriptions.toBlock(788803);
+        inscriptions.transfer(upgrade, TestInscriptions.ATM_ADDRESS); // the upgrade validation address
+        MemoryCache storage = new MemoryCache();
+        storage.setUndoDepth(10);
+        Orc20 orc20 = new Orc20(storage);
+
+        inscriptions.apply(orc20, 788803);
+        assertEquals("5000", plain(metadata(storage).getMax()));
+        assertEquals("77", plain(metadata(storage).getLimit()));
+        assertEquals(EventStatus.SUCCESS, upgradeStatus(storage, upgrade));
+
+        orc20.rollbackTo(788802);
+        assertEquals("21000000", plain(metadata(storage).getMax()));
+        assertEquals("1000", plain(metadata(storage).getLimit()));
+        assertEquals(EventStatus.UPGRADE_WAITING, upgradeStatus(storage, upgrade));
+
+        inscriptions.apply(orc20, 788803);
+        assertEquals("77", plain(metadata(storage).getLimit()));
+        assertEquals(EventStatus.SUCCESS, upgradeStatus(storage, upgrade));
+    }
+
+    @Test
+    void onlyUpdatesAreRecorded() {
+        UndoJournal journal = new UndoJournal();
+        journal.setDepth(10, 0);
+        JournaledMap<String, Set<String>> table = new JournaledMap<>(new HashMap<>(), Codecs.STRING_SET_CODEC, journal);
+        table.put("a", new HashSet<>(Collections.singleton("1")));
+        table.put("b", new HashSet<>(Collections.singleton("2")));
+        journal.commit(1);
+        Set<String> a = table.getForUpdate("a");
+        a.add("3");
+        table.put("a", a);
+        table.get("b").add("4"); // not recorded, the values handed out by `get` are not to be changed
+        journal.commit(2);
+
+        journal.rollbackTo(1);
+        assertEquals(Collections.singleton("1"), table.get("a"));
+        assertEquals(new HashSet<>(Arrays.asList("2", "4")), table.get("b")); // the change without `getForUpdate` is kept
+    }
+
+    @Test
+    void setIndexMembersAreUndoneInReverse() {
+        UndoJournal journal = new UndoJournal();
+        journal.setDepth(10, 0);
+        SetIndex<String, String> index = new JournaledSetIndex<>(new MapSetIndex<>(new HashMap<>()), journal);
+        index.add("a", "1");
+        index.add("a", "2");
+        journal.commit(1);
+        index.remove("a", "1");
+        index.add("a", "1"); // undone before the remove
+        index.add("b", "3");
+        index.remove("a", "2");
+        journal.commit(2);
+        index.remove("b", "3");
+        journal.commit(3);
+
+        journal.rollbackTo(2);
+        assertEquals(Collections.singleton("1"), new HashSet<>(index.get("a")));
+        assertEquals(Collections.singleton("3"), new HashSet<>(index.get("b")));
+        journal.rollbackTo(1);
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(index.get("a")));
+        assertEquals(Collections.singleton("a"), index.keySet());
+    }
+
+    @Test
+    void listIndexElementsAreUndoneInReverse() {
+        UndoJournal journal = new UndoJournal();
+        journal.setDepth(10, 0);
+        ListIndex<String, String> index = new JournaledListIndex<>(new MapListIndex<>(new HashMap<>()), journal);
+        index.add("a", "1");
+        index.add("a", "2");
+        journal.commit(1);
+        assertEquals("2", index.removeLast("a"));
+        index.add("a", "3");
+        index.add("b", "4");
+        journal.commit(2);
+        index.clear();
+        journal.commit(3);
+
+        journal.rollbackTo(2);
+        assertEquals(Arrays.asList("1", "3"), Arrays.asList(index.get("a", 0), index.get("a", 1)));
+        assertEquals("4", index.get("b", 0));
+        journal.rollbackTo(1);
+        assertEquals(2, index.size("a"));
+        assertEquals("2", index.get("a", 1));
+        assertEquals(Collections.singleton("a"), index.keySet());
+    }
+
+    @Test
+    void rollbackAndReplayEqualsStraightRun(@TempDir Path dir) {
+        String expected = straightRun(LAST);
+
+        assertEquals(expected, rollbackAndReplay(new MemoryCache()), "on heap");
+        assertEquals(expected, rollbackAndReplay(new MemoryCache(new HashMap<>(), new SymbolTable(), true)), "off heap");
+        try (DiskStorage storage = new DiskStorage(dir.resolve("storage"), 10)) {
+            assertEquals(expected, rollbackAndReplay(storage), "disk");
+        }
+    }
+
+    @Test
+    void rollbackBelowUndoDepth() {
+        MemoryCache storage = new MemoryCache();
+        storage.setUndoDepth(10);
+        Orc20 orc20 = new Orc20(storage);
+        INSCRIPTIONS.apply(orc20, LAST);
+        assertThrows(IllegalArgumentException.class, () -> orc20.rollbackTo(LAST - 20));
+        orc20.rollbackTo(LAST - 5);
+        assertEquals(LAST - 5, storage.committedBlockHeight());
+    }
+
+    /**
+     * index up to the last block, then for each height roll back to it and apply the blocks above it again
+     */
+    private static String rollbackAndReplay(MemoryCache storage) {
+        storage.setUndoDepth((int) (LAST - ROLLBACK_HEIGHTS[0]));
+        Orc20 orc20 = new Orc20(storage);
+        INSCRIPTIONS.apply(orc20, LAST);
+        for (long height : ROLLBACK_HEIGHTS) {
+            String applied = TestInscriptions.dump(storage);
+            orc20.rollbackTo(height);
+            assertEquals(height, storage.committedBlockHeight());
+            String rolledBack = TestInscriptions.dump(storage);
+            assertNotEquals(applied, rolledBack, "the blocks above " + height + " were undone");
+            assertEquals(straightRun(height), rolledBack, "rolled back to " + height);
+            INSCRIPTIONS.apply(orc20, LAST);
+        }
+        return TestInscriptions.dump(storage);
+    }
+
+    private static Orc20Metadata metadata(Storage storage) {
+        return storage.selectORC20MetadataByTickAndDeployId("ordi", "1");
+    }
+
+    private static EventStatus upgradeStatus(Storage storage, String inscriptionId) {
+        return storage.selectOrc20EventByInscriptionIdAndEventType(inscriptionId, EventType.INSCRIBE_UPGRADE).get(0).getEventStatus();
+    }
+
+    private static String plain(Amount amount) {
+        return amount.toBigDecimal().stripTrailingZeros().toPlainString();
+    }
+
+    private static String straightRun(long toBlockHeight) {
+        MemoryCache storage = new MemoryCache();
+        INSCRIPTIONS.apply(new Orc20(storage), toBlockHeight);
+        return TestInscriptions.dump(storage);
+    }
+}
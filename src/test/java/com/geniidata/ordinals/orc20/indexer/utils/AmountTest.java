@@ -0,0 +1,57 @@
+package com.geniidata.ordinals.orc20.indexer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AmountTest {
+    private final static String[] VALUES = {"0", "1", "-1", "1.50", "0.000000000000000001", "1E+3", "-3E+2", "21000000",
+            "9223372036854775807", "-9223372036854775808", "922337203685477580.7", "9223372036854775808",
+            "115792089237316195423570985008687907853269984665640564039457.584007913129639935"};
+
+    @Test
+    void arithmetic() {
+        for (String a : VALUES) {
+            for (String b : VALUES) {
+                BigDecimal x = new BigDecimal(a);
+                BigDecimal y = new BigDecimal(b);
+                assertEquals(x.add(y), Amount.valueOf(x).add(Amount.valueOf(y)).toBigDecimal(), a + " + " + b);
+                assertEquals(x.subtract(y), Amount.valueOf(x).subtract(Amount.valueOf(y)).toBigDecimal(), a + " - " + b);
+                assertEquals(x.compareTo(y), Amount.valueOf(x).compareTo(Amount.valueOf(y)), a + " <> " + b);
+                assertEquals(x.equals(y), Amount.valueOf(x).equals(Amount.valueOf(y)), a + " == " + b);
+            }
+        }
+    }
+
+    @Test
+    void setScale() {
+        for (String a : VALUES) {
+            BigDecimal x = new BigDecimal(a);
+            for (int scale = -4; scale <= 20; scale++) {
+                Amount amount = Amount.valueOf(x);
+                BigDecimal expected;
+                try {
+                    expected = x.setScale(scale, RoundingMode.UNNECESSARY);
+                } catch (ArithmeticException e) {
+                    int newScale = scale;
+                    assertThrows(ArithmeticException.class, () -> amount.setScale(newScale));
+                    continue;
+                }
+                assertEquals(expected, amount.setScale(scale).toBigDecimal(), a + " @ " + scale);
+            }
+        }
+    }
+
+    @Test
+    void representation() {
+        assert Amount.valueOf(new BigDecimal("9223372036854775807")).fitsInLong();
+        assert !Amount.valueOf(new BigDecimal("9223372036854775808")).fitsInLong();
+        assert Amount.valueOf(new BigDecimal("9223372036854775808")).subtract(Amount.ONE).fitsInLong();
+        assertEquals("1E+3", Amount.valueOf(new BigDecimal("1E+3")).toString());
+        assertEquals("1.50", Amount.valueOf(new BigDecimal("1.50")).toString());
+    }
+}
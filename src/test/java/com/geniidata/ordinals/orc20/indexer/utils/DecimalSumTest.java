@@ -0,0 +1,61 @@
+package com.geniidata.ordinals.orc20.indexer.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DecimalSumTest {
+    private final static String[] TERMS = {"1", "1.50", "0.001", "1E+3", "-2.5", "21000000", "0.000000000000000001", "7.0"};
+
+    @Test
+    void scaleOfAddingFromZero() {
+        DecimalSum sum = new DecimalSum();
+        assertEquals(new BigDecimal("0"), sum.value().toBigDecimal());
+        sum.add(Amount.valueOf(new BigDecimal("1E+3")));
+        // BigDecimal.ZERO.add(1E+3) has the scale of ZERO
+        assertEquals(new BigDecimal("1000"), sum.value().toBigDecimal());
+        assertEquals(new BigDecimal("1E+3"), sum.total().toBigDecimal());
+        sum.add(Amount.valueOf(new BigDecimal("1.50")));
+        assertEquals(new BigDecimal("1001.50"), sum.value().toBigDecimal());
+        sum.subtract(Amount.valueOf(new BigDecimal("1.50")));
+        // the scale drops with the last term of that scale
+        assertEquals(new BigDecimal("1000"), sum.value().toBigDecimal());
+        sum.subtract(Amount.valueOf(new BigDecimal("1E+3")));
+        assertEquals(new BigDecimal("0"), sum.value().toBigDecimal());
+        assertEquals(0, sum.count());
+    }
+
+    @Test
+    void sameAsAddingUp() {
+        Random random = new Random(6);
+        DecimalSum sum = new DecimalSum();
+        List<BigDecimal> terms = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (terms.isEmpty() || random.nextDouble() < 0.6) {
+                BigDecimal term = new BigDecimal(TERMS[random.nextInt(TERMS.length)]);
+                terms.add(term);
+                sum.add(Amount.valueOf(term));
+            } else {
+                sum.subtract(Amount.valueOf(terms.remove(random.nextInt(terms.size()))));
+            }
+            BigDecimal expected = BigDecimal.ZERO;
+            for (BigDecimal term : terms) {
+                expected = expected.add(term);
+            }
+            assertEquals(expected, sum.value().toBigDecimal(), terms.toString());
+            assertEquals(terms.size(), sum.count());
+            if (!terms.isEmpty()) {
+                BigDecimal total = terms.get(0);
+                for (BigDecimal term : terms.subList(1, terms.size())) {
+                    total = total.add(term);
+                }
+                assertEquals(total, sum.total().toBigDecimal(), terms.toString());
+            }
+        }
+    }
+}